@@ -46,6 +46,26 @@ public interface LDAConfiguration {
 	public static final String MODEL_DEFAULT = "cc.mallet.topics.PolyaUrnSpaliasLDA";
 	public static final String STORED_SAMPLER_DIR_DEFAULT = "stored_samplers";
 	public static final String MODEL_CALLBACK_DEFAULT = null;
+	public static final boolean THREAD_LOCAL_COUNT_UPDATES_DEFAULT = false;
+	public static final boolean TYPE_MAJOR_PHI_DEFAULT = false;
+	public static final boolean FLOAT_PHI_DEFAULT = false;
+	public static final boolean TOKEN_BALANCED_SCHEDULING_DEFAULT = false;
+	public static final int NUM_THREADS_DEFAULT = 0;
+	public static final boolean INCREMENTAL_LOGLIKELIHOOD_DEFAULT = false;
+	public static final boolean COLUMNAR_CORPUS_DEFAULT = false;
+	public static final String MAPPED_CORPUS_DIR_DEFAULT = null;
+	public static final boolean NARROW_TOPIC_INDICATORS_DEFAULT = false;
+	public static final String CORPUS_CACHE_DIR_DEFAULT = null;
+	public static final boolean SINGLE_PASS_VOCABULARY_DEFAULT = false;
+	public static final boolean FREQUENCY_ORDERED_TYPES_DEFAULT = false;
+	public static final String DOCUMENT_ORDER_DEFAULT = "input";
+	public static final int CHECKPOINT_INTERVAL_DEFAULT = 0;
+	public static final String CHECKPOINT_FILE_DEFAULT = null;
+	public static final boolean SPARSE_PHI_OUTPUT_DEFAULT = false;
+	public static final int PHI_QUANTIZATION_BITS_DEFAULT = 0;
+	public static final int DUMP_QUEUE_SIZE_DEFAULT = 0;
+	public static final boolean REPRODUCIBLE_SAMPLING_DEFAULT = false;
+	public static final int SINGLE_PASS_MAX_VOCABULARY_DEFAULT = 1 << 22;
 
 	public LDALoggingUtils getLoggingUtil();
 
@@ -230,4 +250,44 @@ public interface LDAConfiguration {
 	public String getIterationCallbackClass(String modelCallbackDefault);
 
 	public String getDocumentPriorFilename();
+
+	public boolean useThreadLocalCountUpdates(boolean threadLocalCountUpdatesDefault);
+
+	public boolean useTypeMajorPhi(boolean typeMajorPhiDefault);
+
+	public boolean useFloatPhi(boolean floatPhiDefault);
+
+	public boolean useTokenBalancedScheduling(boolean tokenBalancedSchedulingDefault);
+
+	public int getNumThreads(int numThreadsDefault);
+
+	public boolean useIncrementalLogLikelihood(boolean incrementalLogLikelihoodDefault);
+
+	public boolean useColumnarCorpus(boolean columnarCorpusDefault);
+
+	public String getMappedCorpusDirectory(String mappedCorpusDirDefault);
+
+	public boolean useNarrowTopicIndicators(boolean narrowTopicIndicatorsDefault);
+
+	public String getCorpusCacheDirectory(String corpusCacheDirDefault);
+
+	public boolean useSinglePassVocabulary(boolean singlePassVocabularyDefault);
+
+	public boolean useFrequencyOrderedTypes(boolean frequencyOrderedTypesDefault);
+
+	public String getDocumentOrder(String documentOrderDefault);
+
+	public int getCheckpointInterval(int defaultValue);
+
+	public String getCheckpointFilename(String defaultValue);
+
+	public boolean useSparsePhiOutput(boolean defaultValue);
+
+	public int getPhiQuantizationBits(int defaultValue);
+
+	public int getDumpQueueSize(int defaultValue);
+
+	public boolean useReproducibleSampling(boolean reproducibleSamplingDefault);
+
+	public int getSinglePassMaxVocabulary(int singlePassMaxVocabularyDefault);
 }
\ No newline at end of file
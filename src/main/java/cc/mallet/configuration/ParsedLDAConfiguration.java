@@ -594,6 +594,26 @@ public class ParsedLDAConfiguration extends SubConfig implements Configuration,
 				getSavedSamplerDirectory(LDAConfiguration.STORED_SAMPLER_DIR_DEFAULT),
 				getIterationCallbackClass(LDAConfiguration.MODEL_CALLBACK_DEFAULT)
 				);
+		conf.setThreadLocalCountUpdates(useThreadLocalCountUpdates(LDAConfiguration.THREAD_LOCAL_COUNT_UPDATES_DEFAULT));
+		conf.setTypeMajorPhi(useTypeMajorPhi(LDAConfiguration.TYPE_MAJOR_PHI_DEFAULT));
+		conf.setFloatPhi(useFloatPhi(LDAConfiguration.FLOAT_PHI_DEFAULT));
+		conf.setTokenBalancedScheduling(useTokenBalancedScheduling(LDAConfiguration.TOKEN_BALANCED_SCHEDULING_DEFAULT));
+		conf.setNumThreads(getNumThreads(LDAConfiguration.NUM_THREADS_DEFAULT));
+		conf.setIncrementalLogLikelihood(useIncrementalLogLikelihood(LDAConfiguration.INCREMENTAL_LOGLIKELIHOOD_DEFAULT));
+		conf.setColumnarCorpus(useColumnarCorpus(LDAConfiguration.COLUMNAR_CORPUS_DEFAULT));
+		conf.setMappedCorpusDirectory(getMappedCorpusDirectory(LDAConfiguration.MAPPED_CORPUS_DIR_DEFAULT));
+		conf.setNarrowTopicIndicators(useNarrowTopicIndicators(LDAConfiguration.NARROW_TOPIC_INDICATORS_DEFAULT));
+		conf.setCorpusCacheDirectory(getCorpusCacheDirectory(LDAConfiguration.CORPUS_CACHE_DIR_DEFAULT));
+		conf.setSinglePassVocabulary(useSinglePassVocabulary(LDAConfiguration.SINGLE_PASS_VOCABULARY_DEFAULT));
+		conf.setFrequencyOrderedTypes(useFrequencyOrderedTypes(LDAConfiguration.FREQUENCY_ORDERED_TYPES_DEFAULT));
+		conf.setDocumentOrder(getDocumentOrder(LDAConfiguration.DOCUMENT_ORDER_DEFAULT));
+		conf.setCheckpointInterval(getCheckpointInterval(LDAConfiguration.CHECKPOINT_INTERVAL_DEFAULT));
+		conf.setCheckpointFilename(getCheckpointFilename(LDAConfiguration.CHECKPOINT_FILE_DEFAULT));
+		conf.setSparsePhiOutput(useSparsePhiOutput(LDAConfiguration.SPARSE_PHI_OUTPUT_DEFAULT));
+		conf.setPhiQuantizationBits(getPhiQuantizationBits(LDAConfiguration.PHI_QUANTIZATION_BITS_DEFAULT));
+		conf.setDumpQueueSize(getDumpQueueSize(LDAConfiguration.DUMP_QUEUE_SIZE_DEFAULT));
+		conf.setReproducibleSampling(useReproducibleSampling(LDAConfiguration.REPRODUCIBLE_SAMPLING_DEFAULT));
+		conf.setSinglePassMaxVocabulary(getSinglePassMaxVocabulary(LDAConfiguration.SINGLE_PASS_MAX_VOCABULARY_DEFAULT));
 		
 		return conf;
 	}
@@ -633,4 +653,130 @@ public class ParsedLDAConfiguration extends SubConfig implements Configuration,
 		return (configProperty == null) ? default_dir : configProperty;
 	}
 
+	@Override
+	public boolean useThreadLocalCountUpdates(boolean threadLocalCountUpdatesDefault) {
+		String key = "thread_local_count_updates";
+		Boolean threadLocal = getBooleanPropertyOrNull(key);
+		return threadLocal == null ? threadLocalCountUpdatesDefault : threadLocal;
+	}
+
+	@Override
+	public boolean useTypeMajorPhi(boolean typeMajorPhiDefault) {
+		String key = "type_major_phi";
+		Boolean value = getBooleanPropertyOrNull(key);
+		return value == null ? typeMajorPhiDefault : value;
+	}
+
+	@Override
+	public boolean useFloatPhi(boolean floatPhiDefault) {
+		String key = "float_phi";
+		Boolean value = getBooleanPropertyOrNull(key);
+		return value == null ? floatPhiDefault : value;
+	}
+
+	@Override
+	public boolean useTokenBalancedScheduling(boolean tokenBalancedSchedulingDefault) {
+		String key = "token_balanced_scheduling";
+		Boolean value = getBooleanPropertyOrNull(key);
+		return value == null ? tokenBalancedSchedulingDefault : value;
+	}
+
+	@Override
+	public int getNumThreads(int numThreadsDefault) {
+		return getInteger("num_threads",numThreadsDefault);
+	}
+
+	@Override
+	public boolean useIncrementalLogLikelihood(boolean incrementalLogLikelihoodDefault) {
+		String key = "incremental_loglikelihood";
+		Boolean value = getBooleanPropertyOrNull(key);
+		return value == null ? incrementalLogLikelihoodDefault : value;
+	}
+
+	@Override
+	public boolean useColumnarCorpus(boolean columnarCorpusDefault) {
+		String key = "columnar_corpus";
+		Boolean value = getBooleanPropertyOrNull(key);
+		return value == null ? columnarCorpusDefault : value;
+	}
+
+	@Override
+	public String getMappedCorpusDirectory(String mappedCorpusDirDefault) {
+		String configProperty = getStringProperty("mapped_corpus_dir");
+		return (configProperty == null) ? mappedCorpusDirDefault : configProperty;
+	}
+
+	@Override
+	public boolean useNarrowTopicIndicators(boolean narrowTopicIndicatorsDefault) {
+		String key = "narrow_topic_indicators";
+		Boolean value = getBooleanPropertyOrNull(key);
+		return value == null ? narrowTopicIndicatorsDefault : value;
+	}
+
+	@Override
+	public String getCorpusCacheDirectory(String corpusCacheDirDefault) {
+		String configProperty = getStringProperty("corpus_cache_dir");
+		return (configProperty == null) ? corpusCacheDirDefault : configProperty;
+	}
+
+	@Override
+	public boolean useSinglePassVocabulary(boolean singlePassVocabularyDefault) {
+		String key = "single_pass_vocabulary";
+		Boolean value = getBooleanPropertyOrNull(key);
+		return value == null ? singlePassVocabularyDefault : value;
+	}
+
+	@Override
+	public boolean useFrequencyOrderedTypes(boolean frequencyOrderedTypesDefault) {
+		String key = "frequency_ordered_types";
+		Boolean value = getBooleanPropertyOrNull(key);
+		return value == null ? frequencyOrderedTypesDefault : value;
+	}
+
+	@Override
+	public String getDocumentOrder(String documentOrderDefault) {
+		String configProperty = getStringProperty("document_order");
+		return (configProperty == null) ? documentOrderDefault : configProperty;
+	}
+
+	@Override
+	public int getCheckpointInterval(int defaultValue) {
+		return getInteger("checkpoint_interval",defaultValue);
+	}
+
+	@Override
+	public String getCheckpointFilename(String defaultValue) {
+		String configProperty = getStringProperty("checkpoint_file");
+		return (configProperty == null) ? defaultValue : configProperty;
+	}
+
+	@Override
+	public boolean useSparsePhiOutput(boolean defaultValue) {
+		String key = "sparse_phi_output";
+		Boolean value = getBooleanPropertyOrNull(key);
+		return value == null ? defaultValue : value;
+	}
+
+	@Override
+	public int getPhiQuantizationBits(int defaultValue) {
+		return getInteger("phi_quantization_bits",defaultValue);
+	}
+
+	@Override
+	public int getDumpQueueSize(int defaultValue) {
+		return getInteger("dump_queue_size",defaultValue);
+	}
+
+	@Override
+	public boolean useReproducibleSampling(boolean reproducibleSamplingDefault) {
+		String key = "reproducible_sampling";
+		Boolean value = getBooleanPropertyOrNull(key);
+		return value == null ? reproducibleSamplingDefault : value;
+	}
+
+	@Override
+	public int getSinglePassMaxVocabulary(int singlePassMaxVocabularyDefault) {
+		return getInteger("single_pass_max_vocabulary",singlePassMaxVocabularyDefault);
+	}
+
 }
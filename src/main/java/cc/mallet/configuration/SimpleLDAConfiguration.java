@@ -96,6 +96,26 @@ public class SimpleLDAConfiguration implements LDAConfiguration, Serializable {
 	private String iterationCallbackClass = LDAConfiguration.MODEL_CALLBACK_DEFAULT;
 	private String subConfig = "default";
 	private String documentPriorFilename;
+	private boolean threadLocalCountUpdates = LDAConfiguration.THREAD_LOCAL_COUNT_UPDATES_DEFAULT;
+	private boolean typeMajorPhi = LDAConfiguration.TYPE_MAJOR_PHI_DEFAULT;
+	private boolean floatPhi = LDAConfiguration.FLOAT_PHI_DEFAULT;
+	private boolean tokenBalancedScheduling = LDAConfiguration.TOKEN_BALANCED_SCHEDULING_DEFAULT;
+	private int numThreads = LDAConfiguration.NUM_THREADS_DEFAULT;
+	private boolean incrementalLogLikelihood = LDAConfiguration.INCREMENTAL_LOGLIKELIHOOD_DEFAULT;
+	private boolean columnarCorpus = LDAConfiguration.COLUMNAR_CORPUS_DEFAULT;
+	private String mappedCorpusDirectory = LDAConfiguration.MAPPED_CORPUS_DIR_DEFAULT;
+	private boolean narrowTopicIndicators = LDAConfiguration.NARROW_TOPIC_INDICATORS_DEFAULT;
+	private String corpusCacheDirectory = LDAConfiguration.CORPUS_CACHE_DIR_DEFAULT;
+	private boolean singlePassVocabulary = LDAConfiguration.SINGLE_PASS_VOCABULARY_DEFAULT;
+	private boolean frequencyOrderedTypes = LDAConfiguration.FREQUENCY_ORDERED_TYPES_DEFAULT;
+	private String documentOrder = LDAConfiguration.DOCUMENT_ORDER_DEFAULT;
+	private int checkpointInterval = LDAConfiguration.CHECKPOINT_INTERVAL_DEFAULT;
+	private String checkpointFilename = LDAConfiguration.CHECKPOINT_FILE_DEFAULT;
+	private boolean sparsePhiOutput = LDAConfiguration.SPARSE_PHI_OUTPUT_DEFAULT;
+	private int phiQuantizationBits = LDAConfiguration.PHI_QUANTIZATION_BITS_DEFAULT;
+	private int dumpQueueSize = LDAConfiguration.DUMP_QUEUE_SIZE_DEFAULT;
+	private boolean reproducibleSampling = LDAConfiguration.REPRODUCIBLE_SAMPLING_DEFAULT;
+	private int singlePassMaxVocabulary = LDAConfiguration.SINGLE_PASS_MAX_VOCABULARY_DEFAULT;
 
 	public SimpleLDAConfiguration(LDALoggingUtils logUtil, String scheme,
 			Integer noTopics, Double alpha, Double beta, Integer noIters,
@@ -890,6 +910,186 @@ public class SimpleLDAConfiguration implements LDAConfiguration, Serializable {
 		this.documentSamplerSplitLimit = documentSamplerSplitLimitDefault;
 	}
 
+	@Override
+	public boolean useThreadLocalCountUpdates(boolean threadLocalCountUpdatesDefault) {
+		return threadLocalCountUpdates;
+	}
+
+	public void setThreadLocalCountUpdates(boolean threadLocalCountUpdates) {
+		this.threadLocalCountUpdates = threadLocalCountUpdates;
+	}
+
+	@Override
+	public boolean useTypeMajorPhi(boolean typeMajorPhiDefault) {
+		return typeMajorPhi;
+	}
+
+	public void setTypeMajorPhi(boolean typeMajorPhi) {
+		this.typeMajorPhi = typeMajorPhi;
+	}
+
+	@Override
+	public boolean useFloatPhi(boolean floatPhiDefault) {
+		return floatPhi;
+	}
+
+	public void setFloatPhi(boolean floatPhi) {
+		this.floatPhi = floatPhi;
+	}
+
+	@Override
+	public boolean useTokenBalancedScheduling(boolean tokenBalancedSchedulingDefault) {
+		return tokenBalancedScheduling;
+	}
+
+	public void setTokenBalancedScheduling(boolean tokenBalancedScheduling) {
+		this.tokenBalancedScheduling = tokenBalancedScheduling;
+	}
+
+	@Override
+	public int getNumThreads(int numThreadsDefault) {
+		return numThreads;
+	}
+
+	public void setNumThreads(int numThreads) {
+		this.numThreads = numThreads;
+	}
+
+	@Override
+	public boolean useIncrementalLogLikelihood(boolean incrementalLogLikelihoodDefault) {
+		return incrementalLogLikelihood;
+	}
+
+	public void setIncrementalLogLikelihood(boolean incrementalLogLikelihood) {
+		this.incrementalLogLikelihood = incrementalLogLikelihood;
+	}
+
+	@Override
+	public boolean useColumnarCorpus(boolean columnarCorpusDefault) {
+		return columnarCorpus;
+	}
+
+	public void setColumnarCorpus(boolean columnarCorpus) {
+		this.columnarCorpus = columnarCorpus;
+	}
+
+	@Override
+	public String getMappedCorpusDirectory(String mappedCorpusDirDefault) {
+		return mappedCorpusDirectory;
+	}
+
+	public void setMappedCorpusDirectory(String mappedCorpusDirectory) {
+		this.mappedCorpusDirectory = mappedCorpusDirectory;
+	}
+
+	@Override
+	public boolean useNarrowTopicIndicators(boolean narrowTopicIndicatorsDefault) {
+		return narrowTopicIndicators;
+	}
+
+	public void setNarrowTopicIndicators(boolean narrowTopicIndicators) {
+		this.narrowTopicIndicators = narrowTopicIndicators;
+	}
+
+	@Override
+	public String getCorpusCacheDirectory(String corpusCacheDirDefault) {
+		return corpusCacheDirectory;
+	}
+
+	public void setCorpusCacheDirectory(String corpusCacheDirectory) {
+		this.corpusCacheDirectory = corpusCacheDirectory;
+	}
+
+	@Override
+	public boolean useSinglePassVocabulary(boolean singlePassVocabularyDefault) {
+		return singlePassVocabulary;
+	}
+
+	public void setSinglePassVocabulary(boolean singlePassVocabulary) {
+		this.singlePassVocabulary = singlePassVocabulary;
+	}
+
+	@Override
+	public boolean useFrequencyOrderedTypes(boolean frequencyOrderedTypesDefault) {
+		return frequencyOrderedTypes;
+	}
+
+	public void setFrequencyOrderedTypes(boolean frequencyOrderedTypes) {
+		this.frequencyOrderedTypes = frequencyOrderedTypes;
+	}
+
+	@Override
+	public String getDocumentOrder(String documentOrderDefault) {
+		return documentOrder;
+	}
+
+	public void setDocumentOrder(String documentOrder) {
+		this.documentOrder = documentOrder;
+	}
+
+	@Override
+	public int getCheckpointInterval(int defaultValue) {
+		return checkpointInterval;
+	}
+
+	public void setCheckpointInterval(int checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	@Override
+	public String getCheckpointFilename(String defaultValue) {
+		return checkpointFilename;
+	}
+
+	public void setCheckpointFilename(String checkpointFilename) {
+		this.checkpointFilename = checkpointFilename;
+	}
+
+	@Override
+	public boolean useSparsePhiOutput(boolean defaultValue) {
+		return sparsePhiOutput;
+	}
+
+	public void setSparsePhiOutput(boolean sparsePhiOutput) {
+		this.sparsePhiOutput = sparsePhiOutput;
+	}
+
+	@Override
+	public int getPhiQuantizationBits(int defaultValue) {
+		return phiQuantizationBits;
+	}
+
+	public void setPhiQuantizationBits(int phiQuantizationBits) {
+		this.phiQuantizationBits = phiQuantizationBits;
+	}
+
+	@Override
+	public int getDumpQueueSize(int defaultValue) {
+		return dumpQueueSize;
+	}
+
+	public void setDumpQueueSize(int dumpQueueSize) {
+		this.dumpQueueSize = dumpQueueSize;
+	}
+
+	@Override
+	public boolean useReproducibleSampling(boolean reproducibleSamplingDefault) {
+		return reproducibleSampling;
+	}
+
+	public void setReproducibleSampling(boolean reproducibleSampling) {
+		this.reproducibleSampling = reproducibleSampling;
+	}
+
+	@Override
+	public int getSinglePassMaxVocabulary(int singlePassMaxVocabularyDefault) {
+		return singlePassMaxVocabulary;
+	}
+
+	public void setSinglePassMaxVocabulary(int singlePassMaxVocabulary) {
+		this.singlePassMaxVocabulary = singlePassMaxVocabulary;
+	}
+
 	@Override
 	public double getHDPKPercentile(double hdpKPercentile) {
 		return this.hdpKPercentile ;
@@ -1042,6 +1242,26 @@ public class SimpleLDAConfiguration implements LDAConfiguration, Serializable {
 		result = prime * result + ((startDiagnostic == null) ? 0 : startDiagnostic.hashCode());
 		result = prime * result + ((stoplistFilename == null) ? 0 : stoplistFilename.hashCode());
 		result = prime * result + (symmetricAlpha ? 1231 : 1237);
+		result = prime * result + (threadLocalCountUpdates ? 1231 : 1237);
+		result = prime * result + (typeMajorPhi ? 1231 : 1237);
+		result = prime * result + (floatPhi ? 1231 : 1237);
+		result = prime * result + (tokenBalancedScheduling ? 1231 : 1237);
+		result = prime * result + numThreads;
+		result = prime * result + (incrementalLogLikelihood ? 1231 : 1237);
+		result = prime * result + (columnarCorpus ? 1231 : 1237);
+		result = prime * result + ((mappedCorpusDirectory == null) ? 0 : mappedCorpusDirectory.hashCode());
+		result = prime * result + (narrowTopicIndicators ? 1231 : 1237);
+		result = prime * result + ((corpusCacheDirectory == null) ? 0 : corpusCacheDirectory.hashCode());
+		result = prime * result + (singlePassVocabulary ? 1231 : 1237);
+		result = prime * result + (frequencyOrderedTypes ? 1231 : 1237);
+		result = prime * result + ((documentOrder == null) ? 0 : documentOrder.hashCode());
+		result = prime * result + checkpointInterval;
+		result = prime * result + ((checkpointFilename == null) ? 0 : checkpointFilename.hashCode());
+		result = prime * result + (sparsePhiOutput ? 1231 : 1237);
+		result = prime * result + phiQuantizationBits;
+		result = prime * result + dumpQueueSize;
+		result = prime * result + (reproducibleSampling ? 1231 : 1237);
+		result = prime * result + singlePassMaxVocabulary;
 		result = prime * result + ((termFrequencyFilename == null) ? 0 : termFrequencyFilename.hashCode());
 		result = prime * result + ((testDatasetFilename == null) ? 0 : testDatasetFilename.hashCode());
 		result = prime * result + ((tfIdfThreshold == null) ? 0 : tfIdfThreshold.hashCode());
@@ -1278,6 +1498,58 @@ public class SimpleLDAConfiguration implements LDAConfiguration, Serializable {
 			return false;
 		if (symmetricAlpha != other.symmetricAlpha)
 			return false;
+		if (threadLocalCountUpdates != other.threadLocalCountUpdates)
+			return false;
+		if (typeMajorPhi != other.typeMajorPhi)
+			return false;
+		if (floatPhi != other.floatPhi)
+			return false;
+		if (tokenBalancedScheduling != other.tokenBalancedScheduling)
+			return false;
+		if (numThreads != other.numThreads)
+			return false;
+		if (incrementalLogLikelihood != other.incrementalLogLikelihood)
+			return false;
+		if (columnarCorpus != other.columnarCorpus)
+			return false;
+		if (mappedCorpusDirectory == null) {
+			if (other.mappedCorpusDirectory != null)
+				return false;
+		} else if (!mappedCorpusDirectory.equals(other.mappedCorpusDirectory))
+			return false;
+		if (narrowTopicIndicators != other.narrowTopicIndicators)
+			return false;
+		if (corpusCacheDirectory == null) {
+			if (other.corpusCacheDirectory != null)
+				return false;
+		} else if (!corpusCacheDirectory.equals(other.corpusCacheDirectory))
+			return false;
+		if (singlePassVocabulary != other.singlePassVocabulary)
+			return false;
+		if (frequencyOrderedTypes != other.frequencyOrderedTypes)
+			return false;
+		if (documentOrder == null) {
+			if (other.documentOrder != null)
+				return false;
+		} else if (!documentOrder.equals(other.documentOrder))
+			return false;
+		if (checkpointInterval != other.checkpointInterval)
+			return false;
+		if (checkpointFilename == null) {
+			if (other.checkpointFilename != null)
+				return false;
+		} else if (!checkpointFilename.equals(other.checkpointFilename))
+			return false;
+		if (sparsePhiOutput != other.sparsePhiOutput)
+			return false;
+		if (phiQuantizationBits != other.phiQuantizationBits)
+			return false;
+		if (dumpQueueSize != other.dumpQueueSize)
+			return false;
+		if (reproducibleSampling != other.reproducibleSampling)
+			return false;
+		if (singlePassMaxVocabulary != other.singlePassMaxVocabulary)
+			return false;
 		if (termFrequencyFilename == null) {
 			if (other.termFrequencyFilename != null)
 				return false;
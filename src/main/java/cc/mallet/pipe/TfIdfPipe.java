@@ -63,6 +63,20 @@ public class TfIdfPipe extends Pipe {
 		return instance;
 	}
 
+	/**
+	 * @return A copy of this pipe on <code>alphabet</code> where feature <code>newIndex[i]</code>
+	 * has the statistics of feature <code>i</code> of this pipe
+	 */
+	public TfIdfPipe renumbered(Alphabet alphabet, int [] newIndex) {
+		TfIdfPipe renumbered = new TfIdfPipe(alphabet, getTargetAlphabet());
+		for (int featureIdx = 0; featureIdx < newIndex.length; featureIdx++) {
+			renumbered.counter.put(newIndex[featureIdx], getIdf(featureIdx));
+			renumbered.tfs.put(newIndex[featureIdx], getTf(featureIdx));
+		}
+		renumbered.corpusSize = corpusSize;
+		return renumbered;
+	}
+
 	public int getTf(int featureIdx) {
 		return tfs.get(featureIdx);
 	}
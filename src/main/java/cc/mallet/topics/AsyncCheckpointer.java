@@ -0,0 +1,178 @@
+package cc.mallet.topics;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import cc.mallet.util.LDAThreadFactory;
+
+/**
+ * Writes periodic checkpoints of a sampler while it keeps sampling. At the
+ * end of an iteration checkpoint() copies the topic indicators, phi, the phi
+ * means and the hyperparameters into a snapshot buffer, which is reused between
+ * checkpoints, and hands it to a background thread that writes it with
+ * SamplerCheckpoint. The sampling loop is only blocked for the copy, for 
+ * flushing a memory mapped corpus and, if the previous checkpoint is still 
+ * being written, for waiting on that write.
+ *
+ * The background thread writes the sections one after the other so that it
+ * does not compete with the samplers for more than one core. It is a daemon
+ * thread, the sampling loop closes the checkpointer when it ends, also if it
+ * fails. The time each checkpoint blocked sampling is logged as
+ * <code>iteration blocked_ms</code>.
+ */
+public class AsyncCheckpointer {
+
+	final File checkpointFile;
+	final PrintWriter log;
+	final ExecutorService writer;
+	SamplerCheckpoint.State snapshot;
+	Future<?> pendingWrite;
+
+	int noCheckpoints = 0;
+	long copyNanos = 0;
+	long flushNanos = 0;
+	long waitNanos = 0;
+	volatile long writeNanos = 0;
+
+	/**
+	 * @param checkpointFile File the checkpoints are written to
+	 * @param log Where to log the time each checkpoint blocked sampling, may be
+	 * null, closed by close()
+	 */
+	public AsyncCheckpointer(File checkpointFile, PrintWriter log) {
+		this.checkpointFile = checkpointFile;
+		this.log = log;
+		ThreadFactory threads = new LDAThreadFactory("AsyncCheckpointer");
+		writer = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = threads.newThread(runnable);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Snapshots the current state of <code>model</code> and starts writing it in the background
+	 *
+	 * @return The time in nanoseconds the caller was blocked
+	 */
+	public long checkpoint(UncollapsedParallelLDA model) {
+		long start = System.nanoTime();
+		awaitPendingWrite();
+		long flushStart = System.nanoTime();
+		// A mapped corpus is its own checkpoint of the topic indicators
+		model.flushCorpusStore();
+		long copyStart = System.nanoTime();
+		snapshot = SamplerCheckpoint.State.snapshot(model, snapshot);
+		long end = System.nanoTime();
+		waitNanos += flushStart - start;
+		flushNanos += copyStart - flushStart;
+		copyNanos += end - copyStart;
+		noCheckpoints++;
+
+		SamplerCheckpoint.State toWrite = snapshot;
+		pendingWrite = writer.submit(() -> {
+			long writeStart = System.nanoTime();
+			SamplerCheckpoint.write(toWrite, checkpointFile, 1);
+			writeNanos += System.nanoTime() - writeStart;
+			return null;
+		});
+		if(log != null) {
+			log.println(toWrite.currentIteration + "\t" + ((end - start) / 1000000));
+			log.flush();
+		}
+		return end - start;
+	}
+
+	/**
+	 * Waits for the checkpoint being written, if any. A failed write is reported
+	 * but does not stop the sampler, the previous checkpoint file is left as it was
+	 */
+	void awaitPendingWrite() {
+		if(pendingWrite == null) return;
+		try {
+			pendingWrite.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.getCause().printStackTrace();
+			System.err.println("Problem writing checkpoint to file " + checkpointFile + ": " + e.getCause());
+		}
+		pendingWrite = null;
+	}
+
+	/**
+	 * Waits for the last checkpoint to be written, stops the background thread
+	 * and closes the log
+	 */
+	public void close() {
+		long start = System.nanoTime();
+		awaitPendingWrite();
+		waitNanos += System.nanoTime() - start;
+		writer.shutdown();
+		try {
+			writer.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if(log != null) {
+			log.close();
+		}
+	}
+
+	public File getCheckpointFile() {
+		return checkpointFile;
+	}
+
+	public int getNoCheckpoints() {
+		return noCheckpoints;
+	}
+
+	/**
+	 * @return Total milliseconds the sampling loop was blocked by checkpointing
+	 */
+	public long getBlockedMillis() {
+		return (copyNanos + flushNanos + waitNanos) / 1000000;
+	}
+
+	/**
+	 * @return Total milliseconds spent copying snapshots
+	 */
+	public long getCopyMillis() {
+		return copyNanos / 1000000;
+	}
+
+	/**
+	 * @return Total milliseconds spent flushing a memory mapped corpus
+	 */
+	public long getFlushMillis() {
+		return flushNanos / 1000000;
+	}
+
+	/**
+	 * @return Total milliseconds spent waiting for a previous checkpoint to be written
+	 */
+	public long getWaitMillis() {
+		return waitNanos / 1000000;
+	}
+
+	/**
+	 * @return Total milliseconds the background thread spent writing checkpoints
+	 */
+	public long getWriteMillis() {
+		return writeNanos / 1000000;
+	}
+
+	@Override
+	public String toString() {
+		return "Wrote " + noCheckpoints + " checkpoints to " + checkpointFile + ", sampling was blocked "
+				+ getBlockedMillis() + " ms (copying " + getCopyMillis() + " ms, flushing the corpus " 
+				+ getFlushMillis() + " ms, waiting for writes "
+				+ getWaitMillis() + " ms), writing took " + getWriteMillis() + " ms in the background";
+	}
+}
@@ -17,13 +17,13 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 
 import cc.mallet.configuration.LDAConfiguration;
 import cc.mallet.topics.randomscan.document.BatchBuilderFactory;
+import cc.mallet.topics.randomscan.document.TokenBalancedBatchBuilder;
 import cc.mallet.topics.randomscan.document.DocumentBatchBuilder;
 import cc.mallet.topics.randomscan.topic.TopicIndexBuilder;
 import cc.mallet.topics.randomscan.topic.TopicIndexBuilderFactory;
@@ -38,6 +38,7 @@ import cc.mallet.util.IndexSorter;
 import cc.mallet.util.LDAThreadFactory;
 import cc.mallet.util.LDAUtils;
 import cc.mallet.util.LoggingUtils;
+import cc.mallet.util.SamplerRandom;
 import cc.mallet.util.Stats;
 import cc.mallet.util.WalkerAliasTable;
 import gnu.trove.TIntIntHashMap;
@@ -350,8 +351,11 @@ public class CollapsedLightLDA extends ModifiedSimpleLDA implements LDAGibbsSamp
 			topicIndices[i] = i;
 		}
 
+		updateDocumentTokenPrefixSum();
 		bb = BatchBuilderFactory.get(config, this);
 		bb.calculateBatch();
+		logger.finer("Token imbalance over the document batches (max/mean): " 
+				+ TokenBalancedBatchBuilder.batchTokenImbalance(bb.documentBatches(), getDocumentTokenPrefixSum()));
 		topicIndexBuilder = TopicIndexBuilderFactory.get(config,this);
 
 		// Initializing global sparse structure and tokensPerType and topicCountBetaHat()
@@ -601,8 +605,8 @@ public class CollapsedLightLDA extends ModifiedSimpleLDA implements LDAGibbsSamp
 			}
 		}
 		startupThreadPools();
-		int poolSize = 2;
-		tableBuilderExecutor = Executors.newFixedThreadPool(Math.max(1, poolSize));
+		tableBuilderExecutor = Executors.newFixedThreadPool(UncollapsedParallelLDA.configuredNumThreads(config),
+				new LDAThreadFactory("AliasTableBuilder"));
 	}
 
 	void startupThreadPools() {
@@ -611,7 +615,7 @@ public class CollapsedLightLDA extends ModifiedSimpleLDA implements LDAGibbsSamp
 			documentSamplerPool = Executors.newFixedThreadPool(noBatches,new LDAThreadFactory("LightLDADocumentSampler"));
 		}
 		if(topicUpdaters == null || topicUpdaters.isShutdown()) {
-			topicUpdaters = Executors.newFixedThreadPool(2,new LDAThreadFactory("TopicUpdater"));
+			topicUpdaters = Executors.newFixedThreadPool(UncollapsedParallelLDA.configuredNumThreads(config),new LDAThreadFactory("TopicUpdater"));
 		}
 	}
 
@@ -943,7 +947,7 @@ public class CollapsedLightLDA extends ModifiedSimpleLDA implements LDAGibbsSamp
 
 			localTopicCounts_i[oldTopic]--;
 			
-			double u_w = ThreadLocalRandom.current().nextDouble() * (tokensPerType[type] + beta * numTopics); // (n_wk + K * beta) * u where u ~ U(0,1)
+			double u_w = SamplerRandom.current().nextDouble() * (tokensPerType[type] + beta * numTopics); // (n_wk + K * beta) * u where u ~ U(0,1)
 
 			int wordTopicIndicatorProposal = -1;
 			if(u_w < tokensPerType[type]) {
@@ -970,7 +974,7 @@ public class CollapsedLightLDA extends ModifiedSimpleLDA implements LDAGibbsSamp
 					balanceGlobalCounts(globalTypeTopicCounts, globalTokensPerTopic, type, oldTopic, wordTopicIndicatorProposal);
 					oldTopic = wordTopicIndicatorProposal;
 				} else {
-					double u_pi_w = ThreadLocalRandom.current().nextDouble();
+					double u_pi_w = SamplerRandom.current().nextDouble();
 					boolean accept_pi_w = u_pi_w < pi_w;
 
 					if(accept_pi_w) {				
@@ -991,7 +995,7 @@ public class CollapsedLightLDA extends ModifiedSimpleLDA implements LDAGibbsSamp
 			// Document-Topic Proposal  
 			// #####################################
 			 
-			double u_i = ThreadLocalRandom.current().nextDouble() * (oneDocTopics.length + alphaSum);
+			double u_i = SamplerRandom.current().nextDouble() * (oneDocTopics.length + alphaSum);
 			
 			int docTopicIndicatorProposal = -1;
 			if(u_i < oneDocTopics.length) {
@@ -1014,7 +1018,7 @@ public class CollapsedLightLDA extends ModifiedSimpleLDA implements LDAGibbsSamp
 				if (pi_d > 1){
 					newTopic = docTopicIndicatorProposal;
 				} else {
-					double u_pi_d = ThreadLocalRandom.current().nextDouble();
+					double u_pi_d = SamplerRandom.current().nextDouble();
 					boolean accept_pi_d = u_pi_d < pi_d;
 	
 					if (accept_pi_d) {
@@ -0,0 +1,120 @@
+package cc.mallet.topics;
+
+import java.util.List;
+
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.Instance;
+
+/**
+ * The topic indicators of a corpus packed into one column: the topic indicator
+ * of every token in one array and the start of each document in an array of
+ * offsets. Document d is the tokens [docOffsets[d], docOffsets[d+1]). The types
+ * of the tokens are in a second column with the same offsets, built once from
+ * the instances. The samplers read and write the indicators in place.
+ *
+ * A sampler working on a ColumnarCorpus keeps no per document topic sequences
+ * and scanning the documents in order is a sequential scan of memory.
+ */
+public class ColumnarCorpus implements CorpusStore {
+
+	final TopicIndicatorArray topics;
+	final int [] types;
+	final long [] docOffsets;
+
+	public ColumnarCorpus(TopicIndicatorArray topics, int [] types, long [] docOffsets) {
+		if(docOffsets[docOffsets.length - 1] != topics.size()) {
+			throw new IllegalArgumentException("Last document offset must be the number of tokens: "
+					+ docOffsets[docOffsets.length - 1] + " != " + topics.size());
+		}
+		if(types.length != topics.size()) {
+			throw new IllegalArgumentException("Need one type per token: " + types.length + " != " + topics.size());
+		}
+		this.topics = topics;
+		this.types = types;
+		this.docOffsets = docOffsets;
+	}
+
+	/**
+	 * @return A corpus with the token types of <code>documents</code> and room 
+	 * for their topic indicators, all set to topic 0
+	 */
+	public static ColumnarCorpus forDocuments(List<Instance> documents) {
+		long [] docOffsets = documentOffsets(documents);
+		return new ColumnarCorpus(new TopicIndicatorArray.IntIndicators((int) docOffsets[documents.size()]), 
+				documentTypes(documents, docOffsets), docOffsets);
+	}
+
+	/**
+	 * @return The token types of all <code>documents</code> in one column, document d starting at docOffsets[d]
+	 */
+	static int [] documentTypes(List<Instance> documents, long [] docOffsets) {
+		int [] types = new int[(int) docOffsets[documents.size()]];
+		for (int doc = 0; doc < documents.size(); doc++) {
+			FeatureSequence tokens = (FeatureSequence) documents.get(doc).getData();
+			System.arraycopy(tokens.getFeatures(), 0, types, (int) docOffsets[doc], tokens.getLength());
+		}
+		return types;
+	}
+
+	/**
+	 * @return The start of each document in <code>documents</code> followed by the number of tokens
+	 */
+	static long [] documentOffsets(List<Instance> documents) {
+		long [] docOffsets = new long[documents.size() + 1];
+		for (int doc = 0; doc < documents.size(); doc++) {
+			FeatureSequence tokens = (FeatureSequence) documents.get(doc).getData();
+			docOffsets[doc + 1] = docOffsets[doc] + tokens.getLength();
+		}
+		long numTokens = docOffsets[documents.size()];
+		if(numTokens > Integer.MAX_VALUE - 8) {
+			throw new IllegalArgumentException("Corpus too large for a columnar corpus: " + numTokens + " tokens");
+		}
+		return docOffsets;
+	}
+
+	@Override
+	public int numDocs() {
+		return docOffsets.length - 1;
+	}
+
+	@Override
+	public long numTokens() {
+		return docOffsets[docOffsets.length - 1];
+	}
+
+	public int docStart(int doc) {
+		return (int) docOffsets[doc];
+	}
+
+	@Override
+	public int docLength(int doc) {
+		return (int) (docOffsets[doc + 1] - docOffsets[doc]);
+	}
+
+	public TopicIndicatorArray getTopicIndicators() {
+		return topics;
+	}
+
+	public int [] getTypes() {
+		return types;
+	}
+
+	public long [] getDocOffsets() {
+		return docOffsets;
+	}
+
+	@Override
+	public void readTypes(int doc, int [] docTypes) {
+		System.arraycopy(types, docStart(doc), docTypes, 0, docLength(doc));
+	}
+
+	@Override
+	public TopicIndicatorArray topicIndicators(int doc) {
+		return topics;
+	}
+
+	@Override
+	public int topicOffset(int doc) {
+		return docStart(doc);
+	}
+}
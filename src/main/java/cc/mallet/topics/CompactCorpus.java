@@ -0,0 +1,27 @@
+package cc.mallet.topics;
+
+import java.util.List;
+
+import cc.mallet.types.Instance;
+
+/**
+ * A ColumnarCorpus with the topic indicators in the narrowest TopicIndicatorArray
+ * for the number of topics, i.e one byte per token with up to 256 topics and two
+ * bytes with up to 65536 topics instead of four.
+ */
+public class CompactCorpus extends ColumnarCorpus {
+
+	public CompactCorpus(TopicIndicatorArray topics, int [] types, long [] docOffsets) {
+		super(topics, types, docOffsets);
+	}
+
+	/**
+	 * @return A corpus with room for the topic indicators of <code>documents</code>
+	 * in the narrowest indicator encoding for <code>numTopics</code>
+	 */
+	public static CompactCorpus forDocuments(List<Instance> documents, int numTopics) {
+		long [] docOffsets = ColumnarCorpus.documentOffsets(documents);
+		return new CompactCorpus(TopicIndicatorArray.forTopics(numTopics, (int) docOffsets[documents.size()]), 
+				ColumnarCorpus.documentTypes(documents, docOffsets), docOffsets);
+	}
+}
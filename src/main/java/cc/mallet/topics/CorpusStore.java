@@ -0,0 +1,79 @@
+package cc.mallet.topics;
+
+import java.io.IOException;
+
+/**
+ * Storage of the topic indicators of a corpus in place of the per document
+ * topic sequences of the TopicAssignment objects, next to a column with the
+ * token types so that the document samplers do not go through the
+ * FeatureSequences of the instances. When a sampler has a store the topic
+ * sequences of its TopicAssignments are not kept, getData() builds them from
+ * the store.
+ *
+ * The indicators of a document are the docLength(doc) entries starting at
+ * topicOffset(doc) of topicIndicators(doc), the samplers read and write them
+ * there in place.
+ *
+ * Different documents may be read and written concurrently by different threads.
+ */
+public interface CorpusStore {
+
+	public int numDocs();
+
+	public long numTokens();
+
+	public int docLength(int doc);
+
+	/**
+	 * @return The array that holds the topic indicators of document <code>doc</code>
+	 */
+	public TopicIndicatorArray topicIndicators(int doc);
+
+	/**
+	 * @return The index of the first topic indicator of document <code>doc</code> in topicIndicators(doc)
+	 */
+	public int topicOffset(int doc);
+
+	/**
+	 * Copies the token types of document <code>doc</code> to the start of <code>types</code>
+	 */
+	public void readTypes(int doc, int [] types);
+
+	/**
+	 * @return A copy of the token types of document <code>doc</code>
+	 */
+	public default int [] getDocumentTypes(int doc) {
+		int [] docTypes = new int[docLength(doc)];
+		readTypes(doc, docTypes);
+		return docTypes;
+	}
+
+	/**
+	 * Copies the topic indicators of document <code>doc</code> to the start of <code>topics</code>
+	 */
+	public default void readTopics(int doc, int [] topics) {
+		topicIndicators(doc).get(topicOffset(doc), topics, docLength(doc));
+	}
+
+	/**
+	 * Sets the topic indicators of document <code>doc</code> from the start of <code>topics</code>
+	 */
+	public default void writeTopics(int doc, int [] topics) {
+		topicIndicators(doc).set(topicOffset(doc), topics, docLength(doc));
+	}
+
+	/**
+	 * @return A copy of the topic indicators of document <code>doc</code>
+	 */
+	public default int [] getDocumentTopics(int doc) {
+		int [] docTopics = new int[docLength(doc)];
+		readTopics(doc, docTopics);
+		return docTopics;
+	}
+
+	/**
+	 * Makes the topic indicators durable if the store is backed by storage
+	 */
+	public default void flush() throws IOException {
+	}
+}
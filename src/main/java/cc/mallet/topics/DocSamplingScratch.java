@@ -0,0 +1,131 @@
+package cc.mallet.topics;
+
+import java.util.Arrays;
+
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.LabelSequence;
+
+/**
+ * Per worker thread scratch space for sampling the topic indicators of one document.
+ *
+ * The numTopics long arrays, the sampling context and the result object are
+ * allocated once per thread and re-used for every document the thread samples
+ * so that the document sampling hot path does not allocate. Since the result
+ * refers to the arrays in here it is only valid until the same thread starts
+ * sampling its next document.
+ */
+public class DocSamplingScratch {
+
+	final int numTopics;
+	final int [] localTopicCounts;
+	// This vector contains the indices of the topics with non-zero entries.
+	// It has to be numTopics long since the non-zero topics come and go...
+	final int [] nonZeroTopics;
+	// So we can map back from a topic to where it is in nonZeroTopics vector
+	final int [] nonZeroTopicsBackMapping;
+	final double [] cumsum;
+	// Used in the one word document case where all topics are scored
+	final double [] topicTermScores;
+	// Extra per topic arrays for the samplers that keep two versions of the local counts
+	final int [] extraTopicCounts;
+	final double [] extraTopicWeights;
+
+	// The token types of the current document when they are read from a corpus store
+	int [] docTypes = new int[0];
+
+	final UncollapsedLDADocSamplingContext ctx = new UncollapsedLDADocSamplingContext(null, null, -1, -1);
+	final LDADocSamplingResultSparseSimple result = new LDADocSamplingResultSparseSimple(null, 0, null);
+
+	// Number of entries in nonZeroTopics that are non-zero in localTopicCounts
+	// after the last document, -1 means unknown and that we have to clear all
+	int dirtyTopicCnt = 0;
+
+	public DocSamplingScratch(int numTopics) {
+		this.numTopics = numTopics;
+		localTopicCounts = new int[numTopics];
+		nonZeroTopics = new int[numTopics];
+		nonZeroTopicsBackMapping = new int[numTopics];
+		cumsum = new double[numTopics];
+		topicTermScores = new double[numTopics];
+		extraTopicCounts = new int[numTopics];
+		extraTopicWeights = new double[numTopics];
+	}
+
+	/**
+	 * Re-uses the context object for a new document
+	 */
+	public LDADocSamplingContext context(FeatureSequence tokens, LabelSequence topics, int myBatch, int docIdx) {
+		ctx.setTokens(tokens);
+		ctx.setTopics(topics);
+		ctx.setMyBatch(myBatch);
+		ctx.setDocIdx(docIdx);
+		ctx.setTopicIndicators(null, 0);
+		ctx.setTokenArray(null, 0);
+		return ctx;
+	}
+
+	/**
+	 * Re-uses the context object for a document whose token types and topic 
+	 * indicators are in <code>store</code>. The types are copied to a re-used 
+	 * array, the topic indicators are sampled in place.
+	 */
+	public LDADocSamplingContext storeContext(CorpusStore store, int myBatch, int docIdx) {
+		int docLength = store.docLength(docIdx);
+		if(docTypes.length < docLength) {
+			docTypes = new int[docLength];
+		}
+		store.readTypes(docIdx, docTypes);
+		ctx.setTokens(null);
+		ctx.setTokenArray(docTypes, docLength);
+		ctx.setTopics(null);
+		ctx.setMyBatch(myBatch);
+		ctx.setDocIdx(docIdx);
+		ctx.setTopicIndicators(store.topicIndicators(docIdx), store.topicOffset(docIdx));
+		return ctx;
+	}
+
+	/**
+	 * @return localTopicCounts with all counts from the previous document zeroed.
+	 * Only the topics that were non-zero are touched if the previous document
+	 * returned a sparse result.
+	 */
+	public int [] localTopicCounts() {
+		if(dirtyTopicCnt < 0) {
+			Arrays.fill(localTopicCounts, 0);
+		} else {
+			for (int i = 0; i < dirtyTopicCnt; i++) {
+				localTopicCounts[nonZeroTopics[i]] = 0;
+			}
+		}
+		// Until we see a result we don't know which topics will be touched
+		dirtyTopicCnt = -1;
+		return localTopicCounts;
+	}
+
+	public int [] zeroedExtraTopicCounts() {
+		Arrays.fill(extraTopicCounts, 0);
+		return extraTopicCounts;
+	}
+
+	public double [] zeroedExtraTopicWeights() {
+		Arrays.fill(extraTopicWeights, 0.0);
+		return extraTopicWeights;
+	}
+
+	/**
+	 * @return The re-used result, pointing at localTopicCounts and the first
+	 * <code>nonZeroTopicCnt</code> entries of nonZeroTopics
+	 */
+	public LDADocSamplingResultSparseSimple sparseResult(int nonZeroTopicCnt) {
+		dirtyTopicCnt = nonZeroTopicCnt;
+		return result.set(localTopicCounts, nonZeroTopicCnt, nonZeroTopics);
+	}
+
+	/**
+	 * @return The re-used result, pointing at localTopicCounts only
+	 */
+	public LDADocSamplingResult denseResult() {
+		dirtyTopicCnt = -1;
+		return result.set(localTopicCounts, 0, null);
+	}
+}
@@ -0,0 +1,89 @@
+package cc.mallet.topics;
+
+import java.util.List;
+
+import cc.mallet.types.FeatureSequence;
+
+/**
+ * Orders in which the document samplers can visit the documents. An order is
+ * a permutation of the document indices where position <code>i</code> holds
+ * the index of the <code>i</code>:th document to sample. The documents
+ * themselves are never moved, so the order does not affect any output.
+ */
+public class DocumentOrder {
+
+	public static final String INPUT = "input";
+	public static final String DOMINANT_TYPE = "dominant_type";
+
+	/**
+	 * @return The permutation for the order called <code>name</code>, or null for input order
+	 */
+	public static int [] forName(String name, List<TopicAssignment> data, int numTypes) {
+		if(name == null || name.equals(INPUT)) {
+			return null;
+		} else if(name.equals(DOMINANT_TYPE)) {
+			return byDominantType(data, numTypes);
+		} else {
+			throw new IllegalArgumentException("Unknown document order: " + name 
+					+ " (should be " + INPUT + " or " + DOMINANT_TYPE + ")");
+		}
+	}
+
+	/**
+	 * Groups the documents by their most frequent type (the lowest type index on
+	 * ties). Groups are ordered by type index and documents within a group keep 
+	 * their input order, so the permutation is stable.
+	 */
+	public static int [] byDominantType(List<TopicAssignment> data, int numTypes) {
+		int [] dominantTypes = new int[data.size()];
+		int [] typeCounts = new int[numTypes];
+		for (int doc = 0; doc < data.size(); doc++) {
+			FeatureSequence tokens = (FeatureSequence) data.get(doc).instance.getData();
+			int dominantType = -1;
+			for (int position = 0; position < tokens.getLength(); position++) {
+				int type = tokens.getIndexAtPosition(position);
+				typeCounts[type]++;
+				if(dominantType < 0 || typeCounts[type] > typeCounts[dominantType] 
+						|| (typeCounts[type] == typeCounts[dominantType] && type < dominantType)) {
+					dominantType = type;
+				}
+			}
+			for (int position = 0; position < tokens.getLength(); position++) {
+				typeCounts[tokens.getIndexAtPosition(position)] = 0;
+			}
+			// Empty documents go first
+			dominantTypes[doc] = dominantType + 1;
+		}
+		return countingSort(dominantTypes, numTypes + 1);
+	}
+
+	/**
+	 * @return The indices of <code>keys</code> stably sorted on the key values in [0, numKeys)
+	 */
+	static int [] countingSort(int [] keys, int numKeys) {
+		int [] start = new int[numKeys + 1];
+		for (int key : keys) {
+			start[key + 1]++;
+		}
+		for (int key = 0; key < numKeys; key++) {
+			start[key + 1] += start[key];
+		}
+		int [] order = new int[keys.length];
+		for (int idx = 0; idx < keys.length; idx++) {
+			order[start[keys[idx]]++] = idx;
+		}
+		return order;
+	}
+
+	/**
+	 * @return Prefix sum of the document lengths in the order given by <code>order</code>
+	 */
+	public static long [] tokenPrefixSum(List<TopicAssignment> data, int [] order) {
+		long [] prefixSum = new long[order.length + 1];
+		for (int position = 0; position < order.length; position++) {
+			FeatureSequence tokens = (FeatureSequence) data.get(order[position]).instance.getData();
+			prefixSum[position + 1] = prefixSum[position] + tokens.getLength();
+		}
+		return prefixSum;
+	}
+}
@@ -1,10 +1,9 @@
 package cc.mallet.topics;
 
-import java.util.concurrent.ThreadLocalRandom;
-
 import cc.mallet.configuration.LDAConfiguration;
 import cc.mallet.types.FeatureSequence;
 import cc.mallet.types.LabelSequence;
+import cc.mallet.util.SamplerRandom;
 
 
 public class EfficientUncollapsedParallelLDA extends UncollapsedParallelLDA implements LDAGibbsSampler{
@@ -79,7 +78,7 @@ public class EfficientUncollapsedParallelLDA extends UncollapsedParallelLDA impl
 			// The thread local random performs better in concurrent situations 
 			// than the standard random which is thread safe and incurs lock 
 			// contention
-			double U = ThreadLocalRandom.current().nextDouble();
+			double U = SamplerRandom.current().nextDouble();
 			double sample = U * sum;
 
 			// Figure out which topic contains that point
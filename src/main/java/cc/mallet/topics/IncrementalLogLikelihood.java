@@ -0,0 +1,148 @@
+package cc.mallet.topics;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.function.IntFunction;
+
+import cc.mallet.types.Dirichlet;
+import cc.mallet.util.LogGammaTable;
+
+/**
+ * Keeps the same log likelihood as UncollapsedParallelLDA.modelLogLikelihood
+ * up to date from the count changes instead of re-calculating it from scratch.
+ *
+ * The topic side is updated with the (topic,type) cells changed when the count
+ * updates are merged, i.e the cells recorded in globalDeltaNUpdates. Each topic
+ * is only updated by one merging thread at a time. The document side is updated
+ * with the new topic counts of each document after it is sampled. The cost per
+ * iteration is then proportional to the number of changed cells and documents
+ * (plus the numTopics per topic normalizers) instead of V*K + D*K.
+ *
+ * The running sums are only exact up to rounding, the tracker is rebuilt from
+ * the full counts when alpha, beta or the number of topics change.
+ */
+public class IncrementalLogLikelihood {
+
+	final int numTopics;
+	final int numTypes;
+	final double [] alpha;
+	final double alphaSum;
+	final double beta;
+
+	final LogGammaTable [] alphaLogGammas;
+	final LogGammaTable alphaSumLogGammas;
+	final LogGammaTable betaLogGammas;
+
+	// Contribution of each document: sum_k [ logGamma(alpha_k + N_dk) - logGamma(alpha_k) ] - logGamma(alphaSum + N_d)
+	final double [] docTerms;
+	double docSum;
+	final DoubleAdder docSumDelta = new DoubleAdder();
+
+	// sum_w logGamma(beta + N_kw) and the number of non-zero N_kw for each topic
+	final double [] topicTypeLogGammas;
+	final int [] nonZeroCells;
+
+	public IncrementalLogLikelihood(double [] alpha, double alphaSum, double beta, int numTypes,
+			TopicTypeCountStore countStore, int numDocs, IntFunction<int []> documentTopics, int docTableSize, int typeTableSize) {
+		this.numTopics = alpha.length;
+		this.numTypes = numTypes;
+		this.alpha = Arrays.copyOf(alpha, alpha.length);
+		this.alphaSum = alphaSum;
+		this.beta = beta;
+
+		alphaLogGammas = new LogGammaTable[numTopics];
+		for (int topic = 0; topic < numTopics; topic++) {
+			alphaLogGammas[topic] = new LogGammaTable(alpha[topic], docTableSize);
+		}
+		alphaSumLogGammas = new LogGammaTable(alphaSum, docTableSize);
+		betaLogGammas = new LogGammaTable(beta, typeTableSize);
+
+		docTerms = new double[numDocs];
+		int [] topicCounts = new int[numTopics];
+		for (int doc = 0; doc < numDocs; doc++) {
+			int [] docTopics = documentTopics.apply(doc);
+			for (int token = 0; token < docTopics.length; token++) {
+				topicCounts[docTopics[token]]++;
+			}
+			docTerms[doc] = documentTerm(topicCounts, null, numTopics, docTopics.length);
+			docSum += docTerms[doc];
+			Arrays.fill(topicCounts, 0);
+		}
+
+		topicTypeLogGammas = new double[numTopics];
+		nonZeroCells = new int[numTopics];
+		for (int topic = 0; topic < numTopics; topic++) {
+			int [] row = countStore.topicRow(topic);
+			for (int type = 0; type < numTypes; type++) {
+				if(row[type] > 0) {
+					topicTypeLogGammas[topic] += betaLogGammas.logGamma(row[type]);
+					nonZeroCells[topic]++;
+				}
+			}
+		}
+	}
+
+	double documentTerm(int [] localTopicCounts, int [] nonZeroTopics, int nonZeroTopicCnt, int docLength) {
+		double term = 0.0;
+		for (int i = 0; i < nonZeroTopicCnt; i++) {
+			int topic = nonZeroTopics == null ? i : nonZeroTopics[i];
+			int count = localTopicCounts[topic];
+			if(count > 0) {
+				term += alphaLogGammas[topic].logGamma(count) - alphaLogGammas[topic].logGamma(0);
+			}
+		}
+		return term - alphaSumLogGammas.logGamma(docLength);
+	}
+
+	/**
+	 * Replaces the contribution of document <code>docIdx</code> with the one given by
+	 * its new topic counts. If <code>nonZeroTopics</code> is null all topics are visited.
+	 * Can be called concurrently for different documents.
+	 */
+	public void updateDocument(int docIdx, int [] localTopicCounts, int [] nonZeroTopics, int nonZeroTopicCnt, int docLength) {
+		double newTerm = nonZeroTopics == null
+				? documentTerm(localTopicCounts, null, numTopics, docLength)
+				: documentTerm(localTopicCounts, nonZeroTopics, nonZeroTopicCnt, docLength);
+		docSumDelta.add(newTerm - docTerms[docIdx]);
+		docTerms[docIdx] = newTerm;
+	}
+
+	/**
+	 * Updates the topic side with one changed (topic,type) cell. Only one thread
+	 * at a time may update a given topic.
+	 */
+	public void updateTopicType(int topic, int oldCount, int newCount) {
+		if(oldCount > 0) {
+			topicTypeLogGammas[topic] -= betaLogGammas.logGamma(oldCount);
+			nonZeroCells[topic]--;
+		}
+		if(newCount > 0) {
+			topicTypeLogGammas[topic] += betaLogGammas.logGamma(newCount);
+			nonZeroCells[topic]++;
+		}
+	}
+
+	/**
+	 * @return true if the tracker was built for these hyperparameters
+	 */
+	public boolean matches(double [] alpha, double alphaSum, double beta) {
+		return this.alphaSum == alphaSum && this.beta == beta && Arrays.equals(this.alpha, alpha);
+	}
+
+	/**
+	 * @param tokensPerTopic Current topic totals, used for the per topic normalizers
+	 * @return The current log likelihood, must not be called while documents are sampled
+	 */
+	public double logLikelihood(int [] tokensPerTopic) {
+		docSum += docSumDelta.sumThenReset();
+		double logLikelihood = docSum + docTerms.length * Dirichlet.logGammaStirling(alphaSum);
+
+		double betaLogGamma = betaLogGammas.logGamma(0);
+		for (int topic = 0; topic < numTopics; topic++) {
+			logLikelihood += topicTypeLogGammas[topic] - betaLogGamma * nonZeroCells[topic];
+			logLikelihood -= Dirichlet.logGammaStirling((beta * numTypes) + tokensPerTopic[topic]);
+		}
+		logLikelihood += Dirichlet.logGammaStirling(beta * numTypes) * numTopics;
+		return logLikelihood;
+	}
+}
@@ -21,4 +21,27 @@ public interface LDADocSamplingContext {
 
 	void setDocIdx(int docId);
 
+	/**
+	 * @return The token types of the document
+	 */
+	default int [] getTokenArray() {
+		return getTokens().getFeatures();
+	}
+
+	/**
+	 * @return The array holding the topic indicators of the document, the 
+	 * document starts at getTopicOffset() in it
+	 */
+	default TopicIndicatorArray getTopicIndicators() {
+		return TopicIndicatorArray.wrap(getTopics().getFeatures());
+	}
+
+	default int getTopicOffset() {
+		return 0;
+	}
+
+	default int getDocLength() {
+		return getTokens().getLength();
+	}
+
 }
\ No newline at end of file
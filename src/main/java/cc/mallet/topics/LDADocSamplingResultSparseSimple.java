@@ -2,6 +2,8 @@ package cc.mallet.topics;
 
 public class LDADocSamplingResultSparseSimple extends LDADocSamplingResultDense implements LDADocSamplingResultSparse {
 
+	public static final LDADocSamplingResultSparseSimple EMPTY = new LDADocSamplingResultSparseSimple(new int[0], 0, new int[0]);
+
 	int nonZeroTopicCnt;
 	int [] nonZeroIndices;
 
@@ -11,6 +13,16 @@ public class LDADocSamplingResultSparseSimple extends LDADocSamplingResultDense
 		this.nonZeroIndices = nonZeroIndices;
 	}
 
+	/**
+	 * Re-points this result at new arrays so the object can be re-used
+	 */
+	LDADocSamplingResultSparseSimple set(int[] localTopicCounts, int nonZeroTopicCnt, int[] nonZeroIndices) {
+		this.localTopicCounts = localTopicCounts;
+		this.nonZeroTopicCnt = nonZeroTopicCnt;
+		this.nonZeroIndices = nonZeroIndices;
+		return this;
+	}
+
 	@Override
 	public int getNonZeroTopicCounts() {
 		return nonZeroTopicCnt;
@@ -0,0 +1,9 @@
+package cc.mallet.topics;
+
+public interface LDASamplerWithDocumentLengths extends LDAGibbsSampler {
+	/**
+	 * @return prefix sum of the document lengths, element d is the number of tokens 
+	 * in documents 0..d-1 so the array is one longer than the number of documents
+	 */
+	long [] getDocumentTokenPrefixSum();
+}
@@ -2,12 +2,12 @@ package cc.mallet.topics;
 
 import java.util.Random;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ThreadLocalRandom;
 
 import cc.mallet.configuration.LDAConfiguration;
 import cc.mallet.types.FeatureSequence;
 import cc.mallet.types.LabelSequence;
 import cc.mallet.util.OptimizedGentleAliasMethod;
+import cc.mallet.util.SamplerRandom;
 
 /**
  * @author Leif Jonsson
@@ -68,8 +68,20 @@ public class LightPCLDA extends SpaliasUncollapsedParallelLDA {
 		public WalkerAliasTableBuildResult call() {
 			double [] probs = new double[numTopics];
 			double typeMass = 0; // Type prior mass
-			for (int topic = 0; topic < numTopics; topic++) {
-				typeMass += probs[topic] = phi[topic][type];
+			if(phiTF!=null) {
+				float [] phiType = phiTF[type];
+				for (int topic = 0; topic < numTopics; topic++) {
+					typeMass += probs[topic] = phiType[topic];
+				}
+			} else if(phiT!=null) {
+				double [] phiType = phiT[type];
+				for (int topic = 0; topic < numTopics; topic++) {
+					typeMass += probs[topic] = phiType[topic];
+				}
+			} else {
+				for (int topic = 0; topic < numTopics; topic++) {
+					typeMass += probs[topic] = phi[topic][type];
+				}
 			}
 			
 			if(aliasTables[type]==null) {
@@ -94,8 +106,9 @@ public class LightPCLDA extends SpaliasUncollapsedParallelLDA {
 		int [] tokenSequence = tokens.getFeatures();
 		int [] oneDocTopics = topics.getFeatures();
 
-		int[] localTopicCounts = new int[numTopics];
-		double[] localTopicCounts_i = new double[numTopics];
+		DocSamplingScratch scratch = getDocSamplingScratch();
+		int[] localTopicCounts = scratch.localTopicCounts();
+		double[] localTopicCounts_i = scratch.zeroedExtraTopicWeights();
 		
 		// Populate topic counts
 		int nonZeroTopicCnt = 0; // Only needed for statistics
@@ -128,7 +141,7 @@ public class LightPCLDA extends SpaliasUncollapsedParallelLDA {
 			
 			localTopicCounts_i[oldTopic]--;
 			
-			double u = ThreadLocalRandom.current().nextDouble();
+			double u = SamplerRandom.current().nextDouble();
 			int wordTopicIndicatorProposal = aliasTables[type].generateSample(u);
 			
 			// If we drew a new topic indicator, do MH step for Word proposal
@@ -141,7 +154,7 @@ public class LightPCLDA extends SpaliasUncollapsedParallelLDA {
 					localTopicCounts[wordTopicIndicatorProposal]++;
 					oldTopic = wordTopicIndicatorProposal;
 				} else {
-					double u_pi_w = ThreadLocalRandom.current().nextDouble();
+					double u_pi_w = SamplerRandom.current().nextDouble();
 					boolean accept_pi_w = u_pi_w < pi_w;
 
 					if(accept_pi_w) {				
@@ -162,7 +175,7 @@ public class LightPCLDA extends SpaliasUncollapsedParallelLDA {
 			// Document Topic Distribution 
 			// #####################################
 			 
-			double u_i = ThreadLocalRandom.current().nextDouble() * (oneDocTopics.length + alphaSum);
+			double u_i = SamplerRandom.current().nextDouble() * (oneDocTopics.length + alphaSum);
 			
 			int docTopicIndicatorProposal = -1;
 			if(u_i < oneDocTopics.length) {
@@ -178,15 +191,15 @@ public class LightPCLDA extends SpaliasUncollapsedParallelLDA {
 				double n_d_zi = localTopicCounts[oldTopic];
 				double n_d_zstar = localTopicCounts[docTopicIndicatorProposal];
 
-				double nom = phi[docTopicIndicatorProposal][type] * (alpha[oldTopic] + n_d_zstar_i) * (alpha[oldTopic] + n_d_zi);
-				double denom = phi[oldTopic][type] * (alpha[oldTopic] + n_d_zi_i) * (alpha[oldTopic] + n_d_zstar);
+				double nom = phiValue(docTopicIndicatorProposal, type) * (alpha[oldTopic] + n_d_zstar_i) * (alpha[oldTopic] + n_d_zi);
+				double denom = phiValue(oldTopic, type) * (alpha[oldTopic] + n_d_zi_i) * (alpha[oldTopic] + n_d_zstar);
 				double ratio = nom / denom;
 				// Calculate MH acceptance Min.(1,ratio) but as an if else
 				if (ratio > 1){
 					newTopic = docTopicIndicatorProposal;
 				} else {
 					double pi_d = ratio;
-					double u_pi_d = ThreadLocalRandom.current().nextDouble();
+					double u_pi_d = SamplerRandom.current().nextDouble();
 					boolean accept_pi_d = u_pi_d < pi_d;
 	
 					if (accept_pi_d) {
@@ -217,6 +230,6 @@ public class LightPCLDA extends SpaliasUncollapsedParallelLDA {
 			// Make sure the "_i" version is also up to date!
 			localTopicCounts_i[newTopic]++;
 		}
-		return new LDADocSamplingResultDense(localTopicCounts);
+		return scratch.denseResult();
 	}	
 }
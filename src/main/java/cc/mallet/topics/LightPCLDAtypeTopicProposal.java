@@ -1,12 +1,12 @@
 package cc.mallet.topics;
 
 import java.util.concurrent.Callable;
-import java.util.concurrent.ThreadLocalRandom;
 
 import cc.mallet.configuration.LDAConfiguration;
 import cc.mallet.types.FeatureSequence;
 import cc.mallet.types.InstanceList;
 import cc.mallet.types.LabelSequence;
+import cc.mallet.util.SamplerRandom;
 
 /**
  * @author Leif Jonsson
@@ -36,6 +36,12 @@ public class LightPCLDAtypeTopicProposal extends LightPCLDA {
 	public LightPCLDAtypeTopicProposal(LDAConfiguration config) {
 		super(config);
 	}
+
+	// The MH acceptance probabilities read phi directly
+	@Override
+	protected boolean supportsFloatPhi() {
+		return false;
+	}
 	
 
 	@Override
@@ -49,20 +55,20 @@ public class LightPCLDAtypeTopicProposal extends LightPCLDA {
 		super.addInstances(training);
 		
 		initTokensPerType(); 
-		initTopicCountBetaHat(topicCountBetaHat, numTopics, numTypes, typeTopicCounts, betaSum);
+		initTopicCountBetaHat(topicCountBetaHat, numTopics, numTypes, countStore, betaSum);
 	}
 	
 	@Override
 	protected void updateTypeTopicCount(int type, int topic, int count) {
 		
-		if(typeTopicCounts[type][topic] == 0 && count > 0){
+		if(countStore.get(topic, type) == 0 && count > 0){
 			insertNonZeroTopicTypes(topic, type);
 		}
 		
 		super.updateTypeTopicCount(type, topic, count);
 		updateTopicCountBetaHat(topic, count);
 		
-		if(typeTopicCounts[type][topic] == 0 && count < 0){
+		if(countStore.get(topic, type) == 0 && count < 0){
 			removeNonZeroTopicTypes(topic, type);
 		}
 		
@@ -72,7 +78,7 @@ public class LightPCLDAtypeTopicProposal extends LightPCLDA {
 	class TypeTopicTableBuilderFactory implements TableBuilderFactory {
 		public Callable<WalkerAliasTableBuildResult> instance(int type) {
 			return new TypeTopicParallelTableBuilder(type, nonZeroTypeTopicCnt, nonZeroTypeTopics, 
-					typeTopicCounts, topicCountBetaHat, aliasTables, numTopics);
+					countStore.typeRow(type), topicCountBetaHat, aliasTables, numTopics);
 		}
 	}
 
@@ -92,6 +98,17 @@ public class LightPCLDAtypeTopicProposal extends LightPCLDA {
 		}
 	}
 	
+	protected static void initTopicCountBetaHat(double[] topicCountBetaHat, int numTopics, int numTypes, TopicTypeCountStore countStore, double betaSum){
+		for (int topic = 0; topic < numTopics; topic++) {
+			int [] counts = countStore.topicRow(topic);
+			topicCountBetaHat[topic] = 0;
+			for (int type = 0; type < numTypes; type++) {
+				topicCountBetaHat[topic] += counts[type];
+			}
+			topicCountBetaHat[topic] += betaSum;
+		}
+	}
+	
 	protected void updateTopicCountBetaHat(int topic, int count){
 		topicCountBetaHat[topic] += count;
 	}
@@ -109,8 +126,9 @@ public class LightPCLDAtypeTopicProposal extends LightPCLDA {
 		int [] tokenSequence = tokens.getFeatures();
 		int [] oneDocTopics = topics.getFeatures();
 
-		int[] localTopicCounts = new int[numTopics];
-		int[] localTopicCounts_not_i = new int[numTopics];
+		DocSamplingScratch scratch = getDocSamplingScratch();
+		int[] localTopicCounts = scratch.localTopicCounts();
+		int[] localTopicCounts_not_i = scratch.zeroedExtraTopicCounts();
 		
 		// Populate topic counts
 		int nonZeroTopicCnt = 0; // Only needed for statistics
@@ -145,7 +163,7 @@ public class LightPCLDAtypeTopicProposal extends LightPCLDA {
 
 			localTopicCounts_not_i[oldTopic]--;
 			
-			double u_w = ThreadLocalRandom.current().nextDouble() * (tokensPerType[type] + beta * numTopics); // (n_wk + K * beta) * u where u ~ U(0,1)
+			double u_w = SamplerRandom.current().nextDouble() * (tokensPerType[type] + beta * numTopics); // (n_wk + K * beta) * u where u ~ U(0,1)
 
 			int wordTopicIndicatorProposal = -1;
 			if(u_w < tokensPerType[type]) {
@@ -163,14 +181,15 @@ public class LightPCLDAtypeTopicProposal extends LightPCLDA {
 			if(wordTopicIndicatorProposal!=oldTopic) {
 				// If we drew a new topic indicator, do MH step for Word proposal
 				double pi_w = calculateWordAcceptanceProbability(localTopicCounts_not_i, type, oldTopic,
-						wordTopicIndicatorProposal, topicCountBetaHat, typeTopicCounts, phi, alpha[oldTopic], beta);
+						wordTopicIndicatorProposal, topicCountBetaHat, countStore.get(oldTopic, type), 
+						countStore.get(wordTopicIndicatorProposal, type), phi, alpha[oldTopic], beta);
 				
 				if(pi_w > 1){
 					localTopicCounts[oldTopic]--;
 					localTopicCounts[wordTopicIndicatorProposal]++;
 					oldTopic = wordTopicIndicatorProposal; 
 				} else {
-					double u_pi_w = ThreadLocalRandom.current().nextDouble();
+					double u_pi_w = SamplerRandom.current().nextDouble();
 					boolean accept_pi_w = u_pi_w < pi_w;
 
 					if(accept_pi_w) {				
@@ -190,7 +209,7 @@ public class LightPCLDAtypeTopicProposal extends LightPCLDA {
 			// Document-Topic Proposal  
 			// #####################################
 			 
-			double u_i = ThreadLocalRandom.current().nextDouble() * (oneDocTopics.length + alphaSum);
+			double u_i = SamplerRandom.current().nextDouble() * (oneDocTopics.length + alphaSum);
 			
 			int docTopicIndicatorProposal = -1;
 			if(u_i < oneDocTopics.length) {
@@ -212,7 +231,7 @@ public class LightPCLDAtypeTopicProposal extends LightPCLDA {
 				if (pi_d > 1){
 					newTopic = docTopicIndicatorProposal;
 				} else {
-					double u_pi_d = ThreadLocalRandom.current().nextDouble();
+					double u_pi_d = SamplerRandom.current().nextDouble();
 					boolean accept_pi_d = u_pi_d < pi_d;
 	
 					if (accept_pi_d) {
@@ -240,7 +259,7 @@ public class LightPCLDAtypeTopicProposal extends LightPCLDA {
 			// Make sure the "_i" version is also up to date!
 			localTopicCounts_not_i[newTopic]++;
 		}
-		return new LDADocSamplingResultDense(localTopicCounts);
+		return scratch.denseResult();
 	}
 
 
@@ -260,12 +279,20 @@ public class LightPCLDAtypeTopicProposal extends LightPCLDA {
 
 	public static double calculateWordAcceptanceProbability(int[] localTopicCounts_not_i, int type, int oldTopic,
 			int wordTopicIndicatorProposal, double[] topicCountBetaHat, int[][] typeTopicCounts, double[][] phi, double alpha, double beta) {
+		return calculateWordAcceptanceProbability(localTopicCounts_not_i, type, oldTopic, wordTopicIndicatorProposal, 
+				topicCountBetaHat, typeTopicCounts[type][oldTopic], typeTopicCounts[type][wordTopicIndicatorProposal], 
+				phi, alpha, beta);
+	}
+
+	static double calculateWordAcceptanceProbability(int[] localTopicCounts_not_i, int type, int oldTopic,
+			int wordTopicIndicatorProposal, double[] topicCountBetaHat, int oldTopicTypeCount, int proposalTopicTypeCount, 
+			double[][] phi, double alpha, double beta) {
 		double n_d_zi_not_i = localTopicCounts_not_i[oldTopic];
 		double n_d_zstar_not_i = localTopicCounts_not_i[wordTopicIndicatorProposal];
 		double n_zstar_beta_hat = topicCountBetaHat[wordTopicIndicatorProposal];
 		double n_zi_beta_hat = topicCountBetaHat[oldTopic];
-		double n_w_zi = typeTopicCounts[type][oldTopic];
-		double n_w_zstar = typeTopicCounts[type][wordTopicIndicatorProposal];
+		double n_w_zi = oldTopicTypeCount;
+		double n_w_zstar = proposalTopicTypeCount;
 						
 		double nom = phi[wordTopicIndicatorProposal][type] * (alpha + n_d_zstar_not_i) * (beta + n_w_zi) * n_zstar_beta_hat;
 		double denom = phi[oldTopic][type] * (alpha + n_d_zi_not_i)  * (beta + n_w_zstar) * n_zi_beta_hat;
@@ -275,9 +302,10 @@ public class LightPCLDAtypeTopicProposal extends LightPCLDA {
 	
 	protected void initTokensPerType() {
 		// Initialize tokensPerType
-		for (int typeidx = 0; typeidx < numTypes; typeidx++) {
-			for (int topicidx = 0; topicidx < numTopics; topicidx++) {
-				tokensPerType[typeidx] += typeTopicCounts[typeidx][topicidx];
+		for (int topicidx = 0; topicidx < numTopics; topicidx++) {
+			int [] topicCounts = countStore.topicRow(topicidx);
+			for (int typeidx = 0; typeidx < numTypes; typeidx++) {
+				tokensPerType[typeidx] += topicCounts[typeidx];
 			}
 		}
 		// System.out.println("Tokens for type 0: " + tokensPerType[0] + " and BetaSums: " + betaSum);
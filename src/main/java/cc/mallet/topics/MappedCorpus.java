@@ -0,0 +1,345 @@
+package cc.mallet.topics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.List;
+
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.Instance;
+
+/**
+ * A CorpusStore that keeps the token types, the topic indicators and the 
+ * document offsets of a corpus in memory mapped files in one directory. The 
+ * topic indicators live only in the mapping, in the narrowest type that holds 
+ * all topics, and the samplers read and write them in place so the operating 
+ * system pages them in and out as needed. The token types are written once, in 
+ * the narrowest type that holds all types, and the samplers read each document
+ * from the mapping.
+ *
+ * Since the indicators are written in place the file is a checkpoint of the
+ * topic indicators once flush() has been called. A store can be re-opened from
+ * the same directory with open().
+ *
+ * A single mapping is limited to 2GB so the type and topic files are mapped in
+ * segments that start every SEGMENT_SIZE tokens. Each segment extends over the
+ * longest document so that every document lies inside the segment it starts in
+ * and can be sampled through one TopicIndicatorArray.
+ */
+public class MappedCorpus implements CorpusStore {
+
+	public static final String TYPES_FILE = "types.bin";
+	public static final String TOPICS_FILE = "topics.bin";
+	public static final String OFFSETS_FILE = "offsets.bin";
+
+	static final int SEGMENT_SHIFT = 28;
+	static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+	static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+	final File directory;
+	final MappedByteBuffer docOffsetBuffer;
+	final LongBuffer docOffsets;
+	final int numDocs;
+	final long numTokens;
+	final int bytesPerType;
+	final int bytesPerIndicator;
+	final int maxDocLength;
+	final MappedByteBuffer [] typeBuffers;
+	final TopicIndicatorArray [] typeSegments;
+	final MappedByteBuffer [] buffers;
+	final TopicIndicatorArray [] segments;
+
+	MappedCorpus(File directory, MappedByteBuffer docOffsetBuffer, int bytesPerType, int bytesPerIndicator, boolean create) throws IOException {
+		this.directory = directory;
+		this.docOffsetBuffer = docOffsetBuffer;
+		this.docOffsets = docOffsetBuffer.asLongBuffer();
+		this.numDocs = docOffsets.capacity() - 1;
+		this.numTokens = docOffsets.get(numDocs);
+		this.bytesPerType = bytesPerType;
+		this.bytesPerIndicator = bytesPerIndicator;
+
+		int maxLength = 0;
+		for (int doc = 0; doc < numDocs; doc++) {
+			maxLength = Math.max(maxLength, docLength(doc));
+		}
+		maxDocLength = maxLength;
+		if(((long) SEGMENT_SIZE + maxDocLength) * Math.max(bytesPerType, bytesPerIndicator) > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Document of " + maxDocLength + " tokens too long for a mapped corpus");
+		}
+
+		int numSegments = (int) ((numTokens + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT);
+		typeBuffers = mapSegments(new File(directory, TYPES_FILE), "token types", numSegments, bytesPerType, create);
+		typeSegments = new TopicIndicatorArray[numSegments];
+		buffers = mapSegments(new File(directory, TOPICS_FILE), "topic indicators", numSegments, bytesPerIndicator, create);
+		segments = new TopicIndicatorArray[numSegments];
+		for (int segment = 0; segment < numSegments; segment++) {
+			typeSegments[segment] = mappedIndicators(typeBuffers[segment], bytesPerType);
+			segments[segment] = mappedIndicators(buffers[segment], bytesPerIndicator);
+		}
+	}
+
+	MappedByteBuffer [] mapSegments(File file, String what, int numSegments, int bytesPerToken, boolean create) throws IOException {
+		MappedByteBuffer [] segmentBuffers = new MappedByteBuffer[numSegments];
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+				FileChannel channel = raf.getChannel()) {
+			if(create) {
+				raf.setLength(numTokens * bytesPerToken);
+			} else if(raf.length() != numTokens * bytesPerToken) {
+				throw new IOException("Expected " + numTokens + " " + what + " of " + bytesPerToken
+						+ " bytes in " + file + " but it is " + raf.length() + " bytes");
+			}
+			for (int segment = 0; segment < numSegments; segment++) {
+				long start = (long) segment << SEGMENT_SHIFT;
+				long size = Math.min((long) SEGMENT_SIZE + maxDocLength, numTokens - start);
+				segmentBuffers[segment] = channel.map(MapMode.READ_WRITE, start * bytesPerToken, size * bytesPerToken);
+				segmentBuffers[segment].order(ByteOrder.LITTLE_ENDIAN);
+			}
+		}
+		return segmentBuffers;
+	}
+
+	/**
+	 * Writes the document offsets and the token types of <code>documents</code>
+	 * to the files in <code>directory</code>, replacing any earlier corpus there,
+	 * and maps room for their topic indicators, all set to 0, in the narrowest 
+	 * type that holds <code>numTopics</code> topics
+	 */
+	public static MappedCorpus create(File directory, List<Instance> documents, int numTopics) throws IOException {
+		if(!directory.exists() && !directory.mkdirs()) {
+			throw new IOException("Could not create mapped corpus directory: " + directory);
+		}
+		MappedByteBuffer docOffsetBuffer = mapLongs(new File(directory, OFFSETS_FILE), documents.size() + 1, true);
+		LongBuffer docOffsets = docOffsetBuffer.asLongBuffer();
+		long offset = 0;
+		int numTypes = 0;
+		docOffsets.put(0, 0);
+		for (int doc = 0; doc < documents.size(); doc++) {
+			FeatureSequence tokens = (FeatureSequence) documents.get(doc).getData();
+			offset += tokens.getLength();
+			docOffsets.put(doc + 1, offset);
+			for (int position = 0; position < tokens.getLength(); position++) {
+				numTypes = Math.max(numTypes, tokens.getIndexAtPosition(position) + 1);
+			}
+		}
+		docOffsetBuffer.force();
+
+		MappedCorpus corpus = new MappedCorpus(directory, docOffsetBuffer, TopicIndicatorArray.bytesPerIndicator(numTypes), 
+				TopicIndicatorArray.bytesPerIndicator(numTopics), true);
+		for (int doc = 0; doc < documents.size(); doc++) {
+			FeatureSequence tokens = (FeatureSequence) documents.get(doc).getData();
+			corpus.typeSegments[corpus.segment(doc)].set(corpus.topicOffset(doc), tokens.getFeatures(), tokens.getLength());
+		}
+		for (MappedByteBuffer buffer : corpus.typeBuffers) {
+			buffer.force();
+		}
+		corpus.flush();
+		return corpus;
+	}
+
+	/**
+	 * Maps a corpus written earlier by create(), including the topic indicators
+	 * as of the last flush()
+	 */
+	public static MappedCorpus open(File directory) throws IOException {
+		File offsetsFile = new File(directory, OFFSETS_FILE);
+		long numOffsets = offsetsFile.length() / Long.BYTES;
+		if(numOffsets < 1 || numOffsets > Integer.MAX_VALUE) {
+			throw new IOException("Not a mapped corpus: " + directory);
+		}
+		MappedByteBuffer docOffsetBuffer = mapLongs(offsetsFile, (int) numOffsets, false);
+		long numTokens = docOffsetBuffer.asLongBuffer().get((int) numOffsets - 1);
+		// The widths of the types and indicators follow from the sizes of the files
+		int bytesPerType = bytesPerToken(new File(directory, TYPES_FILE), numTokens);
+		int bytesPerIndicator = bytesPerToken(new File(directory, TOPICS_FILE), numTokens);
+		return new MappedCorpus(directory, docOffsetBuffer, bytesPerType, bytesPerIndicator, false);
+	}
+
+	static int bytesPerToken(File file, long numTokens) throws IOException {
+		long bytes = file.length();
+		int bytesPerToken = numTokens > 0 ? (int) (bytes / numTokens) : Integer.BYTES;
+		if(bytesPerToken != Byte.BYTES && bytesPerToken != Short.BYTES && bytesPerToken != Integer.BYTES) {
+			throw new IOException(file + " of " + bytes + " bytes does not match " + numTokens + " tokens");
+		}
+		return bytesPerToken;
+	}
+
+	static MappedByteBuffer mapLongs(File file, int size, boolean create) throws IOException {
+		if(size > Integer.MAX_VALUE / Long.BYTES) {
+			throw new IllegalArgumentException("Too many documents for a mapped corpus: " + (size - 1));
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+				FileChannel channel = raf.getChannel()) {
+			if(create) {
+				raf.setLength((long) size * Long.BYTES);
+			}
+			MappedByteBuffer buffer = channel.map(MapMode.READ_WRITE, 0, (long) size * Long.BYTES);
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			return buffer;
+		}
+	}
+
+	static TopicIndicatorArray mappedIndicators(ByteBuffer buffer, int bytesPerIndicator) {
+		switch (bytesPerIndicator) {
+		case Byte.BYTES:
+			return new MappedByteIndicators(buffer);
+		case Short.BYTES:
+			return new MappedShortIndicators(buffer.asShortBuffer());
+		default:
+			return new MappedIntIndicators(buffer.asIntBuffer());
+		}
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public int bytesPerType() {
+		return bytesPerType;
+	}
+
+	public int bytesPerIndicator() {
+		return bytesPerIndicator;
+	}
+
+	@Override
+	public int numDocs() {
+		return numDocs;
+	}
+
+	@Override
+	public long numTokens() {
+		return numTokens;
+	}
+
+	public long docStart(int doc) {
+		return docOffsets.get(doc);
+	}
+
+	@Override
+	public int docLength(int doc) {
+		return (int) (docOffsets.get(doc + 1) - docOffsets.get(doc));
+	}
+
+	int segment(int doc) {
+		return (int) (docStart(doc) >>> SEGMENT_SHIFT);
+	}
+
+	@Override
+	public TopicIndicatorArray topicIndicators(int doc) {
+		return segments[segment(doc)];
+	}
+
+	@Override
+	public int topicOffset(int doc) {
+		return (int) (docStart(doc) & SEGMENT_MASK);
+	}
+
+	@Override
+	public void readTypes(int doc, int [] types) {
+		typeSegments[segment(doc)].get(topicOffset(doc), types, docLength(doc));
+	}
+
+	@Override
+	public void flush() throws IOException {
+		for (MappedByteBuffer buffer : buffers) {
+			buffer.force();
+		}
+	}
+
+	/**
+	 * Topic indicators (or token types) in a mapped segment of the topic (or type)
+	 * file. Only absolute gets and puts are used so different threads can access
+	 * different parts concurrently.
+	 */
+	static class MappedByteIndicators extends TopicIndicatorArray {
+		final ByteBuffer topics;
+
+		MappedByteIndicators(ByteBuffer topics) {
+			this.topics = topics;
+		}
+
+		@Override
+		public int size() {
+			return topics.capacity();
+		}
+
+		@Override
+		public int get(int idx) {
+			return topics.get(idx) & 0xFF;
+		}
+
+		@Override
+		public void set(int idx, int topic) {
+			topics.put(idx, (byte) topic);
+		}
+
+		@Override
+		public int bytesPerIndicator() {
+			return Byte.BYTES;
+		}
+	}
+
+	static class MappedShortIndicators extends TopicIndicatorArray {
+		final ShortBuffer topics;
+
+		MappedShortIndicators(ShortBuffer topics) {
+			this.topics = topics;
+		}
+
+		@Override
+		public int size() {
+			return topics.capacity();
+		}
+
+		@Override
+		public int get(int idx) {
+			return topics.get(idx) & 0xFFFF;
+		}
+
+		@Override
+		public void set(int idx, int topic) {
+			topics.put(idx, (short) topic);
+		}
+
+		@Override
+		public int bytesPerIndicator() {
+			return Short.BYTES;
+		}
+	}
+
+	static class MappedIntIndicators extends TopicIndicatorArray {
+		final IntBuffer topics;
+
+		MappedIntIndicators(IntBuffer topics) {
+			this.topics = topics;
+		}
+
+		@Override
+		public int size() {
+			return topics.capacity();
+		}
+
+		@Override
+		public int get(int idx) {
+			return topics.get(idx);
+		}
+
+		@Override
+		public void set(int idx, int topic) {
+			topics.put(idx, topic);
+		}
+
+		@Override
+		public int bytesPerIndicator() {
+			return Integer.BYTES;
+		}
+	}
+}
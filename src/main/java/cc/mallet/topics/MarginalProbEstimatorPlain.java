@@ -14,11 +14,17 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.PrintStream;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 import cc.mallet.types.FeatureSequence;
 import cc.mallet.types.Instance;
 import cc.mallet.types.InstanceList;
+import cc.mallet.util.OptimizedGentleAliasMethod;
 import cc.mallet.util.Randoms;
+import cc.mallet.util.WalkerAliasTable;
 
 /**
  * An implementation of topic model marginal probability estimators
@@ -43,9 +49,21 @@ public class MarginalProbEstimatorPlain implements Serializable {
 	protected double[] cachedCoefficients;
 
 	protected int[][] typeTopicCounts; // indexed by <feature index, topic index>
+	// When set, the rows of typeTopicCounts are copied from the store for the types of the test set
+	protected transient TopicTypeCountStore countStore;
 	protected int[] tokensPerTopic; // indexed by <topic index>
 
 	protected Randoms random;
+	protected Integer randomSeed = null;
+
+	// Sparse mode: the non-zero topics of each type and an alias table for the smoothing-only bucket
+	protected boolean sparse = false;
+	protected transient int[][] typeTopicIndices;
+	protected transient WalkerAliasTable smoothingAliasTable;
+	protected transient ThreadLocal<LeftToRightState> states;
+
+	// Number of particles of one document that are run by one task
+	static final int PARTICLE_BLOCK_SIZE = 10;
 	
 	public MarginalProbEstimatorPlain (int numTopics,
 								  double[] alpha, double alphaSum,
@@ -79,52 +97,269 @@ public class MarginalProbEstimatorPlain implements Serializable {
 		}
 	}
 
+	/**
+	 * Creates an estimator that reads the counts from the topic major store of a
+	 * sampler. Only the rows of the types in the test set are copied, when the 
+	 * test set is evaluated, instead of the full type topic matrix.
+	 */
+	public MarginalProbEstimatorPlain (int numTopics,
+								  double[] alpha, double alphaSum,
+								  double beta,
+								  TopicTypeCountStore countStore, 
+								  int[] tokensPerTopic) {
+		this(numTopics, alpha, alphaSum, beta, new int[countStore.numTypes()][], tokensPerTopic);
+		this.countStore = countStore;
+	}
+
 	public int[] getTokensPerTopic() { return tokensPerTopic; }
 	public int[][] getTypeTopicCounts() { return typeTopicCounts; }
 
+	/**
+	 * Sets the seed that the per particle random streams are derived from, 
+	 * with a fixed seed the result does not depend on the number of threads
+	 */
+	public void setRandomSeed(int seed) {
+		randomSeed = seed;
+	}
+
+	/**
+	 * Uses the non-zero topics of each type for the topic-term bucket and an 
+	 * alias table for the smoothing-only bucket instead of looping over all topics.
+	 * It samples from the same distribution as the dense version.
+	 */
+	public void setSparse(boolean sparse) {
+		this.sparse = sparse;
+		if(sparse && typeTopicIndices == null) {
+			initSparseStructures();
+		}
+	}
+
+	void initSparseStructures() {
+		typeTopicIndices = new int[typeTopicCounts.length][];
+		int [] nonZeroTopics = new int[numTopics];
+		for (int type = 0; type < typeTopicCounts.length; type++) {
+			if(typeTopicCounts[type] == null) continue;
+			typeTopicIndices[type] = nonZeroTopics(typeTopicCounts[type], nonZeroTopics);
+		}
+
+		double [] smoothingWeights = new double[numTopics];
+		double smoothingNorm = 0.0;
+		for (int topic = 0; topic < numTopics; topic++) {
+			smoothingWeights[topic] = alpha[topic] / (tokensPerTopic[topic] + betaSum);
+			smoothingNorm += smoothingWeights[topic];
+		}
+		smoothingAliasTable = new OptimizedGentleAliasMethod(smoothingWeights, smoothingNorm);
+	}
+
+	int [] nonZeroTopics(int [] topicCounts, int [] buffer) {
+		int nonZeroCnt = 0;
+		for (int topic = 0; topic < numTopics; topic++) {
+			if(topicCounts[topic] != 0) {
+				buffer[nonZeroCnt++] = topic;
+			}
+		}
+		return Arrays.copyOf(buffer, nonZeroCnt);
+	}
+
+	/**
+	 * Copies the current counts of the types in <code>testing</code> from the count store
+	 */
+	void copyTestTypes(InstanceList testing) {
+		int [] nonZeroTopics = new int[numTopics];
+		boolean [] copied = new boolean[typeTopicCounts.length];
+		for (Instance instance : testing) {
+			FeatureSequence tokens = (FeatureSequence) instance.getData();
+			for (int position = 0; position < tokens.getLength(); position++) {
+				int type = tokens.getIndexAtPosition(position);
+				if (type >= typeTopicCounts.length || copied[type]) continue;
+				copied[type] = true;
+				if (typeTopicCounts[type] == null) {
+					typeTopicCounts[type] = new int[numTopics];
+				}
+				countStore.copyTypeRow(type, typeTopicCounts[type]);
+				if (typeTopicIndices != null) {
+					typeTopicIndices[type] = nonZeroTopics(typeTopicCounts[type], nonZeroTopics);
+				}
+			}
+		}
+	}
+
 	public double evaluateLeftToRight (InstanceList testing, int numParticles,
 									   PrintStream docProbabilityStream) {
-		random = new Randoms();
+		return evaluateLeftToRight(testing, numParticles, docProbabilityStream, ForkJoinPool.commonPool());
+	}
 
-		double logNumParticles = Math.log(numParticles);
-		double totalLogLikelihood = 0;
-		for (Instance instance : testing) {
-			
-			FeatureSequence tokenSequence = (FeatureSequence) instance.getData();
+	/**
+	 * Runs the documents, and the particles of each document, in parallel on <code>pool</code>.
+	 * Each thread has its own scratch buffers and each block of particles its own 
+	 * random stream.
+	 */
+	public double evaluateLeftToRight (InstanceList testing, int numParticles,
+									   PrintStream docProbabilityStream, ForkJoinPool pool) {
+		random = randomSeed == null ? new Randoms() : new Randoms(randomSeed);
+		long baseSeed = random.nextLong();
+		if (countStore != null) {
+			copyTestTypes(testing);
+		}
 
-			double docLogLikelihood = 0;
+		double [] docLogLikelihoods = new double[testing.size()];
+		pool.invoke(new DocumentEvaluator(testing, numParticles, baseSeed, docLogLikelihoods, 0, testing.size()));
 
-			double[][] particleProbabilities = new double[ numParticles ][];
-			for (int particle = 0; particle < numParticles; particle++) {
-				particleProbabilities[particle] =
-					leftToRight(tokenSequence);
+		double totalLogLikelihood = 0;
+		for (int doc = 0; doc < docLogLikelihoods.length; doc++) {
+			if (docProbabilityStream != null) {
+				docProbabilityStream.println(docLogLikelihoods[doc]);
 			}
+			totalLogLikelihood += docLogLikelihoods[doc];
+		}
 
-			for (int position = 0; position < particleProbabilities[0].length; position++) {
-				double sum = 0;
-				for (int particle = 0; particle < numParticles; particle++) {
-					sum += particleProbabilities[particle][position];
-				}
+		return totalLogLikelihood;
+	}
 
+	class DocumentEvaluator extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final InstanceList testing;
+		final int numParticles;
+		final long baseSeed;
+		final double [] docLogLikelihoods;
+		final int startDoc;
+		final int endDoc;
+
+		DocumentEvaluator(InstanceList testing, int numParticles, long baseSeed, 
+				double [] docLogLikelihoods, int startDoc, int endDoc) {
+			this.testing = testing;
+			this.numParticles = numParticles;
+			this.baseSeed = baseSeed;
+			this.docLogLikelihoods = docLogLikelihoods;
+			this.startDoc = startDoc;
+			this.endDoc = endDoc;
+		}
+
+		@Override
+		protected void compute() {
+			if(endDoc <= startDoc) return;
+			if(endDoc - startDoc > 1) {
+				int midDoc = startDoc + (endDoc - startDoc) / 2;
+				invokeAll(new DocumentEvaluator(testing, numParticles, baseSeed, docLogLikelihoods, startDoc, midDoc),
+						new DocumentEvaluator(testing, numParticles, baseSeed, docLogLikelihoods, midDoc, endDoc));
+				return;
+			}
+			FeatureSequence tokenSequence = (FeatureSequence) testing.get(startDoc).getData();
+			double [] probabilitySums = new ParticleEvaluator(tokenSequence, startDoc, numParticles, baseSeed, 
+					0, numParticles).compute();
+
+			double logNumParticles = Math.log(numParticles);
+			double docLogLikelihood = 0;
+			for (int position = 0; position < probabilitySums.length; position++) {
+				double sum = probabilitySums[position];
 				if (sum > 0.0) { 
 					docLogLikelihood += Math.log(sum) - logNumParticles;
 				}
 			}
+			docLogLikelihoods[startDoc] = docLogLikelihood;
+		}
+	}
 
-			if (docProbabilityStream != null) {
-				docProbabilityStream.println(docLogLikelihood);
+	/**
+	 * Sums the word probabilities of the particles [startParticle,endParticle) of one document
+	 */
+	class ParticleEvaluator extends RecursiveTask<double []> {
+		private static final long serialVersionUID = 1L;
+		final FeatureSequence tokenSequence;
+		final int doc;
+		final int numParticles;
+		final long baseSeed;
+		final int startParticle;
+		final int endParticle;
+
+		ParticleEvaluator(FeatureSequence tokenSequence, int doc, int numParticles, long baseSeed, 
+				int startParticle, int endParticle) {
+			this.tokenSequence = tokenSequence;
+			this.doc = doc;
+			this.numParticles = numParticles;
+			this.baseSeed = baseSeed;
+			this.startParticle = startParticle;
+			this.endParticle = endParticle;
+		}
+
+		@Override
+		protected double [] compute() {
+			if(endParticle - startParticle > PARTICLE_BLOCK_SIZE) {
+				int midParticle = startParticle + (endParticle - startParticle) / 2;
+				ParticleEvaluator first = new ParticleEvaluator(tokenSequence, doc, numParticles, baseSeed, startParticle, midParticle);
+				first.fork();
+				double [] sums = new ParticleEvaluator(tokenSequence, doc, numParticles, baseSeed, midParticle, endParticle).compute();
+				double [] firstSums = first.join();
+				for (int position = 0; position < sums.length; position++) {
+					sums[position] += firstSums[position];
+				}
+				return sums;
 			}
-			totalLogLikelihood += docLogLikelihood;
+			LeftToRightState state = getState();
+			// The random stream only depends on the document and the particles
+			state.random.setSeed(baseSeed + 0x9E3779B97F4A7C15L * ((long) doc * numParticles + startParticle));
+			double [] sums = new double[tokenSequence.getLength()];
+			for (int particle = startParticle; particle < endParticle; particle++) {
+				leftToRight(tokenSequence, state, sums);
+			}
+			return sums;
 		}
+	}
 
-		return totalLogLikelihood;
+	/**
+	 * Per thread random generator and scratch buffers for leftToRight
+	 */
+	static class LeftToRightState {
+		final Randoms random;
+		final double [] cachedCoefficients;
+		final int [] localTopicCounts;
+		final int [] localTopicIndex;
+		final double [] topicTermScores;
+		int [] oneDocTopics = new int[0];
+
+		LeftToRightState(Randoms random, double [] cachedCoefficients, int numTopics) {
+			this.random = random;
+			this.cachedCoefficients = cachedCoefficients;
+			localTopicCounts = new int[numTopics];
+			localTopicIndex = new int[numTopics];
+			topicTermScores = new double[numTopics];
+		}
+
+		int [] oneDocTopics(int docLength) {
+			if(oneDocTopics.length < docLength) {
+				oneDocTopics = new int[docLength];
+			}
+			return oneDocTopics;
+		}
 	}
-	
+
+	LeftToRightState getState() {
+		if(states == null) {
+			synchronized (this) {
+				if(states == null) {
+					states = ThreadLocal.withInitial(
+							() -> new LeftToRightState(new Randoms(), Arrays.copyOf(cachedCoefficients, numTopics), numTopics));
+				}
+			}
+		}
+		return states.get();
+	}
+
 	protected double[] leftToRight (FeatureSequence tokenSequence) {
+		double[] wordProbabilities = new double[tokenSequence.getLength()];
+		leftToRight(tokenSequence, new LeftToRightState(random, cachedCoefficients, numTopics), wordProbabilities);
+		return wordProbabilities;
+	}
+
+	/**
+	 * Runs one particle over the document and adds the probability of each word to wordProbabilities
+	 */
+	protected void leftToRight (FeatureSequence tokenSequence, LeftToRightState state, double[] wordProbabilities) {
 		// The resampling implementation is broken (ALSO THE ORIGINAL MALLET VERSION)
 		boolean usingResampling = false;
-		int[] oneDocTopics = new int[tokenSequence.getLength()];
-		double[] wordProbabilities = new double[tokenSequence.getLength()];
+		int[] oneDocTopics = state.oneDocTopics(tokenSequence.getLength());
+		Randoms random = state.random;
+		double[] cachedCoefficients = state.cachedCoefficients;
 
 		int[] currentTypeTopicCounts;
 		int type, oldTopic, newTopic;
@@ -134,8 +369,8 @@ public class MarginalProbEstimatorPlain implements Serializable {
 		//  including out-of-vocabulary words
 		int tokensSoFar = 0;
 
-		int[] localTopicCounts = new int[numTopics];
-		int[] localTopicIndex = new int[numTopics];
+		int[] localTopicCounts = state.localTopicCounts;
+		int[] localTopicIndex = state.localTopicIndex;
 
 		// Build an array that densely lists the topics that
 		//  have non-zero counts.
@@ -148,7 +383,8 @@ public class MarginalProbEstimatorPlain implements Serializable {
 		double topicBetaMass = 0.0;
 		double topicTermMass = 0.0;
 
-		double[] topicTermScores = new double[numTopics];
+		double[] topicTermScores = state.topicTermScores;
+		int[] typeTopics = null;
 		int i;
 		double score;
 
@@ -351,18 +587,34 @@ public class MarginalProbEstimatorPlain implements Serializable {
 			
 			topicTermMass = 0.0;
 			
-			while (index < numTopics) {
-				currentTopic = index;
-				currentValue = currentTypeTopicCounts[index];
-				
-				score = 
-					cachedCoefficients[currentTopic] * currentValue;
-				topicTermMass += score;
-				topicTermScores[index] = score;
-				
-				//System.out.println("  " + currentTopic + " = " + currentValue);
+			if (sparse) {
+				// Only the topics with non-zero count for this type
+				typeTopics = typeTopicIndices[type];
+				while (index < typeTopics.length) {
+					currentTopic = typeTopics[index];
+					currentValue = currentTypeTopicCounts[currentTopic];
+
+					score = 
+						cachedCoefficients[currentTopic] * currentValue;
+					topicTermMass += score;
+					topicTermScores[index] = score;
+
+					index++;
+				}
+			} else {
+				while (index < numTopics) {
+					currentTopic = index;
+					currentValue = currentTypeTopicCounts[index];
+
+					score = 
+						cachedCoefficients[currentTopic] * currentValue;
+					topicTermMass += score;
+					topicTermScores[index] = score;
 
-				index++;
+					//System.out.println("  " + currentTopic + " = " + currentValue);
+
+					index++;
+				}
 			}
 			
 			 // Debugging, to make sure we're getting the right probabilities
@@ -417,7 +669,7 @@ public class MarginalProbEstimatorPlain implements Serializable {
 					sample -= topicTermScores[i];
 				}
 					
-				newTopic = i;
+				newTopic = sparse ? typeTopics[i] : i;
 				if(newTopic>=numTopics) throw new IllegalStateException("Sampled invalid topic: " + newTopic);
 			}
 			else {
@@ -442,6 +694,11 @@ public class MarginalProbEstimatorPlain implements Serializable {
 					}
 						
 				}
+				else if (sparse) {
+					// The smoothing-only bucket does not depend on the document
+					sample -= topicBetaMass;
+					newTopic = smoothingAliasTable.generateSample(Math.min(sample / smoothingOnlyMass, Math.nextDown(1.0)));
+				}
 				else {
 					//smoothingOnlyCount++;
 						
@@ -523,10 +780,8 @@ public class MarginalProbEstimatorPlain implements Serializable {
 
 			cachedCoefficients[topic] =
 				alpha[topic] / (tokensPerTopic[topic] + betaSum);
+			localTopicCounts[topic] = 0;
 		}
-
-		return wordProbabilities;
-
 	}
 
 	private static final long serialVersionUID = 1;
@@ -542,7 +797,7 @@ public class MarginalProbEstimatorPlain implements Serializable {
         out.writeDouble(beta);
 		out.writeDouble(betaSum);
 
-		out.writeObject(typeTopicCounts);
+		out.writeObject(countStore != null ? countStore.toTypeTopicMatrix() : typeTopicCounts);
 		out.writeObject(tokensPerTopic);
 
 		out.writeObject(random);
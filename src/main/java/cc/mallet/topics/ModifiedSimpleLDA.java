@@ -34,12 +34,16 @@ import cc.mallet.util.Randoms;
  * 
  * @author Leif Jonsson
  */
-public class ModifiedSimpleLDA implements LDAGibbsSampler, AbortableSampler, LDASamplerInitiable, Serializable {
+public class ModifiedSimpleLDA implements LDAGibbsSampler, AbortableSampler, LDASamplerInitiable, LDASamplerWithDocumentLengths, Serializable {
 
 	protected static Logger logger = MalletLogger.getLogger(ModifiedSimpleLDA.class.getName());
 
 	// the training instances and their topic assignments
 	protected ArrayList<TopicAssignment> data;  
+
+	// Number of tokens in documents 0..d-1, used to split the documents 
+	// between workers by token count rather than by document count
+	protected transient long [] documentTokenPrefixSum;
 	
 	// The original training data
 	InstanceList trainingData;
@@ -251,7 +255,7 @@ public class ModifiedSimpleLDA implements LDAGibbsSampler, AbortableSampler, LDA
 		}
 
 		for (int doc=0; doc < data.size(); doc++) {
-			LabelSequence topicSequence = (LabelSequence) data.get(doc).topicSequence;
+			LabelSequence topicSequence = getTopicSequence(doc);
 
 			docTopics = topicSequence.getFeatures();
 
@@ -461,7 +465,7 @@ public class ModifiedSimpleLDA implements LDAGibbsSampler, AbortableSampler, LDA
 		int [][] indicators = new int[data.size()][];
 		for (int doc = 0; doc < data.size(); doc++) {
 			FeatureSequence tokenSequence =	(FeatureSequence) data.get(doc).instance.getData();
-			LabelSequence topicSequence = (LabelSequence) data.get(doc).topicSequence;
+			LabelSequence topicSequence = getTopicSequence(doc);
 			int[] oneDocTopics = topicSequence.getFeatures();
 			int docLength = tokenSequence.getLength();
 			indicators[doc] = new int [docLength];
@@ -532,7 +536,7 @@ public class ModifiedSimpleLDA implements LDAGibbsSampler, AbortableSampler, LDA
 	public int[][] getDocumentTopicMatrix() {
 		int [][] res = new int[data.size()][];
 		for (int docIdx = 0; docIdx < data.size(); docIdx++) {
-			int[] topicSequence = data.get(docIdx).topicSequence.getFeatures();
+			int[] topicSequence = getTopicSequence(docIdx).getFeatures();
 			res[docIdx] = new int[numTopics];
 			for (int position = 0; position < topicSequence.length; position++) {
 				int topicInd = topicSequence[position];
@@ -611,7 +615,7 @@ public class ModifiedSimpleLDA implements LDAGibbsSampler, AbortableSampler, LDA
 	 * @return document topic means 
 	 */
 	public double [][] getZbar() {
-		return ModifiedSimpleLDA.getZbar(data,numTopics);
+		return ModifiedSimpleLDA.getZbar(getData(),numTopics);
 	}
 
 	/**
@@ -667,7 +671,7 @@ public class ModifiedSimpleLDA implements LDAGibbsSampler, AbortableSampler, LDA
 	 * @return estimate of theta
 	 */
 	public double [][] getThetaEstimate() {
-		return ModifiedSimpleLDA.getThetaEstimate(data,numTopics,alpha);
+		return ModifiedSimpleLDA.getThetaEstimate(getData(),numTopics,alpha);
 	}
 
 	/**
@@ -868,16 +872,7 @@ public class ModifiedSimpleLDA implements LDAGibbsSampler, AbortableSampler, LDA
 
 		// Now count the number of type/topic pairs that have
 		//  each number of tokens.
-
-		int index;
-		for (int type = 0; type < numTypes; type++) {
-			int[] counts = typeTopicCounts[type];
-			index = 0;
-			while (index < counts.length) {
-				countHistogram[counts[index]]++;
-				index++;
-			}
-		}
+		addTypeTopicCountHistogram(countHistogram);
 
 		// Figure out how large we need to make the "observation lengths"
 		//  histogram.
@@ -904,6 +899,23 @@ public class ModifiedSimpleLDA implements LDAGibbsSampler, AbortableSampler, LDA
 		logger.fine("[beta: " + formatter.format(beta) + "] ");		
 	}
 
+	/**
+	 * Adds the number of type/topic pairs that have each number of tokens to <code>countHistogram</code>
+	 * 
+	 * @param countHistogram histogram indexed by count
+	 */
+	protected void addTypeTopicCountHistogram(int[] countHistogram) {
+		int index;
+		for (int type = 0; type < numTypes; type++) {
+			int[] counts = typeTopicCounts[type];
+			index = 0;
+			while (index < counts.length) {
+				countHistogram[counts[index]]++;
+				index++;
+			}
+		}
+	}
+
 	@Override
 	public LDAConfiguration getConfiguration() {
 		return config;
@@ -965,13 +977,40 @@ public class ModifiedSimpleLDA implements LDAGibbsSampler, AbortableSampler, LDA
 			TopicAssignment t = new TopicAssignment (instance, topicSequence);
 			data.add (t);
 		}
+		updateDocumentTokenPrefixSum();
+	}
 
+	/**
+	 * Re-calculates the prefix sum of the document lengths in <code>data</code>
+	 */
+	protected void updateDocumentTokenPrefixSum() {
+		long [] prefixSum = new long[data.size() + 1];
+		for (int docIdx = 0; docIdx < data.size(); docIdx++) {
+			FeatureSequence tokens = (FeatureSequence) data.get(docIdx).instance.getData();
+			prefixSum[docIdx + 1] = prefixSum[docIdx] + tokens.getLength();
+		}
+		documentTokenPrefixSum = prefixSum;
+	}
+
+	@Override
+	public long [] getDocumentTokenPrefixSum() {
+		if(documentTokenPrefixSum==null || documentTokenPrefixSum.length != data.size() + 1) {
+			updateDocumentTokenPrefixSum();
+		}
+		return documentTokenPrefixSum;
 	}
 
 	public Alphabet getAlphabet() { return alphabet; }
 	public LabelAlphabet getTopicAlphabet() { return topicAlphabet; }
 	public int getNumTopics() { return numTopics; }
 	public ArrayList<TopicAssignment> getData() { return data; }
+
+	/**
+	 * @return The topic indicators of document <code>doc</code>
+	 */
+	protected LabelSequence getTopicSequence(int doc) {
+		return data.get(doc).topicSequence;
+	}
 	public int[][] getTypeTopicCounts() { return typeTopicCounts; }
 	public int[] getTopicTotals() { return tokensPerTopic; }
 
@@ -6,10 +6,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import cc.mallet.configuration.LDAConfiguration;
@@ -22,6 +19,7 @@ import cc.mallet.types.VariableSelectionResult;
 import cc.mallet.util.IntArraySortUtils;
 import cc.mallet.util.LDALoggingUtils;
 import cc.mallet.util.OptimizedGentleAliasMethod;
+import cc.mallet.util.SamplerRandom;
 import cc.mallet.util.WalkerAliasTable;
 
 public class NZVSSpaliasUncollapsedParallelLDA extends UncollapsedParallelLDA implements LDAGibbsSampler{
@@ -29,7 +27,6 @@ public class NZVSSpaliasUncollapsedParallelLDA extends UncollapsedParallelLDA im
 	//private static final int NOT_IN_SET = -1;
 	WalkerAliasTable [] aliasTables; 
 	double [] typeNorm; // Array with doubles with sum of alpha * phi
-	private ExecutorService tableBuilderExecutor;
 	
 	// #### VSSelection
 	// Jagged array containing the topics that are non-zero for each type
@@ -88,13 +85,6 @@ public class NZVSSpaliasUncollapsedParallelLDA extends UncollapsedParallelLDA im
 		}   
 	}
 
-	@Override
-	public void preSample() {
-		super.preSample();
-		int poolSize = 2; // Parallel alias table pool (why 2?)
-		tableBuilderExecutor = Executors.newFixedThreadPool(Math.max(1, poolSize));
-	}
-
 	@Override
 	public void preIteration() {
 		final int [][] topicTypeIndices = topicIndexBuilder.getTopicTypeIndices();
@@ -114,7 +104,7 @@ public class NZVSSpaliasUncollapsedParallelLDA extends UncollapsedParallelLDA im
 		}
 		List<Future<WalkerAliasTableBuildResult>> results;
 		try {
-			results = tableBuilderExecutor.invokeAll(builders);
+			results = getSamplerPool().invokeAll(builders);
 			for (Future<WalkerAliasTableBuildResult> result : results) {
 				aliasTables[result.get().type] = result.get().table;
 				typeNorm[result.get().type] = result.get().typeNorm; // typeNorm is sigma_prior
@@ -147,12 +137,6 @@ public class NZVSSpaliasUncollapsedParallelLDA extends UncollapsedParallelLDA im
 		super.postIteration();
 	}
 
-	@Override
-	public void postSample() {
-		tableBuilderExecutor.shutdown();
-		super.postSample();
-	}
-	
 	@Override
 	protected LDADocSamplingResultSparseSimple sampleTopicAssignmentsParallel(LDADocSamplingContext ctx) {
 		FeatureSequence tokens = ctx.getTokens();
@@ -167,14 +151,15 @@ public class NZVSSpaliasUncollapsedParallelLDA extends UncollapsedParallelLDA im
 		int [] tokenSequence = tokens.getFeatures();
 		int [] oneDocTopics = topics.getFeatures();
 
-		int[] localTopicCounts = new int[numTopics];
+		DocSamplingScratch scratch = getDocSamplingScratch();
+		int[] localTopicCounts = scratch.localTopicCounts();
 
 		// This vector contains the indices of the topics with non-zero entries.
 		// It has to be numTopics long since the non-zero topics come and go...
-		int [] nonZeroTopics = new int[numTopics];
+		int [] nonZeroTopics = scratch.nonZeroTopics;
 
 		// So we can map back from a topic to where it is in nonZeroTopics vector
-		int [] nonZeroTopicsBackMapping = new int[numTopics];
+		int [] nonZeroTopicsBackMapping = scratch.nonZeroTopicsBackMapping;
 		//Arrays.fill(nonZeroTopicsBackMapping, NOT_IN_SET);
 		
 		// Populate topic counts
@@ -191,8 +176,9 @@ public class NZVSSpaliasUncollapsedParallelLDA extends UncollapsedParallelLDA im
 		//kdDensities[myBatch] += nonZeroTopicCnt;
 		kdDensities.addAndGet(nonZeroTopicCnt);
 		double sum; // sigma_likelihood
-		double[] cumsum = new double[numTopics]; 
-		int [] nonZeroTopicsAdjusted = new int[numTopics];
+		double[] cumsum = scratch.cumsum;
+		// Points to either nonZeroTopics or the non-zero topics of the type
+		int [] nonZeroTopicsAdjusted;
 		int nonZeroTopicCntAdjusted;
 
 		//	Iterate over the words in the document
@@ -246,12 +232,12 @@ public class NZVSSpaliasUncollapsedParallelLDA extends UncollapsedParallelLDA im
 				nonZeroTopicCntAdjusted = nonZeroTopicCnt;
 			}
 			
-			double u = ThreadLocalRandom.current().nextDouble();
+			double u = SamplerRandom.current().nextDouble();
 			
 			// Document and type sparsity removed all (but one?) topics
 			// This happens with 1-word documents
 			if(nonZeroTopicCntAdjusted==0) {
-				double[] topicTermScores = new double[numTopics];
+				double[] topicTermScores = scratch.topicTermScores;
 				sum = 0.0;
 				
 				double score = phi[0][type];
@@ -328,7 +314,7 @@ public class NZVSSpaliasUncollapsedParallelLDA extends UncollapsedParallelLDA im
 			//System.out.println("(Batch=" + myBatch + ") Incremented: topic=" + newTopic + " type=" + type + " => " + batchLocalTopicUpdates[myBatch][newTopic][type]);		
 		}
 		//System.out.println("Ratio: " + ((double)numPrior/(double)numLikelihood));
-		return new LDADocSamplingResultSparseSimple(localTopicCounts,nonZeroTopicCnt,nonZeroTopics);
+		return scratch.sparseResult(nonZeroTopicCnt);
 	}
 
 	/*
@@ -528,7 +514,7 @@ public class NZVSSpaliasUncollapsedParallelLDA extends UncollapsedParallelLDA im
 	public void loopOverTopics(int [] indices, int[][] topicTypeIndices, double[][] phiMatrix) {
 		long beforeSamplePhi = System.currentTimeMillis();		
 		for (int topic : indices) {
-			int [] relevantTypeTopicCounts = topicTypeCountMapping[topic];
+			int [] relevantTypeTopicCounts = countStore.topicRow(topic);
 			VariableSelectionResult res = vsDirichlet.nextDistribution(relevantTypeTopicCounts, phiMatrix[topic]);
 			phiMatrix[topic] = res.getPhi();
 			int [] nonZeroIdxs = res.getNonZeroIdxs();
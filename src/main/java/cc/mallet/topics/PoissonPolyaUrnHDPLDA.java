@@ -9,9 +9,7 @@ import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ThreadLocalRandom;
 
 import org.apache.commons.math3.distribution.BetaDistribution;
 import org.apache.commons.math3.distribution.GeometricDistribution;
@@ -29,6 +27,7 @@ import cc.mallet.types.SparseDirichletSamplerBuilder;
 import cc.mallet.types.VariableSelectionResult;
 import cc.mallet.util.LDALoggingUtils;
 import cc.mallet.util.OptimizedGentleAliasMethod;
+import cc.mallet.util.SamplerRandom;
 import cc.mallet.util.WalkerAliasTable;
 import it.unimi.dsi.fastutil.ints.Int2IntArrayMap;
 
@@ -135,13 +134,6 @@ public class PoissonPolyaUrnHDPLDA extends SparseHDPSampler implements HDPSample
 		super.initialSamplePhi(hdpStartTopicIndices, phi);
 	}
 
-	@Override
-	public void preSample() {
-		super.preSample();
-		int poolSize = 2;
-		tableBuilderExecutor = Executors.newFixedThreadPool(Math.max(1, poolSize));
-	}
-
 	protected SparseDirichlet createDirichletSampler() {
 		SparseDirichletSamplerBuilder db = instantiateSparseDirichletSamplerBuilder(config.getDirichletSamplerBuilderClass("cc.mallet.types.PolyaUrnFixedCoeffPoissonDirichletSamplerBuilder"));
 		return db.build(this);
@@ -231,7 +223,7 @@ public class PoissonPolyaUrnHDPLDA extends SparseHDPSampler implements HDPSample
 
 		List<Future<WalkerAliasTableBuildResult>> results;
 		try {
-			results = tableBuilderExecutor.invokeAll(builders);
+			results = getSamplerPool().invokeAll(builders);
 			for (Future<WalkerAliasTableBuildResult> result : results) {
 				aliasTables[result.get().type] = result.get().table;
 				typeNorm[result.get().type] = result.get().typeNorm; // typeNorm is sigma_prior
@@ -303,7 +295,6 @@ public class PoissonPolyaUrnHDPLDA extends SparseHDPSampler implements HDPSample
 	@Override
 	public void postSample() {
 		super.postSample();
-		tableBuilderExecutor.shutdown();
 		//reArrangeTopics(activeTopics, topicOcurrenceCount);
 	}
 	
@@ -496,7 +487,7 @@ public class PoissonPolyaUrnHDPLDA extends SparseHDPSampler implements HDPSample
 			int [] newTopics = new int[nrSamples];
 			for (int i = 0; i < newTopics.length; i++) {
 				// nextInt draws a uniform from (0, range-1)
-				newTopics[i] = ThreadLocalRandom.current().nextInt(range); 
+				newTopics[i] = SamplerRandom.current().nextInt(range); 
 			}
 
 			return newTopics;
@@ -695,19 +686,19 @@ public class PoissonPolyaUrnHDPLDA extends SparseHDPSampler implements HDPSample
 		// Count the number of type-topic pairs that are not just (logGamma(beta) - logGamma(beta))
 		int nonZeroTypeTopics = 0;
 
-		for (int type=0; type < numTypes; type++) {
+		for (int topic = 0; topic < numTopics; topic++) {
 			// reuse this array as a pointer
 
-			topicCounts = typeTopicCounts[type];
+			topicCounts = countStore.topicRow(topic);
 
-			for (int topic = 0; topic < numTopics; topic++) {
-				if (topicCounts[topic] == 0) { continue; }
+			for (int type=0; type < numTypes; type++) {
+				if (topicCounts[type] == 0) { continue; }
 
 				nonZeroTypeTopics++;
-				logLikelihood += Dirichlet.logGammaStirling(beta + topicCounts[topic]);
+				logLikelihood += Dirichlet.logGammaStirling(beta + topicCounts[type]);
 
 				if (Double.isNaN(logLikelihood)) {
-					System.err.println("NaN in log likelihood calculation: " + topicCounts[topic]);
+					System.err.println("NaN in log likelihood calculation: " + topicCounts[type]);
 					System.exit(1);
 				} 
 				else if (Double.isInfinite(logLikelihood)) {
@@ -844,11 +835,11 @@ public class PoissonPolyaUrnHDPLDA extends SparseHDPSampler implements HDPSample
 				nonZeroTopicCntAdjusted = nonZeroTopicCnt;
 			}
 
-			double u = ThreadLocalRandom.current().nextDouble();
+			double u = SamplerRandom.current().nextDouble();
 
 			// Document and type sparsity removed all (but one?) topics, just use the prior contribution
 			if(nonZeroTopicCntAdjusted==0) {
-				newTopic = activeTopics.get(ThreadLocalRandom.current().nextInt(activeTopics.size()));
+				newTopic = activeTopics.get(SamplerRandom.current().nextInt(activeTopics.size()));
 			} else {
 				int topic = nonZeroTopicsAdjusted[0];
 				double score = localTopicCounts[topic] * phi[topic][type];
@@ -997,7 +988,7 @@ public class PoissonPolyaUrnHDPLDA extends SparseHDPSampler implements HDPSample
 			
 			// Sample Phi
 			if(tokensPerTopic[topic]>0) {
-				int [] relevantTypeTopicCounts = topicTypeCountMapping[topic];
+				int [] relevantTypeTopicCounts = countStore.topicRow(topic);
 				VariableSelectionResult res = dirichletSampler.nextDistributionWithSparseness(relevantTypeTopicCounts);
 				phiMatrix[topic] = res.getPhi();
 			// If we have a newly sampled active topic, it won't have any type topic
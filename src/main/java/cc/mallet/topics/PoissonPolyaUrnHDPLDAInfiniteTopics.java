@@ -166,7 +166,6 @@ public class PoissonPolyaUrnHDPLDAInfiniteTopics extends SparseHDPSampler implem
 	@Override
 	public void postSample() {
 		super.postSample();
-		tableBuilderExecutor.shutdown();
 		reArrangeTopics(tokensPerTopic);
 	}
 	
@@ -344,7 +343,7 @@ public class PoissonPolyaUrnHDPLDAInfiniteTopics extends SparseHDPSampler implem
 				int l_k = sampleL(topic, longestDocLength, docTopicTokenFreqTable, alphaCoef, psiSampler.getPsi()[topic]);
 				psiSampler.updateTopic(topic, l_k);
 				
-				int [] relevantTypeTopicCounts = topicTypeCountMapping[topic];
+				int [] relevantTypeTopicCounts = countStore.topicRow(topic);
 				res = dirichletSampler.nextDistributionWithSparseness(relevantTypeTopicCounts);
 				phiMatrix[topic] = res.getPhi();
 			} else {
@@ -559,13 +558,15 @@ public class PoissonPolyaUrnHDPLDAInfiniteTopics extends SparseHDPSampler implem
 
 		private static int PARSED_CONFIG = 0;
 		private static int SIMPLE_CONFIG = 1;
+		// Set in the config kind when the counts are written topic major, [topic][type]
+		private static int TOPIC_MAJOR_COUNTS = 2;
 
 		private void writeObject(ObjectOutputStream out) throws IOException {
 			if(ParsedLDAConfiguration.class.isAssignableFrom(config.getClass())) {
-				out.writeInt(PARSED_CONFIG);
+				out.writeInt(PARSED_CONFIG | TOPIC_MAJOR_COUNTS);
 				System.out.flush();
 			} else {
-				out.writeInt(SIMPLE_CONFIG);
+				out.writeInt(SIMPLE_CONFIG | TOPIC_MAJOR_COUNTS);
 			}
 			out.writeObject(data);
 			out.writeObject(alphabet);
@@ -586,7 +587,7 @@ public class PoissonPolyaUrnHDPLDAInfiniteTopics extends SparseHDPSampler implem
 			out.writeInt(phiMeanThin);
 			out.writeInt(noSampledPhi);
 
-			out.writeObject(typeTopicCounts);
+			out.writeObject(countStore.topicRows());
 			out.writeObject(tokensPerTopic);
 
 			out.writeObject(docLengthCounts);
@@ -629,6 +630,8 @@ public class PoissonPolyaUrnHDPLDAInfiniteTopics extends SparseHDPSampler implem
 		@SuppressWarnings("unchecked")
 		private void readObject (ObjectInputStream in) throws IOException, ClassNotFoundException {
 			int version = in.readInt ();
+		boolean topicMajorCounts = (version & TOPIC_MAJOR_COUNTS) != 0;
+		version &= ~TOPIC_MAJOR_COUNTS;
 
 			data = (ArrayList<TopicAssignment>) in.readObject ();
 			alphabet = (Alphabet) in.readObject();
@@ -644,12 +647,14 @@ public class PoissonPolyaUrnHDPLDAInfiniteTopics extends SparseHDPSampler implem
 			betaSum = in.readDouble();
 
 			phi = (double[][]) in.readObject();
-			phiMean  = (double[][]) in.readObject();
+			readPhiMean(in.readObject());
 			phiBurnIn = in.readInt();
 			phiMeanThin = in.readInt();
 			noSampledPhi = in.readInt();
 
-			typeTopicCounts = (int[][]) in.readObject();
+			int [][] counts = (int[][]) in.readObject();
+		countStore = topicMajorCounts ? TopicTypeCountStore.wrapTopicRows(counts, numTypes)
+				: TopicTypeCountStore.fromTypeTopicMatrix(counts, numTopics, numTypes);
 			tokensPerTopic = (int[]) in.readObject();
 
 			docLengthCounts = (int[]) in.readObject();
@@ -4,8 +4,6 @@ package cc.mallet.topics;
 import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadLocalRandom;
 
 import org.apache.commons.math3.distribution.PoissonDistribution;
 
@@ -21,6 +19,7 @@ import cc.mallet.types.SparseDirichletSamplerBuilder;
 import cc.mallet.types.VariableSelectionResult;
 import cc.mallet.util.LDALoggingUtils;
 import cc.mallet.util.OptimizedGentleAliasMethod;
+import cc.mallet.util.SamplerRandom;
 import cc.mallet.util.WalkerAliasTable;
 import it.unimi.dsi.fastutil.ints.Int2IntArrayMap;
 import it.unimi.dsi.fastutil.ints.IntSet;
@@ -144,8 +143,6 @@ public class PoissonPolyaUrnHLDA extends SparseHDPSampler implements HDPSamplerW
 	@Override
 	public void preSample() {
 		super.preSample();
-		int poolSize = 2;
-		tableBuilderExecutor = Executors.newFixedThreadPool(Math.max(1, poolSize));
 		// Now all structures should be initialized with numTopics
 		// now set numTopics to the number of topics we want to start with
 		setNumTopics(nrStartTopics);
@@ -333,19 +330,19 @@ public class PoissonPolyaUrnHLDA extends SparseHDPSampler implements HDPSamplerW
 		// Count the number of type-topic pairs that are not just (logGamma(beta) - logGamma(beta))
 		int nonZeroTypeTopics = 0;
 
-		for (int type=0; type < numTypes; type++) {
+		for (int topic = 0; topic < numTopics; topic++) {
 			// reuse this array as a pointer
 
-			topicCounts = typeTopicCounts[type];
+			topicCounts = countStore.topicRow(topic);
 
-			for (int topic = 0; topic < numTopics; topic++) {
-				if (topicCounts[topic] == 0) { continue; }
+			for (int type=0; type < numTypes; type++) {
+				if (topicCounts[type] == 0) { continue; }
 
 				nonZeroTypeTopics++;
-				logLikelihood += Dirichlet.logGammaStirling(beta + topicCounts[topic]);
+				logLikelihood += Dirichlet.logGammaStirling(beta + topicCounts[type]);
 
 				if (Double.isNaN(logLikelihood)) {
-					System.err.println("NaN in log likelihood calculation: " + topicCounts[topic]);
+					System.err.println("NaN in log likelihood calculation: " + topicCounts[type]);
 					System.exit(1);
 				} 
 				else if (Double.isInfinite(logLikelihood)) {
@@ -549,7 +546,7 @@ public class PoissonPolyaUrnHLDA extends SparseHDPSampler implements HDPSamplerW
 				nonZeroTopicCntAdjusted = nonZeroTopicCnt;
 			}
 
-			double u = ThreadLocalRandom.current().nextDouble();
+			double u = SamplerRandom.current().nextDouble();
 
 			// Document and type sparsity removed all (but one?) topics, just use the prior contribution
 			if(nonZeroTopicCntAdjusted==0) {
@@ -665,7 +662,7 @@ public class PoissonPolyaUrnHLDA extends SparseHDPSampler implements HDPSamplerW
 			
 			psi[topic] = eta_k;
 			
-			int [] relevantTypeTopicCounts = topicTypeCountMapping[topic];
+			int [] relevantTypeTopicCounts = countStore.topicRow(topic);
 			VariableSelectionResult res = dirichletSampler.nextDistributionWithSparseness(relevantTypeTopicCounts);
 			
 			// If we have to remap this topic, use the mapping table
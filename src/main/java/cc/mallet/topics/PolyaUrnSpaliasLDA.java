@@ -3,18 +3,16 @@ package cc.mallet.topics;
 import java.io.PrintWriter;
 import java.util.Arrays;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ThreadLocalRandom;
 
 import cc.mallet.configuration.LDAConfiguration;
-import cc.mallet.types.FeatureSequence;
 import cc.mallet.types.InstanceList;
-import cc.mallet.types.LabelSequence;
 import cc.mallet.types.SparseDirichlet;
 import cc.mallet.types.SparseDirichletSamplerBuilder;
 import cc.mallet.types.VariableSelectionResult;
 import cc.mallet.util.LDALoggingUtils;
 import cc.mallet.util.MalletLogger;
 import cc.mallet.util.OptimizedGentleAliasMethod;
+import cc.mallet.util.SamplerRandom;
 import cc.mallet.util.WalkerAliasTable;
 
 //public class PolyaUrnSpaliasLDA extends UncollapsedParallelLDA implements LDAGibbsSampler, LDASamplerWithCallback {
@@ -38,6 +36,11 @@ public class PolyaUrnSpaliasLDA extends SparseUncollapsedSampler implements LDAG
 		super(config);
 	}
 
+	@Override
+	protected boolean supportsFloatPhi() {
+		return true;
+	}
+
 	@Override
 	public void addInstances(InstanceList training) {
 		alphabet = training.getDataAlphabet();
@@ -65,11 +68,31 @@ public class PolyaUrnSpaliasLDA extends SparseUncollapsedSampler implements LDAG
 		public WalkerAliasTableBuildResult call() {
 			double [] probs = new double[numTopics];
 			double typeMass = 0; // Type prior mass
-			for (int topic = 0; topic < numTopics; topic++) {
-				typeMass += probs[topic] = phi[topic][type] * alpha[topic];
-				if(phi[topic][type]!=0) {
-					int newSize = nonZeroTypeTopicColIdxs[type]++;
-					nonZeroTypeTopicIdxs[type][newSize] = topic;
+			if(phiTF!=null) {
+				float [] phiType = phiTF[type];
+				for (int topic = 0; topic < numTopics; topic++) {
+					typeMass += probs[topic] = phiType[topic] * alpha[topic];
+					if(phiType[topic]!=0) {
+						int newSize = nonZeroTypeTopicColIdxs[type]++;
+						nonZeroTypeTopicIdxs[type][newSize] = topic;
+					}
+				}
+			} else if(phiT!=null) {
+				double [] phiType = phiT[type];
+				for (int topic = 0; topic < numTopics; topic++) {
+					typeMass += probs[topic] = phiType[topic] * alpha[topic];
+					if(phiType[topic]!=0) {
+						int newSize = nonZeroTypeTopicColIdxs[type]++;
+						nonZeroTypeTopicIdxs[type][newSize] = topic;
+					}
+				}
+			} else {
+				for (int topic = 0; topic < numTopics; topic++) {
+					typeMass += probs[topic] = phi[topic][type] * alpha[topic];
+					if(phi[topic][type]!=0) {
+						int newSize = nonZeroTypeTopicColIdxs[type]++;
+						nonZeroTypeTopicIdxs[type][newSize] = topic;
+					}
 				}
 			}
 			
@@ -94,35 +117,42 @@ public class PolyaUrnSpaliasLDA extends SparseUncollapsedSampler implements LDAG
 		Arrays.fill(nonZeroTypeTopicColIdxs,0);
 	}
 	
+	@Override
+	protected boolean supportsColumnarCorpus() {
+		// Subclasses have their own document samplers
+		return getClass() == PolyaUrnSpaliasLDA.class;
+	}
+
 	@Override
 	protected LDADocSamplingResult sampleTopicAssignmentsParallel(LDADocSamplingContext ctx) {
-		FeatureSequence tokens = ctx.getTokens();
-		LabelSequence topics = ctx.getTopics();
+		// The topic indicators start at offset, in the topic sequence or the corpus store
+		int offset = ctx.getTopicOffset();
 		int myBatch = ctx.getMyBatch();
 		
 		int type, oldTopic, newTopic;
 
-		final int docLength = tokens.getLength();
+		final int docLength = ctx.getDocLength();
 		if(docLength==0) { 
-			return new LDADocSamplingResultSparseSimple(new int [0],0,new int [0]); 
+			return LDADocSamplingResultSparseSimple.EMPTY;
 		}
 		
-		int [] tokenSequence = tokens.getFeatures();
-		int [] oneDocTopics = topics.getFeatures();
+		int [] tokenSequence = ctx.getTokenArray();
+		TopicIndicatorArray oneDocTopics = ctx.getTopicIndicators();
 
-		int[] localTopicCounts = new int[numTopics];
+		DocSamplingScratch scratch = getDocSamplingScratch();
+		int[] localTopicCounts = scratch.localTopicCounts();
 
 		// This vector contains the indices of the topics with non-zero entries.
 		// It has to be numTopics long since the non-zero topics come and go...
-		int [] nonZeroTopics = new int[numTopics];
+		int [] nonZeroTopics = scratch.nonZeroTopics;
 
 		// So we can map back from a topic to where it is in nonZeroTopics vector
-		int [] nonZeroTopicsBackMapping = new int[numTopics];
+		int [] nonZeroTopicsBackMapping = scratch.nonZeroTopicsBackMapping;
 		
 		// Populate topic counts
 		int nonZeroTopicCnt = 0;
 		for (int position = 0; position < docLength; position++) {
-			int topicInd = oneDocTopics[position];
+			int topicInd = oneDocTopics.get(offset + position);
 			localTopicCounts[topicInd]++;
 			if(localTopicCounts[topicInd]==1) {
 				nonZeroTopicCnt = insert(topicInd, nonZeroTopics, nonZeroTopicsBackMapping, nonZeroTopicCnt);
@@ -132,14 +162,14 @@ public class PolyaUrnSpaliasLDA extends SparseUncollapsedSampler implements LDAG
 		//kdDensities[myBatch] += nonZeroTopicCnt;
 		kdDensities.addAndGet(nonZeroTopicCnt);
 		
-		double[] cumsum = new double[numTopics]; 
+		double[] cumsum = scratch.cumsum;
 		int [] nonZeroTopicsAdjusted;
 		int nonZeroTopicCntAdjusted;
 
 		//	Iterate over the words in the document
 		for (int position = 0; position < docLength; position++) {
 			type = tokenSequence[position];
-			oldTopic = oneDocTopics[position]; // z_position
+			oldTopic = oneDocTopics.get(offset + position); // z_position
 			localTopicCounts[oldTopic]--;
 
 			// Potentially update nonZeroTopics mapping
@@ -187,18 +217,18 @@ public class PolyaUrnSpaliasLDA extends SparseUncollapsedSampler implements LDAG
 				nonZeroTopicCntAdjusted = nonZeroTopicCnt;
 			}
 			
-			double u = ThreadLocalRandom.current().nextDouble();
+			double u = SamplerRandom.current().nextDouble();
 			
 			// Document and type sparsity removed all (but one?) topics, just use the prior contribution
 			// This happens when the document has only one word, then we use only the 
 			// word probability in phi
 			if(nonZeroTopicCntAdjusted==0) {
-				double[] topicTermScores = new double[numTopics];
+				double[] topicTermScores = scratch.topicTermScores;
 				
-				double score = phi[0][type];
+				double score = phiValue(0, type);
 				topicTermScores[0] = score;
 				for (int topic = 1; topic < numTopics; topic++) {
-					score += phi[topic][type];
+					score += phiValue(topic, type);
 					topicTermScores[topic] = score;
 				}
 				// Choose a random point between 0 and the sum of all topic scores
@@ -228,7 +258,7 @@ public class PolyaUrnSpaliasLDA extends SparseUncollapsedSampler implements LDAG
 			}
 
 			// Put that new topic into the counts
-			oneDocTopics[position] = newTopic;
+			oneDocTopics.set(offset + position, newTopic);
 			localTopicCounts[newTopic]++;
 
 			// Potentially update nonZeroTopics mapping
@@ -246,26 +276,15 @@ public class PolyaUrnSpaliasLDA extends SparseUncollapsedSampler implements LDAG
 			//System.out.println("(Batch=" + myBatch + ") Incremented: topic=" + newTopic + " type=" + type + " => " + batchLocalTopicUpdates[myBatch][newTopic][type]);		
 		}
 		//System.out.println("Ratio: " + ((double)numPrior/(double)numLikelihood));
-		return new LDADocSamplingResultSparseSimple(localTopicCounts,nonZeroTopicCnt,nonZeroTopics);
+		return scratch.sparseResult(nonZeroTopicCnt);
 	}
 
 	int calcScoreSampleTopic(int type, int[] localTopicCounts, double[] cumsum, int[] nonZeroTopicsAdjusted,
 			int nonZeroTopicCntAdjusted, double u) {
 		int newTopic;
-		double sum;
-		int topic = nonZeroTopicsAdjusted[0];
-		double score = localTopicCounts[topic] * phi[topic][type];
-		cumsum[0] = score;
 		// Now calculate and add up the scores for each topic for this word
 		// We build a cumsum indexed by topicIndex
-		int topicIdx = 1;
-		while ( topicIdx < nonZeroTopicCntAdjusted ) {
-			topic = nonZeroTopicsAdjusted[topicIdx];
-			score = localTopicCounts[topic] * phi[topic][type];
-			cumsum[topicIdx] = score + cumsum[topicIdx-1];
-			topicIdx++;
-		}
-		sum = cumsum[topicIdx-1]; // sigma_likelihood
+		double sum = calcCumSum(type, localTopicCounts, nonZeroTopicsAdjusted, nonZeroTopicCntAdjusted, cumsum); // sigma_likelihood
 
 		// Choose a random point between 0 and the sum of all topic scores
 		// The thread local random performs better in concurrent situations 
@@ -296,14 +315,22 @@ public class PolyaUrnSpaliasLDA extends SparseUncollapsedSampler implements LDAG
 	public void loopOverTopics(int [] indices, int[][] topicTypeIndices, double[][] phiMatrix) {
 		long beforeSamplePhi = System.currentTimeMillis();		
 		for (int topic : indices) {
-			int [] relevantTypeTopicCounts = topicTypeCountMapping[topic];
+			int [] relevantTypeTopicCounts = countStore.topicRow(topic);
 			
-			phiMatrix[topic] = samplePhiTopic(relevantTypeTopicCounts,topic);
+			double [] phiTopic;
+			if(sampleIntoFloatPhi(phiMatrix)) {
+				// Same draws as samplePhiTopic, into the re-used row of this thread
+				phiTopic = getPhiScratchRow();
+				dirichletSampler.nextDistribution(relevantTypeTopicCounts, phiTopic);
+			} else {
+				phiTopic = phiMatrix[topic] = samplePhiTopic(relevantTypeTopicCounts,topic);
+			}
 			
 			if(savePhiMeans() && samplePhiThisIteration()) {
-				for (int phi = 0; phi < phiMatrix[topic].length; phi++) {
-					phiMean[topic][phi] += phiMatrix[topic][phi];
-				}
+				addToPhiMean(topic, phiTopic);
+			}
+			if(sampleIntoFloatPhi(phiMatrix)) {
+				setFloatPhiRow(topic, phiTopic);
 			}
 		}
 		long elapsedMillis = System.currentTimeMillis();
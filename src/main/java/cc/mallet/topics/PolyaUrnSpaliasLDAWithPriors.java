@@ -7,13 +7,13 @@ import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ThreadLocalRandom;
 
 import cc.mallet.configuration.LDAConfiguration;
 import cc.mallet.types.FeatureSequence;
 import cc.mallet.types.InstanceList;
 import cc.mallet.types.LabelSequence;
 import cc.mallet.types.VariableSelectionResult;
+import cc.mallet.util.SamplerRandom;
 import cc.mallet.util.WalkerAliasTable;
 
 public class PolyaUrnSpaliasLDAWithPriors extends PolyaUrnSpaliasLDA implements LDAGibbsSampler, LDASamplerWithTopicPriors, LDASamplerWithDocumentPriors {
@@ -24,6 +24,12 @@ public class PolyaUrnSpaliasLDAWithPriors extends PolyaUrnSpaliasLDA implements
 		super(config);
 	}
 
+	// The prior weighted scores read phi directly
+	@Override
+	protected boolean supportsFloatPhi() {
+		return false;
+	}
+
 	@Override
 	public double[][] getTopicPriors() {
 		return topicPriors;
@@ -136,7 +142,7 @@ public class PolyaUrnSpaliasLDAWithPriors extends PolyaUrnSpaliasLDA implements
 				nonZeroTopicCntAdjusted = nonZeroTopicCnt;
 			}
 
-			double u = ThreadLocalRandom.current().nextDouble();
+			double u = SamplerRandom.current().nextDouble();
 
 			// Document and type sparsity removed all (but one?) topics, just use the prior contribution
 			// This happens when the document has only one word, then we use only the 
@@ -0,0 +1,1075 @@
+package cc.mallet.topics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+import cc.mallet.configuration.LDAConfiguration;
+import cc.mallet.configuration.ParsedLDAConfiguration;
+import cc.mallet.pipe.Noop;
+import cc.mallet.pipe.Pipe;
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
+import cc.mallet.types.Label;
+import cc.mallet.types.LabelAlphabet;
+import cc.mallet.types.LabelSequence;
+import cc.mallet.util.LDAThreadFactory;
+
+/**
+ * Binary checkpoint of an UncollapsedParallelLDA sampler. Only the state that
+ * cannot be recomputed is stored, the type topic counts, the tokens per topic
+ * and the alias tables are rebuilt from the topic indicators and phi on load.
+ * The layout is
+ *
+ * <pre>
+ * magic, version, number of sections
+ * per section: tag, file offset, length in bytes and CRC32 of the payload
+ * the section payloads
+ * </pre>
+ *
+ * The META section holds the sampler class, the configuration, the hyperparameters,
+ * the seed, the alphabets, the pipe of the training instances and the document names
+ * and labels. The other sections are the primitive arrays: document offsets, token
+ * types, topic indicators (in the narrowest width that holds all topics, as in
+ * TopicIndicatorArray), phi and (if sampled) the phi means. With float_phi phi is
+ * stored as the type major single precision matrix the sampler keeps and the phi
+ * means in single precision, so neither is widened to double. They are written and read
+ * with bulk little endian positional channel I/O so different sections can be handled
+ * by different threads.
+ *
+ * The restored instances get the stored pipe, so new documents can be piped as the
+ * training documents were. If the pipe could not be serialized only the alphabets
+ * are stored and the restored instances get a pipe that refuses to pipe new
+ * instances, as a pipe that only carries the alphabets would silently produce
+ * wrong features.
+ *
+ * The sampler is recreated through its (LDAConfiguration) constructor, so state
+ * that subclasses keep in addition to UncollapsedParallelLDA (as the HDP samplers
+ * do) is not covered, use write() for those.
+ */
+public class SamplerCheckpoint {
+
+	static final long MAGIC = 0x50434c4441434b50L; // "PCLDACKP"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = Long.BYTES + Integer.BYTES + Integer.BYTES;
+	static final int TABLE_ENTRY_SIZE = Integer.BYTES + 3 * Long.BYTES;
+	// Size of the direct buffer each section is written and read through
+	static final int BUFFER_SIZE = 1 << 20;
+
+	static final int META = 1;
+	static final int OFFSETS = 2;
+	static final int TYPES = 3;
+	static final int TOPICS = 4;
+	static final int PHI = 5;
+	static final int PHI_MEAN = 6;
+	// Phi as a type major float matrix, [type][topic], written instead of PHI with float_phi
+	static final int PHI_FLOAT = 7;
+
+	static final int PARSED_CONFIG = 0;
+	static final int SIMPLE_CONFIG = 1;
+
+	static final int NO_PHI_MEAN = 0;
+	static final int DOUBLE_PHI_MEAN = 1;
+	static final int FLOAT_PHI_MEAN = 2;
+
+	/**
+	 * Writes <code>model</code> to <code>checkpointFile</code> using one thread per
+	 * section, up to the number of available processors
+	 */
+	public static void write(UncollapsedParallelLDA model, File checkpointFile) throws IOException {
+		write(model, checkpointFile, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Writes <code>model</code> to <code>checkpointFile</code>. The sections are written
+	 * to a temporary file by up to <code>numThreads</code> threads which is then renamed,
+	 * so a crashed write never replaces an earlier checkpoint with a broken one.
+	 */
+	public static void write(UncollapsedParallelLDA model, File checkpointFile, int numThreads) throws IOException {
+		if(!model.canCheckpoint()) {
+			throw new IllegalArgumentException(model.getClass().getSimpleName() + " can not be checkpointed with SamplerCheckpoint, use write()");
+		}
+		model.flushCorpusStore();
+		write(State.of(model), checkpointFile, numThreads);
+	}
+
+	static void write(State state, File checkpointFile, int numThreads) throws IOException {
+		int numTopics = state.numTopics;
+		int numTypes = state.numTypes;
+		long [] offsets = state.offsets;
+		long numTokens = offsets[offsets.length - 1];
+
+		List<Section> sections = new ArrayList<>();
+		byte [] meta = writeMetadata(state);
+		sections.add(new Section(META, meta.length, out -> out.putBytes(meta, 0, meta.length)));
+		sections.add(new Section(OFFSETS, (long) offsets.length * Long.BYTES, out -> out.putLongs(offsets, 0, offsets.length)));
+		sections.add(new Section(TYPES, numTokens * Integer.BYTES, out -> {
+			for (TopicAssignment doc : state.data) {
+				FeatureSequence tokens = (FeatureSequence) doc.instance.getData();
+				out.putInts(tokens.getFeatures(), 0, tokens.getLength());
+			}
+		}));
+		int topicBytes = TopicIndicatorArray.bytesPerIndicator(numTopics);
+		sections.add(new Section(TOPICS, numTokens * topicBytes, out -> {
+			for (int doc = 0; doc < state.topics.length; doc++) {
+				out.putTopics(state.topics[doc], 0, (int) (offsets[doc + 1] - offsets[doc]), topicBytes);
+			}
+		}));
+		long matrixSize = (long) numTopics * numTypes;
+		if(state.phi != null) {
+			sections.add(new Section(PHI, matrixSize * Double.BYTES, out -> {
+				for (int topic = 0; topic < numTopics; topic++) {
+					out.putDoubles(state.phi[topic], 0, numTypes);
+				}
+			}));
+		}
+		if(state.phiF != null) {
+			sections.add(new Section(PHI_FLOAT, matrixSize * Float.BYTES, out -> {
+				for (int type = 0; type < numTypes; type++) {
+					out.putFloats(state.phiF[type], 0, numTopics);
+				}
+			}));
+		}
+		if(state.phiMeanF != null) {
+			sections.add(new Section(PHI_MEAN, matrixSize * Float.BYTES, out -> {
+				for (int topic = 0; topic < numTopics; topic++) {
+					out.putFloats(state.phiMeanF[topic], 0, numTypes);
+				}
+			}));
+		} else if(state.phiMean != null) {
+			sections.add(new Section(PHI_MEAN, matrixSize * Double.BYTES, out -> {
+				for (int topic = 0; topic < numTopics; topic++) {
+					out.putDoubles(state.phiMean[topic], 0, numTypes);
+				}
+			}));
+		}
+
+		long position = HEADER_SIZE + (long) sections.size() * TABLE_ENTRY_SIZE;
+		for (Section section : sections) {
+			section.offset = position;
+			position += section.length;
+		}
+
+		File tmpFile = new File(checkpointFile.getAbsoluteFile().getParentFile(), checkpointFile.getName() + ".tmp");
+		try (RandomAccessFile raf = new RandomAccessFile(tmpFile, "rw");
+				FileChannel channel = raf.getChannel()) {
+			raf.setLength(position);
+			runSections(sections, numThreads, section -> {
+				SectionWriter out = new SectionWriter(channel, section);
+				section.body.write(out);
+				section.crc = out.finish();
+			});
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + sections.size() * TABLE_ENTRY_SIZE);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			header.putLong(MAGIC).putInt(VERSION).putInt(sections.size());
+			for (Section section : sections) {
+				header.putInt(section.tag).putLong(section.offset).putLong(section.length).putLong(section.crc);
+			}
+			header.flip();
+			long headerPosition = 0;
+			while (header.hasRemaining()) {
+				headerPosition += channel.write(header, headerPosition);
+			}
+			channel.force(false);
+		}
+		Files.move(tmpFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	static byte [] writeMetadata(State state) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeUTF(state.samplerClass);
+			LDAConfiguration config = state.config;
+			if(config instanceof ParsedLDAConfiguration) {
+				out.writeInt(PARSED_CONFIG);
+				out.writeUTF(config.whereAmI());
+				String activeSubconfig = config.getActiveSubConfig();
+				out.writeBoolean(activeSubconfig != null);
+				if(activeSubconfig != null) {
+					out.writeUTF(activeSubconfig);
+				}
+			} else {
+				out.writeInt(SIMPLE_CONFIG);
+				writeObject(out, config);
+			}
+
+			out.writeInt(state.numTopics);
+			out.writeInt(state.numTypes);
+			out.writeInt(state.data.size());
+			out.writeInt(state.alpha.length);
+			for (double alpha : state.alpha) {
+				out.writeDouble(alpha);
+			}
+			out.writeDouble(state.alphaSum);
+			out.writeDouble(state.beta);
+			out.writeDouble(state.betaSum);
+			out.writeInt(state.phiBurnIn);
+			out.writeInt(state.phiMeanThin);
+			out.writeInt(state.noSampledPhi);
+			out.writeInt(state.currentIteration);
+			out.writeInt(state.startSeed);
+			out.writeInt(state.showTopicsInterval);
+			out.writeInt(state.wordsPerTopic);
+			out.writeBoolean(state.printLogLikelihood);
+			out.writeInt(state.phiMeanF != null ? FLOAT_PHI_MEAN : state.phiMean != null ? DOUBLE_PHI_MEAN : NO_PHI_MEAN);
+
+			int [][] topicDocCounts = state.topicDocCounts;
+			out.writeInt(topicDocCounts == null ? -1 : topicDocCounts.length);
+			if(topicDocCounts != null) {
+				for (int [] counts : topicDocCounts) {
+					out.writeInt(counts.length);
+					for (int count : counts) {
+						out.writeInt(count);
+					}
+				}
+			}
+
+			// The alphabets are small compared to the corpus and keep their identity when serialized,
+			// also as the alphabets of the pipe since both are written to the same stream
+			try {
+				writeObject(out, new Object [] {state.alphabet, state.targetAlphabet, state.pipe});
+			} catch (NotSerializableException e) {
+				// Nothing was written to out, the object is serialized to a buffer first
+				writeObject(out, new Alphabet [] {state.alphabet, state.targetAlphabet});
+			}
+			for (TopicAssignment doc : state.data) {
+				Object name = doc.instance.getName();
+				out.writeBoolean(name != null);
+				if(name != null) {
+					out.writeUTF(name.toString());
+				}
+				Object target = doc.instance.getTarget();
+				out.writeInt(target instanceof Label ? ((Label) target).getIndex() : -1);
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	static void writeObject(DataOutputStream out, Object object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+			oos.writeObject(object);
+		}
+		out.writeInt(bytes.size());
+		bytes.writeTo(out);
+	}
+
+	static Object readObject(DataInputStream in) throws IOException {
+		byte [] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return ois.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Reads a sampler written by write() using one thread per section, up to the
+	 * number of available processors
+	 */
+	public static UncollapsedParallelLDA read(File checkpointFile) throws IOException {
+		return read(checkpointFile, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Reads a sampler written by write(). The sampler is created from the stored
+	 * configuration, given the stored documents and topic indicators (which rebuilds
+	 * the counts) and then the stored phi, phi means and hyperparameters. The instances
+	 * of the sampler get the stored pipe, or a pipe that refuses to pipe new instances
+	 * if none was stored.
+	 */
+	public static UncollapsedParallelLDA read(File checkpointFile, int numThreads) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(checkpointFile, "r");
+				FileChannel channel = raf.getChannel()) {
+			Map<Integer, Section> sections = readSectionTable(channel, checkpointFile);
+			for (int tag : new int [] {META, OFFSETS, TYPES, TOPICS}) {
+				if(!sections.containsKey(tag)) {
+					throw new IOException("Section " + tag + " is missing in checkpoint " + checkpointFile);
+				}
+			}
+
+			Section metaSection = sections.get(META);
+			if(metaSection.length > Integer.MAX_VALUE) {
+				throw new IOException("Corrupt META section in checkpoint " + checkpointFile);
+			}
+			byte [] metaBytes = new byte[(int) metaSection.length];
+			SectionReader metaIn = new SectionReader(channel, metaSection, checkpointFile);
+			metaIn.getBytes(metaBytes, 0, metaBytes.length);
+			metaIn.finish();
+			Metadata meta = new Metadata(new DataInputStream(new ByteArrayInputStream(metaBytes)));
+
+			long [] offsets = new long[meta.numDocs + 1];
+			SectionReader offsetsIn = new SectionReader(channel, sections.get(OFFSETS), checkpointFile);
+			offsetsIn.getLongs(offsets, 0, offsets.length);
+			offsetsIn.finish();
+
+			Section topicsSection = sections.get(TOPICS);
+			long numTokens = offsets[meta.numDocs];
+			// Checkpoints of earlier versions always stored four bytes per indicator
+			int topicBytes = numTokens > 0 ? (int) (topicsSection.length / numTokens) : Integer.BYTES;
+			if((topicBytes != Byte.BYTES && topicBytes != Short.BYTES && topicBytes != Integer.BYTES)
+					|| topicsSection.length != numTokens * topicBytes
+					|| (topicBytes < Integer.BYTES && TopicIndicatorArray.bytesPerIndicator(meta.numTopics) > topicBytes)) {
+				throw new IOException("Corrupt TOPICS section in checkpoint " + checkpointFile);
+			}
+
+			int [][] types = new int[meta.numDocs][];
+			int [][] topics = new int[meta.numDocs][];
+			for (int doc = 0; doc < meta.numDocs; doc++) {
+				types[doc] = new int[(int) (offsets[doc + 1] - offsets[doc])];
+				topics[doc] = new int[types[doc].length];
+			}
+			double [][] phi = sections.containsKey(PHI) ? new double[meta.numTopics][meta.numTypes] : null;
+			float [][] phiF = sections.containsKey(PHI_FLOAT) ? new float[meta.numTypes][meta.numTopics] : null;
+			double [][] phiMean = meta.phiMeanKind == DOUBLE_PHI_MEAN ? new double[meta.numTopics][meta.numTypes] : null;
+			float [][] phiMeanF = meta.phiMeanKind == FLOAT_PHI_MEAN ? new float[meta.numTopics][meta.numTypes] : null;
+
+			List<Section> arraySections = new ArrayList<>();
+			arraySections.add(sections.get(TYPES).withBody(in -> {
+				for (int [] docTypes : types) {
+					in.getInts(docTypes, 0, docTypes.length);
+				}
+			}));
+			arraySections.add(topicsSection.withBody(in -> {
+				for (int [] docTopics : topics) {
+					in.getTopics(docTopics, 0, docTopics.length, topicBytes);
+				}
+			}));
+			if(phi != null) {
+				arraySections.add(sections.get(PHI).withBody(in -> {
+					for (double [] topicPhi : phi) {
+						in.getDoubles(topicPhi, 0, topicPhi.length);
+					}
+				}));
+			}
+			if(phiF != null) {
+				arraySections.add(sections.get(PHI_FLOAT).withBody(in -> {
+					for (float [] typePhi : phiF) {
+						in.getFloats(typePhi, 0, typePhi.length);
+					}
+				}));
+			}
+			if(phiMean != null || phiMeanF != null) {
+				if(!sections.containsKey(PHI_MEAN)) {
+					throw new IOException("Section " + PHI_MEAN + " is missing in checkpoint " + checkpointFile);
+				}
+				arraySections.add(sections.get(PHI_MEAN).withBody(in -> {
+					for (int topic = 0; topic < meta.numTopics; topic++) {
+						if(phiMeanF != null) {
+							in.getFloats(phiMeanF[topic], 0, meta.numTypes);
+						} else {
+							in.getDoubles(phiMean[topic], 0, meta.numTypes);
+						}
+					}
+				}));
+			}
+			runSections(arraySections, numThreads, section -> {
+				SectionReader in = new SectionReader(channel, section, checkpointFile);
+				section.reader.read(in);
+				in.finish();
+			});
+
+			InstanceList instances = new InstanceList(meta.pipe != null ? meta.pipe
+					: new AlphabetsOnlyPipe(meta.alphabet, meta.targetAlphabet));
+			for (int doc = 0; doc < meta.numDocs; doc++) {
+				Label target = meta.labels[doc] >= 0 && meta.targetAlphabet != null
+						? meta.targetAlphabet.lookupLabel(meta.labels[doc]) : null;
+				FeatureSequence tokens = new FeatureSequence(meta.alphabet, types[doc], types[doc].length);
+				instances.add(new Instance(tokens, target, meta.names[doc], null));
+			}
+
+			UncollapsedParallelLDA model = meta.createSampler();
+			model.addInstances(instances);
+			model.setZIndicators(topics);
+			meta.restore(model);
+			if(phi != null) {
+				model.setPhi(phi);
+			}
+			if(phiF != null) {
+				model.setTypeMajorPhiFloat(phiF);
+			}
+			if(phiMeanF != null) {
+				model.readPhiMean(phiMeanF);
+			} else if(phiMean != null) {
+				model.readPhiMean(phiMean);
+			}
+			return model;
+		}
+	}
+
+	static Map<Integer, Section> readSectionTable(FileChannel channel, File checkpointFile) throws IOException {
+		ByteBuffer header = readFully(channel, 0, HEADER_SIZE, checkpointFile);
+		if(header.getLong() != MAGIC) {
+			throw new IOException("Not a sampler checkpoint: " + checkpointFile);
+		}
+		int version = header.getInt();
+		if(version != VERSION) {
+			throw new IOException("Unsupported checkpoint version " + version + " in " + checkpointFile);
+		}
+		int numSections = header.getInt();
+		ByteBuffer table = readFully(channel, HEADER_SIZE, numSections * TABLE_ENTRY_SIZE, checkpointFile);
+		Map<Integer, Section> sections = new HashMap<>();
+		for (int i = 0; i < numSections; i++) {
+			Section section = new Section(table.getInt(), 0, null);
+			section.offset = table.getLong();
+			section.length = table.getLong();
+			section.crc = table.getLong();
+			if(section.offset < 0 || section.length < 0 || section.offset + section.length > channel.size()) {
+				throw new IOException("Section " + section.tag + " is outside of checkpoint " + checkpointFile);
+			}
+			sections.put(section.tag, section);
+		}
+		return sections;
+	}
+
+	static ByteBuffer readFully(FileChannel channel, long position, int size, File checkpointFile) throws IOException {
+		if(size < 0 || position + size > channel.size()) {
+			throw new IOException("Truncated checkpoint: " + checkpointFile);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(size);
+		buffer.order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if(channel.read(buffer, position + buffer.position()) < 0) {
+				throw new EOFException("Truncated checkpoint: " + checkpointFile);
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * Runs <code>task</code> on every section, in parallel on up to <code>numThreads</code> threads
+	 */
+	static void runSections(List<Section> sections, int numThreads, SectionTask task) throws IOException {
+		int threads = Math.min(numThreads, sections.size());
+		if(threads <= 1) {
+			for (Section section : sections) {
+				task.run(section);
+			}
+			return;
+		}
+		ExecutorService workers = Executors.newFixedThreadPool(threads, new LDAThreadFactory("SamplerCheckpoint"));
+		try {
+			List<Future<Void>> done = new ArrayList<>();
+			for (Section section : sections) {
+				done.add(workers.submit(() -> {
+					task.run(section);
+					return null;
+				}));
+			}
+			for (Future<Void> future : done) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+
+	interface SectionTask {
+		void run(Section section) throws IOException;
+	}
+
+	interface SectionBody {
+		void write(SectionWriter out) throws IOException;
+	}
+
+	interface SectionBodyReader {
+		void read(SectionReader in) throws IOException;
+	}
+
+	static class Section {
+		final int tag;
+		long length;
+		final SectionBody body;
+		SectionBodyReader reader;
+		long offset;
+		long crc;
+
+		Section(int tag, long length, SectionBody body) {
+			this.tag = tag;
+			this.length = length;
+			this.body = body;
+		}
+
+		Section withBody(SectionBodyReader reader) {
+			this.reader = reader;
+			return this;
+		}
+	}
+
+	/**
+	 * Writes the payload of one section through a direct buffer with positional
+	 * channel writes and computes its CRC32
+	 */
+	static class SectionWriter {
+		final FileChannel channel;
+		final Section section;
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		final CRC32 crc = new CRC32();
+		long position;
+
+		SectionWriter(FileChannel channel, Section section) {
+			this.channel = channel;
+			this.section = section;
+			this.position = section.offset;
+		}
+
+		void putBytes(byte [] src, int offset, int count) throws IOException {
+			while (count > 0) {
+				if(!buffer.hasRemaining()) flush();
+				int n = Math.min(count, buffer.remaining());
+				buffer.put(src, offset, n);
+				offset += n;
+				count -= n;
+			}
+		}
+
+		void putInts(int [] src, int offset, int count) throws IOException {
+			while (count > 0) {
+				if(buffer.remaining() < Integer.BYTES) flush();
+				int n = Math.min(count, buffer.remaining() / Integer.BYTES);
+				buffer.asIntBuffer().put(src, offset, n);
+				buffer.position(buffer.position() + n * Integer.BYTES);
+				offset += n;
+				count -= n;
+			}
+		}
+
+		/**
+		 * Writes topic indicators with <code>width</code> bytes each, bytes and shorts are unsigned
+		 */
+		void putTopics(int [] src, int offset, int count, int width) throws IOException {
+			if(width == Integer.BYTES) {
+				putInts(src, offset, count);
+				return;
+			}
+			for (int i = offset; i < offset + count; i++) {
+				if(buffer.remaining() < width) flush();
+				if(width == Byte.BYTES) {
+					buffer.put((byte) src[i]);
+				} else {
+					buffer.putShort((short) src[i]);
+				}
+			}
+		}
+
+		void putLongs(long [] src, int offset, int count) throws IOException {
+			while (count > 0) {
+				if(buffer.remaining() < Long.BYTES) flush();
+				int n = Math.min(count, buffer.remaining() / Long.BYTES);
+				buffer.asLongBuffer().put(src, offset, n);
+				buffer.position(buffer.position() + n * Long.BYTES);
+				offset += n;
+				count -= n;
+			}
+		}
+
+		void putFloats(float [] src, int offset, int count) throws IOException {
+			while (count > 0) {
+				if(buffer.remaining() < Float.BYTES) flush();
+				int n = Math.min(count, buffer.remaining() / Float.BYTES);
+				buffer.asFloatBuffer().put(src, offset, n);
+				buffer.position(buffer.position() + n * Float.BYTES);
+				offset += n;
+				count -= n;
+			}
+		}
+
+		void putDoubles(double [] src, int offset, int count) throws IOException {
+			while (count > 0) {
+				if(buffer.remaining() < Double.BYTES) flush();
+				int n = Math.min(count, buffer.remaining() / Double.BYTES);
+				buffer.asDoubleBuffer().put(src, offset, n);
+				buffer.position(buffer.position() + n * Double.BYTES);
+				offset += n;
+				count -= n;
+			}
+		}
+
+		void flush() throws IOException {
+			buffer.flip();
+			crc.update(buffer.duplicate());
+			while (buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+			buffer.clear();
+		}
+
+		/**
+		 * @return The CRC32 of the section
+		 */
+		long finish() throws IOException {
+			flush();
+			if(position != section.offset + section.length) {
+				throw new IOException("Wrote " + (position - section.offset) + " bytes to section "
+						+ section.tag + ", expected " + section.length);
+			}
+			return crc.getValue();
+		}
+	}
+
+	/**
+	 * Reads the payload of one section through a direct buffer with positional
+	 * channel reads and verifies its CRC32
+	 */
+	static class SectionReader {
+		final FileChannel channel;
+		final Section section;
+		final File checkpointFile;
+		final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		final CRC32 crc = new CRC32();
+		final long end;
+		long position;
+
+		SectionReader(FileChannel channel, Section section, File checkpointFile) {
+			this.channel = channel;
+			this.section = section;
+			this.checkpointFile = checkpointFile;
+			this.position = section.offset;
+			this.end = section.offset + section.length;
+			buffer.limit(0);
+		}
+
+		/**
+		 * Makes sure at least <code>bytes</code> bytes are buffered
+		 */
+		void ensure(int bytes) throws IOException {
+			if(buffer.remaining() >= bytes) return;
+			buffer.compact();
+			int start = buffer.position();
+			int toRead = (int) Math.min(buffer.remaining(), end - position);
+			if(start + toRead < bytes) {
+				throw new EOFException("Section " + section.tag + " of checkpoint " + checkpointFile + " is too short");
+			}
+			ByteBuffer target = buffer.duplicate();
+			target.limit(start + toRead);
+			while (target.hasRemaining()) {
+				int n = channel.read(target, position);
+				if(n < 0) {
+					throw new EOFException("Truncated checkpoint: " + checkpointFile);
+				}
+				position += n;
+			}
+			ByteBuffer read = buffer.duplicate();
+			read.limit(start + toRead);
+			crc.update(read);
+			buffer.limit(start + toRead);
+			buffer.position(0);
+		}
+
+		void getBytes(byte [] dst, int offset, int count) throws IOException {
+			while (count > 0) {
+				ensure(1);
+				int n = Math.min(count, buffer.remaining());
+				buffer.get(dst, offset, n);
+				offset += n;
+				count -= n;
+			}
+		}
+
+		void getInts(int [] dst, int offset, int count) throws IOException {
+			while (count > 0) {
+				ensure(Integer.BYTES);
+				int n = Math.min(count, buffer.remaining() / Integer.BYTES);
+				buffer.asIntBuffer().get(dst, offset, n);
+				buffer.position(buffer.position() + n * Integer.BYTES);
+				offset += n;
+				count -= n;
+			}
+		}
+
+		/**
+		 * Reads topic indicators written by SectionWriter.putTopics() with <code>width</code> bytes each
+		 */
+		void getTopics(int [] dst, int offset, int count, int width) throws IOException {
+			if(width == Integer.BYTES) {
+				getInts(dst, offset, count);
+				return;
+			}
+			for (int i = offset; i < offset + count; i++) {
+				ensure(width);
+				dst[i] = width == Byte.BYTES ? buffer.get() & 0xFF : buffer.getShort() & 0xFFFF;
+			}
+		}
+
+		void getLongs(long [] dst, int offset, int count) throws IOException {
+			while (count > 0) {
+				ensure(Long.BYTES);
+				int n = Math.min(count, buffer.remaining() / Long.BYTES);
+				buffer.asLongBuffer().get(dst, offset, n);
+				buffer.position(buffer.position() + n * Long.BYTES);
+				offset += n;
+				count -= n;
+			}
+		}
+
+		void getFloats(float [] dst, int offset, int count) throws IOException {
+			while (count > 0) {
+				ensure(Float.BYTES);
+				int n = Math.min(count, buffer.remaining() / Float.BYTES);
+				buffer.asFloatBuffer().get(dst, offset, n);
+				buffer.position(buffer.position() + n * Float.BYTES);
+				offset += n;
+				count -= n;
+			}
+		}
+
+		void getDoubles(double [] dst, int offset, int count) throws IOException {
+			while (count > 0) {
+				ensure(Double.BYTES);
+				int n = Math.min(count, buffer.remaining() / Double.BYTES);
+				buffer.asDoubleBuffer().get(dst, offset, n);
+				buffer.position(buffer.position() + n * Double.BYTES);
+				offset += n;
+				count -= n;
+			}
+		}
+
+		/**
+		 * Checks that the whole section was read and that its checksum matches
+		 */
+		void finish() throws IOException {
+			if(buffer.hasRemaining() || position != end) {
+				throw new IOException("Section " + section.tag + " of checkpoint " + checkpointFile + " was not fully read");
+			}
+			if(crc.getValue() != section.crc) {
+				throw new IOException("Checksum mismatch in section " + section.tag + " of checkpoint " + checkpointFile);
+			}
+		}
+	}
+
+	/**
+	 * The sampler state written to a checkpoint. of() refers to the arrays of
+	 * the sampler itself, snapshot() copies the parts that change during
+	 * sampling so they can be written while the sampler continues. The documents,
+	 * alphabets and configuration never change and are always shared.
+	 */
+	static class State {
+		String samplerClass;
+		LDAConfiguration config;
+		List<TopicAssignment> data;
+		Alphabet alphabet;
+		Alphabet targetAlphabet;
+		Pipe pipe;
+		int numTopics;
+		int numTypes;
+		long [] offsets;
+		int [][] topics;
+		double [][] phi;
+		double [][] phiMean;
+		// Used instead of phi and phiMean with float_phi, phiF is type major
+		float [][] phiF;
+		float [][] phiMeanF;
+		double [] alpha;
+		double alphaSum;
+		double beta;
+		double betaSum;
+		int phiBurnIn;
+		int phiMeanThin;
+		int noSampledPhi;
+		int currentIteration;
+		int startSeed;
+		int showTopicsInterval;
+		int wordsPerTopic;
+		boolean printLogLikelihood;
+		int [][] topicDocCounts;
+
+		static State of(UncollapsedParallelLDA model) {
+			State state = new State();
+			state.setShared(model);
+			state.topics = new int[model.data.size()][];
+			for (int doc = 0; doc < model.data.size(); doc++) {
+				state.topics[doc] = model.getTopicSequence(doc).getFeatures();
+			}
+			if(model.floatPhi) {
+				state.phiF = model.phiTF;
+			} else {
+				state.phi = model.phi;
+			}
+			state.phiMean = model.phiMean;
+			state.phiMeanF = model.phiMeanF;
+			state.alpha = model.alpha;
+			state.topicDocCounts = model.topicDocCounts;
+			state.setScalars(model);
+			return state;
+		}
+
+		/**
+		 * Copies the current state of <code>model</code> into <code>reuse</code>
+		 * (if it is not null and the array sizes still match) or new arrays. The
+		 * topic indicators are read from the corpus store when the sampler has
+		 * one, it then keeps no topic sequences.
+		 */
+		static State snapshot(UncollapsedParallelLDA model, State reuse) {
+			State state = reuse != null && reuse.data == model.data && reuse.numTopics == model.numTopics
+					&& reuse.numTypes == model.numTypes ? reuse : new State();
+			if(state != reuse) {
+				state.setShared(model);
+				state.topics = new int[model.data.size()][];
+				for (int doc = 0; doc < state.topics.length; doc++) {
+					state.topics[doc] = new int[(int) (state.offsets[doc + 1] - state.offsets[doc])];
+				}
+			}
+			for (int doc = 0; doc < state.topics.length; doc++) {
+				if(model.corpusStore != null) {
+					model.corpusStore.readTopics(doc, state.topics[doc]);
+				} else {
+					int [] docTopics = ((LabelSequence) model.data.get(doc).topicSequence).getFeatures();
+					System.arraycopy(docTopics, 0, state.topics[doc], 0, state.topics[doc].length);
+				}
+			}
+			// In single precision mode only the float matrices are copied
+			state.phi = model.floatPhi ? null : copy(model.phi, state.phi);
+			state.phiF = model.floatPhi ? copy(model.phiTF, state.phiF) : null;
+			state.phiMean = copy(model.phiMean, state.phiMean);
+			state.phiMeanF = copy(model.phiMeanF, state.phiMeanF);
+			state.alpha = model.alpha.clone();
+			state.topicDocCounts = copy(model.topicDocCounts, state.topicDocCounts);
+			state.setScalars(model);
+			return state;
+		}
+
+		void setShared(UncollapsedParallelLDA model) {
+			samplerClass = model.getClass().getName();
+			config = model.config;
+			data = model.data;
+			alphabet = model.alphabet;
+			targetAlphabet = model.targetAlphabet;
+			pipe = model.getDataset() != null ? model.getDataset().getPipe() : null;
+			numTopics = model.numTopics;
+			numTypes = model.numTypes;
+			offsets = new long[data.size() + 1];
+			for (int doc = 0; doc < data.size(); doc++) {
+				offsets[doc + 1] = offsets[doc] + ((FeatureSequence) data.get(doc).instance.getData()).getLength();
+			}
+		}
+
+		void setScalars(UncollapsedParallelLDA model) {
+			alphaSum = model.alphaSum;
+			beta = model.beta;
+			betaSum = model.betaSum;
+			phiBurnIn = model.phiBurnIn;
+			phiMeanThin = model.phiMeanThin;
+			noSampledPhi = model.noSampledPhi;
+			currentIteration = model.currentIteration;
+			startSeed = model.startSeed;
+			showTopicsInterval = model.showTopicsInterval;
+			wordsPerTopic = model.wordsPerTopic;
+			printLogLikelihood = model.printLogLikelihood;
+		}
+
+		static double [][] copy(double [][] src, double [][] dst) {
+			if(src == null) return null;
+			if(dst == null || dst.length != src.length) {
+				dst = new double[src.length][];
+			}
+			for (int row = 0; row < src.length; row++) {
+				if(dst[row] == null || dst[row].length != src[row].length) {
+					dst[row] = new double[src[row].length];
+				}
+				System.arraycopy(src[row], 0, dst[row], 0, src[row].length);
+			}
+			return dst;
+		}
+
+		static float [][] copy(float [][] src, float [][] dst) {
+			if(src == null) return null;
+			if(dst == null || dst.length != src.length) {
+				dst = new float[src.length][];
+			}
+			for (int row = 0; row < src.length; row++) {
+				if(dst[row] == null || dst[row].length != src[row].length) {
+					dst[row] = new float[src[row].length];
+				}
+				System.arraycopy(src[row], 0, dst[row], 0, src[row].length);
+			}
+			return dst;
+		}
+
+		static int [][] copy(int [][] src, int [][] dst) {
+			if(src == null) return null;
+			if(dst == null || dst.length != src.length) {
+				dst = new int[src.length][];
+			}
+			for (int row = 0; row < src.length; row++) {
+				if(dst[row] == null || dst[row].length != src[row].length) {
+					dst[row] = new int[src[row].length];
+				}
+				System.arraycopy(src[row], 0, dst[row], 0, src[row].length);
+			}
+			return dst;
+		}
+	}
+
+	/**
+	 * The pipe of restored instances when the original pipe was not stored. It
+	 * carries the alphabets but refuses to pipe new instances.
+	 */
+	static class AlphabetsOnlyPipe extends Noop {
+		private static final long serialVersionUID = 1L;
+
+		AlphabetsOnlyPipe(Alphabet dataAlphabet, Alphabet targetAlphabet) {
+			super(dataAlphabet, targetAlphabet);
+		}
+
+		@Override
+		public Instance pipe(Instance carrier) {
+			throw new UnsupportedOperationException("The pipe of the training instances was not stored in the checkpoint, "
+					+ "pipe new instances with the original pipe");
+		}
+	}
+
+	/**
+	 * The contents of the META section
+	 */
+	static class Metadata {
+		final String samplerClass;
+		final LDAConfiguration config;
+		final int numTopics;
+		final int numTypes;
+		final int numDocs;
+		final double [] alpha;
+		final double alphaSum;
+		final double beta;
+		final double betaSum;
+		final int phiBurnIn;
+		final int phiMeanThin;
+		final int noSampledPhi;
+		final int currentIteration;
+		final int startSeed;
+		final int showTopicsInterval;
+		final int wordsPerTopic;
+		final boolean printLogLikelihood;
+		final int phiMeanKind;
+		final int [][] topicDocCounts;
+		final Alphabet alphabet;
+		final LabelAlphabet targetAlphabet;
+		// Null if the pipe of the training instances was not stored
+		final Pipe pipe;
+		final String [] names;
+		final int [] labels;
+
+		Metadata(DataInputStream in) throws IOException {
+			samplerClass = in.readUTF();
+			int configKind = in.readInt();
+			if(configKind == PARSED_CONFIG) {
+				String cfgFile = in.readUTF();
+				String activeSubconfig = in.readBoolean() ? in.readUTF() : null;
+				config = UncollapsedParallelLDA.readParsedConfiguration(cfgFile, activeSubconfig);
+				if(config == null) {
+					throw new IOException("Could not read the configuration " + cfgFile + " of the checkpoint");
+				}
+			} else {
+				config = (LDAConfiguration) readObject(in);
+			}
+
+			numTopics = in.readInt();
+			numTypes = in.readInt();
+			numDocs = in.readInt();
+			alpha = new double[in.readInt()];
+			for (int topic = 0; topic < alpha.length; topic++) {
+				alpha[topic] = in.readDouble();
+			}
+			alphaSum = in.readDouble();
+			beta = in.readDouble();
+			betaSum = in.readDouble();
+			phiBurnIn = in.readInt();
+			phiMeanThin = in.readInt();
+			noSampledPhi = in.readInt();
+			currentIteration = in.readInt();
+			startSeed = in.readInt();
+			showTopicsInterval = in.readInt();
+			wordsPerTopic = in.readInt();
+			printLogLikelihood = in.readBoolean();
+			phiMeanKind = in.readInt();
+
+			int rows = in.readInt();
+			topicDocCounts = rows < 0 ? null : new int[rows][];
+			for (int row = 0; row < rows; row++) {
+				topicDocCounts[row] = new int[in.readInt()];
+				for (int i = 0; i < topicDocCounts[row].length; i++) {
+					topicDocCounts[row][i] = in.readInt();
+				}
+			}
+
+			Object [] alphabets = (Object []) readObject(in);
+			alphabet = (Alphabet) alphabets[0];
+			targetAlphabet = (LabelAlphabet) alphabets[1];
+			// Only the alphabets are stored if the pipe was not serializable
+			Pipe storedPipe = alphabets.length > 2 ? (Pipe) alphabets[2] : null;
+			// The instances are built on the sampler alphabet, a pipe with another one could not take them
+			pipe = storedPipe != null && storedPipe.getDataAlphabet() == alphabet ? storedPipe : null;
+			names = new String[numDocs];
+			labels = new int[numDocs];
+			for (int doc = 0; doc < numDocs; doc++) {
+				names[doc] = in.readBoolean() ? in.readUTF() : null;
+				labels[doc] = in.readInt();
+			}
+		}
+
+		UncollapsedParallelLDA createSampler() throws IOException {
+			try {
+				return Class.forName(samplerClass).asSubclass(UncollapsedParallelLDA.class)
+						.getConstructor(LDAConfiguration.class).newInstance(config);
+			} catch (ReflectiveOperationException | ClassCastException e) {
+				throw new IOException("Could not create sampler " + samplerClass + " from checkpoint", e);
+			}
+		}
+
+		/**
+		 * Sets the hyperparameters and bookkeeping that addInstances() and
+		 * setZIndicators() do not derive from the data
+		 */
+		void restore(UncollapsedParallelLDA model) {
+			model.alpha = alpha;
+			model.alphaSum = alphaSum;
+			model.beta = beta;
+			model.betaSum = betaSum;
+			model.phiBurnIn = phiBurnIn;
+			model.phiMeanThin = phiMeanThin;
+			model.noSampledPhi = noSampledPhi;
+			model.currentIteration = currentIteration;
+			// With reproducible_sampling the resumed sampler seeds each iteration as the original did
+			model.setRandomSeed(startSeed);
+			model.showTopicsInterval = showTopicsInterval;
+			model.wordsPerTopic = wordsPerTopic;
+			model.printLogLikelihood = printLogLikelihood;
+			if(topicDocCounts != null) {
+				model.topicDocCounts = topicDocCounts;
+			}
+		}
+	}
+}
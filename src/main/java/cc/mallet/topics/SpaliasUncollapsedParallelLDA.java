@@ -1,13 +1,11 @@
 package cc.mallet.topics;
 
 import java.util.concurrent.Callable;
-import java.util.concurrent.ThreadLocalRandom;
 
 import cc.mallet.configuration.LDAConfiguration;
-import cc.mallet.types.FeatureSequence;
 import cc.mallet.types.InstanceList;
-import cc.mallet.types.LabelSequence;
 import cc.mallet.util.OptimizedGentleAliasMethod;
+import cc.mallet.util.SamplerRandom;
 import cc.mallet.util.WalkerAliasTable;
 
 
@@ -18,6 +16,11 @@ public class SpaliasUncollapsedParallelLDA extends SparseUncollapsedSampler impl
 	public SpaliasUncollapsedParallelLDA(LDAConfiguration config) {
 		super(config);
 	}
+
+	@Override
+	protected boolean supportsFloatPhi() {
+		return true;
+	}
 	
 	@Override
 	public void addInstances(InstanceList training) {
@@ -35,8 +38,20 @@ public class SpaliasUncollapsedParallelLDA extends SparseUncollapsedSampler impl
 		public WalkerAliasTableBuildResult call() {
 			double [] probs = new double[numTopics];
 			double typeMass = 0; // Type prior mass
-			for (int topic = 0; topic < numTopics; topic++) {
-				typeMass += probs[topic] = phi[topic][type] * alpha[topic];
+			if(phiTF!=null) {
+				float [] phiType = phiTF[type];
+				for (int topic = 0; topic < numTopics; topic++) {
+					typeMass += probs[topic] = phiType[topic] * alpha[topic];
+				}
+			} else if(phiT!=null) {
+				double [] phiType = phiT[type];
+				for (int topic = 0; topic < numTopics; topic++) {
+					typeMass += probs[topic] = phiType[topic] * alpha[topic];
+				}
+			} else {
+				for (int topic = 0; topic < numTopics; topic++) {
+					typeMass += probs[topic] = phi[topic][type] * alpha[topic];
+				}
 			}
 			
 			if(aliasTables[type]==null) {
@@ -54,33 +69,40 @@ public class SpaliasUncollapsedParallelLDA extends SparseUncollapsedSampler impl
 		return new PhiAlphaParallelTableBuilder(type);
 	}
 
+	@Override
+	protected boolean supportsColumnarCorpus() {
+		// Subclasses have their own document samplers
+		return getClass() == SpaliasUncollapsedParallelLDA.class;
+	}
+
 	@Override
 	protected LDADocSamplingResult sampleTopicAssignmentsParallel(LDADocSamplingContext ctx) {
-		FeatureSequence tokens = ctx.getTokens();
-		LabelSequence topics = ctx.getTopics();
+		// The topic indicators start at offset, in the topic sequence or the corpus store
+		int offset = ctx.getTopicOffset();
 		int myBatch = ctx.getMyBatch();
 		
 		int type, oldTopic, newTopic;
 
-		final int docLength = tokens.getLength();
-		if(docLength==0) return new LDADocSamplingResultSparseSimple(new int[0],0,new int[0]);
+		final int docLength = ctx.getDocLength();
+		if(docLength==0) return LDADocSamplingResultSparseSimple.EMPTY;
 		
-		int [] tokenSequence = tokens.getFeatures();
-		int [] oneDocTopics = topics.getFeatures();
+		int [] tokenSequence = ctx.getTokenArray();
+		TopicIndicatorArray oneDocTopics = ctx.getTopicIndicators();
 
-		int[] localTopicCounts = new int[numTopics];
+		DocSamplingScratch scratch = getDocSamplingScratch();
+		int[] localTopicCounts = scratch.localTopicCounts();
 
 		// This vector contains the indices of the topics with non-zero entries.
 		// It has to be numTopics long since the non-zero topics come and go...
-		int [] nonZeroTopics = new int[numTopics];
+		int [] nonZeroTopics = scratch.nonZeroTopics;
 
 		// So we can map back from a topic to where it is in nonZeroTopics vector
-		int [] nonZeroTopicsBackMapping = new int[numTopics];
+		int [] nonZeroTopicsBackMapping = scratch.nonZeroTopicsBackMapping;
 		
 		// Populate topic counts
 		int nonZeroTopicCnt = 0;
 		for (int position = 0; position < docLength; position++) {
-			int topicInd = oneDocTopics[position];
+			int topicInd = oneDocTopics.get(offset + position);
 			localTopicCounts[topicInd]++;
 			if(localTopicCounts[topicInd]==1) {
 				nonZeroTopicCnt = insert(topicInd, nonZeroTopics, nonZeroTopicsBackMapping, nonZeroTopicCnt);
@@ -91,12 +113,12 @@ public class SpaliasUncollapsedParallelLDA extends SparseUncollapsedSampler impl
 		kdDensities.addAndGet(nonZeroTopicCnt);
 		
 		double sum; // sigma_likelihood
-		double[] cumsum = new double[numTopics]; 
+		double[] cumsum = scratch.cumsum;
 
 		//	Iterate over the words in the document
 		for (int position = 0; position < docLength; position++) {
 			type = tokenSequence[position];
-			oldTopic = oneDocTopics[position]; // z_position
+			oldTopic = oneDocTopics.get(offset + position); // z_position
 			localTopicCounts[oldTopic]--;
 
 			// Potentially update nonZeroTopics mapping
@@ -119,17 +141,17 @@ public class SpaliasUncollapsedParallelLDA extends SparseUncollapsedSampler impl
 
 			// The special case when we have a one-word long document
 			if(nonZeroTopicCnt==0) {
-				double[] topicTermScores = new double[numTopics];
+				double[] topicTermScores = scratch.topicTermScores;
 				sum = 0.0;
 				
-				double score = phi[0][type];
+				double score = phiValue(0, type);
 				topicTermScores[0] = score;
 				for (int topic = 1; topic < numTopics; topic++) {
-					score += phi[topic][type];
+					score += phiValue(topic, type);
 					topicTermScores[topic] = score;
 				}
 				// Choose a random point between 0 and the sum of all topic scores
-				double sample = random.nextUniform() * score;
+				double sample = SamplerRandom.current().nextDouble() * score;
 
 				// Figure out which topic contains that point
 				newTopic = -1;
@@ -138,26 +160,15 @@ public class SpaliasUncollapsedParallelLDA extends SparseUncollapsedSampler impl
 					sample -= topicTermScores[newTopic];
 				}
 			} else {
-				// Take the first non-zero topic (i.e at index 0)
-				int topic = nonZeroTopics[0];
-				double score = localTopicCounts[topic] * phi[topic][type];
-				cumsum[0] = score;
 				// Now calculate and add up the scores for each topic for this word
 				// We build a cumsum indexed by topicIndex
-				int topicIdx = 1;
-				while ( topicIdx < nonZeroTopicCnt ) {
-					topic = nonZeroTopics[topicIdx];
-					score = localTopicCounts[topic] * phi[topic][type];
-					cumsum[topicIdx] = score + cumsum[topicIdx-1];
-					topicIdx++;
-				}
-				sum = cumsum[topicIdx-1]; // sigma_likelihood
+				sum = calcCumSum(type, localTopicCounts, nonZeroTopics, nonZeroTopicCnt, cumsum); // sigma_likelihood
 
 				// Choose a random point between 0 and the sum of all topic scores
 				// The thread local random performs better in concurrent situations 
 				// than the standard random which is thread safe and incurs lock 
 				// contention
-				double u = ThreadLocalRandom.current().nextDouble();
+				double u = SamplerRandom.current().nextDouble();
 				double u_sigma = u * (typeNorm[type] + sum);
 				// u ~ U(0,1)  
 				// u [0,1]
@@ -177,7 +188,7 @@ public class SpaliasUncollapsedParallelLDA extends SparseUncollapsedSampler impl
 			}
 
 			// Put that new topic into the counts
-			oneDocTopics[position] = newTopic;
+			oneDocTopics.set(offset + position, newTopic);
 			localTopicCounts[newTopic]++;
 
 			// Potentially update nonZeroTopics mapping
@@ -195,6 +206,6 @@ public class SpaliasUncollapsedParallelLDA extends SparseUncollapsedSampler impl
 			//System.out.println("(Batch=" + myBatch + ") Incremented: topic=" + newTopic + " type=" + type + " => " + batchLocalTopicUpdates[myBatch][newTopic][type]);		
 		}
 		//System.out.println("Ratio: " + ((double)numPrior/(double)numLikelihood));
-		return new LDADocSamplingResultSparseSimple(localTopicCounts,nonZeroTopicCnt,nonZeroTopics);
+		return scratch.sparseResult(nonZeroTopicCnt);
 	}
 }
@@ -10,7 +10,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.ThreadLocalRandom;
 
 import cc.mallet.configuration.LDAConfiguration;
 import cc.mallet.topics.randomscan.topic.AllWordsTopicIndexBuilder;
@@ -19,6 +18,7 @@ import cc.mallet.types.FeatureSequence;
 import cc.mallet.types.InstanceList;
 import cc.mallet.types.LabelSequence;
 import cc.mallet.util.LDALoggingUtils;
+import cc.mallet.util.SamplerRandom;
 import cc.mallet.util.WalkerAliasTable;
 
 
@@ -38,6 +38,12 @@ implements LDASamplerWithPhi, LDASamplerWithTopicPriors, LDASamplerWithDocumentP
 		super(config);
 	}
 
+	// The prior weighted scores read phi directly
+	@Override
+	protected boolean supportsFloatPhi() {
+		return false;
+	}
+
 	@Override
 	public void addInstances (InstanceList training) {
 		alphabet = training.getDataAlphabet();
@@ -162,7 +168,7 @@ implements LDASamplerWithPhi, LDASamplerWithTopicPriors, LDASamplerWithDocumentP
 			// The thread local random performs better in concurrent situations 
 			// than the standard random which is thread safe and incurs lock 
 			// contention
-			double u = ThreadLocalRandom.current().nextDouble();
+			double u = SamplerRandom.current().nextDouble();
 			double u_sigma = u * (typeNorm[type] + sum);
 			// u ~ U(0,1)  
 			// u [0,1]
@@ -222,7 +228,7 @@ implements LDASamplerWithPhi, LDASamplerWithTopicPriors, LDASamplerWithDocumentP
 	public void loopOverTopics(int [] indices, int[][] topicTypeIndices, double[][] phiMatrix) {
 		long beforeSamplePhi = System.currentTimeMillis();		
 		for (int topic : indices) {
-			int [] relevantTypeTopicCounts = topicTypeCountMapping[topic]; 
+			int [] relevantTypeTopicCounts = countStore.topicRow(topic); 
 			// Generates a standard array to feed to the Dirichlet constructor
 			// from the dictionary representation. 
 			if(topicTypeIndices==null && !haveTopicPriors ) {
@@ -261,9 +267,7 @@ implements LDASamplerWithPhi, LDASamplerWithTopicPriors, LDASamplerWithDocumentP
 				phiMatrix[topic] = newPhi;
 			}
 			if(savePhiMeans() && samplePhiThisIteration()) {
-				for (int phi = 0; phi < phiMatrix[topic].length; phi++) {
-					phiMean[topic][phi] += phiMatrix[topic][phi];
-				}
+				addToPhiMean(topic, phiMatrix[topic]);
 			}
 		}
 		long elapsedMillis = System.currentTimeMillis();
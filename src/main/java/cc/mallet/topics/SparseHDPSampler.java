@@ -17,6 +17,18 @@ public abstract class SparseHDPSampler extends PolyaUrnSpaliasLDA implements HDP
 	public SparseHDPSampler(LDAConfiguration config) {
 		super(config);
 	}
+
+	// The HDP samplers read phi directly and sample only some of its rows
+	@Override
+	protected boolean supportsFloatPhi() {
+		return false;
+	}
+
+	// The topic occurrence and active topic histories are not part of a SamplerCheckpoint
+	@Override
+	protected boolean canCheckpoint() {
+		return false;
+	}
 	
 	public int[] getTopicOcurrenceCount() {
 		return topicOcurrenceCount;
@@ -4,8 +4,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 import cc.mallet.configuration.LDAConfiguration;
@@ -18,7 +16,6 @@ public abstract class SparseUncollapsedSampler extends UncollapsedParallelLDA {
 
 	WalkerAliasTable [] aliasTables; 
 	double [] typeNorm; // Array with doubles with sum of alpha * phi
-	transient ExecutorService tableBuilderExecutor;
 
 	boolean staticPhiAliasTableIsBuild = false;
 
@@ -27,20 +24,6 @@ public abstract class SparseUncollapsedSampler extends UncollapsedParallelLDA {
 		super(config);
 	}
 
-	@Override
-	public void preSample() {
-		super.preSample();
-		int poolSize = 2; // Parallel alias table pool (why 2?)
-		tableBuilderExecutor = Executors.newFixedThreadPool(Math.max(1, poolSize));
-	}
-
-	@Override
-	public void preContinuedSampling() {
-		super.preContinuedSampling();
-		int poolSize = 2; // Parallel alias table pool (why 2?)
-		tableBuilderExecutor = Executors.newFixedThreadPool(Math.max(1, poolSize));
-	}
-
 	@Override
 	public void preIteration() {
 		doPreIterationTableBuilding();
@@ -55,18 +38,6 @@ public abstract class SparseUncollapsedSampler extends UncollapsedParallelLDA {
 		}
 	}
 
-	@Override
-	public void postSample() {
-		super.postSample();
-		tableBuilderExecutor.shutdown();
-	}
-
-	@Override
-	public void postContinuedSampling() {
-		super.postContinuedSampling();
-		tableBuilderExecutor.shutdown();
-	}
-
 	protected abstract Callable<WalkerAliasTableBuildResult> getAliasTableBuilder(int type);
 
 	protected void doPreIterationTableBuilding() {
@@ -89,7 +60,7 @@ public abstract class SparseUncollapsedSampler extends UncollapsedParallelLDA {
 
 		List<Future<WalkerAliasTableBuildResult>> results;
 		try {
-			results = tableBuilderExecutor.invokeAll(builders);
+			results = getSamplerPool().invokeAll(builders);
 			for (Future<WalkerAliasTableBuildResult> result : results) {
 				aliasTables[result.get().type] = result.get().table;
 				typeNorm[result.get().type] = result.get().typeNorm; // typeNorm is sigma_prior
@@ -135,6 +106,58 @@ public abstract class SparseUncollapsedSampler extends UncollapsedParallelLDA {
 		return newTopic;
 	}
 
+	/**
+	 * Builds the cumulative sum of localTopicCounts[topic] * phi[topic][type] over the 
+	 * non-zero topics of a document
+	 * 
+	 * @return The total sum (also cumsum[nonZeroTopicCnt-1])
+	 */
+	double calcCumSum(int type, int[] localTopicCounts, int[] nonZeroTopics, int nonZeroTopicCnt, double[] cumsum) {
+		if(phiTF!=null) {
+			// Single precision phi, the sum is still accumulated in double
+			float [] phiType = phiTF[type];
+			int topic = nonZeroTopics[0];
+			double score = localTopicCounts[topic] * (double) phiType[topic];
+			cumsum[0] = score;
+			int topicIdx = 1;
+			while ( topicIdx < nonZeroTopicCnt ) {
+				topic = nonZeroTopics[topicIdx];
+				score = localTopicCounts[topic] * (double) phiType[topic];
+				cumsum[topicIdx] = score + cumsum[topicIdx-1];
+				topicIdx++;
+			}
+			return cumsum[topicIdx-1];
+		}
+		if(phiT!=null) {
+			// All reads for this type are from one row
+			double [] phiType = phiT[type];
+			int topic = nonZeroTopics[0];
+			double score = localTopicCounts[topic] * phiType[topic];
+			cumsum[0] = score;
+			int topicIdx = 1;
+			while ( topicIdx < nonZeroTopicCnt ) {
+				topic = nonZeroTopics[topicIdx];
+				score = localTopicCounts[topic] * phiType[topic];
+				cumsum[topicIdx] = score + cumsum[topicIdx-1];
+				topicIdx++;
+			}
+			return cumsum[topicIdx-1];
+		}
+		int topic = nonZeroTopics[0];
+		double score = localTopicCounts[topic] * phi[topic][type];
+		cumsum[0] = score;
+		// Now calculate and add up the scores for each topic for this word
+		// We build a cumsum indexed by topicIndex
+		int topicIdx = 1;
+		while ( topicIdx < nonZeroTopicCnt ) {
+			topic = nonZeroTopics[topicIdx];
+			score = localTopicCounts[topic] * phi[topic][type];
+			cumsum[topicIdx] = score + cumsum[topicIdx-1];
+			topicIdx++;
+		}
+		return cumsum[topicIdx-1];
+	}
+
 	double calcCumSum(int type, double[] localTopicCounts, int[] nonZeroTopics, int nonZeroTopicCnt, double[] cumsum) {
 		int topic = nonZeroTopics[0];
 		double score = localTopicCounts[topic] * phi[topic][type];
@@ -0,0 +1,175 @@
+package cc.mallet.topics;
+
+/**
+ * An array of topic indicators stored in the narrowest primitive type that can
+ * hold all topics: byte for up to 256 topics, short for up to 65536 topics and
+ * int otherwise. Topics are stored unsigned so a byte holds topics 0..255.
+ *
+ * Different threads can read and write different parts of the array concurrently.
+ */
+public abstract class TopicIndicatorArray {
+
+	public static final int MAX_BYTE_TOPICS = 1 << 8;
+	public static final int MAX_SHORT_TOPICS = 1 << 16;
+
+	/**
+	 * @return An array of <code>size</code> indicators in the narrowest encoding for <code>numTopics</code>
+	 */
+	public static TopicIndicatorArray forTopics(int numTopics, int size) {
+		if(numTopics <= MAX_BYTE_TOPICS) {
+			return new ByteIndicators(size);
+		} else if(numTopics <= MAX_SHORT_TOPICS) {
+			return new ShortIndicators(size);
+		} else {
+			return new IntIndicators(size);
+		}
+	}
+
+	/**
+	 * @return An array of indicators that reads and writes <code>topics</code>
+	 */
+	public static TopicIndicatorArray wrap(int [] topics) {
+		return new IntIndicators(topics);
+	}
+
+	/**
+	 * @return Number of bytes per indicator of the arrays forTopics() creates for <code>numTopics</code> topics
+	 */
+	public static int bytesPerIndicator(int numTopics) {
+		if(numTopics <= MAX_BYTE_TOPICS) {
+			return Byte.BYTES;
+		} else if(numTopics <= MAX_SHORT_TOPICS) {
+			return Short.BYTES;
+		} else {
+			return Integer.BYTES;
+		}
+	}
+
+	public abstract int size();
+
+	public abstract int get(int idx);
+
+	public abstract void set(int idx, int topic);
+
+	/**
+	 * @return Number of bytes used per topic indicator
+	 */
+	public abstract int bytesPerIndicator();
+
+	/**
+	 * Copies <code>count</code> indicators starting at <code>start</code> to the start of <code>dst</code>
+	 */
+	public void get(int start, int [] dst, int count) {
+		for (int i = 0; i < count; i++) {
+			dst[i] = get(start + i);
+		}
+	}
+
+	/**
+	 * Sets <code>count</code> indicators starting at <code>start</code> from the start of <code>src</code>
+	 */
+	public void set(int start, int [] src, int count) {
+		for (int i = 0; i < count; i++) {
+			set(start + i, src[i]);
+		}
+	}
+
+	static class ByteIndicators extends TopicIndicatorArray {
+		final byte [] topics;
+
+		ByteIndicators(int size) {
+			topics = new byte[size];
+		}
+
+		@Override
+		public int size() {
+			return topics.length;
+		}
+
+		@Override
+		public int get(int idx) {
+			return topics[idx] & 0xFF;
+		}
+
+		@Override
+		public void set(int idx, int topic) {
+			topics[idx] = (byte) topic;
+		}
+
+		@Override
+		public int bytesPerIndicator() {
+			return Byte.BYTES;
+		}
+	}
+
+	static class ShortIndicators extends TopicIndicatorArray {
+		final short [] topics;
+
+		ShortIndicators(int size) {
+			topics = new short[size];
+		}
+
+		@Override
+		public int size() {
+			return topics.length;
+		}
+
+		@Override
+		public int get(int idx) {
+			return topics[idx] & 0xFFFF;
+		}
+
+		@Override
+		public void set(int idx, int topic) {
+			topics[idx] = (short) topic;
+		}
+
+		@Override
+		public int bytesPerIndicator() {
+			return Short.BYTES;
+		}
+	}
+
+	static class IntIndicators extends TopicIndicatorArray {
+		// Not final so a sampling context can point one instance at each document in turn
+		int [] topics;
+
+		IntIndicators(int size) {
+			topics = new int[size];
+		}
+
+		IntIndicators(int [] topics) {
+			this.topics = topics;
+		}
+
+		@Override
+		public int size() {
+			return topics.length;
+		}
+
+		@Override
+		public int get(int idx) {
+			return topics[idx];
+		}
+
+		@Override
+		public void set(int idx, int topic) {
+			topics[idx] = topic;
+		}
+
+		@Override
+		public int bytesPerIndicator() {
+			return Integer.BYTES;
+		}
+
+		@Override
+		public void get(int start, int [] dst, int count) {
+			System.arraycopy(topics, start, dst, 0, count);
+		}
+
+		@Override
+		public void set(int start, int [] src, int count) {
+			System.arraycopy(src, 0, topics, start, count);
+		}
+	}
+}
@@ -0,0 +1,168 @@
+package cc.mallet.topics;
+
+import java.util.Arrays;
+
+/**
+ * The type-topic counts (the sufficient statistic for phi) stored once, topic major.
+ *
+ * Each topic is a contiguous <code>int[numTypes]</code> row, which is handed out
+ * as is (no copy) to the phi samplers. Code that needs the counts of one type
+ * over all topics (alias table building, likelihood) reads them through
+ * {@link TypeCounts}, a strided view over the same rows.
+ *
+ * Like the matrices it replaces, the store is not synchronized. Concurrent
+ * updates are only safe if the threads work on disjoint sets of topics.
+ */
+public class TopicTypeCountStore {
+
+	final int numTypes;
+	final int [][] topicRows;
+
+	public TopicTypeCountStore(int numTopics, int numTypes) {
+		this(new int[numTopics][numTypes], numTypes);
+	}
+
+	TopicTypeCountStore(int [][] topicRows, int numTypes) {
+		this.numTypes = numTypes;
+		this.topicRows = topicRows;
+	}
+
+	/**
+	 * Creates a store backed by a topic major matrix, [topic][type], as returned
+	 * by topicRows(). The matrix is not copied
+	 */
+	public static TopicTypeCountStore wrapTopicRows(int [][] topicRows, int numTypes) {
+		return new TopicTypeCountStore(topicRows, numTypes);
+	}
+
+	/**
+	 * Creates a store from a type major matrix, [type][topic]
+	 */
+	public static TopicTypeCountStore fromTypeTopicMatrix(int [][] typeTopicCounts, int numTopics, int numTypes) {
+		TopicTypeCountStore store = new TopicTypeCountStore(numTopics, numTypes);
+		for (int type = 0; type < numTypes; type++) {
+			for (int topic = 0; topic < numTopics; topic++) {
+				store.topicRows[topic][type] = typeTopicCounts[type][topic];
+			}
+		}
+		return store;
+	}
+
+	public int numTopics() {
+		return topicRows.length;
+	}
+
+	public int numTypes() {
+		return numTypes;
+	}
+
+	public int get(int topic, int type) {
+		return topicRows[topic][type];
+	}
+
+	/**
+	 * Adds <code>delta</code> to the count of (topic,type)
+	 *
+	 * @return The new count
+	 */
+	public int add(int topic, int type, int delta) {
+		return topicRows[topic][type] += delta;
+	}
+
+	/**
+	 * @return The counts of all types in <code>topic</code>, this is the backing row
+	 * not a copy and must not be modified by the caller
+	 */
+	public int [] topicRow(int topic) {
+		return topicRows[topic];
+	}
+
+	/**
+	 * @return The backing topic major matrix, [topic][type]
+	 */
+	public int [][] topicRows() {
+		return topicRows;
+	}
+
+	/**
+	 * @return A view of the counts of <code>type</code> over all topics
+	 */
+	public TypeCounts typeRow(int type) {
+		return new TypeCounts(type);
+	}
+
+	/**
+	 * Copies the counts of <code>type</code> into <code>target</code> which must
+	 * be at least numTopics long
+	 */
+	public int [] copyTypeRow(int type, int [] target) {
+		for (int topic = 0; topic < topicRows.length; topic++) {
+			target[topic] = topicRows[topic][type];
+		}
+		return target;
+	}
+
+	/**
+	 * @return A newly allocated type major copy of the counts, [type][topic]
+	 */
+	public int [][] toTypeTopicMatrix() {
+		return copyToTypeTopicMatrix(new int[numTypes][topicRows.length]);
+	}
+
+	/**
+	 * Copies the counts type major, [type][topic], into <code>target</code>
+	 * which must be at least numTypes x numTopics
+	 */
+	public int [][] copyToTypeTopicMatrix(int [][] target) {
+		for (int topic = 0; topic < topicRows.length; topic++) {
+			int [] row = topicRows[topic];
+			for (int type = 0; type < numTypes; type++) {
+				target[type][topic] = row[type];
+			}
+		}
+		return target;
+	}
+
+	public void swapTopics(int topic1, int topic2) {
+		int [] tmp = topicRows[topic1];
+		topicRows[topic1] = topicRows[topic2];
+		topicRows[topic2] = tmp;
+	}
+
+	/**
+	 * Moves the counts of <code>oldTopic</code> to <code>newTopic</code> and
+	 * fills <code>oldTopic</code> with <code>resetValue</code>
+	 */
+	public void moveTopic(int oldTopic, int newTopic, int resetValue) {
+		topicRows[newTopic] = topicRows[oldTopic];
+		topicRows[oldTopic] = new int[numTypes];
+		if(resetValue!=0) {
+			Arrays.fill(topicRows[oldTopic], resetValue);
+		}
+	}
+
+	public void clear() {
+		for (int [] row : topicRows) {
+			Arrays.fill(row, 0);
+		}
+	}
+
+	/**
+	 * Zero-copy view of the counts of one type over all topics
+	 */
+	public class TypeCounts {
+		final int type;
+
+		TypeCounts(int type) {
+			this.type = type;
+		}
+
+		public int get(int topic) {
+			return topicRows[topic][type];
+		}
+
+		public int length() {
+			return topicRows.length;
+		}
+	}
+}
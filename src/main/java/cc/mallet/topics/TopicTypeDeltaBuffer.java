@@ -0,0 +1,114 @@
+package cc.mallet.topics;
+
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+/**
+ * A sparse, thread private record of the changes one document sampling
+ * worker makes to the type-topic counts during an iteration.
+ *
+ * The changes are kept in primitive hash maps keyed on (topic,type) and
+ * are bucketed on topic so that the merge into the global counts can be
+ * done in parallel, one partition per thread, without two threads ever
+ * touching the same topic.
+ *
+ * A buffer is only written by its owning thread during Z sampling and only
+ * read (and cleared) during the count update, so no synchronization is needed.
+ */
+public class TopicTypeDeltaBuffer {
+
+	final Long2IntOpenHashMap [] partitions;
+
+	public TopicTypeDeltaBuffer(int noPartitions) {
+		partitions = new Long2IntOpenHashMap[noPartitions];
+		for (int i = 0; i < partitions.length; i++) {
+			partitions[i] = new Long2IntOpenHashMap();
+			partitions[i].defaultReturnValue(0);
+		}
+	}
+
+	public static long key(int topic, int type) {
+		return (((long) topic) << 32) | (type & 0xFFFFFFFFL);
+	}
+
+	public static int topic(long key) {
+		return (int) (key >>> 32);
+	}
+
+	public static int type(long key) {
+		return (int) key;
+	}
+
+	public static int partition(int topic, int noPartitions) {
+		return topic % noPartitions;
+	}
+
+	public int noPartitions() {
+		return partitions.length;
+	}
+
+	public void add(int topic, int type, int delta) {
+		partitions[partition(topic, partitions.length)].addTo(key(topic, type), delta);
+	}
+
+	public void increment(int topic, int type) {
+		add(topic, type, 1);
+	}
+
+	public void decrement(int topic, int type) {
+		add(topic, type, -1);
+	}
+
+	/**
+	 * Adds the changes in partition <code>partition</code> to <code>target</code>
+	 * and clears that partition in this buffer. The capacity of the partition
+	 * is kept so it can be re-used in the next iteration without re-allocation.
+	 *
+	 * @param partition The partition to drain
+	 * @param target The map to add the changes to
+	 */
+	public void drainPartition(int partition, Long2IntOpenHashMap target) {
+		Long2IntOpenHashMap source = partitions[partition];
+		if(source.isEmpty()) return;
+		ObjectIterator<Long2IntMap.Entry> entries = source.long2IntEntrySet().fastIterator();
+		while(entries.hasNext()) {
+			Long2IntMap.Entry entry = entries.next();
+			int delta = entry.getIntValue();
+			if(delta!=0) {
+				target.addTo(entry.getLongKey(), delta);
+			}
+		}
+		source.clear();
+	}
+
+	/**
+	 * @return The number of (topic,type) cells recorded in this buffer
+	 */
+	public long size() {
+		long size = 0;
+		for (Long2IntOpenHashMap partition : partitions) {
+			size += partition.size();
+		}
+		return size;
+	}
+
+	/**
+	 * @return The net sum over all recorded changes, a consistent buffer sums to zero
+	 */
+	public long deltaSum() {
+		long sum = 0;
+		for (Long2IntOpenHashMap partition : partitions) {
+			for (int delta : partition.values()) {
+				sum += delta;
+			}
+		}
+		return sum;
+	}
+
+	public void clear() {
+		for (Long2IntOpenHashMap partition : partitions) {
+			partition.clear();
+		}
+	}
+}
@@ -1,6 +1,7 @@
 package cc.mallet.topics;
 
 import java.util.concurrent.Callable;
+import java.util.function.IntUnaryOperator;
 
 import cc.mallet.util.OptimizedGentleAliasMethodDynamicSize;
 import cc.mallet.util.WalkerAliasTable;
@@ -9,21 +10,37 @@ class TypeTopicParallelTableBuilder implements Callable<WalkerAliasTableBuildRes
 	int type;
 	int [] nonZeroTypeTopicCnt;
 	int [][] nonZeroTypeTopics;
-	int [][] typeTopicCounts;
+	// Count of this type in a given topic
+	IntUnaryOperator topicCounts;
 	double [] topicCountBetaHat;
 	WalkerAliasTable [] aliasTables;
 	int numTopics;
 	
 	public TypeTopicParallelTableBuilder(int type, int[] nonZeroTypeTopicCnt, int[][] nonZeroTypeTopics, 
 			int[][] typeTopicCounts, double[] topicCountBetaHat, WalkerAliasTable[] aliasTables, int numTopics) {
+		this(type, nonZeroTypeTopicCnt, nonZeroTypeTopics, rowOf(typeTopicCounts[type]), topicCountBetaHat, aliasTables, numTopics);
+	}
+
+	public TypeTopicParallelTableBuilder(int type, int[] nonZeroTypeTopicCnt, int[][] nonZeroTypeTopics, 
+			TopicTypeCountStore.TypeCounts typeCounts, double[] topicCountBetaHat, WalkerAliasTable[] aliasTables, int numTopics) {
+		this(type, nonZeroTypeTopicCnt, nonZeroTypeTopics, (IntUnaryOperator) typeCounts::get, topicCountBetaHat, aliasTables, numTopics);
+	}
+
+	TypeTopicParallelTableBuilder(int type, int[] nonZeroTypeTopicCnt, int[][] nonZeroTypeTopics, 
+			IntUnaryOperator topicCounts, double[] topicCountBetaHat, WalkerAliasTable[] aliasTables, int numTopics) {
 		this.type = type;
 		this.nonZeroTypeTopicCnt = nonZeroTypeTopicCnt;
 		this.nonZeroTypeTopics = nonZeroTypeTopics;
-		this.typeTopicCounts = typeTopicCounts;
+		this.topicCounts = topicCounts;
 		this.topicCountBetaHat = topicCountBetaHat;
 		this.aliasTables = aliasTables;
 		this.numTopics = numTopics;
 	}
+
+	static IntUnaryOperator rowOf(int [] typeCounts) {
+		return topic -> typeCounts[topic];
+	}
+
 	@Override
 	public WalkerAliasTableBuildResult call() {
 		/* Nonsparse solution
@@ -39,7 +56,7 @@ class TypeTopicParallelTableBuilder implements Callable<WalkerAliasTableBuildRes
 		// Iterate over nonzero topic indicators
 		double typeMass = 0.0;
 		for (int i = 0; i < nonZeroTypeTopicCnt[type]; i++) {
-			typeMass += probs[i] = typeTopicCounts[type][nonZeroTypeTopics[type][i]] / topicCountBetaHat[nonZeroTypeTopics[type][i]];
+			typeMass += probs[i] = topicCounts.applyAsInt(nonZeroTypeTopics[type][i]) / topicCountBetaHat[nonZeroTypeTopics[type][i]];
 		}
 		
 		if(aliasTables[type]==null) {
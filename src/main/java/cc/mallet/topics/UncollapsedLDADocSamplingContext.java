@@ -8,6 +8,14 @@ public class UncollapsedLDADocSamplingContext implements LDADocSamplingContext {
 	LabelSequence topics;
 	int myBatch;
 	int docIdx = -1;
+	// Set when the topic indicators of the document are a range in a corpus store
+	TopicIndicatorArray topicIndicators;
+	int topicOffset;
+	// Points at the features of the topic sequence otherwise
+	final TopicIndicatorArray.IntIndicators sequenceIndicators = new TopicIndicatorArray.IntIndicators(null);
+	// Set when the token types of the document are copied from a corpus store
+	int [] tokenArray;
+	int docLength;
 	
 	public UncollapsedLDADocSamplingContext(FeatureSequence tokens, LabelSequence topics, int myBatch, int docIdx) {
 		super();
@@ -72,4 +80,46 @@ public class UncollapsedLDADocSamplingContext implements LDADocSamplingContext {
 	public void setDocIdx(int docId) {
 		this.docIdx = docId;
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Points the topic indicators of the context at the range of <code>topicIndicators</code>
+	 * starting at <code>topicOffset</code>, null uses the topic sequence
+	 */
+	public void setTopicIndicators(TopicIndicatorArray topicIndicators, int topicOffset) {
+		this.topicIndicators = topicIndicators;
+		this.topicOffset = topicOffset;
+	}
+
+	@Override
+	public TopicIndicatorArray getTopicIndicators() {
+		if(topicIndicators != null) {
+			return topicIndicators;
+		}
+		sequenceIndicators.topics = topics.getFeatures();
+		return sequenceIndicators;
+	}
+
+	@Override
+	public int getTopicOffset() {
+		return topicIndicators != null ? topicOffset : 0;
+	}
+
+	/**
+	 * Sets the token types of the document to the first <code>docLength</code>
+	 * entries of <code>tokenArray</code>, null uses the tokens
+	 */
+	public void setTokenArray(int [] tokenArray, int docLength) {
+		this.tokenArray = tokenArray;
+		this.docLength = docLength;
+	}
+
+	@Override
+	public int [] getTokenArray() {
+		return tokenArray != null ? tokenArray : tokens.getFeatures();
+	}
+
+	@Override
+	public int getDocLength() {
+		return tokenArray != null ? docLength : tokens.getLength();
+	}
+}
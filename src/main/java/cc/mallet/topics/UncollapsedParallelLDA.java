@@ -16,6 +16,7 @@ import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.text.NumberFormat;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -29,15 +30,17 @@ import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RecursiveAction;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
 import java.util.logging.Level;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
@@ -48,6 +51,7 @@ import cc.mallet.configuration.LDAConfiguration;
 import cc.mallet.configuration.ParsedLDAConfiguration;
 import cc.mallet.topics.randomscan.document.BatchBuilderFactory;
 import cc.mallet.topics.randomscan.document.DocumentBatchBuilder;
+import cc.mallet.topics.randomscan.document.TokenBalancedBatchBuilder;
 import cc.mallet.topics.randomscan.topic.TopicBatchBuilder;
 import cc.mallet.topics.randomscan.topic.TopicBatchBuilderFactory;
 import cc.mallet.topics.randomscan.topic.TopicIndexBuilder;
@@ -63,17 +67,22 @@ import cc.mallet.types.InstanceList;
 import cc.mallet.types.LabelAlphabet;
 import cc.mallet.types.LabelSequence;
 import cc.mallet.types.SparseDirichlet;
+import cc.mallet.util.AsyncDumpWriter;
 import cc.mallet.util.FileLoggingUtils;
 import cc.mallet.util.IndexSorter;
 import cc.mallet.util.LDALoggingUtils;
-import cc.mallet.util.LDAThreadFactory;
 import cc.mallet.util.LDAUtils;
+import cc.mallet.util.LogGammaTable;
 import cc.mallet.util.LoggingUtils;
 import cc.mallet.util.ReMappedAliasTable;
+import cc.mallet.util.SamplerRandom;
 import cc.mallet.util.Stats;
 import cc.mallet.util.WalkerAliasTable;
 import gnu.trove.TIntIntHashMap;
 import gnu.trove.TIntIntProcedure;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
 
 
 public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibbsSampler, LDASamplerWithPhi, LDASamplerContinuable, LDASamplerWithCallback {
@@ -106,16 +115,57 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 
 	AtomicInteger [][] batchLocalTopicTypeUpdates;
 
+	// When set, each document sampling thread records its count changes in a private
+	// sparse buffer instead of in the shared batchLocalTopicTypeUpdates matrix
+	protected boolean threadLocalCountUpdates = false;
+	// Number of topic partitions the thread local buffers are split in, one merge task per partition
+	int noCountUpdatePartitions = 1;
+	transient ThreadLocal<TopicTypeDeltaBuffer> workerDeltaBuffers;
+	transient List<TopicTypeDeltaBuffer> workerDeltaBufferRegistry;
+	transient Long2IntOpenHashMap [] mergedDeltaBuffers;
+
+	// When set, the fork/join document sampler splits the corpus on the cumulative 
+	// number of tokens (documentTokenPrefixSum) rather than on the number of documents
+	protected boolean tokenBalancedScheduling = false;
+	transient ConcurrentHashMap<Long, AtomicLong> workerTokenCounts = new ConcurrentHashMap<>();
+	double workerTokenImbalance = 1.0;
+
+	// Re-usable per worker thread arrays, context and result for document sampling
+	transient ThreadLocal<DocSamplingScratch> docSamplingScratch = new ThreadLocal<DocSamplingScratch>();
+
+	// When set, a type major copy of phi (phiT[type][topic]) is kept next to phi so 
+	// that the Z samplers and alias table builders, which read all topics for one 
+	// type, read consecutive memory. It is rebuilt every time phi is re-sampled
+	protected boolean typeMajorPhi = false;
+	protected double [][] phiT;
+	// When set, phi is only kept as a type major float matrix (phiTF), which the Z 
+	// samplers and alias table builders read. The phi samplers draw each topic row 
+	// in double into a per worker scratch row (phiScratchRow) and narrow it into 
+	// its column of phiTF right away, so the rows of phi are null and getPhi() 
+	// returns a copy. phiMean is then kept in single precision too (phiMeanF), 
+	// each sampled row is added to it in double
+	protected boolean floatPhi = false;
+	protected float [][] phiTF;
+	protected float [][] phiMeanF;
+	transient ThreadLocal<double []> phiScratchRow = new ThreadLocal<double []>();
+
+	// When set, the random numbers of each document (z sampling) and topic (phi 
+	// sampling) are seeded from startSeed and the iteration, see SamplerRandom
+	protected boolean reproducibleSampling = false;
+
 	long corpusWordCount = 0;
 
-	// Matrix M of topic-token assignments
-	// We keep this since we often want fast access to a whole topic
-	protected int [][] topicTypeCountMapping;
+	// Matrix M of topic-token assignments, stored topic major since we often 
+	// want fast access to a whole topic. This is the only copy of the counts, 
+	// typeTopicCounts from the superclass is not used
+	protected TopicTypeCountStore countStore;
 	protected Integer	noTopicBatches;
 	protected boolean	debug;
-	private ForkJoinPool documentSamplerPool;
-	private ExecutorService	phiSamplePool;
-	private ExecutorService	topicUpdaters;
+	// One pool runs all the parallel phases of an iteration (Z sampling, count 
+	// merging, phi sampling and alias table building). The phases are run one 
+	// after the other from the sampling thread so they never compete for it
+	private ForkJoinPool samplerPool;
+	protected int numThreads;
 
 	protected TopicIndexBuilder topicIndexBuilder;
 
@@ -142,10 +192,49 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 
 	transient private IterationListener iterListener;
 
+	// Cached logGamma(alpha_k + n), logGamma(alphaSum + n) and logGamma(beta + n) 
+	// for small n used by modelLogLikelihood
+	static final int LOG_GAMMA_DOC_TABLE_MAX_SIZE = 1 << 10;
+	static final int LOG_GAMMA_TYPE_TABLE_SIZE = 1 << 16;
+	static final int LIKELIHOOD_DOC_BLOCK_SIZE = 1000;
+	static final int LIKELIHOOD_CELL_BLOCK_SIZE = 1 << 16;
+	protected transient LogGammaTable [] alphaLogGammas;
+	protected transient LogGammaTable alphaSumLogGammas;
+	protected transient LogGammaTable betaLogGammas;
+	// Keeps the log likelihood up to date from the count changes
+	protected boolean trackLogLikelihood = false;
+	protected transient IncrementalLogLikelihood likelihoodTracker;
+	// likelihood.txt, open from the first likelihood logged until the sampling ends
+	protected transient PrintWriter likelihoodLog;
+	// With columnar_corpus, narrow_topic_indicators or mapped_corpus_dir the samplers
+	// that support it keep the topic indicators in a CorpusStore only, the topic 
+	// sequences of data are then null and getData() builds them from the store
+	protected boolean useColumnarCorpus = false;
+	protected boolean useNarrowTopicIndicators = false;
+	protected String mappedCorpusDirectory;
+	protected transient CorpusStore corpusStore;
+	// The order the document samplers visit the documents in (document_order), 
+	// null for input order. Only the visiting order changes, data is never permuted
+	protected String documentOrderName = LDAConfiguration.DOCUMENT_ORDER_DEFAULT;
+	protected transient int [] documentOrder;
+	protected transient long [] documentOrderTokenPrefixSum;
+	// Write a checkpoint in the background every checkpointInterval iterations
+	// (checkpoint_interval), 0 disables checkpointing
+	protected int checkpointInterval = LDAConfiguration.CHECKPOINT_INTERVAL_DEFAULT;
+	protected transient AsyncCheckpointer checkpointer;
+	// Write phi dumps in the sparse format of SparseMatrixFile (sparse_phi_output)
+	protected boolean sparsePhiOutput = LDAConfiguration.SPARSE_PHI_OUTPUT_DEFAULT;
+	protected int phiQuantizationBits = LDAConfiguration.PHI_QUANTIZATION_BITS_DEFAULT;
+	// Write the per-iteration dumps on a background thread with at most 
+	// dumpQueueSize pending dumps (dump_queue_size), 0 writes them synchronously
+	protected int dumpQueueSize = LDAConfiguration.DUMP_QUEUE_SIZE_DEFAULT;
+	protected transient AsyncDumpWriter dumpWriter;
+
 	public UncollapsedParallelLDA(LDAConfiguration config) {
 		super(config);
 
-		documentSamplerPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		numThreads = configuredNumThreads(config);
+		samplerPool = new ForkJoinPool(numThreads);
 
 		// With job stealing we can only have one global z / counts timing
 		zTimings = new long[1];
@@ -187,6 +276,29 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 				* config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT)); 
 		phiMeanThin  = config.getPhiMeanThin(LDAConfiguration.PHI_THIN_DEFAULT);
 		hyperparameterOptimizationInterval = config.getHyperparamOptimInterval(LDAConfiguration.HYPERPARAM_OPTIM_INTERVAL_DEFAULT);
+		threadLocalCountUpdates = config.useThreadLocalCountUpdates(LDAConfiguration.THREAD_LOCAL_COUNT_UPDATES_DEFAULT);
+		noCountUpdatePartitions = Math.max(1, Math.min(numTopics, numThreads));
+		typeMajorPhi = config.useTypeMajorPhi(LDAConfiguration.TYPE_MAJOR_PHI_DEFAULT);
+		floatPhi = config.useFloatPhi(LDAConfiguration.FLOAT_PHI_DEFAULT);
+		reproducibleSampling = config.useReproducibleSampling(LDAConfiguration.REPRODUCIBLE_SAMPLING_DEFAULT);
+		tokenBalancedScheduling = config.useTokenBalancedScheduling(LDAConfiguration.TOKEN_BALANCED_SCHEDULING_DEFAULT);
+		trackLogLikelihood = config.useIncrementalLogLikelihood(LDAConfiguration.INCREMENTAL_LOGLIKELIHOOD_DEFAULT);
+		useColumnarCorpus = config.useColumnarCorpus(LDAConfiguration.COLUMNAR_CORPUS_DEFAULT);
+		mappedCorpusDirectory = config.getMappedCorpusDirectory(LDAConfiguration.MAPPED_CORPUS_DIR_DEFAULT);
+		useNarrowTopicIndicators = config.useNarrowTopicIndicators(LDAConfiguration.NARROW_TOPIC_INDICATORS_DEFAULT);
+		documentOrderName = config.getDocumentOrder(LDAConfiguration.DOCUMENT_ORDER_DEFAULT);
+		checkpointInterval = config.getCheckpointInterval(LDAConfiguration.CHECKPOINT_INTERVAL_DEFAULT);
+		sparsePhiOutput = config.useSparsePhiOutput(LDAConfiguration.SPARSE_PHI_OUTPUT_DEFAULT);
+		phiQuantizationBits = config.getPhiQuantizationBits(LDAConfiguration.PHI_QUANTIZATION_BITS_DEFAULT);
+		dumpQueueSize = config.getDumpQueueSize(LDAConfiguration.DUMP_QUEUE_SIZE_DEFAULT);
+		if(checkpointInterval > 0 && !canCheckpoint()) {
+			logger.warning(getClass().getSimpleName() + " does not support checkpoints, ignoring checkpoint_interval");
+			checkpointInterval = 0;
+		}
+		if(floatPhi && !supportsFloatPhi()) {
+			logger.warning(getClass().getSimpleName() + " reads phi directly, ignoring float_phi");
+			floatPhi = false;
+		}
 	}
 
 	public int[][] getTopIndices() {
@@ -197,15 +309,18 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 	public long getCorpusSize() { return corpusWordCount;	}
 
 
+	/**
+	 * @return A newly allocated type major copy of the counts, the sampler itself
+	 * reads the counts through countStore
+	 */
 	@Override
 	public int[][] getTypeTopicCounts() { 
-		int [][] tTCounts = new int[numTypes][numTopics];
-		for (int topic = 0; topic < numTopics; topic++) {
-			for (int type = 0; type < topicTypeCountMapping[topic].length; type++) {
-				tTCounts[type][topic] = topicTypeCountMapping[topic][type];
-			}
-		}
-		return tTCounts;	
+		return countStore.toTypeTopicMatrix();	
+	}
+
+	@Override
+	public int[][] getTypeTopicMatrix() {
+		return countStore.toTypeTopicMatrix();
 	}
 
 	public void debugPrintMMatrix() {
@@ -271,6 +386,10 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 	}
 
 
+	public void ensureConsistentTopicTypeCounts(TopicTypeCountStore counts, int[] tokensPerTopic) {
+		ensureConsistentTopicTypeCounts(counts.topicRows(), counts.toTypeTopicMatrix(), tokensPerTopic);
+	}
+
 	public void ensureConsistentTopicTypeCounts(int [][] topicTypeCounts, int[][] typeTopicCounts, int[] tokensPerTopic) {
 		long sumtotalTypeTopic = 0;
 		int [] typeTopicTTCount = new int [numTopics]; 
@@ -314,7 +433,7 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 
 	public void ensureTTEquals() {
 		int sumTTCounts1 = sum(getTypeTopicCounts());
-		int sumTTCounts2 = sum(typeTopicCounts);
+		int sumTTCounts2 = sum(countStore.topicRows());
 		int sumTopicTotalCounts = sum(getTopicTotals());
 
 		if(sumTTCounts1 != sumTTCounts2)
@@ -335,22 +454,19 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 		targetAlphabet = training.getTargetAlphabet();
 		numTypes = alphabet.size();
 		typeCounts = new int[numTypes];
-		batchLocalTopicTypeUpdates = new AtomicInteger[numTopics][numTypes];
-		for (int i = 0; i < batchLocalTopicTypeUpdates.length; i++) {
-			for (int j = 0; j < batchLocalTopicTypeUpdates[i].length; j++) {
-				batchLocalTopicTypeUpdates[i][j] = new AtomicInteger();
-			}
-		}
+		initTopicTypeUpdates();
 		dirichletSampler = createDirichletSampler();
 
 		// Initializing fields needed to sample phi
 		betaSum = beta * numTypes;
-		topicTypeCountMapping = new int [numTopics][numTypes];
-		// Transpose of the above
-		typeTopicCounts       = new int [numTypes][numTopics];
+		countStore = new TopicTypeCountStore(numTopics, numTypes);
 
 		Map<Integer,Integer> docLenCnts = new java.util.HashMap<Integer, Integer>();
 
+		initCorpusStore(training);
+		// With a corpus store the initial topics are drawn into one re-used array 
+		// and written to the store
+		int [] storeTopics = new int[0];
 		int docIdx = 0;
 		// Looping over the new instances to initialize the topic assignment randomly
 		for (Instance instance : training) {
@@ -366,10 +482,17 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 			docLenCnts.put(docLength,docLenCnts.get(docLength) + 1);
 
 			corpusWordCount += docLength;
-			LabelSequence topicSequence =
-					new LabelSequence(topicAlphabet, new int[ docLength ]);
-
-			int[] topics = topicSequence.getFeatures();
+			LabelSequence topicSequence = null;
+			int[] topics;
+			if(corpusStore != null) {
+				if(storeTopics.length < docLength) {
+					storeTopics = new int[docLength];
+				}
+				topics = storeTopics;
+			} else {
+				topicSequence = new LabelSequence(topicAlphabet, new int[ docLength ]);
+				topics = topicSequence.getFeatures();
+			}
 			for (int position = 0; position < docLength; position++) {
 				// Sampling a random topic assignment
 				int topic = initialDrawTopicIndicator(docIdx);
@@ -380,6 +503,9 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 				updateTypeTopicCount(type, topic, 1);
 			}
 
+			if(corpusStore != null) {
+				corpusStore.writeTopics(docIdx, topics);
+			}
 			//debugPrintDoc(data.size(),tokens.getFeatures(),topicSequence.getFeatures());
 			TopicAssignment t = new TopicAssignment (instance, topicSequence);
 			data.add (t);
@@ -414,9 +540,9 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 		typeFrequencyCumSum = calcTypeFrequencyCumSum(typeFrequencyIndex,typeCounts);
 
 		// Initialize the distribution of words in topics, phi, to the prior value
-		phi = new double[numTopics][numTypes];
+		phi = floatPhi ? new double[numTopics][] : new double[numTopics][numTypes];
 		if(savePhiMeans()) {
-			phiMean = new double[numTopics][numTypes];
+			initPhiMean();
 		}
 		// Sample up the initial Phi Matrix according to random initialization
 		int [] topicIndices = new int[numTopics];
@@ -424,13 +550,171 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 			topicIndices[i] = i;
 		}
 		initialSamplePhi(topicIndices, phi);
+		updateTypeMajorPhi();
 
+		updateDocumentTokenPrefixSum();
 		bb = BatchBuilderFactory.get(config, this);
 		bb.calculateBatch();
 		tbb = TopicBatchBuilderFactory.get(config, this);
 		topicIndexBuilder = TopicIndexBuilderFactory.get(config,this);
 	}
 
+	/**
+	 * Creates the store for the topic indicators of <code>training</code>: memory 
+	 * mapped files if mapped_corpus_dir is set, a CompactCorpus if 
+	 * narrow_topic_indicators is turned on or a ColumnarCorpus if columnar_corpus 
+	 * is turned on, if the document sampler of this class can work on it
+	 */
+	protected void initCorpusStore(InstanceList training) {
+		corpusStore = null;
+		if(!useColumnarCorpus && !useNarrowTopicIndicators && mappedCorpusDirectory == null) return;
+		if(!supportsColumnarCorpus()) {
+			logger.warning(getClass().getSimpleName() + " does not support a columnar corpus, using the per document topic sequences");
+			return;
+		}
+		if(mappedCorpusDirectory != null) {
+			try {
+				MappedCorpus mappedCorpus = MappedCorpus.create(new File(mappedCorpusDirectory), training, numTopics);
+				logger.info("Mapping " + mappedCorpus.bytesPerIndicator() + " byte topic indicators for " + numTopics + " topics in " + mappedCorpus.getDirectory());
+				corpusStore = mappedCorpus;
+			} catch (IOException e) {
+				e.printStackTrace();
+				throw new IllegalArgumentException(e);
+			}
+		} else if(useNarrowTopicIndicators) {
+			CompactCorpus compactCorpus = CompactCorpus.forDocuments(training, numTopics);
+			logger.info("Using " + compactCorpus.getTopicIndicators().bytesPerIndicator() + " byte topic indicators for " + numTopics + " topics");
+			corpusStore = compactCorpus;
+		} else {
+			corpusStore = ColumnarCorpus.forDocuments(training);
+		}
+	}
+
+	/**
+	 * Computes the order the document samplers visit the documents in if 
+	 * document_order is set to anything else than input order
+	 */
+	protected void initDocumentOrder() {
+		documentOrder = DocumentOrder.forName(documentOrderName, data, numTypes);
+		if(documentOrder != null) {
+			documentOrderTokenPrefixSum = DocumentOrder.tokenPrefixSum(data, documentOrder);
+			logger.info("Sampling documents in " + documentOrderName + " order");
+		}
+	}
+
+	/**
+	 * @return The document indices in the order they are sampled, null for input order
+	 */
+	public int [] getDocumentOrder() {
+		if(documentOrder == null || documentOrder.length != data.size()) {
+			initDocumentOrder();
+		}
+		return documentOrder;
+	}
+
+	/**
+	 * @return true if sampleTopicAssignmentsParallel reads the document through 
+	 * getTokenArray(), getTopicIndicators() and getTopicOffset() of the context
+	 */
+	protected boolean supportsColumnarCorpus() {
+		return false;
+	}
+
+	/**
+	 * Writes the topic indicators in a memory mapped corpus to disk, done at the
+	 * end of sampling, at each periodic checkpoint and when the sampler is saved
+	 */
+	protected void flushCorpusStore() {
+		if(corpusStore != null) {
+			try {
+				corpusStore.flush();
+			} catch (IOException e) {
+				e.printStackTrace();
+				throw new RuntimeException(e);
+			}
+		}
+	}
+
+	public CorpusStore getCorpusStore() {
+		return corpusStore;
+	}
+
+	/**
+	 * @return The documents with their current topic indicators. With a corpus
+	 * store these are new TopicAssignments built from the store, changing their
+	 * topic sequences does not change the topic indicators of the sampler.
+	 */
+	@Override
+	public ArrayList<TopicAssignment> getData() {
+		if(corpusStore == null) {
+			return super.getData();
+		}
+		ArrayList<TopicAssignment> documents = new ArrayList<TopicAssignment>(data.size());
+		for (int doc = 0; doc < data.size(); doc++) {
+			documents.add(new TopicAssignment(data.get(doc).instance, getTopicSequence(doc)));
+		}
+		return documents;
+	}
+
+	@Override
+	protected LabelSequence getTopicSequence(int doc) {
+		if(corpusStore == null) {
+			return super.getTopicSequence(doc);
+		}
+		return new LabelSequence(topicAlphabet, corpusStore.getDocumentTopics(doc));
+	}
+
+	/**
+	 * @return The number of tokens in each topic of each of the first <code>noDocs</code> documents
+	 */
+	protected int [][] getDocumentTopicCounts(int noDocs) {
+		int [][] docTopicCounts = new int[noDocs][numTopics];
+		for (int doc = 0; doc < noDocs; doc++) {
+			LabelSequence topicSequence = getTopicSequence(doc);
+			for (int position = 0; position < topicSequence.getLength(); position++) {
+				docTopicCounts[doc][topicSequence.getIndexAtPosition(position)]++;
+			}
+		}
+		return docTopicCounts;
+	}
+
+	@Override
+	public int[][] getZIndicators() {
+		if(corpusStore == null) {
+			return super.getZIndicators();
+		}
+		int [][] indicators = new int[corpusStore.numDocs()][];
+		for (int doc = 0; doc < indicators.length; doc++) {
+			indicators[doc] = corpusStore.getDocumentTopics(doc);
+		}
+		return indicators;
+	}
+
+	/**
+	 * Sets up the structure that collects the type-topic count changes made 
+	 * during Z sampling. Either a shared numTopics x numTypes matrix of atomic 
+	 * counters or (if thread local count updates are configured) one sparse
+	 * buffer per document sampling thread, created lazily by each thread.
+	 */
+	protected void initTopicTypeUpdates() {
+		if(threadLocalCountUpdates) {
+			batchLocalTopicTypeUpdates = null;
+			workerDeltaBufferRegistry = new CopyOnWriteArrayList<>();
+			clearWorkerDeltaBuffers();
+			mergedDeltaBuffers = new Long2IntOpenHashMap[noCountUpdatePartitions];
+			for (int i = 0; i < mergedDeltaBuffers.length; i++) {
+				mergedDeltaBuffers[i] = new Long2IntOpenHashMap();
+			}
+		} else {
+			batchLocalTopicTypeUpdates = new AtomicInteger[numTopics][numTypes];
+			for (int i = 0; i < batchLocalTopicTypeUpdates.length; i++) {
+				for (int j = 0; j < batchLocalTopicTypeUpdates[i].length; j++) {
+					batchLocalTopicTypeUpdates[i][j] = new AtomicInteger();
+				}
+			}
+		}
+	}
+
 	int initialDrawTopicIndicator(int docIdx) {
 		if(haveDocumentPriors) {
 			int [] spec = documentPriors.get(docIdx);
@@ -464,32 +748,26 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 	 * @param count
 	 */
 	protected void updateTypeTopicCount(int type, int topic, int count) {
-		topicTypeCountMapping[topic][type] += count;
-		typeTopicCounts[type][topic] += count;
+		int newCount = countStore.add(topic, type, count);
 		tokensPerTopic[topic] += count;
-		if(topicTypeCountMapping[topic][type]<0) {
+		if(newCount<0) {
 			System.err.println("Emergency print!");
 			debugPrintMMatrix();
 			throw new IllegalArgumentException("Negative count for topic: " + topic 
-					+ "! Count: " + topicTypeCountMapping[topic][type] + " type:" 
+					+ "! Count: " + newCount + " type:" 
 					+ alphabet.lookupObject(type) + "(" + type + ") update:" + count);
 		}
 	}
 
 	protected void moveTopic(int oldTopic, int newTopic, int resetValue) {
-		topicTypeCountMapping[newTopic] = topicTypeCountMapping[oldTopic];
-		topicTypeCountMapping[oldTopic] = new int[numTypes];
-		if(resetValue!=0) {
-			Arrays.fill(topicTypeCountMapping[oldTopic], resetValue);
-		} 
+		countStore.moveTopic(oldTopic, newTopic, resetValue);
+		int [] newTopicCounts = countStore.topicRow(newTopic);
 		for(int type = 0; type < numTypes; type++) {
-			typeTopicCounts[type][newTopic] = typeTopicCounts[type][oldTopic];
-			typeTopicCounts[type][oldTopic] = resetValue;
-			if(topicTypeCountMapping[newTopic][type]<0) {
+			if(newTopicCounts[type]<0) {
 				System.err.println("Emergency print!");
 				debugPrintMMatrix();
 				throw new IllegalArgumentException("Negative count for topic: " + newTopic 
-						+ "! Count: " + topicTypeCountMapping[newTopic][type] + " type:" 
+						+ "! Count: " + newTopicCounts[type] + " type:" 
 						+ alphabet.lookupObject(type) + "(" + type + ")");
 			}
 		}
@@ -500,22 +778,20 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 		double [] tmpTopic = phi[newTopic];
 		phi[newTopic] = phi[oldTopic];
 		phi[oldTopic] = tmpTopic;
+		swapTypeMajorPhiTopics(oldTopic, newTopic);
+		// The tracker's per topic sums no longer match, rebuild it when next needed
+		likelihoodTracker = null;
 	}
 
 	protected void moveTopic(int oldTopic, int newTopic) {
-		int [] tmpMapping = topicTypeCountMapping[newTopic]; 
-		topicTypeCountMapping[newTopic] = topicTypeCountMapping[oldTopic];
-		topicTypeCountMapping[oldTopic] = tmpMapping;
+		countStore.swapTopics(oldTopic, newTopic);
+		int [] newTopicCounts = countStore.topicRow(newTopic);
 		for(int type = 0; type < numTypes; type++) {
-			int tmpVal = typeTopicCounts[type][newTopic];
-			typeTopicCounts[type][newTopic] = typeTopicCounts[type][oldTopic];
-			typeTopicCounts[type][oldTopic] = tmpVal;
-
-			if(topicTypeCountMapping[newTopic][type]<0) {
+			if(newTopicCounts[type]<0) {
 				System.err.println("Emergency print!");
 				debugPrintMMatrix();
 				throw new IllegalArgumentException("Negative count for topic: " + newTopic 
-						+ "! Count: " + topicTypeCountMapping[newTopic][type] + " type:" 
+						+ "! Count: " + newTopicCounts[type] + " type:" 
 						+ alphabet.lookupObject(type) + "(" + type + ")");
 			}
 		}
@@ -526,6 +802,29 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 		double [] tmpTopic = phi[newTopic];
 		phi[newTopic] = phi[oldTopic];
 		phi[oldTopic] = tmpTopic;
+		swapTypeMajorPhiTopics(oldTopic, newTopic);
+		// The tracker's per topic sums no longer match, rebuild it when next needed
+		likelihoodTracker = null;
+	}
+
+	/**
+	 * Swaps two topic columns in the type major copy of phi, if it is used
+	 */
+	protected void swapTypeMajorPhiTopics(int oldTopic, int newTopic) {
+		if(phiT!=null) {
+			for (int type = 0; type < numTypes; type++) {
+				double tmpPhi = phiT[type][newTopic];
+				phiT[type][newTopic] = phiT[type][oldTopic];
+				phiT[type][oldTopic] = tmpPhi;
+			}
+		}
+		if(phiTF!=null) {
+			for (int type = 0; type < numTypes; type++) {
+				float tmpPhi = phiTF[type][newTopic];
+				phiTF[type][newTopic] = phiTF[type][oldTopic];
+				phiTF[type][oldTopic] = tmpPhi;
+			}
+		}
 	}
 
 	/**
@@ -591,7 +890,7 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 		String tw = topWords (wordsPerTopic);
 		loglikelihood.add(logLik);
 
-		config.getLoggingUtil().getAppendingLogPrinter("likelihood.txt").println(0 + "\t" + logLik);
+		printLikelihood(0, logLik);
 
 		boolean logTypeTopicDensity = config.logTypeTopicDensity(LDAConfiguration.LOG_TYPE_TOPIC_DENSITY_DEFAULT);
 		boolean logDocumentDensity = config.logDocumentDensity(LDAConfiguration.LOG_DOCUMENT_DENSITY_DEFAULT);
@@ -609,21 +908,22 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 			evaluator = new MarginalProbEstimatorPlain(numTopics,
 					alpha, alphaSum,
 					beta,
-					typeTopicCounts, 
+					countStore, 
 					tokensPerTopic);
-			heldOutLL = evaluator.evaluateLeftToRight(testSet, numParticles, null);
+			evaluator.setSparse(true);
+			heldOutLL = evaluator.evaluateLeftToRight(testSet, numParticles, null, likelihoodPool());
 			PrintWriter holl = config.getLoggingUtil().getAppendingLogPrinter("test_held_out_log_likelihood.txt");
 			LDAUtils.heldOutLLToFile(holl, 0, heldOutLL, logger);
 			heldOutLoglikelihood.add(heldOutLL);
 		}
 
 		if(logTypeTopicDensity || logDocumentDensity || logPhiDensity) {
-			density = logTypeTopicDensity ? LDAUtils.calculateMatrixDensity(typeTopicCounts) : -1;
+			density = logTypeTopicDensity ? LDAUtils.calculateMatrixDensity(countStore.topicRows()) : -1;
 			docDensity = kdDensities.get() / (double) numTopics / data.size();
-			phiDensity = logPhiDensity ? LDAUtils.calculatePhiDensity(phi) : -1;
+			phiDensity = logPhiDensity ? phiDensity() : -1;
 
 			if(testSet != null) {
-				heldOutLL = evaluator.evaluateLeftToRight(testSet, numParticles, null);					
+				heldOutLL = evaluator.evaluateLeftToRight(testSet, numParticles, null, likelihoodPool());					
 			}
 
 			if(testSet!=null) {
@@ -644,148 +944,156 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 			System.out.println("Logged topic indicators for iteration: " + getCurrentIteration());
 		}
 
-		for (int iteration = 1; iteration <= iterations && !abort; iteration++) {
-			currentIteration = iteration;
-			if(hyperparameterOptimizationInterval > 1  && iteration % hyperparameterOptimizationInterval == 0) {
-				saveHistStats = true;
-			}
-			preIteration();
+		try {
+			for (int iteration = 1; iteration <= iterations && !abort; iteration++) {
+				currentIteration = iteration;
+				if(hyperparameterOptimizationInterval > 1  && iteration % hyperparameterOptimizationInterval == 0) {
+					saveHistStats = true;
+				}
+				preIteration();
 
-			// Saves timestamp
-			long iterationStart = System.currentTimeMillis();
-			for (int i = 0; i < zTimings.length; i++) {
-				zTimings[i] = iterationStart;
-			}
+				// Saves timestamp
+				long iterationStart = System.currentTimeMillis();
+				for (int i = 0; i < zTimings.length; i++) {
+					zTimings[i] = iterationStart;
+				}
 
-			// Sample z by dividing the corpus in batches
-			preZ();
-			loopOverBatches();
+				// Sample z by dividing the corpus in batches
+				preZ();
+				loopOverBatches();
 
-			long beforeSync = System.currentTimeMillis();
-			try {
-				updateCounts();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-			postZ();
-			long endTypeTopicUpdate = System.currentTimeMillis();
-			long zSamplingTokenUpdateTime = endTypeTopicUpdate - iterationStart;
-			logger.finer("Time for updating type-topic counts: " + 
-					(endTypeTopicUpdate - beforeSync) + "ms\t");
+				long beforeSync = System.currentTimeMillis();
+				try {
+					updateCounts();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+				postZ();
+				long endTypeTopicUpdate = System.currentTimeMillis();
+				long zSamplingTokenUpdateTime = endTypeTopicUpdate - iterationStart;
+				logger.finer("Time for updating type-topic counts: " + 
+						(endTypeTopicUpdate - beforeSync) + "ms\t");
 
-			// In the HDP the numTopics can change after the Z sampling 
-			if(testSet != null) {
-				evaluator = new MarginalProbEstimatorPlain(numTopics,
-						alpha, alphaSum,
-						beta,
-						typeTopicCounts, 
-						tokensPerTopic);
-			}
+				//long beforeSamplePhi = System.currentTimeMillis();
+				prePhi();
+				samplePhi();
+				postPhi();
 
-			//long beforeSamplePhi = System.currentTimeMillis();
-			prePhi();
-			samplePhi();
-			postPhi();
+				long elapsedMillis = System.currentTimeMillis();
+				long phiSamplingTime = elapsedMillis - endTypeTopicUpdate;
 
-			long elapsedMillis = System.currentTimeMillis();
-			long phiSamplingTime = elapsedMillis - endTypeTopicUpdate;
+				logger.finer("Time for sampling phi: " + phiSamplingTime + "ms\t");
 
-			logger.finer("Time for sampling phi: " + phiSamplingTime + "ms\t");
+				if (startDiagnostic > 0 && iteration >= startDiagnostic && printPhi) {
+					writePhi(iteration, loggingPath + "/phi");
+				}
+				if(output_interval.length == 2 && iteration >= output_interval[0] && iteration <= output_interval[1]) {
+					writePhi(iteration, binOutput.getAbsolutePath() + "/phi");
+					getDumpWriter().dumpBinaryIntMatrix(countStore::copyToTypeTopicMatrix, iteration, numTypes, numTopics, binOutput.getAbsolutePath() + "/N");
+					getDumpWriter().dumpBinaryIntMatrix(getDocumentTopicCounts(data.size()), iteration, data.size(), numTopics, binOutput.getAbsolutePath() + "/M");
+				}
 
-			if (startDiagnostic > 0 && iteration >= startDiagnostic && printPhi) {
-				LDAUtils.writeBinaryDoubleMatrix(phi, iteration, numTopics, numTypes, loggingPath + "/phi");	
-			}
-			if(output_interval.length == 2 && iteration >= output_interval[0] && iteration <= output_interval[1]) {
-				LDAUtils.writeBinaryDoubleMatrix(phi, iteration, numTopics, numTypes, binOutput.getAbsolutePath() + "/phi");
-				LDAUtils.writeBinaryIntMatrix(typeTopicCounts, iteration, numTypes, numTopics, binOutput.getAbsolutePath() + "/N");
-				LDAUtils.writeBinaryIntMatrix(LDAUtils.getDocumentTopicCounts(data, numTopics), iteration, data.size(), numTopics, binOutput.getAbsolutePath() + "/M");
-			}
+				logger.finer("\nIteration " + iteration + "\tTotal time: " + elapsedMillis + "ms\t");
+				logger.finer("--------------------");
 
-			logger.finer("\nIteration " + iteration + "\tTotal time: " + elapsedMillis + "ms\t");
-			logger.finer("--------------------");
+				// With the incremental tracker the likelihood is cheap enough to log every iteration
+				if(trackLogLikelihood && !(showTopicsInterval > 0 && iteration % showTopicsInterval == 0)) {
+					printLikelihood(iteration, getIncrementalLogLikelihood());
+				}
 
-			// Occasionally print more information
-			if (showTopicsInterval > 0 && iteration % showTopicsInterval == 0) {
+				// Occasionally print more information
+				if (showTopicsInterval > 0 && iteration % showTopicsInterval == 0) {
+
+					if(testSet != null) {
+						// In the HDP the numTopics can change after the Z sampling 
+						evaluator = new MarginalProbEstimatorPlain(numTopics,
+								alpha, alphaSum,
+								beta,
+								countStore, 
+								tokensPerTopic);
+						evaluator.setSparse(true);
+						heldOutLL = evaluator.evaluateLeftToRight(testSet, numParticles, null, likelihoodPool());
+						PrintWriter holl = config.getLoggingUtil().getAppendingLogPrinter("test_perplexity.txt");
+						LDAUtils.heldOutLLToFile(holl, iteration, heldOutLL, logger);
+						heldOutLoglikelihood.add(heldOutLL);
+					}
 
-				if(testSet != null) {
-					heldOutLL = evaluator.evaluateLeftToRight(testSet, numParticles, null);
-					PrintWriter holl = config.getLoggingUtil().getAppendingLogPrinter("test_perplexity.txt");
-					LDAUtils.heldOutLLToFile(holl, iteration, heldOutLL, logger);
-					heldOutLoglikelihood.add(heldOutLL);
-				}
+					logLik = currentLogLikelihood();	
+					tw = topWords (wordsPerTopic);
+					loglikelihood.add(logLik);
+					printLikelihood(iteration, logLik);
+					logger.info("<" + iteration + "> Log Likelihood: " + logLik);
+					logger.fine(tw);
+					if(logTypeTopicDensity || logDocumentDensity) {
+						density = logTypeTopicDensity ? LDAUtils.calculateMatrixDensity(countStore.topicRows()) : -1;
+						docDensity = kdDensities.get() / (double) numTopics / data.size();
+						phiDensity = logPhiDensity ? phiDensity() : -1;
+						if(testSet!=null) {
+							stats = new Stats(iteration, loggingPath, elapsedMillis, zSamplingTokenUpdateTime, phiSamplingTime, 
+									density, docDensity, zTimings, countTimings,phiDensity,heldOutLL);						
+						} else {
+							stats = new Stats(iteration, loggingPath, elapsedMillis, zSamplingTokenUpdateTime, phiSamplingTime, 
+									density, docDensity, zTimings, countTimings,phiDensity);
+						}
+						PrintWriter statsout = config.getLoggingUtil().getAppendingLogPrinter("stats.txt");
+						LDAUtils.logStatsToFile(stats,statsout);
+					}
 
-				logLik = modelLogLikelihood();	
-				tw = topWords (wordsPerTopic);
-				loglikelihood.add(logLik);
-				config.getLoggingUtil().getAppendingLogPrinter("likelihood.txt").println(iteration + "\t" + logLik);
-				logger.info("<" + iteration + "> Log Likelihood: " + logLik);
-				logger.fine(tw);
-				if(logTypeTopicDensity || logDocumentDensity) {
-					density = logTypeTopicDensity ? LDAUtils.calculateMatrixDensity(typeTopicCounts) : -1;
-					docDensity = kdDensities.get() / (double) numTopics / data.size();
-					phiDensity = logPhiDensity ? LDAUtils.calculatePhiDensity(phi) : -1;
-					if(testSet!=null) {
-						stats = new Stats(iteration, loggingPath, elapsedMillis, zSamplingTokenUpdateTime, phiSamplingTime, 
-								density, docDensity, zTimings, countTimings,phiDensity,heldOutLL);						
-					} else {
-						stats = new Stats(iteration, loggingPath, elapsedMillis, zSamplingTokenUpdateTime, phiSamplingTime, 
-								density, docDensity, zTimings, countTimings,phiDensity);
+					// WARNING: This will SUBSTANTIALLY slow down the sampler
+					if(config.logTopicIndicators(false)) {
+						logTopicIndicators();
+						System.out.println("Logged topic indicators for iteration: " + getCurrentIteration());
 					}
-					PrintWriter statsout = config.getLoggingUtil().getAppendingLogPrinter("stats.txt");
-					LDAUtils.logStatsToFile(stats,statsout);
-				}
 
-				// WARNING: This will SUBSTANTIALLY slow down the sampler
-				if(config.logTopicIndicators(false)) {
-					logTopicIndicators();
-					System.out.println("Logged topic indicators for iteration: " + getCurrentIteration());
+					if(logTokensPerTopics) {
+						getDumpWriter().dumpIntRowArray(tokensPerTopic, iteration, loggingPath +  "/tokens_per_topic.csv");
+					}
 				}
 
-				if(logTokensPerTopics) {
-					LDAUtils.writeIntRowArray(tokensPerTopic, loggingPath +  "/tokens_per_topic.csv");
+				if( printFirstNDocs.length > 1 && LDAUtils.inRangeInterval(iteration, printFirstNDocs)) {
+					int [][] docTopicCounts = getDocumentTopicCounts(nDocs);
+					double [][] theta = LDAUtils.drawDirichlets(docTopicCounts);
+					getDumpWriter().dumpBinaryDoubleMatrix(theta, iteration, theta.length, theta[0].length, binOutput.getAbsolutePath() + "/Theta_DxK", false);
 				}
-			}
-
-			if( printFirstNDocs.length > 1 && LDAUtils.inRangeInterval(iteration, printFirstNDocs)) {
-				int [][] docTopicCounts = LDAUtils.getDocumentTopicCounts(data, numTopics, nDocs);
-				double [][] theta = LDAUtils.drawDirichlets(docTopicCounts);
-				LDAUtils.writeBinaryDoubleMatrix(theta, iteration, binOutput.getAbsolutePath() + "/Theta_DxK");				
-			}
-			if( printFirstNTopWords.length > 1 && LDAUtils.inRangeInterval(iteration, printFirstNTopWords)) {
-				// Assign these once
-				if(topIndices==null) {
-					topIndices = LDAUtils.getTopWordIndices(nWords, numTypes, numTopics, typeTopicCounts, alphabet);
+				if( printFirstNTopWords.length > 1 && LDAUtils.inRangeInterval(iteration, printFirstNTopWords)) {
+					// Assign these once
+					if(topIndices==null) {
+						topIndices = LDAUtils.getTopWordIndices(nWords, numTypes, numTopics, countStore, alphabet);
+					}
+					writeTopPhi(iteration, binOutput.getAbsolutePath() + "/Phi_KxV", topIndices);
 				}
-				LDAUtils.writeBinaryDoubleMatrixIndices(phi, iteration, binOutput.getAbsolutePath() + "/Phi_KxV", topIndices);
-			}
 
-			if( hyperparameterOptimizationInterval > 1 && iteration % hyperparameterOptimizationInterval == 0) {
-				optimizeAlpha();
-				optimizeBeta();
+				if( hyperparameterOptimizationInterval > 1 && iteration % hyperparameterOptimizationInterval == 0) {
+					optimizeAlpha();
+					optimizeBeta();
 
-				// Reset counts
-				for (int i = 0; i < documentTopicHistogram.length; i++) {
-					for (int j = 0; j < documentTopicHistogram[i].length; j++) {
-						documentTopicHistogram[i][j].set(0);
+					// Reset counts
+					for (int i = 0; i < documentTopicHistogram.length; i++) {
+						for (int j = 0; j < documentTopicHistogram[i].length; j++) {
+							documentTopicHistogram[i][j].set(0);
+						}
 					}
+					saveHistStats = false;
 				}
-				saveHistStats = false;
-			}
 
-			kdDensities.set(0);
+				kdDensities.set(0);
 
-			postIteration();
+				postIteration();
+				checkpointIfDue();
 
-			if(iterListener!=null) {
-				iterListener.iterationCallback(this);
-			}
+				if(iterListener!=null) {
+					iterListener.iterationCallback(this);
+				}
 
-			if(abortFile.exists()) {
-				abort();
-			}
+				if(abortFile.exists()) {
+					abort();
+				}
 
-			long iterEnd = System.currentTimeMillis();
-			logger.finer("Iteration "+ currentIteration + " took: " + (iterEnd-iterationStart) + " milliseconds...");
+				long iterEnd = System.currentTimeMillis();
+				logger.finer("Iteration "+ currentIteration + " took: " + (iterEnd-iterationStart) + " milliseconds...");
+			}
+		} finally {
+			finishBackgroundIO();
 		}
 
 		postSample();
@@ -820,7 +1128,7 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 		double logLik = modelLogLikelihood();	
 		String tw = topWords (wordsPerTopic);
 		loglikelihood.add(logLik);
-		config.getLoggingUtil().getAppendingLogPrinter("likelihood.txt").println(currentIteration + "\t" + logLik);
+		printLikelihood(currentIteration, logLik);
 
 		boolean logTypeTopicDensity = config.logTypeTopicDensity(LDAConfiguration.LOG_TYPE_TOPIC_DENSITY_DEFAULT);
 		boolean logDocumentDensity = config.logDocumentDensity(LDAConfiguration.LOG_DOCUMENT_DENSITY_DEFAULT);
@@ -838,21 +1146,22 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 			evaluator = new MarginalProbEstimatorPlain(numTopics,
 					alpha, alphaSum,
 					beta,
-					typeTopicCounts, 
+					countStore, 
 					tokensPerTopic);
-			heldOutLL = evaluator.evaluateLeftToRight(testSet, numParticles, null);
+			evaluator.setSparse(true);
+			heldOutLL = evaluator.evaluateLeftToRight(testSet, numParticles, null, likelihoodPool());
 			PrintWriter holl = config.getLoggingUtil().getAppendingLogPrinter("test_held_out_log_likelihood.txt");
 			LDAUtils.heldOutLLToFile(holl, 0, heldOutLL, logger);
 			heldOutLoglikelihood.add(heldOutLL);
 		}
 
 		if(logTypeTopicDensity || logDocumentDensity || logPhiDensity) {
-			density = logTypeTopicDensity ? LDAUtils.calculateMatrixDensity(typeTopicCounts) : -1;
+			density = logTypeTopicDensity ? LDAUtils.calculateMatrixDensity(countStore.topicRows()) : -1;
 			docDensity = kdDensities.get() / (double) numTopics / data.size();
-			phiDensity = logPhiDensity ? LDAUtils.calculatePhiDensity(phi) : -1;
+			phiDensity = logPhiDensity ? phiDensity() : -1;
 
 			if(testSet != null) {
-				heldOutLL = evaluator.evaluateLeftToRight(testSet, numParticles, null);					
+				heldOutLL = evaluator.evaluateLeftToRight(testSet, numParticles, null, likelihoodPool());					
 			}
 
 			if(testSet!=null) {
@@ -873,144 +1182,152 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 			System.out.println("Logged topic indicators for iteration: " + getCurrentIteration());
 		}
 
-		for (int iteration = 1; iteration <= iterations && !abort; iteration++) {
-			currentIteration++;
-			if(hyperparameterOptimizationInterval > 1  && iteration % hyperparameterOptimizationInterval == 0) {
-				saveHistStats = true;
-			}
-			preIteration();
+		try {
+			for (int iteration = 1; iteration <= iterations && !abort; iteration++) {
+				currentIteration++;
+				if(hyperparameterOptimizationInterval > 1  && iteration % hyperparameterOptimizationInterval == 0) {
+					saveHistStats = true;
+				}
+				preIteration();
 
-			// Saves timestamp
-			long iterationStart = System.currentTimeMillis();
-			for (int i = 0; i < zTimings.length; i++) {
-				zTimings[i] = iterationStart;
-			}
+				// Saves timestamp
+				long iterationStart = System.currentTimeMillis();
+				for (int i = 0; i < zTimings.length; i++) {
+					zTimings[i] = iterationStart;
+				}
 
-			// Sample z by dividing the corpus in batches
-			preZ();
-			loopOverBatches();
+				// Sample z by dividing the corpus in batches
+				preZ();
+				loopOverBatches();
 
-			long beforeSync = System.currentTimeMillis();
-			try {
-				updateCounts();
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
-			postZ();
-			long endTypeTopicUpdate = System.currentTimeMillis();
-			long zSamplingTokenUpdateTime = endTypeTopicUpdate - iterationStart;
-			logger.finer("Time for updating type-topic counts: " + 
-					(endTypeTopicUpdate - beforeSync) + "ms\t");
+				long beforeSync = System.currentTimeMillis();
+				try {
+					updateCounts();
+				} catch (InterruptedException e) {
+					e.printStackTrace();
+				}
+				postZ();
+				long endTypeTopicUpdate = System.currentTimeMillis();
+				long zSamplingTokenUpdateTime = endTypeTopicUpdate - iterationStart;
+				logger.finer("Time for updating type-topic counts: " + 
+						(endTypeTopicUpdate - beforeSync) + "ms\t");
 
-			// In the HDP the numTopics can change after the Z sampling 
-			if(testSet != null) {
-				evaluator = new MarginalProbEstimatorPlain(numTopics,
-						alpha, alphaSum,
-						beta,
-						typeTopicCounts, 
-						tokensPerTopic);
-			}
+				//long beforeSamplePhi = System.currentTimeMillis();
+				prePhi();
+				samplePhi();
+				postPhi();
 
-			//long beforeSamplePhi = System.currentTimeMillis();
-			prePhi();
-			samplePhi();
-			postPhi();
+				long elapsedMillis = System.currentTimeMillis();
+				long phiSamplingTime = elapsedMillis - endTypeTopicUpdate;
 
-			long elapsedMillis = System.currentTimeMillis();
-			long phiSamplingTime = elapsedMillis - endTypeTopicUpdate;
+				logger.finer("Time for sampling phi: " + phiSamplingTime + "ms\t");
 
-			logger.finer("Time for sampling phi: " + phiSamplingTime + "ms\t");
+				if (startDiagnostic > 0 && iteration >= startDiagnostic && printPhi) {
+					writePhi(iteration, loggingPath + "/phi");
+				}
+				if(output_interval.length == 2 && iteration >= output_interval[0] && iteration <= output_interval[1]) {
+					writePhi(iteration, binOutput.getAbsolutePath() + "/phi");
+					getDumpWriter().dumpBinaryIntMatrix(countStore::copyToTypeTopicMatrix, iteration, numTypes, numTopics, binOutput.getAbsolutePath() + "/N");
+					getDumpWriter().dumpBinaryIntMatrix(getDocumentTopicCounts(data.size()), iteration, data.size(), numTopics, binOutput.getAbsolutePath() + "/M");
+				}
 
-			if (startDiagnostic > 0 && iteration >= startDiagnostic && printPhi) {
-				LDAUtils.writeBinaryDoubleMatrix(phi, iteration, numTopics, numTypes, loggingPath + "/phi");	
-			}
-			if(output_interval.length == 2 && iteration >= output_interval[0] && iteration <= output_interval[1]) {
-				LDAUtils.writeBinaryDoubleMatrix(phi, iteration, numTopics, numTypes, binOutput.getAbsolutePath() + "/phi");
-				LDAUtils.writeBinaryIntMatrix(typeTopicCounts, iteration, numTypes, numTopics, binOutput.getAbsolutePath() + "/N");
-				LDAUtils.writeBinaryIntMatrix(LDAUtils.getDocumentTopicCounts(data, numTopics), iteration, data.size(), numTopics, binOutput.getAbsolutePath() + "/M");
-			}
+				logger.finer("\nIteration " + currentIteration + "\tTotal time: " + elapsedMillis + "ms\t");
+				logger.finer("--------------------");
 
-			logger.finer("\nIteration " + currentIteration + "\tTotal time: " + elapsedMillis + "ms\t");
-			logger.finer("--------------------");
+				// With the incremental tracker the likelihood is cheap enough to log every iteration
+				if(trackLogLikelihood && !(showTopicsInterval > 0 && iteration % showTopicsInterval == 0)) {
+					printLikelihood(currentIteration, getIncrementalLogLikelihood());
+				}
 
-			// Occasionally print more information
-			if (showTopicsInterval > 0 && iteration % showTopicsInterval == 0) {
+				// Occasionally print more information
+				if (showTopicsInterval > 0 && iteration % showTopicsInterval == 0) {
+
+					if(testSet != null) {
+						// In the HDP the numTopics can change after the Z sampling 
+						evaluator = new MarginalProbEstimatorPlain(numTopics,
+								alpha, alphaSum,
+								beta,
+								countStore, 
+								tokensPerTopic);
+						evaluator.setSparse(true);
+						heldOutLL = evaluator.evaluateLeftToRight(testSet, numParticles, null, likelihoodPool());
+						PrintWriter holl = config.getLoggingUtil().getAppendingLogPrinter("test_held_out_log_likelihood.txt");
+						LDAUtils.heldOutLLToFile(holl, iteration, heldOutLL, logger);
+						heldOutLoglikelihood.add(heldOutLL);
+					}
 
-				if(testSet != null) {
-					heldOutLL = evaluator.evaluateLeftToRight(testSet, numParticles, null);
-					PrintWriter holl = config.getLoggingUtil().getAppendingLogPrinter("test_held_out_log_likelihood.txt");
-					LDAUtils.heldOutLLToFile(holl, iteration, heldOutLL, logger);
-					heldOutLoglikelihood.add(heldOutLL);
-				}
+					logLik = currentLogLikelihood();	
+					tw = topWords (wordsPerTopic);
+					loglikelihood.add(logLik);
+					printLikelihood(currentIteration, logLik);
+					logger.info("<" + currentIteration + "> Log Likelihood: " + logLik);
+					logger.fine(tw);
+					if(logTypeTopicDensity || logDocumentDensity) {
+						density = logTypeTopicDensity ? LDAUtils.calculateMatrixDensity(countStore.topicRows()) : -1;
+						docDensity = kdDensities.get() / (double) numTopics / data.size();
+						phiDensity = logPhiDensity ? phiDensity() : -1;
+						if(testSet!=null) {
+							stats = new Stats(currentIteration, loggingPath, elapsedMillis, zSamplingTokenUpdateTime, phiSamplingTime, 
+									density, docDensity, zTimings, countTimings,phiDensity,heldOutLL);						
+						} else {
+							stats = new Stats(currentIteration, loggingPath, elapsedMillis, zSamplingTokenUpdateTime, phiSamplingTime, 
+									density, docDensity, zTimings, countTimings,phiDensity);
+						}
+						PrintWriter statsout = config.getLoggingUtil().getAppendingLogPrinter("stats.txt");
+						LDAUtils.logStatsToFile(stats,statsout);
+					}
 
-				logLik = modelLogLikelihood();	
-				tw = topWords (wordsPerTopic);
-				loglikelihood.add(logLik);
-				config.getLoggingUtil().getAppendingLogPrinter("likelihood.txt").println(currentIteration + "\t" + logLik);
-				logger.info("<" + currentIteration + "> Log Likelihood: " + logLik);
-				logger.fine(tw);
-				if(logTypeTopicDensity || logDocumentDensity) {
-					density = logTypeTopicDensity ? LDAUtils.calculateMatrixDensity(typeTopicCounts) : -1;
-					docDensity = kdDensities.get() / (double) numTopics / data.size();
-					phiDensity = logPhiDensity ? LDAUtils.calculatePhiDensity(phi) : -1;
-					if(testSet!=null) {
-						stats = new Stats(currentIteration, loggingPath, elapsedMillis, zSamplingTokenUpdateTime, phiSamplingTime, 
-								density, docDensity, zTimings, countTimings,phiDensity,heldOutLL);						
-					} else {
-						stats = new Stats(currentIteration, loggingPath, elapsedMillis, zSamplingTokenUpdateTime, phiSamplingTime, 
-								density, docDensity, zTimings, countTimings,phiDensity);
+					// WARNING: This will SUBSTANTIALLY slow down the sampler
+					if(config.logTopicIndicators(false)) {
+						logTopicIndicators();
+						System.out.println("Logged topic indicators for iteration: " + getCurrentIteration());
 					}
-					PrintWriter statsout = config.getLoggingUtil().getAppendingLogPrinter("stats.txt");
-					LDAUtils.logStatsToFile(stats,statsout);
-				}
 
-				// WARNING: This will SUBSTANTIALLY slow down the sampler
-				if(config.logTopicIndicators(false)) {
-					logTopicIndicators();
-					System.out.println("Logged topic indicators for iteration: " + getCurrentIteration());
+					if(logTokensPerTopics) {
+						getDumpWriter().dumpIntRowArray(tokensPerTopic, iteration, loggingPath +  "/tokens_per_topic.csv");
+					}
 				}
 
-				if(logTokensPerTopics) {
-					LDAUtils.writeIntRowArray(tokensPerTopic, loggingPath +  "/tokens_per_topic.csv");
+				if( printFirstNDocs.length > 1 && LDAUtils.inRangeInterval(iteration, printFirstNDocs)) {
+					int [][] docTopicCounts = getDocumentTopicCounts(nDocs);
+					double [][] theta = LDAUtils.drawDirichlets(docTopicCounts);
+					getDumpWriter().dumpBinaryDoubleMatrix(theta, iteration, theta.length, theta[0].length, binOutput.getAbsolutePath() + "/Theta_DxK", false);
 				}
-			}
-
-			if( printFirstNDocs.length > 1 && LDAUtils.inRangeInterval(iteration, printFirstNDocs)) {
-				int [][] docTopicCounts = LDAUtils.getDocumentTopicCounts(data, numTopics, nDocs);
-				double [][] theta = LDAUtils.drawDirichlets(docTopicCounts);
-				LDAUtils.writeBinaryDoubleMatrix(theta, iteration, binOutput.getAbsolutePath() + "/Theta_DxK");				
-			}
-			if( printFirstNTopWords.length > 1 && LDAUtils.inRangeInterval(iteration, printFirstNTopWords)) {
-				// Assign these once
-				if(topIndices==null) {
-					topIndices = LDAUtils.getTopWordIndices(nWords, numTypes, numTopics, typeTopicCounts, alphabet);
+				if( printFirstNTopWords.length > 1 && LDAUtils.inRangeInterval(iteration, printFirstNTopWords)) {
+					// Assign these once
+					if(topIndices==null) {
+						topIndices = LDAUtils.getTopWordIndices(nWords, numTypes, numTopics, countStore, alphabet);
+					}
+					writeTopPhi(currentIteration, binOutput.getAbsolutePath() + "/Phi_KxV", topIndices);
 				}
-				LDAUtils.writeBinaryDoubleMatrixIndices(phi, currentIteration, binOutput.getAbsolutePath() + "/Phi_KxV", topIndices);
-			}
 
-			if( hyperparameterOptimizationInterval > 1 && iteration % hyperparameterOptimizationInterval == 0) {
-				optimizeAlpha();
-				optimizeBeta();
+				if( hyperparameterOptimizationInterval > 1 && iteration % hyperparameterOptimizationInterval == 0) {
+					optimizeAlpha();
+					optimizeBeta();
 
-				// Reset counts
-				for (int i = 0; i < documentTopicHistogram.length; i++) {
-					for (int j = 0; j < documentTopicHistogram[i].length; j++) {
-						documentTopicHistogram[i][j].set(0);
+					// Reset counts
+					for (int i = 0; i < documentTopicHistogram.length; i++) {
+						for (int j = 0; j < documentTopicHistogram[i].length; j++) {
+							documentTopicHistogram[i][j].set(0);
+						}
 					}
+					saveHistStats = false;
 				}
-				saveHistStats = false;
-			}
 
-			kdDensities.set(0);
+				kdDensities.set(0);
 
-			postIteration();
+				postIteration();
+				checkpointIfDue();
 
-			if(abortFile.exists()) {
-				abort();
-			}
+				if(abortFile.exists()) {
+					abort();
+				}
 
-			long iterEnd = System.currentTimeMillis();
-			logger.finer("Iteration "+ currentIteration + " took: " + (iterEnd-iterationStart) + " milliseconds...");
+				long iterEnd = System.currentTimeMillis();
+				logger.finer("Iteration "+ currentIteration + " took: " + (iterEnd-iterationStart) + " milliseconds...");
+			}
+		} finally {
+			finishBackgroundIO();
 		}
 
 		postContinuedSampling();
@@ -1025,8 +1342,7 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 
 			for (int docIdx = 0; docIdx < data.size(); docIdx++) {
 				String szs = "";
-				LabelSequence topicSequence =
-						(LabelSequence) data.get(docIdx).topicSequence;
+				LabelSequence topicSequence = getTopicSequence(docIdx);
 				int [] oneDocTopics = topicSequence.getFeatures();
 				for (int i = 0; i < topicSequence.size(); i++) {
 					szs += oneDocTopics[i] + ",";
@@ -1073,7 +1389,7 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 
 			// Occasionally print more information
 			if (showTopicsInterval > 0 && iteration % showTopicsInterval == 0) {
-				double logLik = modelLogLikelihood();	
+				double logLik = currentLogLikelihood();	
 				String tw  = topWords (wordsPerTopic);
 				logger.info("<" + iteration + "> Log Likelihood: " + logLik);
 				logger.fine(tw);
@@ -1094,36 +1410,289 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 
 	@Override
 	public void postPhi() {
+		updateTypeMajorPhi();
+	}
+
+	/**
+	 * Re-builds phiT, the type major copy of phi, if it is used. In single 
+	 * precision mode the rows of phi that were set (by setPhi) are instead moved 
+	 * into phiTF and dropped from phi, the phi samplers write their rows into 
+	 * phiTF themselves. The copy is done in parallel over blocks of types and 
+	 * in tiles so that both the reads from phi and the writes to phiT are mostly 
+	 * sequential. 
+	 */
+	protected void updateTypeMajorPhi() {
+		if(!typeMajorPhi && !floatPhi) return;
+		final int noTopics = phi.length;
+		if(floatPhi) {
+			ensureFloatPhi();
+		} else if(phiT==null || phiT.length != numTypes || (numTypes > 0 && phiT[0].length != noTopics)) {
+			phiT = new double[numTypes][noTopics];
+		}
+		final int tile = 64;
+		int noTypeBlocks = (numTypes + tile - 1) / tile;
+		// A few tasks per thread, each transposing a run of type blocks
+		int blocksPerTask = Math.max(1, (noTypeBlocks + 4 * numThreads - 1) / (4 * numThreads));
+		List<Callable<Object>> transposers = new ArrayList<>();
+		for (int firstBlock = 0; firstBlock < noTypeBlocks; firstBlock += blocksPerTask) {
+			final int typeFrom = firstBlock * tile;
+			final int typeTo = Math.min(numTypes, (firstBlock + blocksPerTask) * tile);
+			transposers.add(Executors.callable(() -> transposePhi(typeFrom, typeTo, noTopics, tile)));
+		}
+		// Phi can be set outside of sample(), after the pool has been shut down
+		startupThreadPools();
+		try {
+			for (Future<Object> result : getSamplerPool().invokeAll(transposers)) {
+				result.get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+		if(floatPhi) {
+			Arrays.fill(phi, null);
+		}
+	}
+
+	void transposePhi(int typeFrom, int typeTo, int noTopics, int tile) {
+		for (int typeStart = typeFrom; typeStart < typeTo; typeStart += tile) {
+			int typeEnd = Math.min(typeTo, typeStart + tile);
+			for (int topicStart = 0; topicStart < noTopics; topicStart += tile) {
+				int topicEnd = Math.min(noTopics, topicStart + tile);
+				for (int topic = topicStart; topic < topicEnd; topic++) {
+					double [] phiTopic = phi[topic];
+					if(floatPhi) {
+						// Topics that were not re-sampled keep their column
+						if(phiTopic == null) continue;
+						for (int type = typeStart; type < typeEnd; type++) {
+							phiTF[type][topic] = (float) phiTopic[type];
+						}
+					} else {
+						for (int type = typeStart; type < typeEnd; type++) {
+							phiT[type][topic] = phiTopic[type];
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Allocates phiTF if it is missing or does not match the size of phi
+	 */
+	protected void ensureFloatPhi() {
+		if(phiTF==null || phiTF.length != numTypes || (numTypes > 0 && phiTF[0].length != phi.length)) {
+			phiTF = new float[numTypes][phi.length];
+		}
+	}
 
+	/**
+	 * @return true if the phi samplers draw the rows of <code>phiMatrix</code>
+	 * into the scratch row and narrow them into phiTF
+	 */
+	protected boolean sampleIntoFloatPhi(double [][] phiMatrix) {
+		return floatPhi && phiMatrix == phi;
+	}
+
+	/**
+	 * @return The row of the calling thread that the phi samplers draw a topic
+	 * row into in single precision mode, re-used for every topic it samples
+	 */
+	protected double [] getPhiScratchRow() {
+		double [] row = phiScratchRow.get();
+		if(row==null || row.length != numTypes) {
+			row = new double[numTypes];
+			phiScratchRow.set(row);
+		}
+		return row;
+	}
+
+	/**
+	 * Narrows a newly sampled row of phi into column <code>topic</code> of phiTF
+	 */
+	protected void setFloatPhiRow(int topic, double [] phiTopic) {
+		for (int type = 0; type < numTypes; type++) {
+			phiTF[type][topic] = (float) phiTopic[type];
+		}
+	}
+
+	/**
+	 * @return Row <code>topic</code> of phi, a copy from phiTF in single precision mode
+	 */
+	protected double [] phiRow(int topic) {
+		if(phi[topic] != null) return phi[topic];
+		double [] row = new double[numTypes];
+		for (int type = 0; type < numTypes; type++) {
+			row[type] = phiTF[type][topic];
+		}
+		return row;
+	}
+
+	/**
+	 * Copies phi into <code>target</code>, or a new matrix if it is null
+	 */
+	public double [][] copyPhi(double [][] target) {
+		if(target == null) {
+			target = new double[phi.length][numTypes];
+		}
+		for (int topic = 0; topic < phi.length; topic++) {
+			if(phi[topic] != null) {
+				System.arraycopy(phi[topic], 0, target[topic], 0, numTypes);
+			}
+		}
+		if(phiTF != null) {
+			for (int type = 0; type < numTypes; type++) {
+				float [] phiType = phiTF[type];
+				for (int topic = 0; topic < phi.length; topic++) {
+					if(phi[topic] == null) {
+						target[topic][type] = phiType[topic];
+					}
+				}
+			}
+		}
+		return target;
+	}
+
+	protected double phiDensity() {
+		return phiTF != null ? LDAUtils.calculatePhiDensity(phiTF) : LDAUtils.calculatePhiDensity(phi);
+	}
+
+	/**
+	 * @return phi[topic][type], read from phiTF or phiT if they are used
+	 */
+	protected final double phiValue(int topic, int type) {
+		if(phiTF != null) return phiTF[type][topic];
+		return phiT != null ? phiT[type][topic] : phi[topic][type];
+	}
+
+	/**
+	 * @return The type major copy of phi, [type][topic], or null if it is not used
+	 */
+	public double[][] getTypeMajorPhi() {
+		return phiT;
+	}
+
+	/**
+	 * @return The single precision type major copy of phi, [type][topic], or null if it is not used
+	 */
+	public float[][] getTypeMajorPhiFloat() {
+		return phiTF;
+	}
+
+	/**
+	 * Sets phi from a single precision type major matrix, [type][topic], which
+	 * is kept as is in single precision mode
+	 */
+	public void setTypeMajorPhiFloat(float [][] typeMajorPhi) {
+		if(!floatPhi) {
+			double [][] topicMajorPhi = new double[numTopics][typeMajorPhi.length];
+			for (int type = 0; type < typeMajorPhi.length; type++) {
+				for (int topic = 0; topic < numTopics; topic++) {
+					topicMajorPhi[topic][type] = typeMajorPhi[type][topic];
+				}
+			}
+			setPhi(topicMajorPhi);
+			return;
+		}
+		phi = new double[numTopics][];
+		phiTF = typeMajorPhi;
+		if(savePhiMeans()) {
+			initPhiMean();
+		}
+	}
+
+	protected void initPhiMean() {
+		if(floatPhi) {
+			phiMeanF = new float[numTopics][numTypes];
+			phiMean = null;
+		} else {
+			phiMean = new double[numTopics][numTypes];
+			phiMeanF = null;
+		}
+	}
+
+	/**
+	 * Adds a newly sampled phi row for <code>topic</code> to the cumulated phi sample
+	 */
+	protected void addToPhiMean(int topic, double [] phiTopic) {
+		if(phiMeanF!=null) {
+			// Added in double, only the stored sum is rounded
+			float [] meanTopic = phiMeanF[topic];
+			for (int type = 0; type < phiTopic.length; type++) {
+				meanTopic[type] = (float) ((double) meanTopic[type] + phiTopic[type]);
+			}
+		} else {
+			double [] meanTopic = phiMean[topic];
+			for (int type = 0; type < phiTopic.length; type++) {
+				meanTopic[type] += phiTopic[type];
+			}
+		}
+	}
+
+	/**
+	 * Moves the cumulated phi sample to phiMeanF in single precision mode and 
+	 * to phiMean otherwise
+	 */
+	protected void matchPhiMeanPrecision() {
+		if(floatPhi && phiMean!=null) {
+			phiMeanF = new float[phiMean.length][];
+			for (int topic = 0; topic < phiMean.length; topic++) {
+				phiMeanF[topic] = new float[phiMean[topic].length];
+				for (int type = 0; type < phiMean[topic].length; type++) {
+					phiMeanF[topic][type] = (float) phiMean[topic][type];
+				}
+			}
+			phiMean = null;
+		} else if(!floatPhi && phiMeanF!=null) {
+			phiMean = new double[phiMeanF.length][];
+			for (int topic = 0; topic < phiMeanF.length; topic++) {
+				phiMean[topic] = new double[phiMeanF[topic].length];
+				for (int type = 0; type < phiMeanF[topic].length; type++) {
+					phiMean[topic][type] = phiMeanF[topic][type];
+				}
+			}
+			phiMeanF = null;
+		}
 	}
 
 
 	@Override
 	public void postSample() {
 		super.postSample();
+		finishCheckpoints();
+		finishDumps();
+		closeLikelihoodLog();
+		flushCorpusStore();
 		// By now we don't need the thread pools any more
 		shutdownThreadPools();
 		flushDeltaOut();
 	}
 
 	void shutdownThreadPools() {
-		documentSamplerPool.shutdown();
+		samplerPool.shutdown();
 		try {
-			documentSamplerPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+			samplerPool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
 		}
 		catch (InterruptedException ex) {}
 
-		phiSamplePool.shutdown();
-		try {
-			phiSamplePool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
-		}
-		catch (InterruptedException ex) {}
+		// The sampler threads are gone, so are their buffers
+		clearWorkerDeltaBuffers();
+	}
 
-		topicUpdaters.shutdown();
-		try {
-			topicUpdaters.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+	/**
+	 * Drops the thread local delta buffers of the sampler threads so that the 
+	 * registry only holds buffers of live threads. The buffers are all empty 
+	 * after the last count update so we can just let them go
+	 */
+	void clearWorkerDeltaBuffers() {
+		if(workerDeltaBufferRegistry != null) {
+			workerDeltaBufferRegistry.clear();
+			workerDeltaBuffers = ThreadLocal.withInitial(() -> {
+				TopicTypeDeltaBuffer buffer = new TopicTypeDeltaBuffer(noCountUpdatePartitions);
+				workerDeltaBufferRegistry.add(buffer);
+				return buffer;
+			});
 		}
-		catch (InterruptedException ex) {}
 	}
 
 	@Override
@@ -1144,22 +1713,30 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 			}
 		}
 		startupThreadPools();
+		initLikelihoodTracker();
 	}
 
 	void startupThreadPools() {
 		// If we call sample again the thread pool have been shutdown so we create a new one
-		if(documentSamplerPool == null || documentSamplerPool.isShutdown()) {
-			//documentSamplerPool = Executors.newFixedThreadPool(noBatches, new LDAThreadFactory("DocumentSampler"));
-			documentSamplerPool = new ForkJoinPool();
-		}
-		if(phiSamplePool == null || phiSamplePool.isShutdown()) {
-			phiSamplePool = Executors.newFixedThreadPool(noTopicBatches,new LDAThreadFactory("PhiSampler"));
-		}
-		if(topicUpdaters == null || topicUpdaters.isShutdown()) {
-			topicUpdaters = Executors.newFixedThreadPool(2,new LDAThreadFactory("TopicUpdater"));
+		if(samplerPool == null || samplerPool.isShutdown()) {
+			samplerPool = new ForkJoinPool(numThreads);
+			clearWorkerDeltaBuffers();
 		}
 	}
 
+	/**
+	 * @return The pool shared by all parallel phases of the sampler, sized by
+	 * the num_threads setting. It is started in preSample and shut down in 
+	 * postSample, subclasses should not shut it down themselves
+	 */
+	protected ForkJoinPool getSamplerPool() {
+		return samplerPool;
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
 	/**
 	 * Returns if 'iter' is in any of the intervals specified by intervals
 	 *
@@ -1239,7 +1816,12 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 			long updates = 0;
 			for (int type = 0; type < numTypes; type++) {	
 				if(batchLocalTopicTypeUpdates[topic][type].get()!=0) {
-					updateTypeTopicCount(type, topic, batchLocalTopicTypeUpdates[topic][type].getAndSet(0));
+					int delta = batchLocalTopicTypeUpdates[topic][type].getAndSet(0);
+					updateTypeTopicCount(type, topic, delta);
+					if(likelihoodTracker!=null) {
+						int newCount = countStore.get(topic, type);
+						likelihoodTracker.updateTopicType(topic, newCount - delta, newCount);
+					}
 
 					// Update delta statistics
 					boolean success = globalDeltaNUpdates[topic].increment(type);
@@ -1274,14 +1856,83 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 		}
 	}*/
 
-	void updateTopics() {
-		List<ParallelTopicUpdater> builders = new ArrayList<>();
-		for (int topic = 0; topic < numTopics; topic++) {
-			builders.add(new ParallelTopicUpdater(topic));
+	/**
+	 * 'Call' is executed in parallel, each call handles one partition of the topics 
+	 * and only looks at the (topic,type) cells that some sampling thread changed
+	 * so no two threads will update the same topic
+	 *
+	 */
+	class ParallelDeltaBufferMerger implements Callable<Long> {
+		int partition;
+		public ParallelDeltaBufferMerger(int partition) {
+			this.partition = partition;
+		}
+		@Override
+		public Long call() {
+			Long2IntOpenHashMap merged = mergedDeltaBuffers[partition];
+			merged.clear();
+			for (TopicTypeDeltaBuffer buffer : workerDeltaBufferRegistry) {
+				buffer.drainPartition(partition, merged);
+			}
+			long updates = 0;
+			ObjectIterator<Long2IntMap.Entry> entries = merged.long2IntEntrySet().fastIterator();
+			while(entries.hasNext()) {
+				Long2IntMap.Entry entry = entries.next();
+				int delta = entry.getIntValue();
+				// Moves by different threads may cancel out
+				if(delta==0) continue;
+				int topic = TopicTypeDeltaBuffer.topic(entry.getLongKey());
+				int type = TopicTypeDeltaBuffer.type(entry.getLongKey());
+				updateTypeTopicCount(type, topic, delta);
+				if(likelihoodTracker!=null) {
+					int newCount = countStore.get(topic, type);
+					likelihoodTracker.updateTopicType(topic, newCount - delta, newCount);
+				}
+
+				// Update delta statistics
+				boolean success = globalDeltaNUpdates[topic].increment(type);
+				if(!success) {
+					globalDeltaNUpdates[topic].put(type, 1);
+				}
+
+				updates++;
+			}
+			return updates;
+		}   
+	}
+
+	void updateTopics() {
+		if(threadLocalCountUpdates) {
+			mergeWorkerDeltaBuffers();
+			return;
+		}
+		List<ParallelTopicUpdater> builders = new ArrayList<>();
+		for (int topic = 0; topic < numTopics; topic++) {
+			builders.add(new ParallelTopicUpdater(topic));
+		}
+		List<Future<Long>> results;
+		try {
+			results = samplerPool.invokeAll(builders);
+			for (Future<Long> result : results) {
+				result.get();
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			System.exit(-1);
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+			System.exit(-1);
+		}
+	}
+
+	void mergeWorkerDeltaBuffers() {
+		List<ParallelDeltaBufferMerger> mergers = new ArrayList<>();
+		for (int partition = 0; partition < noCountUpdatePartitions; partition++) {
+			mergers.add(new ParallelDeltaBufferMerger(partition));
 		}
 		List<Future<Long>> results;
 		try {
-			results = topicUpdaters.invokeAll(builders);
+			results = samplerPool.invokeAll(mergers);
 			for (Future<Long> result : results) {
 				result.get();
 			}
@@ -1330,7 +1981,7 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 					}
 				}
 			};
-			phiSamplePool.execute(newTask);
+			samplerPool.execute(newTask);
 		}
 		int phiSamplingsDone = 0;
 		while(phiSamplingsDone<topicBatches.length) {
@@ -1358,12 +2009,30 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 	 * @param	phiMatrix	Pointer to the phi matrix
 	 */
 	public void initialSamplePhi(int [] indices, double[][] phiMatrix) {
+		if(sampleIntoFloatPhi(phiMatrix)) {
+			ensureFloatPhi();
+			for (int topic : indices) {
+				startPhiUnit(topic);
+				double [] phiTopic = getPhiScratchRow();
+				dirichletSampler.nextDistribution(countStore.topicRow(topic), phiTopic);
+				if(haveTopicPriors) {
+					for (int type = 0; type < phiTopic.length; type++) {
+						phiTopic[type] *= topicPriors[topic][type];
+					}
+				}
+				setFloatPhiRow(topic, phiTopic);
+			}
+			SamplerRandom.endUnit();
+			return;
+		}
 		for (int topic : indices) {
-			int [] relevantTypeTopicCounts = topicTypeCountMapping[topic]; 
+			startPhiUnit(topic);
+			int [] relevantTypeTopicCounts = countStore.topicRow(topic); 
 			// Generates a standard array to feed to the Dirichlet constructor
 			// from the dictionary representation. 
 			phiMatrix[topic] = dirichletSampler.nextDistribution(relevantTypeTopicCounts);
 		}
+		SamplerRandom.endUnit();
 		if(haveTopicPriors) {
 			for (int topic = 0; topic < phiMatrix.length; topic++) {
 				for (int type = 0; type < phiMatrix[topic].length; type++) {
@@ -1384,11 +2053,18 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 	public void loopOverTopics(int [] indices, int[][] topicTypeIndices, double[][] phiMatrix) {
 		long beforeSamplePhi = System.currentTimeMillis();		
 		for (int topic : indices) {
-			int [] relevantTypeTopicCounts = topicTypeCountMapping[topic]; 
+			startPhiUnit(topic);
+			int [] relevantTypeTopicCounts = countStore.topicRow(topic); 
 			// Generates a standard array to feed to the Dirichlet constructor
 			// from the dictionary representation. 
+			double [] phiTopic;
 			if(topicTypeIndices==null) {
-				phiMatrix[topic] = dirichletSampler.nextDistribution(relevantTypeTopicCounts);
+				if(sampleIntoFloatPhi(phiMatrix)) {
+					phiTopic = getPhiScratchRow();
+					dirichletSampler.nextDistribution(relevantTypeTopicCounts, phiTopic);
+				} else {
+					phiTopic = dirichletSampler.nextDistribution(relevantTypeTopicCounts);
+				}
 			} else {
 				double[] dirichletParams = new double[numTypes];
 				for (int type = 0; type < numTypes; type++) {
@@ -1399,16 +2075,19 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 				int[] typeIndicesToSample = topicTypeIndices[topic];
 
 				ConditionalDirichlet dist = new ConditionalDirichlet(dirichletParams);
-				double [] newPhi = dist.nextConditionalDistribution(phiMatrix[topic],typeIndicesToSample); 
-
-				phiMatrix[topic] = newPhi;
+				double [] oldPhi = phiMatrix == phi ? phiRow(topic) : phiMatrix[topic];
+				phiTopic = dist.nextConditionalDistribution(oldPhi,typeIndicesToSample); 
 			}
 			if(savePhiMeans() && samplePhiThisIteration()) {
-				for (int phi = 0; phi < phiMatrix[topic].length; phi++) {
-					phiMean[topic][phi] += phiMatrix[topic][phi];
-				}
+				addToPhiMean(topic, phiTopic);
+			}
+			if(sampleIntoFloatPhi(phiMatrix)) {
+				setFloatPhiRow(topic, phiTopic);
+			} else {
+				phiMatrix[topic] = phiTopic;
 			}
 		}
+		SamplerRandom.endUnit();
 		long elapsedMillis = System.currentTimeMillis();
 		long threadId = Thread.currentThread().getId();
 
@@ -1423,6 +2102,30 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 		}
 	}
 
+	/**
+	 * @return The document sampling scratch space of the calling thread, sized for
+	 * the current number of topics. Results returned by sampleTopicAssignmentsParallel
+	 * that use it are only valid until the thread samples its next document.
+	 */
+	protected DocSamplingScratch getDocSamplingScratch() {
+		DocSamplingScratch scratch = docSamplingScratch.get();
+		if(scratch==null || scratch.numTopics != numTopics) {
+			scratch = new DocSamplingScratch(numTopics);
+			docSamplingScratch.set(scratch);
+		}
+		return scratch;
+	}
+
+	/**
+	 * Seeds the random numbers for sampling row <code>topic</code> of phi in this
+	 * iteration when sampling is reproducible
+	 */
+	protected void startPhiUnit(int topic) {
+		if(reproducibleSampling) {
+			SamplerRandom.startUnit(startSeed, currentIteration, SamplerRandom.PHI_SAMPLING, topic);
+		}
+	}
+
 	boolean samplePhiThisIteration() {
 		return phiBurnIn > 0 && currentIteration > phiBurnIn && currentIteration % phiMeanThin  == 0;
 	}
@@ -1446,23 +2149,50 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 
 		@Override
 		protected void compute() {
-			if ( (endDoc-startDoc) <= limit ) {
-				for (int docIdx = startDoc; docIdx < endDoc; docIdx++) {
-					FeatureSequence tokenSequence =
-							(FeatureSequence) data.get(docIdx).instance.getData();
-					LabelSequence topicSequence =
-							(LabelSequence) data.get(docIdx).topicSequence;
-					int [] docTopicHist = sampleTopicAssignmentsParallel (
-							new UncollapsedLDADocSamplingContext(tokenSequence, 
-									topicSequence, myBatch, docIdx)).getLocalTopicCounts();
+			// startDoc and endDoc are positions in the document order, the prefix 
+			// sum follows that order
+			long [] prefixSum = documentOrder != null ? documentOrderTokenPrefixSum : documentTokenPrefixSum;
+			// In token balanced mode limit is a number of tokens
+			boolean leaf = tokenBalancedScheduling 
+					? (endDoc-startDoc) <= 1 || prefixSum[endDoc] - prefixSum[startDoc] <= limit
+					: (endDoc-startDoc) <= limit;
+			if ( leaf ) {
+				if(tokenBalancedScheduling) {
+					workerTokenCounts.computeIfAbsent(Thread.currentThread().getId(), id -> new AtomicLong())
+						.addAndGet(prefixSum[endDoc] - prefixSum[startDoc]);
+				}
+				DocSamplingScratch scratch = getDocSamplingScratch();
+				for (int position = startDoc; position < endDoc; position++) {
+					int docIdx = documentOrder != null ? documentOrder[position] : position;
+					LDADocSamplingContext ctx;
+					if(corpusStore != null) {
+						ctx = scratch.storeContext(corpusStore, myBatch, docIdx);
+					} else {
+						FeatureSequence tokenSequence =
+								(FeatureSequence) data.get(docIdx).instance.getData();
+						LabelSequence topicSequence =
+								(LabelSequence) data.get(docIdx).topicSequence;
+						ctx = scratch.context(tokenSequence, topicSequence, myBatch, docIdx);
+					}
+					if(reproducibleSampling) {
+						SamplerRandom.startUnit(startSeed, currentIteration, SamplerRandom.Z_SAMPLING, docIdx);
+					}
+					LDADocSamplingResult res = sampleTopicAssignmentsParallel (ctx);
+					int [] docTopicHist = res != null ? res.getLocalTopicCounts() : null;
 					if(docTopicHist!=null && saveHistStats)
 						updateGlobalHistogram(docTopicHist);
+					if(likelihoodTracker!=null) {
+						updateDocumentLikelihood(docIdx, res, ctx);
+					}
 				}
+				SamplerRandom.endUnit();
 			}
 			else {
 				int range = (endDoc-startDoc);
 				int startDoc1 = startDoc;
-				int endDoc1 = startDoc + (range / 2);
+				int endDoc1 = tokenBalancedScheduling 
+						? TokenBalancedBatchBuilder.tokenMidpoint(prefixSum, startDoc, endDoc)
+						: startDoc + (range / 2);
 				int startDoc2 = endDoc1;
 				int endDoc2 = endDoc;
 				invokeAll(new RecursiveDocumentSampler(startDoc1,endDoc1,myBatch + 1,limit),
@@ -1508,8 +2238,38 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 	}*/
 
 	protected void loopOverBatches() {
-		RecursiveDocumentSampler dslr = new RecursiveDocumentSampler(0,data.size(),0,documentSplitLimit);                
-		documentSamplerPool.invoke(dslr);
+		if(!DocumentOrder.INPUT.equals(documentOrderName)) {
+			getDocumentOrder();
+		}
+		if(tokenBalancedScheduling) {
+			long [] prefixSum = getDocumentTokenPrefixSum();
+			int noDocs = prefixSum.length - 1;
+			// Keep the meaning of the split limit, but count it in tokens of an average document
+			long avgDocLength = noDocs > 0 ? Math.max(1, prefixSum[noDocs] / noDocs) : 1;
+			long tokenLimit = Math.max(1, (long) documentSplitLimit * avgDocLength);
+			workerTokenCounts.clear();
+			RecursiveDocumentSampler dslr = new RecursiveDocumentSampler(0,data.size(),0,(int) Math.min(Integer.MAX_VALUE, tokenLimit));
+			samplerPool.invoke(dslr);
+			long [] tokensPerWorker = new long[workerTokenCounts.size()];
+			int worker = 0;
+			for (AtomicLong tokens : workerTokenCounts.values()) {
+				tokensPerWorker[worker++] = tokens.get();
+			}
+			workerTokenImbalance = TokenBalancedBatchBuilder.imbalance(tokensPerWorker);
+			logger.info("<" + currentIteration + "> Token imbalance over " + tokensPerWorker.length 
+					+ " document sampling workers (max/mean): " + workerTokenImbalance);
+		} else {
+			RecursiveDocumentSampler dslr = new RecursiveDocumentSampler(0,data.size(),0,documentSplitLimit);                
+			samplerPool.invoke(dslr);
+		}
+	}
+
+	/**
+	 * @return max / mean of the tokens sampled per worker thread in the last 
+	 * iteration, only calculated with token balanced scheduling
+	 */
+	public double getWorkerTokenImbalance() {
+		return workerTokenImbalance;
 	}
 
 	void debugPrintDoc(int doc, int[] tokSeq, int[] topSeq) {
@@ -1592,7 +2352,7 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 			// The thread local random performs better in concurrent situations 
 			// than the standard random which is thread safe and incurs lock 
 			// contention
-			double U = ThreadLocalRandom.current().nextDouble();
+			double U = SamplerRandom.current().nextDouble();
 			double sample = U * sum;
 
 			newTopic = -1;
@@ -1621,12 +2381,20 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 	}
 
 	protected void increment(int myBatch, int newTopic, int type) {
+		if(threadLocalCountUpdates) {
+			workerDeltaBuffers.get().increment(newTopic, type);
+			return;
+		}
 		//batchLocalTopicTypeUpdates[myBatch][newTopic][type] += 1;
 		batchLocalTopicTypeUpdates[newTopic][type].incrementAndGet();
 		//System.out.println("(Batch=" + myBatch + ") Incremented: topic=" + newTopic + " type=" + type + " => " + batchLocalTopicUpdates[myBatch][newTopic][type]);		
 	}
 
 	protected void decrement(int myBatch, int oldTopic, int type) {
+		if(threadLocalCountUpdates) {
+			workerDeltaBuffers.get().decrement(oldTopic, type);
+			return;
+		}
 		//batchLocalTopicTypeUpdates[myBatch][oldTopic][type] -= 1;
 		batchLocalTopicTypeUpdates[oldTopic][type].addAndGet(-1);
 		//System.out.println("(Batch=" + myBatch + ") Decremented: topic=" + oldTopic + " type=" + type + " => " + batchLocalTopicUpdates[myBatch][oldTopic][type]);
@@ -1667,67 +2435,39 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 		//	logGamma ( sum_i alpha_i ) - logGamma ( sum_i (alpha_i + N_i) ) + 
 		//	 sum_i [ logGamma( alpha_i + N_i) - logGamma( alpha_i ) ]
 
-		// Do the documents first
-
-		int[] topicCounts = new int[numTopics];
-		double[] topicLogGammas = new double[numTopics];
-		int[] docTopics;
-
-		for (int topic=0; topic < numTopics; topic++) {
-			topicLogGammas[ topic ] = Dirichlet.logGammaStirling( alpha[topic] );
-		}
-
-		for (int doc=0; doc < data.size(); doc++) {
-			LabelSequence topicSequence =	(LabelSequence) data.get(doc).topicSequence;
-
-			docTopics = topicSequence.getFeatures();
-
-			for (int token=0; token < topicSequence.size(); token++) {
-				topicCounts[ docTopics[token] ]++;
-			}
-
-			for (int topic=0; topic < numTopics; topic++) {
-				if (topicCounts[topic] > 0) {
-					logLikelihood += (Dirichlet.logGammaStirling(alpha[topic] + topicCounts[topic]) -
-							topicLogGammas[ topic ]);
-				}
-			}
+		updateLogGammaTables();
+		ForkJoinPool pool = likelihoodPool();
 
-			// subtract the (count + parameter) sum term
+		// The terms are computed in parallel, a block of documents or types at a 
+		// time, but added up in the same order as the serial AD-LDA calculation 
+		// so that the result is the same whatever the number of threads
+		OrderedLogLikelihoodSum sum = new OrderedLogLikelihoodSum(pool);
 
-			logLikelihood -= Dirichlet.logGammaStirling(alphaSum + topicSequence.size());
-			Arrays.fill(topicCounts, 0);
-		}
+		// Do the documents first
+		int numDocBlocks = (data.size() + LIKELIHOOD_DOC_BLOCK_SIZE - 1) / LIKELIHOOD_DOC_BLOCK_SIZE;
+		sum.addBlocks(numDocBlocks, this::documentLogLikelihoodTerms);
 
 		// add the parameter sum term
-		logLikelihood += data.size() * Dirichlet.logGammaStirling(alphaSum);
-
-		// And the topics
-
+		sum.logLikelihood += data.size() * Dirichlet.logGammaStirling(alphaSum);
+
+		// And the topics, logGamma(beta + count) for each type-topic pair with 
+		// non-zero count, type by type
+		sum.numTerms = 0;
+		int typesPerBlock = Math.max(1, LIKELIHOOD_CELL_BLOCK_SIZE / Math.max(1, numTopics));
+		int numTypeBlocks = (numTypes + typesPerBlock - 1) / typesPerBlock;
+		sum.addBlocks(numTypeBlocks, block -> typeTopicLogLikelihoodTerms(block * typesPerBlock, 
+				Math.min(numTypes, (block + 1) * typesPerBlock)));
 		// Count the number of type-topic pairs that are not just (logGamma(beta) - logGamma(beta))
-		int nonZeroTypeTopics = 0;
-
-		for (int type=0; type < numTypes; type++) {
-			// reuse this array as a pointer
-
-			topicCounts = typeTopicCounts[type];
+		long nonZeroTypeTopics = sum.numTerms;
+		logLikelihood = sum.logLikelihood;
 
-			for (int topic = 0; topic < numTopics; topic++) {
-				int topicTypeCount = topicCounts[topic];
-				if (topicTypeCount == 0) { continue; }
-
-				nonZeroTypeTopics++;
-				logLikelihood += Dirichlet.logGammaStirling(beta + topicTypeCount);
-
-				if (Double.isNaN(logLikelihood)) {
-					System.err.println("NaN in log likelihood calculation: " + topicTypeCount);
-					System.exit(1);
-				} 
-				else if (Double.isInfinite(logLikelihood)) {
-					logger.warning("infinite log likelihood");
-					System.exit(1);
-				}
-			}
+		if (Double.isNaN(logLikelihood)) {
+			System.err.println("NaN in log likelihood calculation of the type-topic counts");
+			System.exit(1);
+		} 
+		else if (Double.isInfinite(logLikelihood)) {
+			logger.warning("infinite log likelihood");
+			System.exit(1);
 		}
 
 		for (int topic=0; topic < numTopics; topic++) {
@@ -1766,6 +2506,219 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 		return logLikelihood;
 	}
 
+	/**
+	 * (Re-)builds the log gamma tables used by modelLogLikelihood if alpha, 
+	 * beta or the number of topics have changed since they were built
+	 */
+	protected void updateLogGammaTables() {
+		int docTableSize = Math.min(LOG_GAMMA_DOC_TABLE_MAX_SIZE, maxDocumentLength() + 1);
+		if(alphaLogGammas == null || alphaLogGammas.length != numTopics) {
+			alphaLogGammas = new LogGammaTable[numTopics];
+		}
+		for (int topic = 0; topic < numTopics; topic++) {
+			if(alphaLogGammas[topic] == null || !alphaLogGammas[topic].covers(alpha[topic], docTableSize)) {
+				alphaLogGammas[topic] = new LogGammaTable(alpha[topic], docTableSize);
+			}
+		}
+		if(alphaSumLogGammas == null || !alphaSumLogGammas.covers(alphaSum, docTableSize)) {
+			alphaSumLogGammas = new LogGammaTable(alphaSum, docTableSize);
+		}
+		if(betaLogGammas == null || !betaLogGammas.covers(beta, LOG_GAMMA_TYPE_TABLE_SIZE)) {
+			betaLogGammas = new LogGammaTable(beta, LOG_GAMMA_TYPE_TABLE_SIZE);
+		}
+	}
+
+	// The likelihood can be calculated both during and after sampling
+	ForkJoinPool likelihoodPool() {
+		return samplerPool != null && !samplerPool.isShutdown() ? samplerPool : ForkJoinPool.commonPool();
+	}
+
+	int maxDocumentLength() {
+		long [] prefixSum = getDocumentTokenPrefixSum();
+		long maxDocLength = 0;
+		for (int doc = 0; doc < prefixSum.length - 1; doc++) {
+			maxDocLength = Math.max(maxDocLength, prefixSum[doc + 1] - prefixSum[doc]);
+		}
+		return (int) Math.min(Integer.MAX_VALUE, maxDocLength);
+	}
+
+	/**
+	 * @return The log likelihood from the incremental tracker if it is turned on,
+	 * otherwise the full modelLogLikelihood
+	 */
+	protected double currentLogLikelihood() {
+		return trackLogLikelihood ? getIncrementalLogLikelihood() : modelLogLikelihood();
+	}
+
+	/**
+	 * Builds the incremental log likelihood tracker from the current counts if 
+	 * incremental_loglikelihood is turned on
+	 */
+	protected void initLikelihoodTracker() {
+		if(trackLogLikelihood) {
+			buildLikelihoodTracker();
+		}
+	}
+
+	void buildLikelihoodTracker() {
+		int docTableSize = Math.min(LOG_GAMMA_DOC_TABLE_MAX_SIZE, maxDocumentLength() + 1);
+		likelihoodTracker = new IncrementalLogLikelihood(alpha, alphaSum, beta, numTypes,
+				countStore, data.size(), doc -> getTopicSequence(doc).getFeatures(), docTableSize, LOG_GAMMA_TYPE_TABLE_SIZE);
+	}
+
+	/**
+	 * Same value as modelLogLikelihood but maintained from the count changes in 
+	 * each iteration. Must be called between iterations.
+	 */
+	public double getIncrementalLogLikelihood() {
+		if(likelihoodTracker == null || likelihoodTracker.numTopics != numTopics 
+				|| !likelihoodTracker.matches(alpha, alphaSum, beta)) {
+			// The hyperparameters or the number of topics have changed, start over
+			buildLikelihoodTracker();
+		}
+		return likelihoodTracker.logLikelihood(tokensPerTopic);
+	}
+
+	void updateDocumentLikelihood(int docIdx, LDADocSamplingResult res, LDADocSamplingContext ctx) {
+		int [] localTopicCounts = res != null ? res.getLocalTopicCounts() : null;
+		int docLength = ctx.getDocLength();
+		if(localTopicCounts == null) {
+			localTopicCounts = new int[numTopics];
+			TopicIndicatorArray docTopics = ctx.getTopicIndicators();
+			for (int position = 0; position < docLength; position++) {
+				localTopicCounts[docTopics.get(ctx.getTopicOffset() + position)]++;
+			}
+		}
+		int [] nonZeroTopics = null;
+		int nonZeroTopicCnt = numTopics;
+		if(res instanceof LDADocSamplingResultSparse && ((LDADocSamplingResultSparse) res).getNonZeroIndices() != null) {
+			nonZeroTopics = ((LDADocSamplingResultSparse) res).getNonZeroIndices();
+			nonZeroTopicCnt = ((LDADocSamplingResultSparse) res).getNonZeroTopicCounts();
+		}
+		likelihoodTracker.updateDocument(docIdx, localTopicCounts, nonZeroTopics, nonZeroTopicCnt, docLength);
+	}
+
+	/**
+	 * Adds up likelihood terms computed block by block in parallel, in block 
+	 * order and in the order of the terms within each block. At most a few blocks
+	 * per thread are computed ahead of the one being added.
+	 */
+	static class OrderedLogLikelihoodSum {
+		final ForkJoinPool pool;
+		final int window;
+		double logLikelihood = 0.0;
+		long numTerms = 0;
+
+		OrderedLogLikelihoodSum(ForkJoinPool pool) {
+			this.pool = pool;
+			this.window = 4 * pool.getParallelism();
+		}
+
+		void addBlocks(int numBlocks, IntFunction<double []> blockTerms) {
+			ArrayDeque<ForkJoinTask<double []>> pending = new ArrayDeque<>();
+			int nextBlock = 0;
+			for (int block = 0; block < numBlocks; block++) {
+				while (nextBlock < numBlocks && nextBlock < block + window) {
+					final int toCompute = nextBlock++;
+					pending.add(pool.submit(() -> blockTerms.apply(toCompute)));
+				}
+				double [] terms = pending.poll().join();
+				for (double term : terms) {
+					logLikelihood += term;
+				}
+				numTerms += terms.length;
+			}
+		}
+	}
+
+	/**
+	 * @return For each document in block <code>block</code> the terms
+	 * logGamma(alpha_k + N_dk) - logGamma(alpha_k) of its topics with non-zero 
+	 * count in topic order followed by -logGamma(alphaSum + N_d)
+	 */
+	double [] documentLogLikelihoodTerms(int block) {
+		int startDoc = block * LIKELIHOOD_DOC_BLOCK_SIZE;
+		int endDoc = Math.min(data.size(), startDoc + LIKELIHOOD_DOC_BLOCK_SIZE);
+		double [] terms = new double[2 * (endDoc - startDoc)];
+		int numTerms = 0;
+		int [] topicCounts = new int[numTopics];
+		int [] nonZeroTopics = new int[numTopics];
+		TopicIndicatorArray.IntIndicators documentIndicators = new TopicIndicatorArray.IntIndicators(0);
+		for (int doc = startDoc; doc < endDoc; doc++) {
+			TopicIndicatorArray docTopics;
+			int offset;
+			int docLength;
+			if(corpusStore != null) {
+				docTopics = corpusStore.topicIndicators(doc);
+				offset = corpusStore.topicOffset(doc);
+				docLength = corpusStore.docLength(doc);
+			} else {
+				LabelSequence topicSequence = (LabelSequence) data.get(doc).topicSequence;
+				documentIndicators.topics = topicSequence.getFeatures();
+				docTopics = documentIndicators;
+				offset = 0;
+				docLength = topicSequence.size();
+			}
+			int nonZeroTopicCnt = 0;
+			for (int token = offset; token < offset + docLength; token++) {
+				int topic = docTopics.get(token);
+				if(topicCounts[topic]++ == 0) {
+					nonZeroTopics[nonZeroTopicCnt++] = topic;
+				}
+			}
+			// Visit the non-zero topics in topic order and zero the counts as we go
+			Arrays.sort(nonZeroTopics, 0, nonZeroTopicCnt);
+			if(terms.length < numTerms + nonZeroTopicCnt + 1) {
+				terms = Arrays.copyOf(terms, 2 * terms.length + nonZeroTopicCnt + 1);
+			}
+			for (int i = 0; i < nonZeroTopicCnt; i++) {
+				int topic = nonZeroTopics[i];
+				LogGammaTable topicLogGammas = alphaLogGammas[topic];
+				terms[numTerms++] = topicLogGammas.logGamma(topicCounts[topic]) - topicLogGammas.logGamma(0);
+				topicCounts[topic] = 0;
+			}
+			// subtract the (count + parameter) sum term
+			terms[numTerms++] = -alphaSumLogGammas.logGamma(docLength);
+		}
+		return Arrays.copyOf(terms, numTerms);
+	}
+
+	/**
+	 * @return logGamma(beta + count) for the type-topic pairs with non-zero count
+	 * of the types in [startType,endType), type by type in topic order
+	 */
+	double [] typeTopicLogLikelihoodTerms(int startType, int endType) {
+		int blockTypes = endType - startType;
+		// Read the topic rows sequentially into a type-major block
+		int [] counts = new int[blockTypes * numTopics];
+		int numTerms = 0;
+		for (int topic = 0; topic < numTopics; topic++) {
+			int [] topicCounts = countStore.topicRow(topic);
+			for (int type = startType; type < endType; type++) {
+				int topicTypeCount = topicCounts[type];
+				if (topicTypeCount == 0) { continue; }
+				counts[(type - startType) * numTopics + topic] = topicTypeCount;
+				numTerms++;
+			}
+		}
+		double [] terms = new double[numTerms];
+		int term = 0;
+		for (int cell = 0; cell < counts.length; cell++) {
+			if (counts[cell] == 0) { continue; }
+			terms[term++] = betaLogGammas.logGamma(counts[cell]);
+		}
+		return terms;
+	}
+
+	@Override
+	protected void addTypeTopicCountHistogram(int[] countHistogram) {
+		for (int topic = 0; topic < numTopics; topic++) {
+			for (int count : countStore.topicRow(topic)) {
+				countHistogram[count]++;
+			}
+		}
+	}
+
 	@Override
 	/*
 	 * This was copied from SimpleLDA and updated to use the new internal representations
@@ -1780,7 +2733,7 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 
 		for (int topic = 0; topic < numTopics; topic++) {
 
-			int [] typeMap = topicTypeCountMapping[topic];
+			int [] typeMap = countStore.topicRow(topic);
 			for (int token = 0; token < numTypes; token++) {
 				Integer thisCount = typeMap[token];
 				sortedWords[token] = new IDSorter(token, (thisCount != null) ? thisCount : 0);
@@ -1805,27 +2758,23 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 
 	public void setZIndicators(int[][] zIndicators) {
 		// First reset the counts so new counts are not added to old ones
-		batchLocalTopicTypeUpdates = new AtomicInteger[numTopics][numTypes];
-		for (int i = 0; i < batchLocalTopicTypeUpdates.length; i++) {
-			for (int j = 0; j < batchLocalTopicTypeUpdates[i].length; j++) {
-				batchLocalTopicTypeUpdates[i][j] = new AtomicInteger();
-			}
-		}
+		initTopicTypeUpdates();
+		countStore.clear();
 		for( int topic = 0; topic < numTopics; topic++) {
-			for ( int type = 0; type < numTypes; type++ ) {
-				topicTypeCountMapping[topic][type] = 0;
-				typeTopicCounts[type][topic] = 0;
-			}
 			tokensPerTopic[topic] = 0;
 		}
 
 		long sumtotal = 0;
 		for (int docCnt = 0; docCnt < data.size(); docCnt++) {
-			data.get(docCnt).topicSequence = 
-					new LabelSequence(topicAlphabet, zIndicators[docCnt]);
-			FeatureSequence tokenSequence =
-					(FeatureSequence) data.get(docCnt).instance.getData();
-			int [] tokens = tokenSequence.getFeatures();
+			if(corpusStore != null) {
+				corpusStore.writeTopics(docCnt, zIndicators[docCnt]);
+			} else {
+				data.get(docCnt).topicSequence = 
+						new LabelSequence(topicAlphabet, zIndicators[docCnt]);
+			}
+			int [] tokens = corpusStore != null 
+					? corpusStore.getDocumentTypes(docCnt) 
+					: ((FeatureSequence) data.get(docCnt).instance.getData()).getFeatures();
 			sumtotal += zIndicators[docCnt].length;
 			for (int pos = 0; pos < zIndicators[docCnt].length; pos++) {
 				int type = tokens[pos];
@@ -1838,6 +2787,11 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 			throw new IllegalArgumentException("Count does not sum to nr. types! Sumtotal: " + sumtotal + " no.types: " + corpusWordCount);
 		}
 
+		// The counts are new, so is the likelihood
+		if(likelihoodTracker != null) {
+			buildLikelihoodTracker();
+		}
+
 		if(logger.getLevel()==Level.INFO) {
 			System.out.println("loaded sumtotal: " + sumtotal + " tokens");
 		}
@@ -1849,6 +2803,7 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 
 		// This call samples phi given the new topic indicators
 		initialSamplePhi(topicIndices, phi);
+		updateTypeMajorPhi();
 	}
 
 	/**
@@ -1904,10 +2859,12 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 	}
 
 	public void setPhi(double[][] phi) {
-		this.phi = phi;
+		// In single precision mode the rows are moved to phiTF, keep the caller's matrix intact
+		this.phi = floatPhi ? phi.clone() : phi;
 		if(savePhiMeans()) {
-			phiMean = new double[numTopics][numTypes];
+			initPhiMean();
 		}
+		updateTypeMajorPhi();
 
 	}
 
@@ -1928,10 +2885,11 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 		}
 
 		ensureConsistentPhi(phi);
-		this.phi = phi;
+		this.phi = floatPhi ? phi.clone() : phi;
 		if(savePhiMeans()) {
-			phiMean = new double[numTopics][numTypes];
+			initPhiMean();
 		}
+		updateTypeMajorPhi();
 	}
 
 	protected boolean savePhiMeans() {
@@ -1949,11 +2907,11 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 	}
 
 	/* 
-	 * Returns the last sampled Phi
+	 * Returns the last sampled Phi, a copy in single precision mode
 	 */
 	@Override
 	public double[][] getPhi() {
-		return phi;
+		return floatPhi ? copyPhi(null) : phi;
 	}
 
 	/* 
@@ -1965,6 +2923,15 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 			logger.warning("No Phi has yet been sampled! getPhiMeans returns 'null'. Ensure that you have correctly configured 'phi_mean_burnin' and 'phi_mean_thin'");
 			return null;
 		}
+		if(phiMeanF!=null) {
+			double [][] result = new double[phiMeanF.length][phiMeanF[0].length];
+			for (int i = 0; i < phiMeanF.length; i++) {
+				for (int j = 0; j < phiMeanF[i].length; j++) {
+					result[i][j] = (double) phiMeanF[i][j] / noSampledPhi;
+				}
+			}
+			return result;
+		}
 		double [][] result = new double[phiMean.length][phiMean[0].length];
 		for (int i = 0; i < phiMean.length; i++) {
 			for (int j = 0; j < phiMean[i].length; j++) {
@@ -1982,15 +2949,19 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 
 	private static int PARSED_CONFIG = 0;
 	private static int SIMPLE_CONFIG = 1;
+	// Set in the config kind when the counts are written topic major, [topic][type]
+	private static int TOPIC_MAJOR_COUNTS = 2;
 
 	private void writeObject(ObjectOutputStream out) throws IOException {
+		flushCorpusStore();
 		if(ParsedLDAConfiguration.class.isAssignableFrom(config.getClass())) {
-			out.writeInt(PARSED_CONFIG);
+			out.writeInt(PARSED_CONFIG | TOPIC_MAJOR_COUNTS);
 			System.out.flush();
 		} else {
-			out.writeInt(SIMPLE_CONFIG);
+			out.writeInt(SIMPLE_CONFIG | TOPIC_MAJOR_COUNTS);
 		}
-		out.writeObject(data);
+		// With a corpus store the topic sequences are built from it
+		out.writeObject(getData());
 		out.writeObject(alphabet);
 		out.writeObject(topicAlphabet);
 
@@ -2003,13 +2974,14 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 		out.writeDouble(beta);
 		out.writeDouble(betaSum);
 
-		out.writeObject(phi);
-		out.writeObject(phiMean);
+		out.writeObject(getPhi());
+		// Either a double[][] or, in single precision mode, a float[][]
+		out.writeObject(phiMeanF != null ? phiMeanF : phiMean);
 		out.writeInt(phiBurnIn);
 		out.writeInt(phiMeanThin);
 		out.writeInt(noSampledPhi);
 
-		out.writeObject(typeTopicCounts);
+		out.writeObject(countStore.topicRows());
 		out.writeObject(tokensPerTopic);
 
 		out.writeObject(docLengthCounts);
@@ -2031,6 +3003,11 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 	@SuppressWarnings("unchecked")
 	private void readObject (ObjectInputStream in) throws IOException, ClassNotFoundException {
 		int version = in.readInt ();
+	boolean topicMajorCounts = (version & TOPIC_MAJOR_COUNTS) != 0;
+	version &= ~TOPIC_MAJOR_COUNTS;
+		docSamplingScratch = new ThreadLocal<DocSamplingScratch>();
+		phiScratchRow = new ThreadLocal<double []>();
+		workerTokenCounts = new ConcurrentHashMap<>();
 
 		data = (ArrayList<TopicAssignment>) in.readObject ();
 		alphabet = (Alphabet) in.readObject();
@@ -2046,12 +3023,15 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 		betaSum = in.readDouble();
 
 		phi = (double[][]) in.readObject();
-		phiMean  = (double[][]) in.readObject();
+		// Read when float_phi is known
+		Object storedPhiMean = in.readObject();
 		phiBurnIn = in.readInt();
 		phiMeanThin = in.readInt();
 		noSampledPhi = in.readInt();
 
-		typeTopicCounts = (int[][]) in.readObject();
+		int [][] counts = (int[][]) in.readObject();
+	countStore = topicMajorCounts ? TopicTypeCountStore.wrapTopicRows(counts, numTypes)
+			: TopicTypeCountStore.fromTypeTopicMatrix(counts, numTopics, numTypes);
 		tokensPerTopic = (int[]) in.readObject();
 
 		docLengthCounts = (int[]) in.readObject();
@@ -2073,37 +3053,81 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 			} catch (java.io.OptionalDataException e1) {
 				System.out.println("Could not read active subconfig from serialized sampler...");
 			}
-			System.out.println("Reading config from:" + cfg_file);
-			try {
-				config = new ParsedLDAConfiguration(cfg_file);
+			config = readParsedConfiguration(cfg_file, activeSubconfig);
+		}
+		numThreads = configuredNumThreads(config);
+		reproducibleSampling = config != null 
+				&& config.useReproducibleSampling(LDAConfiguration.REPRODUCIBLE_SAMPLING_DEFAULT);
+		floatPhi = config != null && config.useFloatPhi(LDAConfiguration.FLOAT_PHI_DEFAULT);
+		updateTypeMajorPhi();
+		readPhiMean(storedPhiMean);
+	}
 
-				String expDir = config.getExperimentOutputDirectory("");
-				if(!expDir.equals("")) {
-					expDir += "/";
-				}
-				String logSuitePath = "Runs/" + expDir + "RunSuite" + FileLoggingUtils.getDateStamp();
-				LDALoggingUtils lu = new LoggingUtils();
-				lu.checkAndCreateCurrentLogDir(logSuitePath);
-				config.setLoggingUtil(lu);
-				if(activeSubconfig==null) {
-					String [] subconfs = config.getSubConfigs();
-					if(subconfs!= null && subconfs.length > 0) {
-						System.out.println("Active subconfig not set, activating first available (" + activeSubconfig + ") ...");
-						activeSubconfig = subconfs[0];
-						config.activateSubconfig(activeSubconfig);
-						System.out.println("Activating subconfig: " + activeSubconfig);
-					}
-				} else {
-					config.activateSubconfig(activeSubconfig);					
+	/**
+	 * Reads a ParsedLDAConfiguration for a stored sampler, logging to a new run
+	 * suite directory and with <code>activeSubconfig</code> (or the first sub
+	 * config if it is null) activated
+	 * 
+	 * @return The configuration or null if it could not be read
+	 */
+	static LDAConfiguration readParsedConfiguration(String cfg_file, String activeSubconfig) {
+		System.out.println("Reading config from:" + cfg_file);
+		try {
+			LDAConfiguration config = new ParsedLDAConfiguration(cfg_file);
+
+			String expDir = config.getExperimentOutputDirectory("");
+			if(!expDir.equals("")) {
+				expDir += "/";
+			}
+			String logSuitePath = "Runs/" + expDir + "RunSuite" + FileLoggingUtils.getDateStamp();
+			LDALoggingUtils lu = new LoggingUtils();
+			lu.checkAndCreateCurrentLogDir(logSuitePath);
+			config.setLoggingUtil(lu);
+			if(activeSubconfig==null) {
+				String [] subconfs = config.getSubConfigs();
+				if(subconfs!= null && subconfs.length > 0) {
+					System.out.println("Active subconfig not set, activating first available (" + activeSubconfig + ") ...");
+					activeSubconfig = subconfs[0];
+					config.activateSubconfig(activeSubconfig);
+					System.out.println("Activating subconfig: " + activeSubconfig);
 				}
-
-				System.out.println("Done Reading config!");
-			} catch (ConfigurationException e) {
-				e.printStackTrace();
+			} else {
+				config.activateSubconfig(activeSubconfig);					
 			}
+
+			System.out.println("Done Reading config!");
+			return config;
+		} catch (ConfigurationException e) {
+			e.printStackTrace();
+			return null;
 		}
 	}
 
+	/**
+	 * @return num_threads from the config, all available processors if it is not set
+	 */
+	static int configuredNumThreads(LDAConfiguration config) {
+		int threads = config == null ? LDAConfiguration.NUM_THREADS_DEFAULT 
+				: config.getNumThreads(LDAConfiguration.NUM_THREADS_DEFAULT);
+		return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * Sets the cumulated phi sample from a stored double[][], or the float[][] 
+	 * that is stored when it is accumulated in single precision, converted to
+	 * the precision of this sampler
+	 */
+	protected void readPhiMean(Object storedPhiMean) {
+		if(storedPhiMean instanceof float[][]) {
+			phiMeanF = (float[][]) storedPhiMean;
+			phiMean = null;
+		} else {
+			phiMean = (double[][]) storedPhiMean;
+			phiMeanF = null;
+		}
+		matchPhiMeanPrecision();
+	}
+
 	public void write (File serializedModelFile) {
 		try {
 			ObjectOutputStream oos = new ObjectOutputStream (new FileOutputStream(serializedModelFile));
@@ -2328,13 +3352,171 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 		return topicModel;
 	}
 
+	/**
+	 * Writes phi for <code>iteration</code> as a dense binary matrix or, with
+	 * sparse_phi_output, as a sparse matrix
+	 */
+	protected void writePhi(int iteration, String filename) throws IOException {
+		if(floatPhi) {
+			// Rebuilt from phiTF straight into the dump buffer
+			if(sparsePhiOutput) {
+				getDumpWriter().dumpSparseDoubleMatrix(this::copyPhi, iteration, numTopics, numTypes, filename, phiQuantizationBits);
+			} else {
+				getDumpWriter().dumpBinaryDoubleMatrix(this::copyPhi, iteration, numTopics, numTypes, filename);
+			}
+		} else if(sparsePhiOutput) {
+			getDumpWriter().dumpSparseDoubleMatrix(phi, iteration, numTypes, filename, phiQuantizationBits);
+		} else {
+			getDumpWriter().dumpBinaryDoubleMatrix(phi, iteration, numTopics, numTypes, filename);
+		}
+	}
+
+	/**
+	 * Writes the entries of phi selected by <code>indices</code>, [topic][i], as
+	 * a topics x indices[0].length matrix
+	 */
+	protected void writeTopPhi(int iteration, String filename, int [][] indices) throws IOException {
+		if(!floatPhi) {
+			getDumpWriter().dumpBinaryDoubleMatrixIndices(phi, iteration, filename, indices);
+			return;
+		}
+		double [][] topPhi = new double[indices.length][indices[0].length];
+		for (int topic = 0; topic < indices.length; topic++) {
+			for (int i = 0; i < indices[topic].length; i++) {
+				topPhi[topic][i] = phiTF[indices[topic][i]][topic];
+			}
+		}
+		getDumpWriter().dumpBinaryDoubleMatrix(topPhi, iteration, topPhi.length, topPhi[0].length, filename, false);
+	}
+
+	/**
+	 * @return The writer of the per-iteration dumps, which logs the time each
+	 * dump stalled sampling and took to write to dumps.txt
+	 */
+	protected AsyncDumpWriter getDumpWriter() {
+		if(dumpWriter == null) {
+			dumpWriter = new AsyncDumpWriter(dumpQueueSize, numThreads, config.getLoggingUtil().getAppendingLogPrinter("dumps.txt"));
+		}
+		return dumpWriter;
+	}
+
+	/**
+	 * Stops the background I/O threads of the sampling loop. Called when the
+	 * loop ends, also if it fails, so that no writer thread outlives it
+	 */
+	protected void finishBackgroundIO() {
+		finishCheckpoints();
+		finishDumps();
+		closeLikelihoodLog();
+	}
+
+	/**
+	 * Appends the log likelihood of <code>iteration</code> to likelihood.txt
+	 */
+	protected void printLikelihood(int iteration, double logLik) {
+		if(likelihoodLog == null) {
+			likelihoodLog = config.getLoggingUtil().getAppendingLogPrinter("likelihood.txt");
+		}
+		likelihoodLog.println(iteration + "\t" + logLik);
+		likelihoodLog.flush();
+	}
+
+	protected void closeLikelihoodLog() {
+		if(likelihoodLog != null) {
+			likelihoodLog.close();
+			likelihoodLog = null;
+		}
+	}
+
+	/**
+	 * Waits for the pending dumps to be written and reports the dumping time
+	 */
+	protected void finishDumps() {
+		if(dumpWriter != null) {
+			dumpWriter.close();
+			System.out.println(dumpWriter);
+			dumpWriter = null;
+		}
+	}
+
+	/**
+	 * @return true if writeCheckpoint() stores all of the state of the sampler
+	 */
+	protected boolean canCheckpoint() {
+		return true;
+	}
+
+	/**
+	 * @return true if the Z sampling only reads phi through phiTF, phiValue() or
+	 * phiRow(), which float_phi requires
+	 */
+	protected boolean supportsFloatPhi() {
+		return false;
+	}
+
+	/**
+	 * @return The file periodic checkpoints are written to, checkpoint_file or
+	 * sampler.ckpt in the log directory
+	 */
+	public File getCheckpointFile() {
+		String checkpointFn = config.getCheckpointFilename(LDAConfiguration.CHECKPOINT_FILE_DEFAULT);
+		if(checkpointFn != null) {
+			return new File(checkpointFn);
+		}
+		return new File(config.getLoggingUtil().getLogDir(), "sampler.ckpt");
+	}
+
+	/**
+	 * Starts a background checkpoint of the current state every checkpointInterval
+	 * iterations and logs the time sampling was blocked, also to checkpoints.txt
+	 */
+	protected void checkpointIfDue() {
+		if(checkpointInterval <= 0 || currentIteration % checkpointInterval != 0) return;
+		if(checkpointer == null) {
+			checkpointer = new AsyncCheckpointer(getCheckpointFile(), 
+					config.getLoggingUtil().getAppendingLogPrinter("checkpoints.txt"));
+		}
+		long blockedNanos = checkpointer.checkpoint(this);
+		logger.info("Checkpoint at iteration " + currentIteration + " blocked sampling for " + (blockedNanos / 1000000) + " ms");
+	}
+
+	/**
+	 * Waits for the last periodic checkpoint to be written and reports the checkpointing time
+	 */
+	protected void finishCheckpoints() {
+		if(checkpointer != null) {
+			checkpointer.close();
+			System.out.println(checkpointer);
+			checkpointer = null;
+		}
+	}
+
+	/**
+	 * Writes the sampler in the binary checkpoint format of SamplerCheckpoint,
+	 * which is much faster than write() for large models
+	 */
+	public void writeCheckpoint(File checkpointFile) throws IOException {
+		SamplerCheckpoint.write(this, checkpointFile);
+	}
+
+	/**
+	 * Reads a sampler written by writeCheckpoint()
+	 */
+	public static UncollapsedParallelLDA readCheckpoint(File checkpointFile) throws IOException {
+		return SamplerCheckpoint.read(checkpointFile);
+	}
+
 	@Override
 	public void preContinuedSampling() {
 		startupThreadPools();
+		initLikelihoodTracker();
 	}
 
 	@Override
 	public void postContinuedSampling() {
+		finishCheckpoints();
+		finishDumps();
+		closeLikelihoodLog();
 		shutdownThreadPools();		
 	}
 
@@ -2343,7 +3525,7 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 		super.initFrom(source);
 		LDASamplerWithPhi phiSampler = (LDASamplerWithPhi) source;
 		setPhi(phiSampler.getPhi());
-		phiMean = phiSampler.getPhiMeans();
+		readPhiMean(phiSampler.getPhiMeans());
 	}
 
 	@Override
@@ -2385,7 +3567,7 @@ public class UncollapsedParallelLDA extends ModifiedSimpleLDA implements LDAGibb
 			double [] probs = new double[allowedTopics.length];
 			double typeMass = 0;
 			for (int topicIdx = 0; topicIdx < probs.length; topicIdx++) {
-				typeMass += probs[topicIdx] = phi[allowedTopics[topicIdx]][type] * alpha[allowedTopics[topicIdx]];
+				typeMass += probs[topicIdx] = phiValue(allowedTopics[topicIdx], type) * alpha[allowedTopics[topicIdx]];
 			}	
 
 			extraPriorTables.put(configKey,new ReMappedAliasTable(probs,typeMass,documentPriors.get(docIdx)));
@@ -11,6 +11,7 @@ public class BatchBuilderFactory {
 	public static final String PERCENTAGE_SPLIT = "cc.mallet.topics.randomscan.document.PercentageBatchBuilder";
 	public static final String ADAPTIVE_SPLIT   = "cc.mallet.topics.randomscan.document.AdaptiveBatchBuilder";
 	public static final String FIXED_SPLIT      = "cc.mallet.topics.randomscan.document.FixedSplitBatchBuilder";
+	public static final String TOKEN_BALANCED_SPLIT = "cc.mallet.topics.randomscan.document.TokenBalancedBatchBuilder";
 
 	public BatchBuilderFactory() {
 	}
@@ -0,0 +1,176 @@
+package cc.mallet.topics.randomscan.document;
+
+import java.util.Arrays;
+
+import cc.mallet.configuration.LDAConfiguration;
+import cc.mallet.topics.LDAGibbsSampler;
+import cc.mallet.topics.LDASamplerWithDocumentLengths;
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
+
+/**
+ * Splits the corpus into contiguous batches with (as close as possible) the same
+ * number of tokens in each batch instead of the same number of documents.
+ *
+ * The split points are found by binary search in the prefix sum of the document
+ * lengths, which is taken from the sampler if it provides one.
+ */
+public class TokenBalancedBatchBuilder implements DocumentBatchBuilder {
+
+	LDAGibbsSampler sampler;
+	LDAConfiguration config;
+	InstanceList data;
+
+	long [] tokenPrefixSum;
+	int [] batchStartArray;
+	int [][] documentBatches;
+	int documentsPerIter;
+
+	public TokenBalancedBatchBuilder(LDAConfiguration config, LDAGibbsSampler sampler) {
+		this.config = config;
+		this.sampler = sampler;
+		this.data = sampler.getDataset();
+	}
+
+	@Override
+	public void setSampler(LDAGibbsSampler sampler) {
+		this.sampler = sampler;
+	}
+
+	@Override
+	public synchronized void calculateBatch() {
+		if(sampler instanceof LDASamplerWithDocumentLengths) {
+			tokenPrefixSum = ((LDASamplerWithDocumentLengths) sampler).getDocumentTokenPrefixSum();
+		} else {
+			tokenPrefixSum = documentTokenPrefixSum(data);
+		}
+		int numBatches = config.getNoBatches(LDAConfiguration.NO_BATCHES_DEFAULT);
+		batchStartArray = splitPoints(tokenPrefixSum, numBatches);
+		documentsPerIter = tokenPrefixSum.length - 1;
+		documentBatches = null;
+	}
+
+	@Override
+	public synchronized int[][] documentBatches() {
+		if(documentBatches==null) {
+			int numBatches = batchStartArray.length - 1;
+			documentBatches = new int[numBatches][];
+			for (int i = 0; i < numBatches; i++) {
+				documentBatches[i] = new int[batchStartArray[i+1] - batchStartArray[i]];
+				int idx = batchStartArray[i];
+				for (int j = 0; j < documentBatches[i].length; j++) {
+					documentBatches[i][j] = idx++;
+				}
+			}
+		}
+		return documentBatches;
+	}
+
+	@Override
+	public int getDocResultsSize() {
+		return config.getResultSize(LDAConfiguration.RESULTS_SIZE_DEFAULT);
+	}
+
+	@Override
+	public int getDocumentsInIteration(int currentIteration) {
+		return documentsPerIter;
+	}
+
+	/**
+	 * @return max / mean of the number of tokens per batch, 1.0 is a perfect balance
+	 */
+	public double getTokenImbalance() {
+		return batchTokenImbalance(documentBatches(), tokenPrefixSum);
+	}
+
+	/**
+	 * @return prefix sum of the document lengths in <code>instances</code>, element d
+	 * is the number of tokens in documents 0..d-1
+	 */
+	public static long [] documentTokenPrefixSum(InstanceList instances) {
+		long [] prefixSum = new long[instances.size() + 1];
+		int docIdx = 0;
+		for (Instance instance : instances) {
+			FeatureSequence tokens = (FeatureSequence) instance.getData();
+			prefixSum[docIdx + 1] = prefixSum[docIdx] + tokens.getLength();
+			docIdx++;
+		}
+		return prefixSum;
+	}
+
+	/**
+	 * Finds the document index that splits the documents [startDoc,endDoc) into
+	 * two parts with as equal number of tokens as possible. Both parts are
+	 * non-empty if endDoc - startDoc >= 2.
+	 */
+	public static int tokenMidpoint(long [] prefixSum, int startDoc, int endDoc) {
+		long target = prefixSum[startDoc] + (prefixSum[endDoc] - prefixSum[startDoc]) / 2;
+		int split = firstAtLeast(prefixSum, startDoc + 1, endDoc, target);
+		if(split > startDoc + 1 && (target - prefixSum[split - 1]) < (prefixSum[split] - target)) {
+			split--;
+		}
+		return Math.max(startDoc + 1, Math.min(endDoc - 1, split));
+	}
+
+	/**
+	 * Splits all documents into <code>numBatches</code> contiguous ranges with
+	 * about the same number of tokens
+	 *
+	 * @return numBatches+1 document indices, batch b is [result[b],result[b+1])
+	 */
+	public static int [] splitPoints(long [] prefixSum, int numBatches) {
+		int noDocs = prefixSum.length - 1;
+		long totalTokens = prefixSum[noDocs];
+		int [] starts = new int[numBatches + 1];
+		starts[numBatches] = noDocs;
+		for (int b = 1; b < numBatches; b++) {
+			long target = (totalTokens * b) / numBatches;
+			int split = firstAtLeast(prefixSum, starts[b-1], noDocs, target);
+			// Always leave at least one document per batch if there are enough of them
+			int minSplit = Math.min(noDocs, starts[b-1] + (noDocs - starts[b-1] >= numBatches - b + 1 ? 1 : 0));
+			int maxSplit = Math.max(minSplit, noDocs - (numBatches - b));
+			starts[b] = Math.max(minSplit, Math.min(maxSplit, split));
+		}
+		return starts;
+	}
+
+	/**
+	 * @return max / mean of the tokens per batch, 1.0 means perfect balance
+	 */
+	public static double batchTokenImbalance(int [][] batches, long [] prefixSum) {
+		long [] tokensPerBatch = new long[batches.length];
+		for (int b = 0; b < batches.length; b++) {
+			for (int docIdx : batches[b]) {
+				tokensPerBatch[b] += prefixSum[docIdx + 1] - prefixSum[docIdx];
+			}
+		}
+		return imbalance(tokensPerBatch);
+	}
+
+	/**
+	 * @return max / mean of <code>tokensPerWorker</code>, 1.0 means perfect balance
+	 */
+	public static double imbalance(long [] tokensPerWorker) {
+		if(tokensPerWorker.length==0) return 1.0;
+		long max = Arrays.stream(tokensPerWorker).max().getAsLong();
+		long sum = Arrays.stream(tokensPerWorker).sum();
+		if(sum==0) return 1.0;
+		return max / ((double) sum / tokensPerWorker.length);
+	}
+
+	// Smallest index i in [from,to] with prefixSum[i] >= target
+	static int firstAtLeast(long [] prefixSum, int from, int to, long target) {
+		int lo = from;
+		int hi = to;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if(prefixSum[mid] < target) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+}
@@ -31,6 +31,7 @@ import cc.mallet.util.FileLoggingUtils;
 import cc.mallet.util.LDALoggingUtils;
 import cc.mallet.util.LDAUtils;
 import cc.mallet.util.LoggingUtils;
+import cc.mallet.util.SparseMatrixFile;
 import cc.mallet.util.TeeStream;
 import cc.mallet.util.Timer;
 
@@ -289,15 +290,13 @@ public class ParallelLDA {
 		if(config.saveDocumentTopicMeans()) {
 			String docTopicMeanFn = config.getDocumentTopicMeansOutputFilename();
 			double [][] means = model.getZbar();
-			PrintWriter dtmOut = config.getLoggingUtil().getLogPrinter(docTopicMeanFn);
-			LDAUtils.writeASCIIDoubleMatrix(means, ",", dtmOut);
+			LDAUtils.writeASCIIDoubleMatrix(means, ",", new File(lgDir, docTopicMeanFn));
 		}
 
 		if(config.saveDocumentThetaEstimate()) {
 			String docTopicThetaFn = config.getDocumentTopicThetaOutputFilename();
 			double [][] means = model.getThetaEstimate();
-			PrintWriter dtmOut = config.getLoggingUtil().getLogPrinter(docTopicThetaFn);
-			LDAUtils.writeASCIIDoubleMatrix(means, ",", dtmOut);
+			LDAUtils.writeASCIIDoubleMatrix(means, ",", new File(lgDir, docTopicThetaFn));
 		}
 
 		if(model instanceof LDASamplerWithPhi) {
@@ -305,9 +304,11 @@ public class ParallelLDA {
 			if(config.savePhiMeans(LDAConfiguration.SAVE_PHI_MEAN_DEFAULT)) {
 				String docTopicMeanFn = config.getPhiMeansOutputFilename();
 				double [][] means = modelWithPhi.getPhiMeans();
-				if(means!=null) {
-					PrintWriter dtmOut = config.getLoggingUtil().getLogPrinter(docTopicMeanFn);
-					LDAUtils.writeASCIIDoubleMatrix(means, ",",dtmOut);
+				if(means!=null && config.useSparsePhiOutput(LDAConfiguration.SPARSE_PHI_OUTPUT_DEFAULT)) {
+					SparseMatrixFile.write(means, means[0].length, new File(lgDir, docTopicMeanFn + ".spm"), 
+							config.getPhiQuantizationBits(LDAConfiguration.PHI_QUANTIZATION_BITS_DEFAULT));
+				} else if(means!=null) {
+					LDAUtils.writeASCIIDoubleMatrix(means, ",", new File(lgDir, docTopicMeanFn));
 				} else {
 					System.err.println("WARNING: ParallelLDA: No Phi means where sampled, not saving Phi means! This is likely due to a combination of configuration settings of phi_mean_burnin, phi_mean_thin and save_phi_mean");
 				}
@@ -23,6 +23,7 @@ import cc.mallet.util.FileLoggingUtils;
 import cc.mallet.util.LDALoggingUtils;
 import cc.mallet.util.LDAUtils;
 import cc.mallet.util.LoggingUtils;
+import cc.mallet.util.SparseMatrixFile;
 import cc.mallet.util.Timer;
 
 public class ParallelLDATrainTest extends ParallelLDA {
@@ -131,7 +132,21 @@ public class ParallelLDATrainTest extends ParallelLDA {
 				SpaliasUncollapsedParallelLDA trainedSampler = XValidationCreator.sampleTrainingset(trainingInstances, config);
 				InstanceList testInstances = trainTest[TESTING];
 				System.out.println("Test set contains: " + testInstances.size() + " instances");
-				SpaliasUncollapsedParallelLDA testSampler = XValidationCreator.sampleTestset(testInstances, trainingInstances, trainedSampler.getPhi(), config);
+				double [][] trainedPhi = trainedSampler.getPhi();
+				if(config.useSparsePhiOutput(LDAConfiguration.SPARSE_PHI_OUTPUT_DEFAULT)) {
+					int quantizationBits = config.getPhiQuantizationBits(LDAConfiguration.PHI_QUANTIZATION_BITS_DEFAULT);
+					File phiFile = new File(lu.getLogDir(), "train-phi.spm");
+					SparseMatrixFile.write(trainedPhi, trainedPhi[0].length, phiFile, quantizationBits);
+					System.out.println("Wrote trained phi to: " + phiFile.getAbsolutePath() + " (" + phiFile.length() + " bytes)");
+					if(quantizationBits == 0) {
+						// Sample the test set given the exported phi so the test results are those of the saved model
+						trainedPhi = SparseMatrixFile.read(phiFile);
+					} else {
+						System.out.println("The saved phi is quantized to " + quantizationBits 
+								+ " bits, the test set is sampled with the unquantized trained phi");
+					}
+				}
+				SpaliasUncollapsedParallelLDA testSampler = XValidationCreator.sampleTestset(testInstances, trainingInstances, trainedPhi, config);
 				t.stop();
 				System.out.println("Finished:" + new Date());
 				
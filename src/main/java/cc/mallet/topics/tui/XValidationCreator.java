@@ -1,5 +1,6 @@
 package cc.mallet.topics.tui;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.Date;
@@ -18,6 +19,7 @@ import cc.mallet.util.FileLoggingUtils;
 import cc.mallet.util.LDALoggingUtils;
 import cc.mallet.util.LDAUtils;
 import cc.mallet.util.LoggingUtils;
+import cc.mallet.util.SparseMatrixFile;
 
 public class XValidationCreator {
 
@@ -127,8 +129,14 @@ public class XValidationCreator {
 
 		String phiMeanFn = config.getPhiMeansOutputFilename();
 		double [][] phiMeans = spalias.getPhiMeans();
-		PrintWriter phiOut = config.getLoggingUtil().getLogPrinter("train-" + phiMeanFn);
-		LDAUtils.writeASCIIDoubleMatrix(phiMeans, ",", phiOut);
+		if(config.useSparsePhiOutput(LDAConfiguration.SPARSE_PHI_OUTPUT_DEFAULT)) {
+			SparseMatrixFile.write(phiMeans, phiMeans[0].length, 
+					new File(config.getLoggingUtil().getLogDir(), "train-" + phiMeanFn + ".spm"), 
+					config.getPhiQuantizationBits(LDAConfiguration.PHI_QUANTIZATION_BITS_DEFAULT));
+		} else {
+			PrintWriter phiOut = config.getLoggingUtil().getLogPrinter("train-" + phiMeanFn);
+			LDAUtils.writeASCIIDoubleMatrix(phiMeans, ",", phiOut);
+		}
 
 		PrintWriter out = new PrintWriter(config.getLoggingUtil().getLogDir().getAbsolutePath() + "/train-ids.txt");
 		String [] ids = extractRowIds(trainingInstances);
@@ -5,10 +5,10 @@ import static java.lang.Math.log;
 import static java.lang.Math.pow;
 import static java.lang.Math.sqrt;
 
-import java.util.concurrent.ThreadLocalRandom;
-
 import org.apache.commons.math3.exception.NotANumberException;
 
+import cc.mallet.util.SamplerRandom;
+
 /*
  *  Mathlib : A C Library of Special Functions
  *  Copyright (C) 1998 Ross Ihaka
@@ -124,8 +124,8 @@ public class BinomialSampler {
 
 		/*-------------------------- np = n*p >= 30 : ------------------- */
 		for(;;) {
-			u = ThreadLocalRandom.current().nextDouble() * p4;
-			v = ThreadLocalRandom.current().nextDouble();
+			u = SamplerRandom.current().nextDouble() * p4;
+			v = SamplerRandom.current().nextDouble();
 			/* triangular region */
 			if (u <= p1) {
 				ix = (int)(xm - p1 * v + u);
@@ -211,7 +211,7 @@ public class BinomialSampler {
 		for(;;) {
 			ix = 0;
 			double f = qn;
-			double u = ThreadLocalRandom.current().nextDouble();
+			double u = SamplerRandom.current().nextDouble();
 			for(;;) {
 				if (u < f) {
 					if (psave > 0.5)
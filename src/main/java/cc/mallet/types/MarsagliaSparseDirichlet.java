@@ -30,7 +30,12 @@ public class MarsagliaSparseDirichlet extends ParallelDirichlet implements Spars
 
 	public double[] nextDistribution(int [] counts) {
 		double distribution[] = new double[partition.length];
+		nextDistribution(counts, distribution);
+		return distribution;
+	}
 
+	@Override
+	public void nextDistribution(int [] counts, double [] distribution) {
 		double sum = 0;
 		for (int i=0; i<distribution.length; i++) {
 			// If the count is 0 use the precalculated version of Marsaglias gamma sampler
@@ -50,8 +55,6 @@ public class MarsagliaSparseDirichlet extends ParallelDirichlet implements Spars
 				}			
 			}
 		}
-
-		return distribution;
 	}
 
 	@Override
@@ -1,7 +1,6 @@
 package cc.mallet.types;
 
 import java.util.Arrays;
-import java.util.concurrent.ThreadLocalRandom;
 
 import org.apache.commons.math3.util.CombinatoricsUtils;
 import org.apache.commons.math3.util.FastMath;
@@ -9,6 +8,8 @@ import org.apache.commons.math3.util.FastMath;
 import gnu.trove.TIntArrayList;
 import gnu.trove.TIntHashSet;
 
+import cc.mallet.util.SamplerRandom;
+
 public class PolyaUrnDirichlet extends ParallelDirichlet implements SparseDirichlet {
 
 	public PolyaUrnDirichlet(double[] prior) {
@@ -61,7 +62,7 @@ public class PolyaUrnDirichlet extends ParallelDirichlet implements SparseDirich
 		long nu_k = PolyaUrnDirichlet.nextPoisson(target.length * prior);
 		
 		for(int i = 0; i < nu_k; i++) {
-			int u = ThreadLocalRandom.current().nextInt(target.length);
+			int u = SamplerRandom.current().nextInt(target.length);
 			//(3) For i=1,..,\nu, choose a column in distribution uniformly at random, and add 1 to it
 			target[u]++;
 			resultingNonZeroIdxs.add(u);
@@ -83,6 +84,22 @@ public class PolyaUrnDirichlet extends ParallelDirichlet implements SparseDirich
 		return nextDistributionWithSparseness(counts).phiRow;
 	}
 
+	/**
+	 * Draws the same distribution as nextDistributionWithSparseness(counts)
+	 * into <code>target</code> without collecting the non-zero indices
+	 */
+	@Override
+	public void nextDistribution(int [] counts, double [] target) {
+		double sum = 0;
+		for (int i=0; i<target.length; i++) {
+			target[i] = (double) nextPoisson(partition[i] * magnitude + (double) counts[i]);
+			sum += target[i];
+		}
+		for (int i=0; i<target.length; i++) {
+			target[i] /= sum;
+		}
+	}
+
 	@Override
 	public VSResult nextDistributionWithSparseness() {
 		throw new java.lang.UnsupportedOperationException();
@@ -100,7 +117,7 @@ public class PolyaUrnDirichlet extends ParallelDirichlet implements SparseDirich
 	 * @return
 	 */
 	public static long nextPoissonNormalApproximation(double meanPoisson) {
-		long sample = Math.round(Math.sqrt(meanPoisson) * ThreadLocalRandom.current().nextGaussian() + (meanPoisson));
+		long sample = Math.round(Math.sqrt(meanPoisson) * SamplerRandom.current().nextGaussian() + (meanPoisson));
 		if(sample<0) 
 			System.err.println("WARNING: PolyaUrnDirichlet.nextPoissonNormalApproximation drew negative value! Normal approximation should only be used if mean is large is enough. Mean was: " + meanPoisson);
 		return sample;
@@ -197,7 +214,7 @@ public class PolyaUrnDirichlet extends ParallelDirichlet implements SparseDirich
 			double rnd = 1.0d;
 
 			while (n < 1000 * meanPoisson) {
-				rnd = ThreadLocalRandom.current().nextDouble();
+				rnd = SamplerRandom.current().nextDouble();
 				r *= rnd;
 				if (r >= p) {
 					n++;
@@ -230,9 +247,9 @@ public class PolyaUrnDirichlet extends ParallelDirichlet implements SparseDirich
 			double qr = 0;
 			double qa = 0;
 			for (;;) {
-				final double u = ThreadLocalRandom.current().nextDouble();
+				final double u = SamplerRandom.current().nextDouble();
 				if (u <= p1) {
-					final double n = ThreadLocalRandom.current().nextGaussian();
+					final double n = SamplerRandom.current().nextGaussian();
 					x = n * FastMath.sqrt(lambda + halfDelta) - 0.5d;
 					if (x > delta || x < -lambda) {
 						continue;
@@ -277,7 +294,7 @@ public class PolyaUrnDirichlet extends ParallelDirichlet implements SparseDirich
 	// exponential RV sampler via inversion method
 	public static double nextStandardExponential() {
 		for(;;) {
-			double u = ThreadLocalRandom.current().nextDouble();
+			double u = SamplerRandom.current().nextDouble();
 			double e = -FastMath.log(u);
 			if(e > 0 && e < Double.MAX_VALUE && e == e) { // check for zero, positive infinity, and NaN
 				return e;
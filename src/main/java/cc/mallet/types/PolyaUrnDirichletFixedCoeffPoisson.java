@@ -74,6 +74,20 @@ public class PolyaUrnDirichletFixedCoeffPoisson extends PolyaUrnDirichlet implem
 		return nextDistributionWithSparseness(counts).phiRow;
 	}
 
+	@Override
+	public void nextDistribution(int [] counts, double [] target) {
+		double sum = 0;
+		for (int i=0; i<target.length; i++) {
+			target[i] = fep.nextPoisson(counts[i]);
+			sum += target[i];
+		}
+		if(sum>0) {
+			for (int i=0; i<target.length; i++) {
+				target[i] /= sum;
+			}
+		}
+	}
+
 	@Override
 	public VSResult nextDistributionWithSparseness() {
 		throw new java.lang.UnsupportedOperationException();
@@ -1,6 +1,6 @@
 package cc.mallet.types;
 
-import java.util.concurrent.ThreadLocalRandom;
+import cc.mallet.util.SamplerRandom;
 
 public class SimpleMultinomial {
 
@@ -16,7 +16,7 @@ public class SimpleMultinomial {
 	int [] draw(int draws) {
 		int [] res = new int[probs.length];
 		for (int draw = 0; draw < draws; draw++) {
-			double u = ThreadLocalRandom.current().nextDouble();
+			double u = SamplerRandom.current().nextDouble();
 			int category = 0;
 			while( category < probs.length && u > 0) {
 				u-=probs[category];
@@ -4,6 +4,13 @@ public interface SparseDirichlet {
 	
 	public double[] nextDistribution();
 	public double[] nextDistribution(int [] counts);
+	/**
+	 * Draws a distribution as nextDistribution(counts) does into <code>target</code>
+	 * so that callers can re-use one row
+	 */
+	public default void nextDistribution(int [] counts, double [] target) {
+		System.arraycopy(nextDistribution(counts), 0, target, 0, target.length);
+	}
 	public VSResult nextDistributionWithSparseness();
 	public VSResult nextDistributionWithSparseness(int [] counts);
 	public VSResult nextDistributionWithSparseness(double prior);
@@ -0,0 +1,459 @@
+package cc.mallet.util;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Writes the per-iteration diagnostic dumps of a sampler (phi, the count
+ * matrices, theta and so on) on a dedicated I/O thread so that the sampling
+ * loop does not wait on the disk.
+ *
+ * Matrices the sampler keeps modifying are copied into pooled buffers that are
+ * returned to the pool once written, matrices built only for the dump are handed
+ * over as they are. At most <code>queueSize</code> dumps are queued or being
+ * written, when that many are pending the sampler blocks until the I/O thread
+ * has caught up, which bounds the memory held by pending dumps. With a queue
+ * size of 0 the dumps are written directly on the calling thread.
+ *
+ * For each dump the time the sampler stalled (copying and waiting for room in
+ * the queue, or writing when synchronous) and the time the write took are
+ * logged as <code>iteration name stall_ms write_ms</code>.
+ */
+public class AsyncDumpWriter {
+
+	/**
+	 * Writes one dump
+	 */
+	public interface Dump {
+		void write() throws IOException;
+	}
+
+	/**
+	 * Fills a buffer with the matrix to dump, such as a transposed view of the sampler counts
+	 */
+	public interface IntMatrixFill {
+		void fill(int [][] target);
+	}
+
+	/**
+	 * Fills a buffer with the matrix to dump, such as phi rebuilt from its single precision copy
+	 */
+	public interface DoubleMatrixFill {
+		void fill(double [][] target);
+	}
+
+	static class Task {
+		final int iteration;
+		final String name;
+		final Dump dump;
+		final Runnable release;
+		final long stallNanos;
+
+		Task(int iteration, String name, Dump dump, Runnable release, long stallNanos) {
+			this.iteration = iteration;
+			this.name = name;
+			this.dump = dump;
+			this.release = release;
+			this.stallNanos = stallNanos;
+		}
+	}
+
+	static final Task STOP = new Task(-1, "stop", null, null, 0);
+
+	final int queueSize;
+	final BlockingQueue<Task> queue;
+	final Semaphore slots;
+	final PrintWriter log;
+	final Thread writer;
+	final MatrixWriter matrices;
+	final ConcurrentLinkedQueue<double [][]> doublePool = new ConcurrentLinkedQueue<>();
+	final ConcurrentLinkedQueue<int [][]> intPool = new ConcurrentLinkedQueue<>();
+
+	int noDumps = 0;
+	long copyNanos = 0;
+	long waitNanos = 0;
+	long stallNanos = 0;
+	volatile long writeNanos = 0;
+	volatile int noFailed = 0;
+	boolean closed = false;
+
+	/**
+	 * @param queueSize Maximum number of dumps waiting to be written, 0 to write on the calling thread
+	 * @param log Where to log the timing of each dump, may be null
+	 */
+	public AsyncDumpWriter(int queueSize, PrintWriter log) {
+		this(queueSize, Runtime.getRuntime().availableProcessors(), log);
+	}
+
+	/**
+	 * @param queueSize Maximum number of dumps waiting to be written, 0 to write on the calling thread
+	 * @param numThreads Number of threads each matrix is formatted with
+	 * @param log Where to log the timing of each dump, may be null
+	 */
+	public AsyncDumpWriter(int queueSize, int numThreads, PrintWriter log) {
+		this.queueSize = Math.max(0, queueSize);
+		this.log = log;
+		this.matrices = new MatrixWriter(numThreads);
+		if(this.queueSize > 0) {
+			queue = new LinkedBlockingQueue<>();
+			slots = new Semaphore(this.queueSize);
+			writer = new LDAThreadFactory("AsyncDumpWriter").newThread(this::run);
+			writer.start();
+		} else {
+			queue = null;
+			slots = null;
+			writer = null;
+		}
+	}
+
+	public boolean isAsynchronous() {
+		return writer != null;
+	}
+
+	/**
+	 * Writes a dump whose data is not modified after this call, such as a
+	 * matrix that was built only to be dumped
+	 *
+	 * @return The time in nanoseconds the caller was blocked
+	 */
+	public long dump(int iteration, String name, Dump dump) throws IOException {
+		if(!isAsynchronous()) {
+			return writeNow(iteration, name, dump);
+		}
+		long start = System.nanoTime();
+		acquireSlot(name);
+		return enqueue(iteration, name, dump, null, System.nanoTime() - start, 0);
+	}
+
+	/**
+	 * Writes <code>matrix</code>, which must not be modified after this call, as
+	 * LDAUtils.writeBinaryIntMatrix does
+	 */
+	public long dumpBinaryIntMatrix(int [][] matrix, int iteration, int rows, int columns, String filename) throws IOException {
+		return dump(iteration, filename, () -> LDAUtils.writeBinaryIntMatrix(matrices, matrix, iteration, rows, columns, filename));
+	}
+
+	/**
+	 * Writes the rows x columns matrix that <code>fill</code> puts in a pooled
+	 * buffer as LDAUtils.writeBinaryIntMatrix does, so the matrix is not
+	 * allocated for every dump
+	 */
+	public long dumpBinaryIntMatrix(IntMatrixFill fill, int iteration, int rows, int columns, String filename) throws IOException {
+		if(!isAsynchronous()) {
+			int [][] buffer = borrowInts(rows, columns);
+			fill.fill(buffer);
+			try {
+				return writeNow(iteration, filename, () -> LDAUtils.writeBinaryIntMatrix(matrices, buffer, iteration, rows, columns, filename));
+			} finally {
+				intPool.add(buffer);
+			}
+		}
+		long start = System.nanoTime();
+		acquireSlot(filename);
+		long copyStart = System.nanoTime();
+		int [][] copy = borrowInts(rows, columns);
+		fill.fill(copy);
+		return enqueue(iteration, filename, () -> LDAUtils.writeBinaryIntMatrix(matrices, copy, iteration, rows, columns, filename),
+				() -> intPool.add(copy), copyStart - start, System.nanoTime() - copyStart);
+	}
+
+	/**
+	 * Writes <code>matrix</code> as LDAUtils.writeBinaryDoubleMatrix does, from a
+	 * copy if the write is asynchronous
+	 */
+	public long dumpBinaryDoubleMatrix(double [][] matrix, int iteration, int rows, int columns, String filename) throws IOException {
+		return dumpBinaryDoubleMatrix(matrix, iteration, rows, columns, filename, true);
+	}
+
+	/**
+	 * @param copyMatrix false if <code>matrix</code> is not modified after this
+	 * call and can be written as it is
+	 */
+	public long dumpBinaryDoubleMatrix(double [][] matrix, int iteration, int rows, int columns, String filename, boolean copyMatrix) throws IOException {
+		if(!copyMatrix) {
+			return dump(iteration, filename, () -> LDAUtils.writeBinaryDoubleMatrix(matrices, matrix, iteration, rows, columns, filename));
+		}
+		if(!isAsynchronous()) {
+			return writeNow(iteration, filename, () -> LDAUtils.writeBinaryDoubleMatrix(matrices, matrix, iteration, rows, columns, filename));
+		}
+		long start = System.nanoTime();
+		acquireSlot(filename);
+		long copyStart = System.nanoTime();
+		double [][] copy = borrow(rows, columns);
+		for (int row = 0; row < rows; row++) {
+			System.arraycopy(matrix[row], 0, copy[row], 0, columns);
+		}
+		return enqueue(iteration, filename, () -> LDAUtils.writeBinaryDoubleMatrix(matrices, copy, iteration, rows, columns, filename),
+				() -> doublePool.add(copy), copyStart - start, System.nanoTime() - copyStart);
+	}
+
+	/**
+	 * Writes the rows x columns matrix that <code>fill</code> puts in a pooled
+	 * buffer as LDAUtils.writeBinaryDoubleMatrix does
+	 */
+	public long dumpBinaryDoubleMatrix(DoubleMatrixFill fill, int iteration, int rows, int columns, String filename) throws IOException {
+		return dumpFilled(fill, iteration, rows, columns, filename,
+				buffer -> LDAUtils.writeBinaryDoubleMatrix(matrices, buffer, iteration, rows, columns, filename));
+	}
+
+	/**
+	 * Writes the rows x columns matrix that <code>fill</code> puts in a pooled
+	 * buffer as LDAUtils.writeSparseDoubleMatrix does
+	 */
+	public long dumpSparseDoubleMatrix(DoubleMatrixFill fill, int iteration, int rows, int columns, String filename, int quantizationBits) throws IOException {
+		return dumpFilled(fill, iteration, rows, columns, filename,
+				buffer -> LDAUtils.writeSparseDoubleMatrix(buffer, iteration, columns, filename, quantizationBits));
+	}
+
+	interface DoubleMatrixWrite {
+		void write(double [][] matrix) throws IOException;
+	}
+
+	long dumpFilled(DoubleMatrixFill fill, int iteration, int rows, int columns, String filename, DoubleMatrixWrite write) throws IOException {
+		if(!isAsynchronous()) {
+			double [][] buffer = borrow(rows, columns);
+			fill.fill(buffer);
+			try {
+				return writeNow(iteration, filename, () -> write.write(buffer));
+			} finally {
+				doublePool.add(buffer);
+			}
+		}
+		long start = System.nanoTime();
+		acquireSlot(filename);
+		long copyStart = System.nanoTime();
+		double [][] copy = borrow(rows, columns);
+		fill.fill(copy);
+		return enqueue(iteration, filename, () -> write.write(copy),
+				() -> doublePool.add(copy), copyStart - start, System.nanoTime() - copyStart);
+	}
+
+	/**
+	 * Writes <code>matrix</code> as LDAUtils.writeBinaryDoubleMatrixIndices does,
+	 * only the selected entries are copied if the write is asynchronous
+	 */
+	public long dumpBinaryDoubleMatrixIndices(double [][] matrix, int iteration, String filename, int [][] indices) throws IOException {
+		if(!isAsynchronous()) {
+			return writeNow(iteration, filename, () -> LDAUtils.writeBinaryDoubleMatrixIndices(matrices, matrix, iteration, filename, indices));
+		}
+		long start = System.nanoTime();
+		acquireSlot(filename);
+		long copyStart = System.nanoTime();
+		int rows = indices.length;
+		int columns = indices[0].length;
+		double [][] copy = borrow(rows, columns);
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < indices[row].length; col++) {
+				copy[row][col] = matrix[row][indices[row][col]];
+			}
+		}
+		// Same layout and file name as writing the selected entries of the full matrix
+		return enqueue(iteration, filename, () -> LDAUtils.writeBinaryDoubleMatrix(matrices, copy, iteration, rows, columns, filename),
+				() -> doublePool.add(copy), copyStart - start, System.nanoTime() - copyStart);
+	}
+
+	/**
+	 * Writes <code>matrix</code> as LDAUtils.writeSparseDoubleMatrix does, from a
+	 * copy if the write is asynchronous
+	 */
+	public long dumpSparseDoubleMatrix(double [][] matrix, int iteration, int columns, String filename, int quantizationBits) throws IOException {
+		if(!isAsynchronous()) {
+			return writeNow(iteration, filename, () -> LDAUtils.writeSparseDoubleMatrix(matrix, iteration, columns, filename, quantizationBits));
+		}
+		long start = System.nanoTime();
+		acquireSlot(filename);
+		long copyStart = System.nanoTime();
+		double [][] copy = borrow(matrix.length, columns);
+		for (int row = 0; row < matrix.length; row++) {
+			System.arraycopy(matrix[row], 0, copy[row], 0, columns);
+		}
+		return enqueue(iteration, filename, () -> LDAUtils.writeSparseDoubleMatrix(copy, iteration, columns, filename, quantizationBits),
+				() -> doublePool.add(copy), copyStart - start, System.nanoTime() - copyStart);
+	}
+
+	/**
+	 * Writes <code>values</code> as LDAUtils.writeIntRowArray does, from a copy if
+	 * the write is asynchronous
+	 */
+	public long dumpIntRowArray(int [] values, int iteration, String filename) throws IOException {
+		if(!isAsynchronous()) {
+			return writeNow(iteration, filename, () -> LDAUtils.writeIntRowArray(values, filename));
+		}
+		long start = System.nanoTime();
+		acquireSlot(filename);
+		long copyStart = System.nanoTime();
+		int [] copy = Arrays.copyOf(values, values.length);
+		return enqueue(iteration, filename, () -> LDAUtils.writeIntRowArray(copy, filename), null,
+				copyStart - start, System.nanoTime() - copyStart);
+	}
+
+	/**
+	 * @return A rows x columns buffer from the pool, or a new one if none of that shape is free
+	 */
+	double [][] borrow(int rows, int columns) {
+		double [][] buffer;
+		while ((buffer = doublePool.poll()) != null) {
+			if(buffer.length == rows && (rows == 0 || buffer[0].length == columns)) {
+				return buffer;
+			}
+		}
+		return new double[rows][columns];
+	}
+
+	int [][] borrowInts(int rows, int columns) {
+		int [][] buffer;
+		while ((buffer = intPool.poll()) != null) {
+			if(buffer.length == rows && (rows == 0 || buffer[0].length == columns)) {
+				return buffer;
+			}
+		}
+		return new int[rows][columns];
+	}
+
+	long writeNow(int iteration, String name, Dump dump) throws IOException {
+		checkOpen();
+		long start = System.nanoTime();
+		dump.write();
+		long write = System.nanoTime() - start;
+		noDumps++;
+		writeNanos += write;
+		stallNanos += write;
+		logDump(iteration, name, write, write);
+		return write;
+	}
+
+	/**
+	 * Blocks until fewer than queueSize dumps are pending. Taking the slot before
+	 * copying keeps the number of pooled copies at queueSize
+	 */
+	void acquireSlot(String name) throws IOException {
+		checkOpen();
+		try {
+			slots.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting to queue dump " + name, e);
+		}
+	}
+
+	long enqueue(int iteration, String name, Dump dump, Runnable release, long wait, long copy) {
+		long stall = wait + copy;
+		noDumps++;
+		waitNanos += wait;
+		copyNanos += copy;
+		stallNanos += stall;
+		queue.add(new Task(iteration, name, dump, release, stall));
+		return stall;
+	}
+
+	void checkOpen() {
+		if(closed) {
+			throw new IllegalStateException("Dump writer is closed");
+		}
+	}
+
+	void run() {
+		while (true) {
+			Task task;
+			try {
+				task = queue.take();
+			} catch (InterruptedException e) {
+				return;
+			}
+			if(task == STOP) return;
+			long start = System.nanoTime();
+			try {
+				task.dump.write();
+			} catch (Exception e) {
+				noFailed++;
+				e.printStackTrace();
+				System.err.println("Problem writing dump " + task.name + ": " + e);
+			}
+			long write = System.nanoTime() - start;
+			writeNanos += write;
+			if(task.release != null) {
+				task.release.run();
+			}
+			slots.release();
+			logDump(task.iteration, task.name, task.stallNanos, write);
+		}
+	}
+
+	synchronized void logDump(int iteration, String name, long stall, long write) {
+		if(log != null) {
+			log.println(iteration + "\t" + name + "\t" + (stall / 1000000) + "\t" + (write / 1000000));
+		}
+	}
+
+	/**
+	 * Waits for the queued dumps to be written and stops the I/O thread
+	 */
+	public void close() {
+		if(closed) return;
+		closed = true;
+		if(writer != null) {
+			long start = System.nanoTime();
+			try {
+				queue.add(STOP);
+				writer.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			long drain = System.nanoTime() - start;
+			waitNanos += drain;
+			stallNanos += drain;
+		}
+		matrices.close();
+		if(log != null) {
+			log.flush();
+		}
+	}
+
+	public int getNoDumps() {
+		return noDumps;
+	}
+
+	public int getNoFailed() {
+		return noFailed;
+	}
+
+	/**
+	 * @return Total milliseconds the sampler was blocked by dumps
+	 */
+	public long getStallMillis() {
+		return stallNanos / 1000000;
+	}
+
+	/**
+	 * @return Total milliseconds spent copying matrices for dumps
+	 */
+	public long getCopyMillis() {
+		return copyNanos / 1000000;
+	}
+
+	/**
+	 * @return Total milliseconds spent waiting for a dump to be written before the next could be queued
+	 */
+	public long getWaitMillis() {
+		return waitNanos / 1000000;
+	}
+
+	/**
+	 * @return Total milliseconds spent writing dumps
+	 */
+	public long getWriteMillis() {
+		return writeNanos / 1000000;
+	}
+
+	@Override
+	public String toString() {
+		return "Wrote " + noDumps + " dumps" + (isAsynchronous() ? " in the background (queue size " + queueSize + ")" : "")
+				+ ", writing took " + getWriteMillis() + " ms, sampling was blocked " + getStallMillis()
+				+ " ms (copying " + getCopyMillis() + " ms, waiting for the queue " + getWaitMillis() + " ms)";
+	}
+}
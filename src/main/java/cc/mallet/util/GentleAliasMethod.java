@@ -3,7 +3,6 @@ package cc.mallet.util;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.ThreadLocalRandom;
 
 public class GentleAliasMethod implements WalkerAliasTable {
 	Random random = new Random();
@@ -77,7 +76,7 @@ public class GentleAliasMethod implements WalkerAliasTable {
 	
 	@Override
 	public int generateSample() {
-		int i=random.nextInt(k); if (ThreadLocalRandom.current().nextDouble()>ps[i]) i=a[i]; return i;
+		int i=random.nextInt(k); if (SamplerRandom.current().nextDouble()>ps[i]) i=a[i]; return i;
 	}
 
 	@Override
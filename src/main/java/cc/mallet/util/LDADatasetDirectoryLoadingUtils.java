@@ -2,9 +2,10 @@ package cc.mallet.util;
 
 import java.io.File;
 import java.io.FileFilter;
+import java.net.URI;
 import java.nio.charset.Charset;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.List;
 import java.util.regex.Pattern;
 
 import cc.mallet.configuration.LDAConfiguration;
@@ -70,6 +71,19 @@ public class LDADatasetDirectoryLoadingUtils {
 
 	public static InstanceList loadInstanceDirectories(String [] directories, final String fileRegex, String stoplistFile, Integer keepCount,
 			boolean keepNumbers, int maxBufSize, boolean keepConnectors, Alphabet dataAlphabet, LabelAlphabet targetAlphabet) {
+		return loadInstanceDirectories(directories, fileRegex, stoplistFile, keepCount, keepNumbers, maxBufSize, 
+				keepConnectors, dataAlphabet, targetAlphabet, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Loads all files matching <code>fileRegex</code> in <code>directories</code>. The files are listed 
+	 * up front and then read and tokenized by a pool of <code>numThreads</code> threads, while the 
+	 * alphabet lookup and label conversion run in file order on the calling thread. The resulting 
+	 * InstanceList is therefore the same as when loading the files serially.
+	 */
+	public static InstanceList loadInstanceDirectories(String [] directories, final String fileRegex, String stoplistFile, Integer keepCount,
+			boolean keepNumbers, int maxBufSize, boolean keepConnectors, Alphabet dataAlphabet, LabelAlphabet targetAlphabet, 
+			int numThreads) {
 
 		File [] fdirectories = new File[directories.length];
 		for (int i = 0; i < fdirectories.length; i++) {
@@ -80,87 +94,21 @@ public class LDADatasetDirectoryLoadingUtils {
 
 		tokenizer = LDAUtils.initTokenizer(stoplistFile, keepNumbers, maxBufSize, keepConnectors);
 
-		if (keepCount > 0) {
-			FileIterator iterator = new FileIterator(fdirectories,
-					new FileFilter() {
-				@Override
-				public boolean accept(File pathname) {
-					return pathname.toString().matches(fileRegex);
-				}
-			},
-					FileIterator.LAST_DIRECTORY);
-
-			Alphabet alphabet = null;
-			if(dataAlphabet==null) {
-				alphabet = new Alphabet();
-			} else {
-				alphabet = dataAlphabet;
-			}
-
-			TokenSequence2FeatureSequence sl2fs = new TokenSequence2FeatureSequence(alphabet);
-			TfIdfPipe tfIdfPipe = new TfIdfPipe(alphabet, null);
-
-			ArrayList<Pipe> pipes = new ArrayList<Pipe>();
-			pipes.add(new Input2CharSequence("UTF-8"));
-
-			Pattern tokenPattern =
-					Pattern.compile("[\\p{L}\\p{N}_]+");
-
-			pipes.add(new CharSequence2TokenSequence(tokenPattern));
-			pipes.add(new TokenSequenceLowercase());
-
-			TokenSequenceRemoveStopwords stopwordFilter =
-					new TokenSequenceRemoveStopwords(new File(stoplistFile),
-							Charset.defaultCharset().displayName(),
-							false, // don't include default list
-							false,
-							false);
-			pipes.add(stopwordFilter);
-
-			TokenSequencePredicateMatcher reMatchPipe = new TokenSequencePredicateMatcher(new TokenSequencePredicateMatcher.Predicate<String>() {
-				@Override
-				public boolean test(String query) {
-					return !query.matches(".*(--+|__+).*");
-				}
-			});
-			pipes.add(reMatchPipe);
-
-			pipes.add(sl2fs);
-			if (keepCount > 0) {
-				pipes.add(tfIdfPipe);
-			}
-
-			Pipe serialPipe = new SerialPipes(pipes);
-
-			Iterator<Instance> iiterator = serialPipe.newIteratorFrom(iterator);
-
-			int count = 0;
-
-			// We aren't really interested in the instance itself,
-			//  just the total feature counts.
-			while (iiterator.hasNext()) {
-				count++;
-				if (count % 100000 == 0) {
-					System.out.println(count);
-				}
-				iiterator.next();
-			}
-
-			if (keepCount > 0) {
-				tfIdfPipe.addPrunedWordsToStoplist(tokenizer, keepCount);
-			}
-		}
+		// The stoplist and the predicate are read only and can be shared by the worker threads
+		TokenSequenceRemoveStopwords stopwordFilter =
+				new TokenSequenceRemoveStopwords(new File(stoplistFile),
+						Charset.defaultCharset().displayName(),
+						false, // don't include default list
+						false,
+						false);
 
-		FileIterator iterator = new FileIterator(fdirectories,
-				new FileFilter() {
+		TokenSequencePredicateMatcher reMatchPipe = new TokenSequencePredicateMatcher(new TokenSequencePredicateMatcher.Predicate<String>() {
 			@Override
-			public boolean accept(File pathname) {
-				return pathname.toString().matches(fileRegex);
+			public boolean test(String query) {
+				return !query.matches(".*(--+|__+).*");
 			}
-		},
-				FileIterator.LAST_DIRECTORY);
+		});
 
-		ArrayList<Pipe> pipes = new ArrayList<Pipe>();
 		Alphabet alphabet = null;
 		if(dataAlphabet==null) {
 			alphabet = new Alphabet();
@@ -168,32 +116,28 @@ public class LDADatasetDirectoryLoadingUtils {
 			alphabet = dataAlphabet;
 		}
 
-		TokenSequence2FeatureSequence sl2fs = new TokenSequence2FeatureSequence(alphabet);
+		if (keepCount > 0) {
+			List<Instance> files = listFiles(fdirectories, fileRegex);
 
-		pipes.add(new Input2CharSequence("UTF-8"));
+			TokenSequence2FeatureSequence sl2fs = new TokenSequence2FeatureSequence(alphabet);
+			TfIdfPipe tfIdfPipe = new TfIdfPipe(alphabet, null);
 
-		Pattern tokenPattern =
-				Pattern.compile("[\\p{L}\\p{N}_]+");
+			ArrayList<Pipe> pipes = new ArrayList<Pipe>();
+			pipes.add(sl2fs);
+			pipes.add(tfIdfPipe);
 
-		pipes.add(new CharSequence2TokenSequence(tokenPattern));
-		pipes.add(new TokenSequenceLowercase());
-		TokenSequenceRemoveStopwords stopwordFilter =
-				new TokenSequenceRemoveStopwords(new File(stoplistFile),
-						Charset.defaultCharset().displayName(),
-						false, // don't include default list
-						false,
-						false);
-		pipes.add(stopwordFilter);
+			// We aren't really interested in the instance itself,
+			//  just the total feature counts.
+			long startTime = System.currentTimeMillis();
+			new ParallelPipeLoader(() -> tokenizationPipes(stopwordFilter, reMatchPipe), pipes, numThreads).run(files.iterator(), instance -> {});
+			reportThroughput(files, startTime);
 
-		TokenSequencePredicateMatcher reMatchPipe = new TokenSequencePredicateMatcher(new TokenSequencePredicateMatcher.Predicate<String>() {
-			@Override
-			public boolean test(String query) {
-				return !query.matches(".*(--+|__+).*");
-			}
-		});
-		pipes.add(reMatchPipe);
+			tfIdfPipe.addPrunedWordsToStoplist(tokenizer, keepCount);
+		}
+
+		List<Instance> files = listFiles(fdirectories, fileRegex);
 
-		pipes.add(sl2fs);
+		TokenSequence2FeatureSequence sl2fs = new TokenSequence2FeatureSequence(alphabet);
 
 		LabelAlphabet tAlphabet = null;
 		if(targetAlphabet==null) {
@@ -204,14 +148,69 @@ public class LDADatasetDirectoryLoadingUtils {
 
 		Target2Label ttl = new Target2Label (tAlphabet);
 
-		pipes.add(ttl);
+		ArrayList<Pipe> orderedPipes = new ArrayList<Pipe>();
+		orderedPipes.add(sl2fs);
+		orderedPipes.add(ttl);
+
+		ArrayList<Pipe> pipes = new ArrayList<Pipe>(tokenizationPipes(stopwordFilter, reMatchPipe));
+		pipes.addAll(orderedPipes);
 
 		Pipe serialPipe = new SerialPipes(pipes);
 
 		InstanceList instances = new InstanceList(serialPipe);
-		instances.addThruPipe(iterator);
+		long startTime = System.currentTimeMillis();
+		new ParallelPipeLoader(() -> tokenizationPipes(stopwordFilter, reMatchPipe), orderedPipes, numThreads).run(files.iterator(), instances::add);
+		reportThroughput(files, startTime);
 
 		return instances;	
 	}
 
+	/**
+	 * @return The pipes that read and tokenize a file, CharSequence2TokenSequence keeps 
+	 * state so each thread needs its own list
+	 */
+	static List<Pipe> tokenizationPipes(TokenSequenceRemoveStopwords stopwordFilter, TokenSequencePredicateMatcher reMatchPipe) {
+		List<Pipe> pipes = new ArrayList<Pipe>();
+		pipes.add(new Input2CharSequence("UTF-8"));
+
+		Pattern tokenPattern =
+				Pattern.compile("[\\p{L}\\p{N}_]+");
+
+		pipes.add(new CharSequence2TokenSequence(tokenPattern));
+		pipes.add(new TokenSequenceLowercase());
+		pipes.add(stopwordFilter);
+		pipes.add(reMatchPipe);
+		return pipes;
+	}
+
+	/**
+	 * @return One unpiped instance per file matching <code>fileRegex</code>, in FileIterator order
+	 */
+	static List<Instance> listFiles(File [] directories, final String fileRegex) {
+		FileIterator iterator = new FileIterator(directories,
+				new FileFilter() {
+			@Override
+			public boolean accept(File pathname) {
+				return pathname.toString().matches(fileRegex);
+			}
+		},
+				FileIterator.LAST_DIRECTORY);
+
+		List<Instance> files = new ArrayList<Instance>();
+		while (iterator.hasNext()) {
+			files.add(iterator.next());
+		}
+		return files;
+	}
+
+	static void reportThroughput(List<Instance> files, long startTime) {
+		long bytes = 0;
+		for (Instance file : files) {
+			bytes += new File((URI) file.getName()).length();
+		}
+		double seconds = Math.max(System.currentTimeMillis() - startTime, 1) / 1000.0;
+		System.out.println(String.format("Loaded %d files (%.1f MB) in %.2f s: %.1f files/s, %.2f MB/s",
+				files.size(), bytes / 1e6, seconds, files.size() / seconds, bytes / 1e6 / seconds));
+	}
+
 }
@@ -4,7 +4,6 @@ package cc.mallet.util;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.util.ArrayList;
-import java.util.Iterator;
 
 import cc.mallet.pipe.CharSequenceLowercase;
 import cc.mallet.pipe.FeatureCountPipe;
@@ -18,7 +17,6 @@ import cc.mallet.pipe.Target2Label;
 import cc.mallet.pipe.TfIdfPipe;
 import cc.mallet.pipe.iterator.CsvIterator;
 import cc.mallet.types.Alphabet;
-import cc.mallet.types.Instance;
 import cc.mallet.types.InstanceList;
 import cc.mallet.types.LabelAlphabet;
 
@@ -75,21 +73,9 @@ public class LDADatasetFileLoadingUtils {
 				pipes.add(featureCounter);
 			}
 
-			Pipe serialPipe = new SerialPipes(pipes);
-
-			Iterator<Instance> iterator = serialPipe.newIteratorFrom(reader);
-
-			int count = 0;
-
-			// We aren't really interested in the instance itself,
-			//  just the total feature counts.
-			while (iterator.hasNext()) {
-				count++;
-				if (count % 100000 == 0) {
-					System.out.println(count);
-				}
-				iterator.next();
-			}
+			// We aren't really interested in the instances themselves, just the
+			// total feature counts. Tokenize in parallel, count in document order.
+			new ParallelPipeLoader(pipes, pipes.indexOf(sl2fs)).run(reader, instance -> {});
 
 			if (pruneCount > 0) {
 				featureCounter.addPrunedWordsToStoplist(tokenizer, pruneCount);
@@ -131,7 +117,7 @@ public class LDADatasetFileLoadingUtils {
 		Pipe serialPipe = new SerialPipes(pipes);
 
 		InstanceList instances = new InstanceList(serialPipe);
-		instances.addThruPipe(reader);
+		new ParallelPipeLoader(pipes, pipes.indexOf(sl2fs)).run(reader, instances::add);
 
 		return instances;
 	}
@@ -185,21 +171,9 @@ public class LDADatasetFileLoadingUtils {
 				pipes.add(tfIdfPipe);
 			}
 
-			Pipe serialPipe = new SerialPipes(pipes);
-
-			Iterator<Instance> iterator = serialPipe.newIteratorFrom(reader);
-
-			int count = 0;
-
-			// We aren't really interested in the instance itself,
-			//  just the total feature counts.
-			while (iterator.hasNext()) {
-				count++;
-				if (count % 100000 == 0) {
-					System.out.println(count);
-				}
-				iterator.next();
-			}
+			// We aren't really interested in the instances themselves, just the
+			// total feature counts. Tokenize in parallel, count in document order.
+			new ParallelPipeLoader(pipes, pipes.indexOf(sl2fs)).run(reader, instance -> {});
 
 			if (keepCount > 0) {
 				tfIdfPipe.addPrunedWordsToStoplist(tokenizer, keepCount);
@@ -239,7 +213,7 @@ public class LDADatasetFileLoadingUtils {
 		Pipe serialPipe = new SerialPipes(pipes);
 
 		InstanceList instances = new InstanceList(serialPipe);
-		instances.addThruPipe(reader);
+		new ParallelPipeLoader(pipes, pipes.indexOf(sl2fs)).run(reader, instances::add);
 
 		return instances;
 	}
@@ -295,21 +269,9 @@ public class LDADatasetFileLoadingUtils {
 				pipes.add(tfIdfPipe);
 			}
 
-			Pipe serialPipe = new SerialPipes(pipes);
-
-			Iterator<Instance> iterator = serialPipe.newIteratorFrom(reader);
-
-			int count = 0;
-
-			// We aren't really interested in the instance itself,
-			//  just the total feature counts.
-			while (iterator.hasNext()) {
-				count++;
-				if (count % 100000 == 0) {
-					System.out.println(count);
-				}
-				iterator.next();
-			}
+			// We aren't really interested in the instances themselves, just the
+			// total feature counts. Tokenize in parallel, count in document order.
+			new ParallelPipeLoader(pipes, pipes.indexOf(sl2fs)).run(reader, instance -> {});
 
 			if (keepCount > 0) {
 				tfIdfPipe.addPrunedWordsToStoplist(tokenizer, keepCount);
@@ -351,7 +313,7 @@ public class LDADatasetFileLoadingUtils {
 		Pipe serialPipe = new SerialPipes(pipes);
 
 		InstanceList instances = new InstanceList(serialPipe);
-		instances.addThruPipe(reader);
+		new ParallelPipeLoader(pipes, pipes.indexOf(sl2fs)).run(reader, instances::add);
 
 		return instances;
 	}
@@ -1,20 +1,18 @@
 package cc.mallet.util;
 
 import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
-import com.google.common.io.ByteStreams;
-
 import cc.mallet.pipe.CharSequenceLowercase;
 import cc.mallet.pipe.FeatureCountPipe;
 import cc.mallet.pipe.Pipe;
@@ -27,12 +25,12 @@ import cc.mallet.pipe.Target2Label;
 import cc.mallet.pipe.TfIdfPipe;
 import cc.mallet.pipe.iterator.CsvIterator;
 import cc.mallet.types.Alphabet;
-import cc.mallet.types.Instance;
 import cc.mallet.types.InstanceList;
 import cc.mallet.types.LabelAlphabet;
 
 public class LDADatasetStreamLoadingUtils {
-	
+
+	static final int STREAM_BUFFER_SIZE = 1 << 16;
 
 	public static InputStream streamFromFile(String inputFile) throws FileNotFoundException, IOException {
 		if(inputFile.toLowerCase().endsWith(".gz")) {
@@ -45,48 +43,93 @@ public class LDADatasetStreamLoadingUtils {
 	}
 
 	static InputStream streamFromPlain(String inputFile) throws FileNotFoundException, IOException {
-		try(FileInputStream fs = new FileInputStream(new File(inputFile))) {
-			byte[] buffer = ByteStreams.toByteArray(fs);
-			fs.close();
-			ByteArrayInputStream sout = new ByteArrayInputStream(buffer);
-			return sout;
-		}
+		return new BufferedInputStream(new FileInputStream(new File(inputFile)), STREAM_BUFFER_SIZE);
 	}
 
 	static InputStream streamFromZipped(String inputFile) throws IOException {
 		String nameWithoutDotZip = inputFile.substring(0, inputFile.length() - ".zip".length());
 		String shortNameWithoutDotZip = ((new File(nameWithoutDotZip)).getName());
-		try(ZipFile zf = new ZipFile(inputFile);
-				InputStream in = zf.getInputStream(zf.getEntry(shortNameWithoutDotZip))) {
-			byte[] buffer = ByteStreams.toByteArray(in);
-			in.close();
+		ZipFile zf = new ZipFile(inputFile);
+		ZipEntry entry = zf.getEntry(shortNameWithoutDotZip);
+		if(entry == null) {
 			zf.close();
-			ByteArrayInputStream sout = new ByteArrayInputStream(buffer);
-			return sout;
-		} 
+			throw new FileNotFoundException("No entry " + shortNameWithoutDotZip + " in " + inputFile);
+		}
+		// Closing the stream also closes the zip file
+		return new BufferedInputStream(new FilterInputStream(zf.getInputStream(entry)) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					zf.close();
+				}
+			}
+		}, STREAM_BUFFER_SIZE);
 	}
 
-	static ByteArrayInputStream streamFromGZipped(String inputFile) throws IOException, FileNotFoundException {
-		try(InputStream in = new GZIPInputStream(new FileInputStream(inputFile))) {
-			byte[] buffer = ByteStreams.toByteArray(in);
-			in.close();
-			ByteArrayInputStream sout = new ByteArrayInputStream(buffer);
-			return sout;
+	static InputStream streamFromGZipped(String inputFile) throws IOException, FileNotFoundException {
+		FileInputStream fs = new FileInputStream(inputFile);
+		try {
+			return new BufferedInputStream(new GZIPInputStream(fs, STREAM_BUFFER_SIZE), STREAM_BUFFER_SIZE);
+		} catch (IOException e) {
+			fs.close();
+			throw e;
 		}
 	}
-	
-	public static InstanceList loadInstancesKeep(String inputFile, String stoplistFile, int keepCount, boolean keepNumbers, 
-			int maxBufSize, boolean keepConnectors, Alphabet dataAlphabet, LabelAlphabet targetAlphabet) throws FileNotFoundException {		
-		try (BufferedInputStream in = new BufferedInputStream(streamFromFile(inputFile))){
-			in.mark(Integer.MAX_VALUE);
-			return loadInstancesKeep(in, stoplistFile, keepCount, keepNumbers, 
-					maxBufSize, keepConnectors, dataAlphabet, targetAlphabet);
 
+	/**
+	 * Opens the input for one pass over the data. The two pass loaders open it
+	 * twice instead of keeping the whole input in memory between the passes.
+	 */
+	public interface InputStreamSource {
+		InputStream open() throws IOException;
+	}
+
+	/**
+	 * @return A source that re-opens (and decompresses) <code>inputFile</code> for each pass
+	 */
+	public static InputStreamSource fileSource(String inputFile) {
+		return () -> streamFromFile(inputFile);
+	}
+
+	/**
+	 * @return A source that resets <code>in</code> to its mark for each pass, 
+	 * <code>in</code> is not closed between the passes
+	 */
+	public static InputStreamSource markedSource(BufferedInputStream in) {
+		return () -> {
+			in.reset();
+			return new FilterInputStream(in) {
+				@Override
+				public void close() {
+				}
+			};
+		};
+	}
+
+	static InputStream openStream(InputStreamSource source) {
+		try {
+			return source.open();
 		} catch (IOException e) {
 			throw new IllegalArgumentException(e);
 		}
 	}
 
+	static void closeStream(InputStream in) {
+		try {
+			in.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public static InstanceList loadInstancesKeep(String inputFile, String stoplistFile, int keepCount, boolean keepNumbers, 
+			int maxBufSize, boolean keepConnectors, Alphabet dataAlphabet, LabelAlphabet targetAlphabet) throws FileNotFoundException {
+		return loadInstancesKeep(fileSource(inputFile), stoplistFile, keepCount, keepNumbers, 
+					maxBufSize, keepConnectors, dataAlphabet, targetAlphabet);
+	}
+
 	/**
 	 * Loads instances and prunes away low occurring words
 	 * 
@@ -101,14 +144,8 @@ public class LDADatasetStreamLoadingUtils {
 	 */
 	public static InstanceList loadInstancesPrune(String inputFile, String stoplistFile, int pruneCount, boolean keepNumbers, 
 			int maxBufSize, boolean keepConnectors, Alphabet dataAlphabet, LabelAlphabet targetAlphabet) throws FileNotFoundException {
-
-		try (BufferedInputStream in = new BufferedInputStream(streamFromFile(inputFile))) {
-			in.mark(Integer.MAX_VALUE);
-			return loadInstancesPrune(in, stoplistFile, pruneCount, keepNumbers, 
+		return loadInstancesPrune(fileSource(inputFile), stoplistFile, pruneCount, keepNumbers, 
 					maxBufSize, keepConnectors, dataAlphabet, targetAlphabet);
-		} catch (IOException e) {
-			throw new IllegalArgumentException(e);
-		}
 	}
 
 	/**
@@ -125,24 +162,25 @@ public class LDADatasetStreamLoadingUtils {
 	 */
 	public static InstanceList loadInstancesPrune(BufferedInputStream in, String stoplistFile, int pruneCount, boolean keepNumbers, 
 			int maxBufSize, boolean keepConnectors, Alphabet dataAlphabet, LabelAlphabet targetAlphabet) throws FileNotFoundException {
+		in.mark(Integer.MAX_VALUE);
+		return loadInstancesPrune(markedSource(in), stoplistFile, pruneCount, keepNumbers, maxBufSize, keepConnectors, dataAlphabet, targetAlphabet);
+	}
+
+	/**
+	 * Same as loadInstancesPrune above, but reads the input through <code>source</code>
+	 * which is opened once per pass
+	 */
+	public static InstanceList loadInstancesPrune(InputStreamSource source, String stoplistFile, int pruneCount, boolean keepNumbers, 
+			int maxBufSize, boolean keepConnectors, Alphabet dataAlphabet, LabelAlphabet targetAlphabet) throws FileNotFoundException {
 		SimpleTokenizerLarge tokenizer;
 		String lineRegex = "^(\\S*)[\\s,]*([^\\t]+)[\\s,]*(.*)$";
 		int dataGroup = 3;
 		int labelGroup = 2;
 		int nameGroup = 1; // data, label, name fields
 
-		in.mark(Integer.MAX_VALUE);
-
 		tokenizer = LDAUtils.initTokenizer(stoplistFile, keepNumbers, maxBufSize, keepConnectors);
 
 		if (pruneCount > 0) {
-			CsvIterator reader = new CsvIterator(
-					new InputStreamReader(in),
-					lineRegex,
-					dataGroup,
-					labelGroup,
-					nameGroup);
-
 			ArrayList<Pipe> pipes = new ArrayList<Pipe>();
 			Alphabet alphabet = null;
 			if(dataAlphabet==null) {
@@ -163,20 +201,19 @@ public class LDADatasetStreamLoadingUtils {
 				pipes.add(featureCounter);
 			}
 
-			Pipe serialPipe = new SerialPipes(pipes);
-
-			Iterator<Instance> iterator = serialPipe.newIteratorFrom(reader);
-
-			int count = 0;
-
-			// We aren't really interested in the instance itself,
-			//  just the total feature counts.
-			while (iterator.hasNext()) {
-				count++;
-				if (count % 100000 == 0) {
-					System.out.println(count);
-				}
-				iterator.next();
+			// We aren't really interested in the instances themselves, just the
+			// total feature counts. Tokenize in parallel, count in document order.
+			try (InputStream firstPass = openStream(source)) {
+				CsvIterator reader = new CsvIterator(
+						new InputStreamReader(firstPass),
+						lineRegex,
+						dataGroup,
+						labelGroup,
+						nameGroup);
+				new ParallelPipeLoader(pipes, pipes.indexOf(sl2fs)).run(reader, instance -> {});
+			} catch (IOException e) {
+				// Only closing the input can throw here
+				e.printStackTrace();
 			}
 
 			if (pruneCount > 0) {
@@ -184,21 +221,7 @@ public class LDADatasetStreamLoadingUtils {
 			}
 		}
 
-		// Now we reset the BufferedInput stream so we don't have to read from disk again.
-		try {
-			in.reset();
-		} catch (IOException e) {
-			e.printStackTrace();
-			return null;
-		}
-
-		CsvIterator reader = new CsvIterator(
-				new InputStreamReader(in),
-				lineRegex,
-				dataGroup,
-				labelGroup,
-				nameGroup);
-
+		// Second pass, with the pruned vocabulary in the stoplist
 		ArrayList<Pipe> pipes = new ArrayList<Pipe>();
 		Alphabet alphabet = null;
 		if(dataAlphabet==null) {
@@ -227,7 +250,18 @@ public class LDADatasetStreamLoadingUtils {
 		Pipe serialPipe = new SerialPipes(pipes);
 
 		InstanceList instances = new InstanceList(serialPipe);
-		instances.addThruPipe(reader);
+		try (InputStream in = openStream(source)) {
+			CsvIterator reader = new CsvIterator(
+					new InputStreamReader(in),
+					lineRegex,
+					dataGroup,
+					labelGroup,
+					nameGroup);
+			new ParallelPipeLoader(pipes, pipes.indexOf(sl2fs)).run(reader, instances::add);
+		} catch (IOException e) {
+			// Only closing the input can throw here
+			e.printStackTrace();
+		}
 
 		return instances;
 	}
@@ -248,23 +282,25 @@ public class LDADatasetStreamLoadingUtils {
 	 */
 	public static InstanceList loadInstancesKeep(BufferedInputStream in, String stoplistFile, int keepCount, boolean keepNumbers, 
 			int maxBufSize, boolean keepConnectors, Alphabet dataAlphabet, LabelAlphabet targetAlphabet) throws FileNotFoundException {
+		in.mark(Integer.MAX_VALUE);
+		return loadInstancesKeep(markedSource(in), stoplistFile, keepCount, keepNumbers, maxBufSize, keepConnectors, dataAlphabet, targetAlphabet);
+	}
+
+	/**
+	 * Same as loadInstancesKeep above, but reads the input through <code>source</code>
+	 * which is opened once per pass
+	 */
+	public static InstanceList loadInstancesKeep(InputStreamSource source, String stoplistFile, int keepCount, boolean keepNumbers, 
+			int maxBufSize, boolean keepConnectors, Alphabet dataAlphabet, LabelAlphabet targetAlphabet) throws FileNotFoundException {
 		SimpleTokenizerLarge tokenizer;
 		String lineRegex = "^(\\S*)[\\s,]*([^\\t]+)[\\s,]*(.*)$";
 		int dataGroup = 3;
 		int labelGroup = 2;
 		int nameGroup = 1; // data, label, name fields
 
-		in.mark(Integer.MAX_VALUE);
 		tokenizer = LDAUtils.initTokenizer(stoplistFile, keepNumbers, maxBufSize, keepConnectors);
 
 		if (keepCount > 0) {
-			CsvIterator reader = new CsvIterator(
-					new InputStreamReader(in),
-					lineRegex,
-					dataGroup,
-					labelGroup,
-					nameGroup);
-
 			ArrayList<Pipe> pipes = new ArrayList<Pipe>();
 			Alphabet alphabet = null;
 			if(dataAlphabet==null) {
@@ -285,20 +321,19 @@ public class LDADatasetStreamLoadingUtils {
 				pipes.add(tfIdfPipe);
 			}
 
-			Pipe serialPipe = new SerialPipes(pipes);
-
-			Iterator<Instance> iterator = serialPipe.newIteratorFrom(reader);
-
-			int count = 0;
-
-			// We aren't really interested in the instance itself,
-			//  just the total feature counts.
-			while (iterator.hasNext()) {
-				count++;
-				if (count % 100000 == 0) {
-					System.out.println(count);
-				}
-				iterator.next();
+			// We aren't really interested in the instances themselves, just the
+			// total feature counts. Tokenize in parallel, count in document order.
+			try (InputStream firstPass = openStream(source)) {
+				CsvIterator reader = new CsvIterator(
+						new InputStreamReader(firstPass),
+						lineRegex,
+						dataGroup,
+						labelGroup,
+						nameGroup);
+				new ParallelPipeLoader(pipes, pipes.indexOf(sl2fs)).run(reader, instance -> {});
+			} catch (IOException e) {
+				// Only closing the input can throw here
+				e.printStackTrace();
 			}
 
 			if (keepCount > 0) {
@@ -306,21 +341,7 @@ public class LDADatasetStreamLoadingUtils {
 			}
 		}
 
-		// Now we reset the BufferedInput stream so we don't have to read from disk again.
-		try {
-			in.reset();
-		} catch (IOException e) {
-			e.printStackTrace();
-			return null;
-		}
-
-		CsvIterator reader = new CsvIterator(
-				new InputStreamReader(in),
-				lineRegex,
-				dataGroup,
-				labelGroup,
-				nameGroup);
-
+		// Second pass, with the pruned vocabulary in the stoplist
 		ArrayList<Pipe> pipes = new ArrayList<Pipe>();
 		Alphabet alphabet = null;
 		if(dataAlphabet==null) {
@@ -349,20 +370,26 @@ public class LDADatasetStreamLoadingUtils {
 		Pipe serialPipe = new SerialPipes(pipes);
 
 		InstanceList instances = new InstanceList(serialPipe);
-		instances.addThruPipe(reader);
+		try (InputStream in = openStream(source)) {
+			CsvIterator reader = new CsvIterator(
+					new InputStreamReader(in),
+					lineRegex,
+					dataGroup,
+					labelGroup,
+					nameGroup);
+			new ParallelPipeLoader(pipes, pipes.indexOf(sl2fs)).run(reader, instances::add);
+		} catch (IOException e) {
+			// Only closing the input can throw here
+			e.printStackTrace();
+		}
 
 		return instances;
 	}
 
 	
 	public static InstanceList loadInstancesRaw(String inputFile, String stoplistFile, int keepCount, int maxBufSize, 
-			Alphabet dataAlphabet, LabelAlphabet targetAlphabet) throws FileNotFoundException {		
-		try (BufferedInputStream in = new BufferedInputStream(streamFromFile(inputFile))){
-			in.mark(Integer.MAX_VALUE);
-			return loadInstancesRaw(in, stoplistFile, keepCount, maxBufSize, dataAlphabet, targetAlphabet);
-		} catch (IOException e) {
-			throw new IllegalArgumentException(e);
-		}
+			Alphabet dataAlphabet, LabelAlphabet targetAlphabet) throws FileNotFoundException {
+		return loadInstancesRaw(fileSource(inputFile), stoplistFile, keepCount, maxBufSize, dataAlphabet, targetAlphabet);
 	}
 
 	/**
@@ -381,24 +408,25 @@ public class LDADatasetStreamLoadingUtils {
 	 */
 	public static InstanceList loadInstancesRaw(BufferedInputStream in, String stoplistFile, int keepCount, int maxBufSize, 
 			Alphabet dataAlphabet, LabelAlphabet targetAlphabet) throws FileNotFoundException {
+		in.mark(Integer.MAX_VALUE);
+		return loadInstancesRaw(markedSource(in), stoplistFile, keepCount, maxBufSize, dataAlphabet, targetAlphabet);
+	}
+
+	/**
+	 * Same as loadInstancesRaw above, but reads the input through <code>source</code>
+	 * which is opened once per pass
+	 */
+	public static InstanceList loadInstancesRaw(InputStreamSource source, String stoplistFile, int keepCount, int maxBufSize, 
+			Alphabet dataAlphabet, LabelAlphabet targetAlphabet) throws FileNotFoundException {
 		RawTokenizer tokenizer;
 		String lineRegex = "^(\\S*)[\\s,]*([^\\t]+)[\\s,]*(.*)$";
 		int dataGroup = 3;
 		int labelGroup = 2;
 		int nameGroup = 1; // data, label, name fields
 
-		in.mark(Integer.MAX_VALUE);
-
 		tokenizer = LDAUtils.initRawTokenizer(stoplistFile, maxBufSize);
 
 		if (keepCount > 0) {
-			CsvIterator reader = new CsvIterator(
-					new InputStreamReader(in),
-					lineRegex,
-					dataGroup,
-					labelGroup,
-					nameGroup);
-
 			ArrayList<Pipe> pipes = new ArrayList<Pipe>();
 			Alphabet alphabet = null;
 			if(dataAlphabet==null) {
@@ -417,20 +445,19 @@ public class LDADatasetStreamLoadingUtils {
 				pipes.add(tfIdfPipe);
 			}
 
-			Pipe serialPipe = new SerialPipes(pipes);
-
-			Iterator<Instance> iterator = serialPipe.newIteratorFrom(reader);
-
-			int count = 0;
-
-			// We aren't really interested in the instance itself,
-			//  just the total feature counts.
-			while (iterator.hasNext()) {
-				count++;
-				if (count % 100000 == 0) {
-					System.out.println(count);
-				}
-				iterator.next();
+			// We aren't really interested in the instances themselves, just the
+			// total feature counts. Tokenize in parallel, count in document order.
+			try (InputStream firstPass = openStream(source)) {
+				CsvIterator reader = new CsvIterator(
+						new InputStreamReader(firstPass),
+						lineRegex,
+						dataGroup,
+						labelGroup,
+						nameGroup);
+				new ParallelPipeLoader(pipes, pipes.indexOf(sl2fs)).run(reader, instance -> {});
+			} catch (IOException e) {
+				// Only closing the input can throw here
+				e.printStackTrace();
 			}
 
 			if (keepCount > 0) {
@@ -438,21 +465,7 @@ public class LDADatasetStreamLoadingUtils {
 			}
 		}
 
-		// Now we reset the BufferedInput stream so we don't have to read from disk again.
-		try {
-			in.reset();
-		} catch (IOException e) {
-			e.printStackTrace();
-			return null;
-		}
-
-		CsvIterator reader = new CsvIterator(
-				new InputStreamReader(in),
-				lineRegex,
-				dataGroup,
-				labelGroup,
-				nameGroup);
-
+		// Second pass, with the pruned vocabulary in the stoplist
 		ArrayList<Pipe> pipes = new ArrayList<Pipe>();
 		Alphabet alphabet = null;
 		if(dataAlphabet==null) {
@@ -479,7 +492,18 @@ public class LDADatasetStreamLoadingUtils {
 		Pipe serialPipe = new SerialPipes(pipes);
 
 		InstanceList instances = new InstanceList(serialPipe);
-		instances.addThruPipe(reader);
+		try (InputStream in = openStream(source)) {
+			CsvIterator reader = new CsvIterator(
+					new InputStreamReader(in),
+					lineRegex,
+					dataGroup,
+					labelGroup,
+					nameGroup);
+			new ParallelPipeLoader(pipes, pipes.indexOf(sl2fs)).run(reader, instances::add);
+		} catch (IOException e) {
+			// Only closing the input can throw here
+			e.printStackTrace();
+		}
 
 		return instances;
 	}
@@ -12,12 +12,10 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
-import java.io.RandomAccessFile;
 import java.math.BigInteger;
-import java.nio.ByteBuffer;
-import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
@@ -56,6 +54,8 @@ import cc.mallet.topics.PolyaUrnSpaliasLDA;
 import cc.mallet.topics.SpaliasUncollapsedParallelLDA;
 import cc.mallet.topics.TopicAssignment;
 import cc.mallet.topics.TopicInferencer;
+import cc.mallet.topics.TopicTypeCountStore;
+import cc.mallet.topics.UncollapsedParallelLDA;
 import cc.mallet.types.Alphabet;
 import cc.mallet.types.Dirichlet;
 import cc.mallet.types.FeatureSequence;
@@ -142,7 +142,42 @@ public class LDAUtils {
 		return loadDataset(config, dataset_fn, alphabet, null);
 	}
 
+	/**
+	 * Loads the dataset with the preprocessing settings in <code>config</code>. If 
+	 * corpus_cache_dir is set and no alphabets are given the preprocessed dataset is
+	 * read from a binary cache in that directory, or written there after loading.
+	 * If frequency_ordered_types is set and no data alphabet is given the types 
+	 * are renumbered by descending frequency.
+	 */
 	public static InstanceList loadDataset(LDAConfiguration config, String dataset_fn, Alphabet alphabet, LabelAlphabet targetAlphabet) throws FileNotFoundException {
+		InstanceList instances = loadDatasetCached(config, dataset_fn, alphabet, targetAlphabet);
+		// A given alphabet is shared with other datasets and models so it is never renumbered
+		if(alphabet == null && config.useFrequencyOrderedTypes(LDAConfiguration.FREQUENCY_ORDERED_TYPES_DEFAULT)) {
+			instances = TypeFrequencyOrdering.orderByFrequency(instances);
+		}
+		return instances;
+	}
+
+	static InstanceList loadDatasetCached(LDAConfiguration config, String dataset_fn, Alphabet alphabet, LabelAlphabet targetAlphabet) throws FileNotFoundException {
+		String cacheDir = config.getCorpusCacheDirectory(LDAConfiguration.CORPUS_CACHE_DIR_DEFAULT);
+		if(cacheDir == null || alphabet != null || targetAlphabet != null) {
+			return loadDatasetUncached(config, dataset_fn, alphabet, targetAlphabet);
+		}
+		if(!new File(dataset_fn).exists()) {
+			throw new FileNotFoundException(dataset_fn);
+		}
+		try {
+			return PreprocessedCorpusCache.loadCached(config, dataset_fn, cacheDir, 
+					() -> loadDatasetUncached(config, dataset_fn, null, null));
+		} catch (FileNotFoundException e) {
+			throw e;
+		} catch (IOException e) {
+			System.err.println("Could not use the corpus cache in " + cacheDir + ": " + e);
+			return loadDatasetUncached(config, dataset_fn, null, null);
+		}
+	}
+
+	static InstanceList loadDatasetUncached(LDAConfiguration config, String dataset_fn, Alphabet alphabet, LabelAlphabet targetAlphabet) throws FileNotFoundException {
 		InstanceList instances;
 
 		if(config.noPreprocess()) {
@@ -154,8 +189,10 @@ public class LDAUtils {
 			File dsf = new File(dataset_fn); 
 			if(dsf.isDirectory()) {
 				instances = LDADatasetDirectoryLoadingUtils.loadFromDir(config, dataset_fn, alphabet);
+			} else if(config.useSinglePassVocabulary(LDAConfiguration.SINGLE_PASS_VOCABULARY_DEFAULT)) {
+				instances = loadSinglePass(config, dataset_fn, alphabet, targetAlphabet);
 				// If the dataset is compressed
-			} if( dataset_fn.endsWith(".zip") || dataset_fn.endsWith(".gz")) {
+			} else if( dataset_fn.endsWith(".zip") || dataset_fn.endsWith(".gz")) {
 				if(config.getTfIdfVocabSize(LDAConfiguration.TF_IDF_VOCAB_SIZE_DEFAULT)>0) {
 					instances = LDADatasetStreamLoadingUtils.loadInstancesKeep(
 							dataset_fn, 
@@ -204,6 +241,31 @@ public class LDAUtils {
 		return instances;
 	}
 
+	/**
+	 * Loads a text file (which may be .gz or .zip compressed) with one pass over 
+	 * the file using SinglePassVocabularyLoader
+	 */
+	static InstanceList loadSinglePass(LDAConfiguration config, String dataset_fn, Alphabet alphabet, LabelAlphabet targetAlphabet) {
+		InputStream in = LDADatasetStreamLoadingUtils.openStream(LDADatasetStreamLoadingUtils.fileSource(dataset_fn));
+		try {
+			boolean keepByTfIdf = config.getTfIdfVocabSize(LDAConfiguration.TF_IDF_VOCAB_SIZE_DEFAULT)>0;
+			return SinglePassVocabularyLoader.load(
+					new InputStreamReader(in), 
+					config.getStoplistFilename("stoplist.txt"), 
+					keepByTfIdf,
+					keepByTfIdf ? config.getTfIdfVocabSize(LDAConfiguration.TF_IDF_VOCAB_SIZE_DEFAULT) 
+							: config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD), 
+					config.keepNumbers(), 
+					config.getMaxDocumentBufferSize(LDAConfiguration.MAX_DOC_BUFFFER_SIZE_DEFAULT), 
+					config.getKeepConnectingPunctuation(LDAConfiguration.KEEP_CONNECTING_PUNCTUATION), 
+					alphabet,
+					targetAlphabet,
+					config.getSinglePassMaxVocabulary(LDAConfiguration.SINGLE_PASS_MAX_VOCABULARY_DEFAULT));
+		} finally {
+			LDADatasetStreamLoadingUtils.closeStream(in);
+		}
+	}
+
 	/**
 	 * This has to be done in two sweeps to first find the counts then remove rare words
 	 * @param numeric
@@ -730,6 +792,28 @@ public class LDAUtils {
 		return topTopicWords;
 	}
 
+	/**
+	 * As getTopWordIndices with a type topic matrix, reading the topic rows of the count store
+	 */
+	public static int[][] getTopWordIndices(int noWords, int numTypes, int numTopics, TopicTypeCountStore countStore, Alphabet alphabet) {
+		IDSorter[] sortedWords = new IDSorter[numTypes];
+		int [][] topTopicWords = new int[numTopics][noWords];
+
+		for (int topic = 0; topic < numTopics; topic++) {
+			int [] counts = countStore.topicRow(topic);
+			for (int type = 0; type < numTypes; type++) {
+				sortedWords[type] = new IDSorter(type, counts[type]);
+			}
+
+			Arrays.sort(sortedWords);
+
+			for (int i=0; i < noWords; i++) {
+				topTopicWords[topic][i] = sortedWords[i].getID();
+			}
+		}
+		return topTopicWords;
+	}
+
 
 	public static void perplexityToFile(PrintWriter out, int iteration,
 			double testPerplexity, Logger logger) {
@@ -787,74 +871,54 @@ public class LDAUtils {
 	}
 
 
+	// Formats and writes the matrices in parallel, see MatrixWriter. The sampler 
+	// dumps go through the overloads that take the MatrixWriter of their AsyncDumpWriter
+	static final MatrixWriter matrixWriter = new MatrixWriter();
+
 	public static void writeBinaryDoubleMatrixRows(double[][] matrix,
 			int iteration, int rows, int columns, String filename, int [] rowIndices)
 					throws FileNotFoundException, IOException {
 		String fn = String.format(filename + "_" + rows + "_" + columns + "_%05d.BINARY", iteration);
-		try(RandomAccessFile outputPhiFile = new RandomAccessFile(fn, "rw")) {
-			FileChannel phiChannel = outputPhiFile.getChannel();
-			final int bufferSize = 8*columns*rows;
-			ByteBuffer buf = phiChannel.map(FileChannel.MapMode.READ_WRITE, 0, bufferSize);
-			for (int to = 0; to < rowIndices.length; to++) {
-				for (int ty = 0; ty < columns; ty++) {
-					buf.putDouble(matrix[rowIndices[to]][ty]);
-				}
-			}
-		}
+		matrixWriter.writeBinary(matrix, rowIndices, null, rowIndices.length, columns, new File(fn));
 	}
 
 	public static void writeBinaryIntMatrixRows(int[][] matrix,
 			int iteration, int rows, int columns, String filename, int [] rowIndices)
 					throws FileNotFoundException, IOException {
 		String fn = String.format(filename + "_" + rows + "_" + columns + "_%05d.BINARY", iteration);
-		try(RandomAccessFile outputPhiFile = new RandomAccessFile(fn, "rw")) {
-			FileChannel phiChannel = outputPhiFile.getChannel();
-			final int bufferSize = 8*columns*rows;
-			ByteBuffer buf = phiChannel.map(FileChannel.MapMode.READ_WRITE, 0, bufferSize);
-			for (int to = 0; to < rowIndices.length; to++) {
-				for (int ty = 0; ty < columns; ty++) {
-					buf.putInt(matrix[rowIndices[to]][ty]);
-				}
-			}
-		}
+		matrixWriter.writeBinary(matrix, rowIndices, null, rowIndices.length, columns, new File(fn));
 	}
 
 	public static void writeBinaryDoubleMatrixCols(double[][] matrix,
 			int iteration, int rows, int columns, String filename, int [] colIndices)
 					throws FileNotFoundException, IOException {
 		String fn = String.format(filename + "_" + rows + "_" + columns + "_%05d.BINARY", iteration);
-		try(RandomAccessFile outputPhiFile = new RandomAccessFile(fn, "rw")) {
-			FileChannel phiChannel = outputPhiFile.getChannel();
-			final int bufferSize = 8*columns*rows;
-			ByteBuffer buf = phiChannel.map(FileChannel.MapMode.READ_WRITE, 0, bufferSize);
-			for (int to = 0; to < rows; to++) {
-				for (int ty = 0; ty < colIndices.length; ty++) {
-					buf.putDouble(matrix[to][colIndices[ty]]);
-				}
-			}
-		}
+		matrixWriter.writeBinary(matrix, null, new int [][] {colIndices}, rows, colIndices.length, new File(fn));
 	}
 
 	public static String writeBinaryDoubleMatrixIndices(double[][] matrix,
 			int iteration, String filename, int [][] indices)
 					throws FileNotFoundException, IOException {
-		return writeBinaryDoubleMatrixIndices(matrix, iteration, indices.length, indices[0].length, filename, indices);
+		return writeBinaryDoubleMatrixIndices(matrixWriter, matrix, iteration, filename, indices);
+	}
+
+	public static String writeBinaryDoubleMatrixIndices(MatrixWriter writer, double[][] matrix,
+			int iteration, String filename, int [][] indices)
+					throws FileNotFoundException, IOException {
+		return writeBinaryDoubleMatrixIndices(writer, matrix, iteration, indices.length, indices[0].length, filename, indices);
 	}
 
 	public static String writeBinaryDoubleMatrixIndices(double[][] matrix,
 			int iteration, int rows, int columns, String filename, int [][] indices)
 					throws FileNotFoundException, IOException {
+		return writeBinaryDoubleMatrixIndices(matrixWriter, matrix, iteration, rows, columns, filename, indices);
+	}
+
+	public static String writeBinaryDoubleMatrixIndices(MatrixWriter writer, double[][] matrix,
+			int iteration, int rows, int columns, String filename, int [][] indices)
+					throws FileNotFoundException, IOException {
 		String fn = String.format(filename + "_" + rows + "_" + columns + "_%05d.BINARY", iteration);
-		try(RandomAccessFile outputPhiFile = new RandomAccessFile(fn, "rw")) {
-			FileChannel phiChannel = outputPhiFile.getChannel();
-			final int bufferSize = 8*columns*rows;
-			ByteBuffer buf = phiChannel.map(FileChannel.MapMode.READ_WRITE, 0, bufferSize);
-			for (int to = 0; to < indices.length; to++) {
-				for (int ty = 0; ty < indices[to].length; ty++) {
-					buf.putDouble(matrix[to][indices[to][ty]]);
-				}
-			}
-		}
+		writer.writeBinary(matrix, null, indices, indices.length, columns, new File(fn));
 		return fn;
 	}
 
@@ -862,16 +926,7 @@ public class LDAUtils {
 			int iteration, int rows, int columns, String filename, int [] colIndices)
 					throws FileNotFoundException, IOException {
 		String fn = String.format(filename + "_" + rows + "_" + columns + "_%05d.BINARY", iteration);
-		try(RandomAccessFile outputPhiFile = new RandomAccessFile(fn, "rw")) {
-			FileChannel phiChannel = outputPhiFile.getChannel();
-			final int bufferSize = 8*columns*rows;
-			ByteBuffer buf = phiChannel.map(FileChannel.MapMode.READ_WRITE, 0, bufferSize);
-			for (int to = 0; to < rows; to++) {
-				for (int ty = 0; ty < colIndices.length; ty++) {
-					buf.putInt(matrix[to][colIndices[ty]]);
-				}
-			}
-		}
+		matrixWriter.writeBinary(matrix, null, new int [][] {colIndices}, rows, colIndices.length, new File(fn));
 	}
 
 	public static void writeBinaryDoubleMatrix(double[][] matrix, int iteration, String filename)
@@ -882,21 +937,29 @@ public class LDAUtils {
 	public static void writeBinaryDoubleMatrix(double[][] matrix,
 			int iteration, int rows, int columns, String filename)
 					throws FileNotFoundException, IOException {
+		writeBinaryDoubleMatrix(matrixWriter, matrix, iteration, rows, columns, filename);
+	}
+
+	public static void writeBinaryDoubleMatrix(MatrixWriter writer, double[][] matrix,
+			int iteration, int rows, int columns, String filename)
+					throws FileNotFoundException, IOException {
 		String fn = String.format(filename + "_" + rows + "_" + columns + "_%05d.BINARY", iteration);
-		writeBinaryDoubleMatrix(matrix, rows, columns, fn);
+		writer.writeBinary(matrix, null, null, rows, columns, new File(fn));
 	}
 
 	public static void writeBinaryDoubleMatrix(double[][] matrix, int rows, int columns, String fn) throws IOException, FileNotFoundException {
-		try(RandomAccessFile outputPhiFile = new RandomAccessFile(fn, "rw")) {
-			FileChannel phiChannel = outputPhiFile.getChannel();
-			final int bufferSize = 8*columns*rows;
-			ByteBuffer buf = phiChannel.map(FileChannel.MapMode.READ_WRITE, 0, bufferSize);
-			for (int to = 0; to < rows; to++) {
-				for (int ty = 0; ty < columns; ty++) {
-					buf.putDouble(matrix[to][ty]);
-				}
-			}
-		}
+		matrixWriter.writeBinary(matrix, null, null, rows, columns, new File(fn));
+	}
+
+	/**
+	 * Writes the non-zeros of <code>matrix</code> with SparseMatrixFile to a file named
+	 * like the writeBinaryDoubleMatrix files but ending with .SPARSE
+	 */
+	public static String writeSparseDoubleMatrix(double[][] matrix, int iteration, int columns, 
+			String filename, int quantizationBits) throws IOException {
+		String fn = String.format(filename + "_" + matrix.length + "_" + columns + "_%05d.SPARSE", iteration);
+		SparseMatrixFile.write(matrix, columns, new File(fn), quantizationBits);
+		return fn;
 	}
 
 	public static void writeBinaryIntMatrix(int [][] matrix,
@@ -907,22 +970,18 @@ public class LDAUtils {
 	public static void writeBinaryIntMatrix(int [][] matrix,
 			int iteration, int rows, int columns, String filename)
 					throws FileNotFoundException, IOException {
+		writeBinaryIntMatrix(matrixWriter, matrix, iteration, rows, columns, filename);
+	}
+
+	public static void writeBinaryIntMatrix(MatrixWriter writer, int [][] matrix,
+			int iteration, int rows, int columns, String filename)
+					throws FileNotFoundException, IOException {
 		String fn = String.format(filename + "_" + rows + "_" + columns + "_%05d.BINARY", iteration);
-		writeBinaryIntMatrix(matrix, rows, columns, fn);
+		writer.writeBinary(matrix, null, null, rows, columns, new File(fn));
 	}
 
 	public static void writeBinaryIntMatrix(int[][] matrix, int rows, int columns, String fn) throws FileNotFoundException, IOException {
-		try(RandomAccessFile outputPhiFile = new RandomAccessFile(fn, "rw")) {
-			FileChannel phiChannel = outputPhiFile.getChannel();
-			final int bufferSize = 8*columns*rows;
-			ByteBuffer buf = phiChannel.map(FileChannel.MapMode.READ_WRITE, 0, bufferSize);
-
-			for (int to = 0; to < rows; to++) {
-				for (int ty = 0; ty < columns; ty++) {
-					buf.putInt(matrix[to][ty]);
-				}
-			}
-		}
+		matrixWriter.writeBinary(matrix, null, null, rows, columns, new File(fn));
 	}
 
 	public static void writeASCIIIntMatrix(int[][] matrix, String fn, String sep) throws FileNotFoundException, IOException {
@@ -931,18 +990,8 @@ public class LDAUtils {
 			System.out.println("Warning : the file " + file.getName()
 			+ " already exists, overwriting...");
 		}
-		try (FileWriter fw = new FileWriter(file, false); 
-				BufferedWriter bw = new BufferedWriter(fw);
-				PrintWriter pw  = new PrintWriter(bw)) {
-			for (int i = 0; i < matrix.length; i++) {
-				for (int j = 0; j < matrix[i].length; j++) {
-					pw.print(matrix[i][j] + "");
-					if((j+1)<matrix[i].length) {
-						pw.print(sep);
-					}
-				}
-				pw.println();
-			}
+		try {
+			matrixWriter.writeASCII(matrix, sep, file);
 		} catch (IOException e) {
 			throw new IllegalArgumentException("File " + file.getName()
 			+ " is unwritable : " + e.toString());
@@ -982,30 +1031,27 @@ public class LDAUtils {
 	}
 
 	public static void writeASCIIDoubleMatrix(double[][] matrix, int rows, int columns, String sep, int noDigits, PrintWriter pw) throws FileNotFoundException, IOException {
-		DecimalFormat mydecimalFormat = new DecimalFormat("00.###E0");
-		for (int i = 0; i < matrix.length; i++) {
-			for (int j = 0; j < matrix[i].length; j++) {
-				pw.print(formatDouble(matrix[i][j],mydecimalFormat,noDigits) + "");
-				if((j+1)<matrix[i].length) {
-					pw.print(sep);
-				}
-			}
-			pw.println();
-		}
-		pw.flush();
+		writeASCIIDoubleMatrix(matrix, rows, columns, sep, noDigits, new DecimalFormat("00.###E0"), pw);
 	}
 
 	public static void writeASCIIDoubleMatrix(double[][] matrix, int rows, int columns, String sep, 
 			int noDigits, DecimalFormat mydecimalFormat, PrintWriter pw) throws FileNotFoundException, IOException {
-		for (int i = 0; i < matrix.length; i++) {
-			for (int j = 0; j < matrix[i].length; j++) {
-				pw.print(formatDouble(matrix[i][j],mydecimalFormat,noDigits) + "");
-				if((j+1)<matrix[i].length) {
-					pw.print(sep);
-				}
-			}
-			pw.println();
+		matrixWriter.writeASCII(matrix, sep, noDigits, mydecimalFormat, pw);
+	}
+
+	/**
+	 * Writes <code>matrix</code> to <code>file</code>, formatted like formatDouble, without going through a Writer
+	 */
+	public static void writeASCIIDoubleMatrix(double[][] matrix, String sep, File file) throws IOException {
+		writeASCIIDoubleMatrix(matrix, sep, 4, file);
+	}
+
+	public static void writeASCIIDoubleMatrix(double[][] matrix, String sep, int noDigits, File file) throws IOException {
+		if (file.exists()) {
+			System.out.println("Warning : the file " + file.getName()
+			+ " already exists, overwriting...");
 		}
+		matrixWriter.writeASCII(matrix, sep, noDigits, file);
 	}
 
 	public static int [][] readBinaryIntMatrix(int rows, int columns, String fn) throws IOException {
@@ -1487,6 +1533,20 @@ public class LDAUtils {
 		return numZero / (rows*cols);
 	}
 
+	public static double calculatePhiDensity(float[][] phi) {
+		int rows = phi.length;
+		int cols = phi[0].length;
+		double numZero = 0;
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < cols; col++) {
+				if(phi[row][col]==0) {
+					numZero++;
+				}
+			}
+		}
+		return numZero / (rows*cols);
+	}
+
 	public static List<String> loadDatasetAsString(String inputFile) throws FileNotFoundException {
 		SimpleTokenizerLarge tokenizer = new SimpleTokenizerLarge(NumericAlsoTokenizer.USE_EMPTY_STOPLIST);
 		String lineRegex = "^(\\S*)[\\s,]*([^\\t]+)[\\s,]*(.*)$";
@@ -1675,17 +1735,26 @@ public class LDAUtils {
 		String samplerFn = saveDir + buildSamplerSaveFilename(configHash);
 		String storedConfigHash = readStoredTrainingsetHash(saveDir + SAVED_SIMILARITY_SAMPLERNAME_PREFIX + "-config_hash-" + configHash);
 		File storedSampler = new File(samplerFn);
+		// Samplers saved with Java serialization before the checkpoint format
+		File serializedSampler = new File(saveDir + buildSerializedSamplerSaveFilename(configHash));
 		LDASamplerWithPhi trainedSampler = null;
 		if(storedSampler.exists() && configHash.equals(storedConfigHash)) {
 			try {
 				System.out.println("Using pretrained sampler @:" + storedSampler.getAbsolutePath());
+				trainedSampler = UncollapsedParallelLDA.readCheckpoint(storedSampler);
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		} else if(serializedSampler.exists() && configHash.equals(storedConfigHash)) {
+			try {
+				System.out.println("Using pretrained sampler @:" + serializedSampler.getAbsolutePath());
 				LDASamplerWithPhi tmp = (LDASamplerWithPhi) ModelFactory.get(config);
 				if(tmp instanceof PolyaUrnSpaliasLDA) {
 					System.out.println("Loading PolyaUrn sampler...");
-					trainedSampler = PolyaUrnSpaliasLDA.read(storedSampler);
+					trainedSampler = PolyaUrnSpaliasLDA.read(serializedSampler);
 				} else if (tmp instanceof SpaliasUncollapsedParallelLDA) {
 					System.out.println("Loading Spalias sampler...");
-					trainedSampler = SpaliasUncollapsedParallelLDA.read(storedSampler);
+					trainedSampler = SpaliasUncollapsedParallelLDA.read(serializedSampler);
 				}
 			} catch (Exception e) {
 				e.printStackTrace();
@@ -1697,6 +1766,10 @@ public class LDAUtils {
 	}
 
 	static String buildSamplerSaveFilename(String configHash) {
+		return SAVED_SIMILARITY_SAMPLERNAME_PREFIX + "-" + configHash + ".ckpt";
+	}
+
+	static String buildSerializedSamplerSaveFilename(String configHash) {
 		return SAVED_SIMILARITY_SAMPLERNAME_PREFIX + "-" + configHash + ".ser";
 	}
 
@@ -1709,12 +1782,17 @@ public class LDAUtils {
 		if(!tmpDir.exists()) {
 			tmpDir.mkdir();
 		}
-		if(trainedSampler instanceof PolyaUrnSpaliasLDA) {
-			System.out.println("Storing PolyaUrn sampler (hash="+configHash+")...");
-			((PolyaUrnSpaliasLDA) trainedSampler).write(storedSampler);
-		} else if (trainedSampler instanceof SpaliasUncollapsedParallelLDA) {
-			System.out.println("Storing SpaliasUncollapsedParallelLDA sampler (hash="+configHash+")...");
-			((SpaliasUncollapsedParallelLDA) trainedSampler).write(storedSampler);
+		try {
+			if(trainedSampler instanceof PolyaUrnSpaliasLDA) {
+				System.out.println("Storing PolyaUrn sampler (hash="+configHash+")...");
+				((PolyaUrnSpaliasLDA) trainedSampler).writeCheckpoint(storedSampler);
+			} else if (trainedSampler instanceof SpaliasUncollapsedParallelLDA) {
+				System.out.println("Storing SpaliasUncollapsedParallelLDA sampler (hash="+configHash+")...");
+				((SpaliasUncollapsedParallelLDA) trainedSampler).writeCheckpoint(storedSampler);
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.err.println("Problem storing sampler to file " + storedSampler + ": " + e);
 		}
 		writeHash(configHash,saveDir + SAVED_SIMILARITY_SAMPLERNAME_PREFIX + "-config_hash-" + configHash);
 	}
@@ -1745,7 +1823,7 @@ public class LDAUtils {
 		return hashtext; 
 	}
 
-	private static String hashFrombytes(byte[] bytes) {
+	static String hashFrombytes(byte[] bytes) {
 		// Static getInstance method is called with hashing MD5 
 		MessageDigest md = null;
 		try {
@@ -0,0 +1,48 @@
+package cc.mallet.util;
+
+import cc.mallet.types.Dirichlet;
+
+/**
+ * Precomputed values of logGamma(offset + n) for the integers 0 <= n < size.
+ *
+ * The counts in the LDA likelihood are integers so the same few log gamma
+ * values are needed over and over again. Counts outside the table fall back
+ * to Dirichlet.logGammaStirling, so the results are the same as calling it
+ * directly.
+ */
+public class LogGammaTable {
+
+	final double offset;
+	final double [] table;
+
+	public LogGammaTable(double offset, int size) {
+		this.offset = offset;
+		this.table = new double[Math.max(1, size)];
+		for (int n = 0; n < table.length; n++) {
+			table[n] = Dirichlet.logGammaStirling(offset + n);
+		}
+	}
+
+	/**
+	 * @return logGamma(offset + n)
+	 */
+	public double logGamma(int n) {
+		return n < table.length ? table[n] : Dirichlet.logGammaStirling(offset + n);
+	}
+
+	public double getOffset() {
+		return offset;
+	}
+
+	public int size() {
+		return table.length;
+	}
+
+	/**
+	 * @return true if this table can be used for <code>offset</code> and counts up to
+	 * <code>size</code> - 1 without being rebuilt
+	 */
+	public boolean covers(double offset, int size) {
+		return this.offset == offset && table.length >= size;
+	}
+}
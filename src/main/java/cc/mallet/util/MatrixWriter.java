@@ -0,0 +1,470 @@
+package cc.mallet.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes dense matrices as ASCII or big-endian binary files. Rows are split
+ * into blocks of about a megabyte that are formatted in parallel into byte
+ * buffers and written in row order through a FileChannel. The number of blocks
+ * in flight is bounded and their buffers are reused, so memory use does not
+ * grow with the size of the matrix.
+ *
+ * The ASCII output is the same as the one of LDAUtils.formatDouble: values
+ * with an absolute value below 0.0001 go through the DecimalFormat and the
+ * others are written like <code>String.format("%.nf", d)</code>. The latter
+ * is done without String.format when the rounding is unambiguous, which is
+ * where most of the time of the old writers went.
+ *
+ * The formatting threads are one pool of <code>numThreads</code> threads that
+ * is shared by all writes of the writer. They are daemon threads that stop when
+ * the writer has been idle for IDLE_SECONDS, so a writer that is never closed
+ * does not keep the JVM alive.
+ */
+public class MatrixWriter implements Closeable {
+
+	static final int BLOCK_BYTES = 1 << 20;
+	static final int BLOCKS_PER_THREAD = 2;
+	static final long [] POWERS_OF_TEN = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L,
+			100000000L, 1000000000L};
+	// Scaled values above this are formatted with String.format
+	static final double MAX_FAST_SCALED = 1E14;
+	static final String TINY_PATTERN = "00.###E0";
+	static final long IDLE_SECONDS = 30;
+
+	volatile int numThreads;
+	final ThreadPoolExecutor workers;
+
+	public MatrixWriter() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	public MatrixWriter(int numThreads) {
+		this.numThreads = Math.max(1, numThreads);
+		ThreadFactory threads = new LDAThreadFactory("MatrixWriter");
+		workers = new ThreadPoolExecutor(this.numThreads, this.numThreads, IDLE_SECONDS, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<>(), runnable -> {
+					Thread thread = threads.newThread(runnable);
+					thread.setDaemon(true);
+					return thread;
+				});
+		workers.allowCoreThreadTimeOut(true);
+	}
+
+	public int getNumThreads() {
+		return numThreads;
+	}
+
+	/**
+	 * Resizes the pool of formatting threads, writes in progress keep going
+	 */
+	public synchronized void setNumThreads(int numThreads) {
+		numThreads = Math.max(1, numThreads);
+		if(numThreads > workers.getMaximumPoolSize()) {
+			workers.setMaximumPoolSize(numThreads);
+			workers.setCorePoolSize(numThreads);
+		} else {
+			workers.setCorePoolSize(numThreads);
+			workers.setMaximumPoolSize(numThreads);
+		}
+		this.numThreads = numThreads;
+	}
+
+	/**
+	 * Stops the formatting threads once the writes in progress are done, the 
+	 * writer can not be used after this
+	 */
+	@Override
+	public void close() {
+		workers.shutdown();
+	}
+
+	/**
+	 * Formats one row into a block
+	 */
+	interface RowFormatter {
+		void format(int row, Block out);
+	}
+
+	/**
+	 * Receives the formatted blocks in row order
+	 */
+	interface BlockSink {
+		void write(Block block) throws IOException;
+	}
+
+	/**
+	 * Growable byte buffer that one block of rows is formatted into
+	 */
+	static class Block {
+		byte [] bytes;
+		int size;
+		// Per block since DecimalFormat is not thread safe
+		DecimalFormat tinyFormat;
+		boolean fastDoubles;
+		String lineSeparator = System.lineSeparator();
+
+		Block(int capacity) {
+			bytes = new byte[capacity];
+		}
+
+		void ensure(int extra) {
+			if(size + extra > bytes.length) {
+				byte [] grown = new byte[Math.max(bytes.length * 2, size + extra)];
+				System.arraycopy(bytes, 0, grown, 0, size);
+				bytes = grown;
+			}
+		}
+
+		void append(String s) {
+			int length = s.length();
+			ensure(length);
+			for (int i = 0; i < length; i++) {
+				char c = s.charAt(i);
+				if(c >= 128) {
+					// Non ASCII output from a localized format, encode the rest like a Writer would
+					byte [] encoded = s.substring(i).getBytes(Charset.defaultCharset());
+					ensure(encoded.length);
+					System.arraycopy(encoded, 0, bytes, size, encoded.length);
+					size += encoded.length;
+					return;
+				}
+				bytes[size++] = (byte) c;
+			}
+		}
+
+		void newLine() {
+			append(lineSeparator);
+		}
+
+		void appendInt(int value) {
+			if(value == Integer.MIN_VALUE) {
+				append(Integer.toString(value));
+				return;
+			}
+			ensure(11);
+			if(value < 0) {
+				bytes[size++] = '-';
+				value = -value;
+			}
+			appendDigits(value, numberOfDigits(value));
+		}
+
+		void appendDigits(long value, int digits) {
+			for (int i = size + digits - 1; i >= size; i--) {
+				bytes[i] = (byte) ('0' + value % 10);
+				value /= 10;
+			}
+			size += digits;
+		}
+
+		/**
+		 * Appends <code>d</code> like LDAUtils.formatDouble(d, tinyFormat, noDigits)
+		 */
+		void appendDouble(double d, int noDigits) {
+			if(d < 0.0001 && d > 0 || d > -0.0001 && d < 0) {
+				append(tinyFormat.format(d));
+			} else if(!fastDoubles || !appendFixed(d, noDigits)) {
+				append(String.format("%." + noDigits + "f", d));
+			}
+		}
+
+		/**
+		 * Appends <code>d</code> with <code>noDigits</code> decimals rounded half up
+		 * like Formatter does
+		 *
+		 * @return false if the rounding is too close to call and nothing was appended
+		 */
+		boolean appendFixed(double d, int noDigits) {
+			// Negative zero, NaN and infinities
+			if(Double.doubleToRawLongBits(d) == Long.MIN_VALUE || Double.isNaN(d) || Double.isInfinite(d)) {
+				return false;
+			}
+			double abs = Math.abs(d);
+			double scaled = abs * POWERS_OF_TEN[noDigits];
+			if(scaled >= MAX_FAST_SCALED) return false;
+			double floor = Math.floor(scaled);
+			double fraction = scaled - floor;
+			// Formatter rounds the shortest decimal representation of d, which can
+			// differ from the scaled double by a few ulps. Leave near ties to it.
+			if(Math.abs(fraction - 0.5) <= 1E-15 * scaled + 1E-12) return false;
+			long rounded = (long) floor + (fraction > 0.5 ? 1 : 0);
+			long integerPart = rounded / POWERS_OF_TEN[noDigits];
+			long decimals = rounded % POWERS_OF_TEN[noDigits];
+			ensure(noDigits + 18);
+			if(d < 0) {
+				bytes[size++] = '-';
+			}
+			appendDigits(integerPart, numberOfDigits(integerPart));
+			if(noDigits > 0) {
+				bytes[size++] = '.';
+				appendDigits(decimals, noDigits);
+			}
+			return true;
+		}
+
+		void putInt(int value) {
+			ensure(4);
+			bytes[size++] = (byte) (value >>> 24);
+			bytes[size++] = (byte) (value >>> 16);
+			bytes[size++] = (byte) (value >>> 8);
+			bytes[size++] = (byte) value;
+		}
+
+		void putDouble(double value) {
+			long bits = Double.doubleToRawLongBits(value);
+			putInt((int) (bits >>> 32));
+			putInt((int) bits);
+		}
+	}
+
+	static int numberOfDigits(long value) {
+		int digits = 1;
+		while (value >= 10) {
+			value /= 10;
+			digits++;
+		}
+		return digits;
+	}
+
+	/**
+	 * The fixed point fast path writes '0'-'9', '.' and '-', which is what
+	 * String.format writes in most but not all locales
+	 */
+	static boolean fastDoublesInDefaultLocale() {
+		DecimalFormatSymbols symbols = DecimalFormatSymbols.getInstance(Locale.getDefault(Locale.Category.FORMAT));
+		return symbols.getZeroDigit() == '0' && symbols.getDecimalSeparator() == '.' && symbols.getMinusSign() == '-';
+	}
+
+	/**
+	 * Writes <code>matrix</code> as ASCII with values separated by <code>sep</code>, one row per line
+	 */
+	public void writeASCII(double [][] matrix, String sep, int noDigits, File file) throws IOException {
+		writeASCII(matrix, sep, noDigits, new DecimalFormat(TINY_PATTERN), file);
+	}
+
+	public void writeASCII(double [][] matrix, String sep, int noDigits, DecimalFormat tinyFormat, File file) throws IOException {
+		write(matrix.length, asciiDoubleRows(matrix, sep, noDigits), asciiDoubleBlock(tinyFormat, noDigits), file);
+	}
+
+	/**
+	 * Writes <code>matrix</code> as ASCII to <code>out</code>, which is flushed but not closed
+	 */
+	public void writeASCII(double [][] matrix, String sep, int noDigits, DecimalFormat tinyFormat, Writer out) throws IOException {
+		write(matrix.length, asciiDoubleRows(matrix, sep, noDigits), asciiDoubleBlock(tinyFormat, noDigits), block -> {
+			out.write(new String(block.bytes, 0, block.size, Charset.defaultCharset()));
+		});
+		out.flush();
+	}
+
+	public void writeASCII(int [][] matrix, String sep, File file) throws IOException {
+		write(matrix.length, (row, out) -> {
+			int [] values = matrix[row];
+			for (int j = 0; j < values.length; j++) {
+				out.appendInt(values[j]);
+				if((j+1) < values.length) {
+					out.append(sep);
+				}
+			}
+			out.newLine();
+		}, () -> new Block(BLOCK_BYTES), file);
+	}
+
+	RowFormatter asciiDoubleRows(double [][] matrix, String sep, int noDigits) {
+		if(noDigits < 0 || noDigits >= POWERS_OF_TEN.length) {
+			throw new IllegalArgumentException("Number of digits must be between 0 and " + (POWERS_OF_TEN.length - 1) + ", not " + noDigits);
+		}
+		return (row, out) -> {
+			double [] values = matrix[row];
+			for (int j = 0; j < values.length; j++) {
+				out.appendDouble(values[j], noDigits);
+				if((j+1) < values.length) {
+					out.append(sep);
+				}
+			}
+			out.newLine();
+		};
+	}
+
+	BlockFactory asciiDoubleBlock(DecimalFormat tinyFormat, int noDigits) {
+		boolean fastDoubles = fastDoublesInDefaultLocale();
+		return () -> {
+			Block block = new Block(BLOCK_BYTES);
+			block.tinyFormat = (DecimalFormat) tinyFormat.clone();
+			block.fastDoubles = fastDoubles;
+			return block;
+		};
+	}
+
+	/**
+	 * Writes the given rows of <code>matrix</code> as big-endian doubles, row by row
+	 *
+	 * @param rowIndices Rows to write, null for all rows
+	 * @param columnIndices Per row the columns to write, row <code>i</code> uses
+	 * <code>columnIndices[i % columnIndices.length]</code>, null for all columns
+	 */
+	public void writeBinary(double [][] matrix, int [] rowIndices, int [][] columnIndices, int rows, int columns, File file) throws IOException {
+		write(rows, (row, out) -> {
+			double [] values = matrix[rowIndices == null ? row : rowIndices[row]];
+			if(columnIndices == null) {
+				for (int j = 0; j < columns; j++) {
+					out.putDouble(values[j]);
+				}
+			} else {
+				for (int col : columnIndices[row % columnIndices.length]) {
+					out.putDouble(values[col]);
+				}
+			}
+		}, binaryBlock(8L * columns), file);
+	}
+
+	/**
+	 * Writes the given rows of <code>matrix</code> as big-endian ints, row by row
+	 *
+	 * @see #writeBinary(double[][], int[], int[][], int, int, File)
+	 */
+	public void writeBinary(int [][] matrix, int [] rowIndices, int [][] columnIndices, int rows, int columns, File file) throws IOException {
+		write(rows, (row, out) -> {
+			int [] values = matrix[rowIndices == null ? row : rowIndices[row]];
+			if(columnIndices == null) {
+				for (int j = 0; j < columns; j++) {
+					out.putInt(values[j]);
+				}
+			} else {
+				for (int col : columnIndices[row % columnIndices.length]) {
+					out.putInt(values[col]);
+				}
+			}
+		}, binaryBlock(4L * columns), file);
+	}
+
+	BlockFactory binaryBlock(long rowBytes) {
+		int capacity = (int) Math.max(Math.min(rowBytes, Integer.MAX_VALUE / 2), BLOCK_BYTES);
+		return () -> new Block(capacity);
+	}
+
+	interface BlockFactory {
+		Block create();
+	}
+
+	void write(int rows, RowFormatter formatter, BlockFactory blocks, File file) throws IOException {
+		try (FileOutputStream fos = new FileOutputStream(file, false);
+				FileChannel channel = fos.getChannel()) {
+			write(rows, formatter, blocks, block -> {
+				ByteBuffer buffer = ByteBuffer.wrap(block.bytes, 0, block.size);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Formats the rows in blocks of about BLOCK_BYTES on up to numThreads threads
+	 * and hands the blocks to <code>sink</code> in row order on the calling thread
+	 */
+	void write(int rows, RowFormatter formatter, BlockFactory blocks, BlockSink sink) throws IOException {
+		Block first = blocks.create();
+		int row = formatBlock(formatter, first, 0, rows);
+		int numThreads = this.numThreads;
+		if(row == rows || numThreads == 1) {
+			// Small matrices are not worth the threads
+			sink.write(first);
+			while (row < rows) {
+				first.size = 0;
+				row = formatBlock(formatter, first, row, rows);
+				sink.write(first);
+			}
+			return;
+		}
+		// Rows of the same matrix format to roughly the same size
+		int rowsPerBlock = row;
+		int maxInFlight = numThreads * BLOCKS_PER_THREAD;
+		BlockingQueue<Block> free = new ArrayBlockingQueue<>(maxInFlight + 1);
+		free.add(first);
+		ArrayDeque<Future<Block>> inFlight = new ArrayDeque<>();
+		try {
+			sink.write(first);
+			while (row < rows) {
+				int start = row;
+				int end = (int) Math.min((long) start + rowsPerBlock, rows);
+				Block block = free.poll();
+				Block target = block != null ? block : blocks.create();
+				inFlight.add(workers.submit(() -> {
+					target.size = 0;
+					formatRows(formatter, target, start, end);
+					return target;
+				}));
+				row = end;
+				if(inFlight.size() >= maxInFlight) {
+					free.add(drain(inFlight.poll(), sink));
+				}
+			}
+			while (!inFlight.isEmpty()) {
+				free.add(drain(inFlight.poll(), sink));
+			}
+		} finally {
+			// Only left if the write failed
+			for (Future<Block> pending : inFlight) {
+				pending.cancel(true);
+			}
+		}
+	}
+
+	Block drain(Future<Block> pending, BlockSink sink) throws IOException {
+		Block block;
+		try {
+			block = pending.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			if(e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new IOException("Formatting matrix rows failed", e.getCause());
+		}
+		sink.write(block);
+		return block;
+	}
+
+	/**
+	 * Formats rows from <code>start</code> until the block reaches BLOCK_BYTES
+	 *
+	 * @return The first row not formatted
+	 */
+	static int formatBlock(RowFormatter formatter, Block block, int start, int rows) {
+		int row = start;
+		while (row < rows && (row == start || block.size < BLOCK_BYTES)) {
+			formatter.format(row++, block);
+		}
+		return row;
+	}
+
+	static void formatRows(RowFormatter formatter, Block block, int start, int end) {
+		for (int row = start; row < end; row++) {
+			formatter.format(row, block);
+		}
+	}
+}
@@ -3,7 +3,6 @@ package cc.mallet.util;
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Random;
-import java.util.concurrent.ThreadLocalRandom;
 
 import org.apache.commons.math3.stat.inference.ChiSquareTest;
 
@@ -95,7 +94,7 @@ public class OptimizedGentleAliasMethod implements WalkerAliasTable, Serializabl
 	
 	@Override
 	public int generateSample() {
-		double u = ThreadLocalRandom.current().nextDouble();
+		double u = SamplerRandom.current().nextDouble();
 		return generateSample(u);
 	}
 	
@@ -1,7 +1,5 @@
 package cc.mallet.util;
 
-import java.util.concurrent.ThreadLocalRandom;
-
 public class OptimizedGentleAliasMethodDynamicSize extends OptimizedGentleAliasMethod {
 	/*
 	Random random = new Random();
@@ -108,7 +106,7 @@ public class OptimizedGentleAliasMethodDynamicSize extends OptimizedGentleAliasM
 	
 	@Override
 	public int generateSample() {
-		double u = ThreadLocalRandom.current().nextDouble();
+		double u = SamplerRandom.current().nextDouble();
 		return generateSample(u);
 	}
 	
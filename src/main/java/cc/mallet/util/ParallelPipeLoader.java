@@ -0,0 +1,135 @@
+package cc.mallet.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import cc.mallet.pipe.Pipe;
+import cc.mallet.types.Instance;
+
+/**
+ * Runs instances through a list of pipes where the first pipes (lowercasing and
+ * tokenization) run in parallel and the rest (typically the alphabet lookup,
+ * counting and label conversion) run on the calling thread in input order.
+ *
+ * The calling thread reads the input in blocks of BLOCK_SIZE instances and
+ * hands each block to a worker pool. The finished blocks are merged in the
+ * order they were read, so the alphabet gets the same indices and the
+ * instances come out in the same order as with a serial pipe. The parallel
+ * pipes must not keep any state between instances, pipes that do (such as
+ * CharSequence2TokenSequence with its lexer) are given as a Supplier so that
+ * each worker thread gets its own copy.
+ */
+public class ParallelPipeLoader {
+
+	public static final int BLOCK_SIZE = 256;
+	// Blocks in flight per worker thread, bounds the memory used by read ahead
+	static final int BLOCKS_PER_THREAD = 4;
+
+	final ThreadLocal<List<Pipe>> parallelPipes;
+	final List<Pipe> orderedPipes;
+	final int numThreads;
+	int count = 0;
+
+	/**
+	 * @param pipes The pipes to run, in order
+	 * @param noParallelPipes The number of pipes at the start of <code>pipes</code> that
+	 * can run concurrently on different instances
+	 */
+	public ParallelPipeLoader(List<Pipe> pipes, int noParallelPipes) {
+		this(pipes, noParallelPipes, Runtime.getRuntime().availableProcessors());
+	}
+
+	public ParallelPipeLoader(List<Pipe> pipes, int noParallelPipes, int numThreads) {
+		List<Pipe> sharedPipes = new ArrayList<>(pipes.subList(0, noParallelPipes));
+		this.parallelPipes = ThreadLocal.withInitial(() -> sharedPipes);
+		this.orderedPipes = new ArrayList<>(pipes.subList(noParallelPipes, pipes.size()));
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	/**
+	 * @param parallelPipes Creates the pipes run in parallel, called once per worker thread
+	 * @param orderedPipes The pipes run after them in input order on the calling thread
+	 */
+	public ParallelPipeLoader(Supplier<List<Pipe>> parallelPipes, List<Pipe> orderedPipes, int numThreads) {
+		this.parallelPipes = ThreadLocal.withInitial(parallelPipes);
+		this.orderedPipes = new ArrayList<>(orderedPipes);
+		this.numThreads = Math.max(1, numThreads);
+	}
+
+	static Instance runPipes(List<Pipe> pipes, Instance instance) {
+		for (Pipe pipe : pipes) {
+			if(pipe.precondition(instance)) {
+				instance = pipe.pipe(instance);
+			}
+		}
+		return instance;
+	}
+
+	/**
+	 * Runs all instances in <code>source</code> through the pipes and hands them
+	 * to <code>sink</code> in input order on the calling thread
+	 */
+	public void run(Iterator<Instance> source, Consumer<Instance> sink) {
+		ExecutorService workers = Executors.newFixedThreadPool(numThreads, new LDAThreadFactory("ParallelPipeLoader"));
+		try {
+			ArrayDeque<Future<List<Instance>>> inFlight = new ArrayDeque<>();
+			int maxInFlight = numThreads * BLOCKS_PER_THREAD;
+			while (source.hasNext()) {
+				List<Instance> block = new ArrayList<>(BLOCK_SIZE);
+				while (source.hasNext() && block.size() < BLOCK_SIZE) {
+					block.add(source.next());
+				}
+				inFlight.add(workers.submit(() -> {
+					List<Pipe> workerPipes = parallelPipes.get();
+					List<Instance> piped = new ArrayList<>(block.size());
+					for (Instance instance : block) {
+						piped.add(runPipes(workerPipes, instance));
+					}
+					return piped;
+				}));
+				if(inFlight.size() >= maxInFlight) {
+					merge(inFlight.poll(), sink);
+				}
+			}
+			while (!inFlight.isEmpty()) {
+				merge(inFlight.poll(), sink);
+			}
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+
+	void merge(Future<List<Instance>> block, Consumer<Instance> sink) {
+		List<Instance> instances;
+		try {
+			instances = block.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+		for (Instance instance : instances) {
+			sink.accept(runPipes(orderedPipes, instance));
+			count++;
+			if (count % 100000 == 0) {
+				System.out.println(count);
+			}
+		}
+	}
+
+	/**
+	 * @return The number of instances run through the pipes so far
+	 */
+	public int getCount() {
+		return count;
+	}
+}
@@ -1,6 +1,6 @@
 package cc.mallet.util;
 
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.Random;
 
 /**
  * This algorithm implements Marsaglias algorithm for very fast drawing of
@@ -62,7 +62,7 @@ public class ParallelRandoms extends Randoms {
 			throw new IllegalArgumentException ("alpha and beta must be strictly positive: alpha = " + alpha + " beta = " + beta + " lambda = " + lambda);
 		}
 		if(alpha<1) {
-			double u=ThreadLocalRandom.current().nextDouble();
+			double u=SamplerRandom.current().nextDouble();
 			return ((prgamma(1+alpha) * Math.pow(u, 1.0/alpha)) * beta)+lambda;
 		} else {
 			return (prgamma(alpha) * beta) + lambda;
@@ -89,7 +89,7 @@ public class ParallelRandoms extends Randoms {
 			double d = (1.0+alpha)-(1.0/3.0); 
 			double c = 1.0/Math.sqrt(9.0*d);
 			for (int i = 0; i < noSamples; i++) {				
-				double u=ThreadLocalRandom.current().nextDouble();
+				double u=SamplerRandom.current().nextDouble();
 				samples[i]  = ((prgamma(d,c) * Math.pow(u, 1.0/alpha)) * beta) + lambda;
 			}
 		} else {
@@ -110,7 +110,7 @@ public class ParallelRandoms extends Randoms {
 	 */
 	public static double nextGammaPreCalc(double alpha, double d, double c) {
 		if(alpha<1) {
-			double u=ThreadLocalRandom.current().nextDouble();
+			double u=SamplerRandom.current().nextDouble();
 			return prgamma(d,c) * Math.pow(u, 1.0/alpha);
 		} else {			
 			return prgamma(d,c);
@@ -140,6 +140,15 @@ public class ParallelRandoms extends Randoms {
 	}
 	
 	
+	/**
+	 * @return The generator of the current sampling unit (see SamplerRandom) or
+	 * else the xorshift generator of the calling thread
+	 */
+	static Random gaussians() {
+		Random unit = SamplerRandom.activeUnit();
+		return unit != null ? unit : gaussGen.get();
+	}
+
 	/**
 	 * The full Marsaglia gamma covariate sampler, for alpha > 1
 	 * @param alpha
@@ -149,10 +158,11 @@ public class ParallelRandoms extends Randoms {
 		double x,v,u;
 		double d = alpha-(1.0/3.0); 
 		double c = 1.0/Math.sqrt(9.0*d);
+		Random gauss = gaussians();
 		while(true) {
-			do {x=gaussGen.get().nextGaussian(); v=1.0+c*x;} while(v<=0.0);
+			do {x=gauss.nextGaussian(); v=1.0+c*x;} while(v<=0.0);
 			v=v*v*v; 
-			u=gaussGen.get().nextDouble();
+			u=gauss.nextDouble();
 			if( u<(1.0-0.0331*(x*x)*(x*x)) ) return (d*v);
 			if( Math.log(u)<(0.5*x*x+d*(1.0-v+Math.log(v))) ) return (d*v);
 		}
@@ -168,9 +178,9 @@ public class ParallelRandoms extends Randoms {
 		double d = alpha-(1.0/3.0); 
 		double c = 1.0/Math.sqrt(9.0*d);
 		while(true) {
-			do {x=ThreadLocalRandom.current().nextGaussian(); v=1.0+c*x;} while(v<=0.0);
+			do {x=SamplerRandom.current().nextGaussian(); v=1.0+c*x;} while(v<=0.0);
 			v=v*v*v; 
-			u=ThreadLocalRandom.current().nextDouble();
+			u=SamplerRandom.current().nextDouble();
 			if( u<(1.0-0.0331*(x*x)*(x*x)) ) return (d*v);
 			if( Math.log(u)<(0.5*x*x+d*(1.0-v+Math.log(v))) ) return (d*v);
 		}
@@ -186,9 +196,9 @@ public class ParallelRandoms extends Randoms {
 	protected static double prgamma(double d, double c) {
 		double x,v,u;
 		while(true) {
-			do {x=ThreadLocalRandom.current().nextGaussian(); v=1.0+c*x;} while(v<=0.0);
+			do {x=SamplerRandom.current().nextGaussian(); v=1.0+c*x;} while(v<=0.0);
 			v=v*v*v; 
-			u=ThreadLocalRandom.current().nextDouble();
+			u=SamplerRandom.current().nextDouble();
 			if( u<(1.0-0.0331*(x*x)*(x*x)) ) return (d*v);
 			if( Math.log(u)<(0.5*x*x+d*(1.0-v+Math.log(v))) ) return (d*v);
 		}
@@ -0,0 +1,310 @@
+package cc.mallet.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import cc.mallet.configuration.LDAConfiguration;
+import cc.mallet.pipe.Noop;
+import cc.mallet.pipe.Pipe;
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
+import cc.mallet.types.Label;
+import cc.mallet.types.LabelAlphabet;
+
+/**
+ * Binary cache of a preprocessed dataset so that tokenization, building the
+ * alphabet and pruning the vocabulary only has to be done once.
+ *
+ * The cache file is named by a hash of the dataset file (path, size and
+ * modification time), the stoplist and the preprocessing options so a changed
+ * setting or dataset gives a new cache file. The layout is
+ *
+ * <pre>
+ * magic, version, number of documents, number of tokens
+ * long [noDocs+1] document offsets into the tokens
+ * int [noTokens] token types of all documents
+ * the cache key, the serialized pipe (with the alphabets) and per document
+ * the name and the target label index
+ * </pre>
+ *
+ * The offsets and tokens are read with memory mapped bulk reads.
+ */
+public class PreprocessedCorpusCache {
+
+	static final long MAGIC = 0x50434c4441435243L; // "PCLDACRC"
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = Long.BYTES + Integer.BYTES + Integer.BYTES + Long.BYTES;
+	// Map the token section in chunks of at most this many ints
+	static final int MAX_MAPPED_INTS = 1 << 28;
+
+	/**
+	 * @return The key for the preprocessed version of <code>datasetFn</code> with
+	 * the settings in <code>config</code>
+	 */
+	public static String cacheKey(LDAConfiguration config, String datasetFn) throws IOException {
+		StringBuilder key = new StringBuilder();
+		key.append("version=").append(VERSION).append('\n');
+		appendFileIdentity(key, new File(datasetFn), config.getFileRegex(LDAConfiguration.FILE_REGEX_DEFAULT));
+		String stoplistFn = config.getStoplistFilename("stoplist.txt");
+		if(stoplistFn != null) {
+			appendFileIdentity(key, new File(stoplistFn), null);
+		}
+		key.append("noPreprocess=").append(config.noPreprocess()).append('\n');
+		key.append("rareThreshold=").append(config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD)).append('\n');
+		key.append("tfIdfVocabSize=").append(config.getTfIdfVocabSize(LDAConfiguration.TF_IDF_VOCAB_SIZE_DEFAULT)).append('\n');
+		key.append("keepNumbers=").append(config.keepNumbers()).append('\n');
+		key.append("maxDocBufferSize=").append(config.getMaxDocumentBufferSize(LDAConfiguration.MAX_DOC_BUFFFER_SIZE_DEFAULT)).append('\n');
+		key.append("keepConnectors=").append(config.getKeepConnectingPunctuation(LDAConfiguration.KEEP_CONNECTING_PUNCTUATION)).append('\n');
+		// Single pass loading prunes numbers and connected words and estimates the counts of large vocabularies
+		boolean singlePass = config.useSinglePassVocabulary(LDAConfiguration.SINGLE_PASS_VOCABULARY_DEFAULT);
+		key.append("singlePassVocabulary=").append(singlePass).append('\n');
+		if(singlePass) {
+			key.append("singlePassMaxVocabulary=").append(config.getSinglePassMaxVocabulary(LDAConfiguration.SINGLE_PASS_MAX_VOCABULARY_DEFAULT)).append('\n');
+		}
+		return LDAUtils.hashFrombytes(key.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	static void appendFileIdentity(StringBuilder key, File file, String fileRegex) throws IOException {
+		key.append(file.getCanonicalPath()).append('\n');
+		if(file.isDirectory()) {
+			key.append("fileRegex=").append(fileRegex).append('\n');
+			File [] files = file.listFiles();
+			if(files != null) {
+				Arrays.sort(files);
+				for (File child : files) {
+					appendFileIdentity(key, child, fileRegex);
+				}
+			}
+		} else {
+			key.append(file.length()).append(' ').append(file.lastModified()).append('\n');
+		}
+	}
+
+	/**
+	 * @return The cache file for <code>datasetFn</code> with key <code>key</code> in <code>cacheDir</code>
+	 */
+	public static File cacheFile(String cacheDir, String datasetFn, String key) {
+		return new File(cacheDir, new File(datasetFn).getName() + "-" + key + ".corpus");
+	}
+
+	/**
+	 * Writes <code>instances</code> to <code>cacheFile</code>. The instances must have
+	 * FeatureSequence data. The file is first written to a temporary file and then
+	 * renamed so a crashed write never leaves a broken cache behind.
+	 */
+	public static void write(InstanceList instances, String key, File cacheFile) throws IOException {
+		File dir = cacheFile.getAbsoluteFile().getParentFile();
+		if(!dir.exists() && !dir.mkdirs()) {
+			throw new IOException("Could not create corpus cache directory: " + dir);
+		}
+		int numDocs = instances.size();
+		long numTokens = 0;
+		for (Instance instance : instances) {
+			numTokens += ((FeatureSequence) instance.getData()).getLength();
+		}
+
+		File tmpFile = new File(dir, cacheFile.getName() + ".tmp");
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile), 1 << 16))) {
+			// Written little endian to match the mapped reads
+			out.writeLong(Long.reverseBytes(MAGIC));
+			out.writeInt(Integer.reverseBytes(VERSION));
+			out.writeInt(Integer.reverseBytes(numDocs));
+			out.writeLong(Long.reverseBytes(numTokens));
+			long offset = 0;
+			out.writeLong(0);
+			for (Instance instance : instances) {
+				offset += ((FeatureSequence) instance.getData()).getLength();
+				out.writeLong(Long.reverseBytes(offset));
+			}
+			for (Instance instance : instances) {
+				FeatureSequence tokens = (FeatureSequence) instance.getData();
+				int [] features = tokens.getFeatures();
+				for (int position = 0; position < tokens.getLength(); position++) {
+					out.writeInt(Integer.reverseBytes(features[position]));
+				}
+			}
+
+			out.writeUTF(key);
+			byte [] pipeBytes = serializePipe(instances);
+			out.writeInt(pipeBytes.length);
+			out.write(pipeBytes);
+			for (Instance instance : instances) {
+				Object name = instance.getName();
+				out.writeBoolean(name != null);
+				if(name != null) {
+					out.writeUTF(name.toString());
+				}
+				Object target = instance.getTarget();
+				out.writeInt(target instanceof Label ? ((Label) target).getIndex() : -1);
+			}
+		}
+		if(cacheFile.exists() && !cacheFile.delete()) {
+			throw new IOException("Could not replace corpus cache: " + cacheFile);
+		}
+		if(!tmpFile.renameTo(cacheFile)) {
+			throw new IOException("Could not rename " + tmpFile + " to " + cacheFile);
+		}
+	}
+
+	/*
+	 * The pipe holds the alphabets and the tokenizer with the pruned stoplist. Pipes that
+	 * cannot be serialized are replaced by a Noop pipe with the same alphabets.
+	 */
+	static byte [] serializePipe(InstanceList instances) throws IOException {
+		Pipe pipe = instances.getPipe();
+		try {
+			return serialize(pipe);
+		} catch (NotSerializableException e) {
+			return serialize(new Noop(instances.getDataAlphabet(), instances.getTargetAlphabet()));
+		}
+	}
+
+	static byte [] serialize(Object object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+			oos.writeObject(object);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @return The instances in <code>cacheFile</code> or null if the file does not
+	 * exist or was written with another key or format version
+	 */
+	public static InstanceList read(File cacheFile, String key) throws IOException {
+		if(!cacheFile.exists()) return null;
+		try (RandomAccessFile raf = new RandomAccessFile(cacheFile, "r");
+				FileChannel channel = raf.getChannel()) {
+			if(channel.size() < HEADER_SIZE) return null;
+			MappedByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE);
+			header.order(ByteOrder.LITTLE_ENDIAN);
+			if(header.getLong() != MAGIC || header.getInt() != VERSION) return null;
+			int numDocs = header.getInt();
+			long numTokens = header.getLong();
+
+			long offsetsStart = HEADER_SIZE;
+			long tokensStart = offsetsStart + (long) (numDocs + 1) * Long.BYTES;
+			long trailerStart = tokensStart + numTokens * Integer.BYTES;
+			if(channel.size() < trailerStart) return null;
+
+			// Check the key and read the alphabets before the tokens
+			channel.position(trailerStart);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+			if(!key.equals(in.readUTF())) return null;
+			byte [] pipeBytes = new byte[in.readInt()];
+			in.readFully(pipeBytes);
+			Pipe pipe = deserializePipe(pipeBytes);
+			Alphabet alphabet = pipe.getDataAlphabet();
+			LabelAlphabet targetAlphabet = (LabelAlphabet) pipe.getTargetAlphabet();
+
+			MappedByteBuffer offsetBuffer = channel.map(MapMode.READ_ONLY, offsetsStart, tokensStart - offsetsStart);
+			offsetBuffer.order(ByteOrder.LITTLE_ENDIAN);
+			LongBuffer offsets = offsetBuffer.asLongBuffer();
+
+			InstanceList instances = new InstanceList(pipe);
+			TokenReader tokens = new TokenReader(channel, tokensStart, numTokens);
+			for (int doc = 0; doc < numDocs; doc++) {
+				int length = (int) (offsets.get(doc + 1) - offsets.get(doc));
+				int [] features = new int[length];
+				tokens.read(offsets.get(doc), features);
+				String name = in.readBoolean() ? in.readUTF() : null;
+				int labelIdx = in.readInt();
+				Label target = labelIdx >= 0 && targetAlphabet != null ? targetAlphabet.lookupLabel(labelIdx) : null;
+				Instance instance = new Instance(new FeatureSequence(alphabet, features, length), target, name, null);
+				instances.add(instance);
+			}
+			return instances;
+		}
+	}
+
+	static Pipe deserializePipe(byte [] pipeBytes) throws IOException {
+		try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(pipeBytes))) {
+			return (Pipe) ois.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/*
+	 * Reads the tokens section through mappings of at most MAX_MAPPED_INTS ints
+	 */
+	static class TokenReader {
+		final FileChannel channel;
+		final long start;
+		final long numTokens;
+		long chunkStart = -1;
+		IntBuffer chunk;
+
+		TokenReader(FileChannel channel, long start, long numTokens) {
+			this.channel = channel;
+			this.start = start;
+			this.numTokens = numTokens;
+		}
+
+		void read(long tokenIdx, int [] dst) throws IOException {
+			int copied = 0;
+			while (copied < dst.length) {
+				long idx = tokenIdx + copied;
+				if(chunk == null || idx < chunkStart || idx >= chunkStart + chunk.capacity()) {
+					chunkStart = idx;
+					long size = Math.min(MAX_MAPPED_INTS, numTokens - idx);
+					MappedByteBuffer buffer = channel.map(MapMode.READ_ONLY, start + idx * Integer.BYTES, size * Integer.BYTES);
+					buffer.order(ByteOrder.LITTLE_ENDIAN);
+					chunk = buffer.asIntBuffer();
+				}
+				int inChunk = (int) (idx - chunkStart);
+				int count = Math.min(dst.length - copied, chunk.capacity() - inChunk);
+				chunk.position(inChunk);
+				chunk.get(dst, copied, count);
+				copied += count;
+			}
+		}
+	}
+
+	/**
+	 * Loads <code>datasetFn</code> from the cache in <code>cacheDir</code> if there is
+	 * one for the current settings, otherwise loads it with <code>loader</code> and
+	 * writes it to the cache
+	 */
+	public static InstanceList loadCached(LDAConfiguration config, String datasetFn, String cacheDir, DatasetLoader loader) throws IOException {
+		String key = cacheKey(config, datasetFn);
+		File cacheFile = cacheFile(cacheDir, datasetFn, key);
+		long start = System.currentTimeMillis();
+		InstanceList instances = read(cacheFile, key);
+		if(instances != null) {
+			System.out.println("Loaded " + instances.size() + " preprocessed documents from " + cacheFile
+					+ " in " + (System.currentTimeMillis() - start) + " ms");
+			return instances;
+		}
+		instances = loader.load();
+		write(instances, key, cacheFile);
+		System.out.println("Wrote preprocessed corpus cache: " + cacheFile);
+		return instances;
+	}
+
+	public interface DatasetLoader {
+		InstanceList load() throws IOException;
+	}
+}
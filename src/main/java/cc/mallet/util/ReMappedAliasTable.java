@@ -1,7 +1,6 @@
 package cc.mallet.util;
 
 import java.io.Serializable;
-import java.util.concurrent.ThreadLocalRandom;
 
 public class ReMappedAliasTable extends OptimizedGentleAliasMethod implements WalkerAliasTable, Serializable {
 	private static final long serialVersionUID = 1L;
@@ -24,7 +23,7 @@ public class ReMappedAliasTable extends OptimizedGentleAliasMethod implements Wa
 	
 	@Override
 	public int generateSample() {
-		double u = ThreadLocalRandom.current().nextDouble();
+		double u = SamplerRandom.current().nextDouble();
 		return mapping[generateSample(u)];
 	}	
 }
@@ -0,0 +1,120 @@
+package cc.mallet.util;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The random numbers drawn by the samplers. By default these come from the
+ * ThreadLocalRandom of the calling thread, so a run depends on how the work
+ * is spread over the threads.
+ *
+ * With reproducible sampling the sampler calls startUnit() before each unit of
+ * work (a document in the z sampling, a topic in the phi sampling), which seeds
+ * a generator of the calling thread from the start seed, the iteration and the
+ * unit. The draws of a unit then do not depend on which thread samples it or in
+ * which order, and a sampler resumed from a checkpoint with the same start seed
+ * continues exactly as the run that wrote the checkpoint.
+ */
+public class SamplerRandom {
+
+	public static final int Z_SAMPLING = 1;
+	public static final int PHI_SAMPLING = 2;
+
+	// Set when the first unit is started, until then current() does not need the thread local
+	static volatile boolean unitsStarted = false;
+	static final ThreadLocal<UnitRandom> units = new ThreadLocal<UnitRandom>() {
+		@Override
+		protected UnitRandom initialValue() {
+			return new UnitRandom();
+		}
+	};
+
+	/**
+	 * @return The generator of the unit the calling thread is sampling, or its
+	 * ThreadLocalRandom if it is not in a unit
+	 */
+	public static Random current() {
+		Random unit = activeUnit();
+		return unit != null ? unit : ThreadLocalRandom.current();
+	}
+
+	/**
+	 * @return The generator of the unit the calling thread is sampling, null if it is not in a unit
+	 */
+	public static Random activeUnit() {
+		if(!unitsStarted) return null;
+		UnitRandom unit = units.get();
+		return unit.active ? unit : null;
+	}
+
+	/**
+	 * Seeds the generator of the calling thread for one unit of work, the draws
+	 * until endUnit() only depend on the arguments
+	 *
+	 * @param seed Start seed of the sampler
+	 * @param iteration Iteration the unit is sampled in
+	 * @param stream Kind of unit, Z_SAMPLING or PHI_SAMPLING
+	 * @param unit Index of the document or topic
+	 */
+	public static void startUnit(long seed, int iteration, int stream, int unit) {
+		unitsStarted = true;
+		UnitRandom random = units.get();
+		random.setSeed(unitSeed(seed, iteration, stream, unit));
+		random.active = true;
+	}
+
+	/**
+	 * Makes the calling thread draw from its ThreadLocalRandom again
+	 */
+	public static void endUnit() {
+		if(unitsStarted) {
+			units.get().active = false;
+		}
+	}
+
+	static long unitSeed(long seed, int iteration, int stream, int unit) {
+		long x = mix(seed);
+		x = mix(x ^ iteration);
+		x = mix(x ^ stream);
+		x = mix(x ^ unit);
+		// The xorshift generator is stuck at 0
+		return x != 0 ? x : 0x9e3779b97f4a7c15L;
+	}
+
+	/**
+	 * The SplitMix64 finalizer
+	 */
+	static long mix(long x) {
+		x += 0x9e3779b97f4a7c15L;
+		x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+		x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+		return x ^ (x >>> 31);
+	}
+
+	/**
+	 * The xorshift generator of XORShiftRandom with a settable state
+	 */
+	static class UnitRandom extends Random {
+		private static final long serialVersionUID = 1L;
+		// Not initialized here, the Random constructor sets it through setSeed
+		long state;
+		boolean active;
+
+		@Override
+		public void setSeed(long seed) {
+			// Also clears the cached second gaussian of Random
+			super.setSeed(seed);
+			state = seed != 0 ? seed : 0x9e3779b97f4a7c15L;
+		}
+
+		@Override
+		protected int next(int nbits) {
+			long x = state;
+			x ^= (x << 21);
+			x ^= (x >>> 35);
+			x ^= (x << 4);
+			state = x;
+			return (int) (x & ((1L << nbits) - 1));
+		}
+	}
+}
@@ -0,0 +1,410 @@
+package cc.mallet.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import cc.mallet.configuration.LDAConfiguration;
+import cc.mallet.pipe.CharSequenceLowercase;
+import cc.mallet.pipe.Pipe;
+import cc.mallet.pipe.SerialPipes;
+import cc.mallet.pipe.SimpleTokenizerLarge;
+import cc.mallet.pipe.StringList2FeatureSequence;
+import cc.mallet.pipe.Target2Label;
+import cc.mallet.pipe.iterator.CsvIterator;
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.IDSorter;
+import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
+import cc.mallet.types.Label;
+import cc.mallet.types.LabelAlphabet;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+
+/**
+ * Loads a dataset in one pass over the input instead of the two passes of
+ * loadInstancesPrune and loadInstancesKeep in LDADatasetFileLoadingUtils.
+ *
+ * The documents are tokenized and the word counts (or TF-IDF statistics) are
+ * collected in a VocabularyCounter which tracks at most <code>maxVocabulary</code>
+ * words. While the input is read each document is written to a temporary file
+ * as the counter ids of its words, so neither the unpruned documents nor the
+ * full vocabulary are kept in memory. When the input has been read the pruned
+ * vocabulary is computed from the counter as in the two pass loaders and the
+ * temporary file is read back, dropping the pruned words and mapping the rest
+ * to the final alphabet in document order.
+ *
+ * As long as the vocabulary fits in the counter the result is the same
+ * InstanceList (alphabets, token ids and pipe) as the two pass loaders give,
+ * with two exceptions: the first pass of the two pass loaders counts with
+ * tokenizer.deepClone(), which is a plain SimpleTokenizerLarge, so with
+ * keepNumbers or keepConnectors numbers and connected words are never pruned
+ * there. Here they are counted and pruned like any other word. And a given
+ * data alphabet only gets the kept words, the two pass loaders also add the
+ * pruned words to it. With a larger vocabulary the rarest words are replaced
+ * in the counter and pruned, see VocabularyCounter.
+ */
+public class SinglePassVocabularyLoader {
+
+	static final String LINE_REGEX = "^(\\S*)[\\s,]*([^\\t]+)[\\s,]*(.*)$";
+
+	/**
+	 * Loads instances and prunes away words occurring less than <code>pruneCount</code> times
+	 *
+	 * @see LDADatasetFileLoadingUtils#loadInstancesPrune(String, String, int, boolean, int, boolean, Alphabet, LabelAlphabet)
+	 */
+	public static InstanceList loadInstancesPrune(Reader in, String stoplistFile, int pruneCount, boolean keepNumbers,
+			int maxBufSize, boolean keepConnectors, Alphabet dataAlphabet, LabelAlphabet targetAlphabet) {
+		return load(in, stoplistFile, false, pruneCount, keepNumbers, maxBufSize, keepConnectors, dataAlphabet, targetAlphabet,
+				LDAConfiguration.SINGLE_PASS_MAX_VOCABULARY_DEFAULT);
+	}
+
+	/**
+	 * Loads instances and keeps the <code>keepCount</code> number of words with
+	 * the highest TF-IDF
+	 *
+	 * @see LDADatasetFileLoadingUtils#loadInstancesKeep(String, String, int, boolean, int, boolean, Alphabet, LabelAlphabet)
+	 */
+	public static InstanceList loadInstancesKeep(Reader in, String stoplistFile, int keepCount, boolean keepNumbers,
+			int maxBufSize, boolean keepConnectors, Alphabet dataAlphabet, LabelAlphabet targetAlphabet) {
+		return load(in, stoplistFile, true, keepCount, keepNumbers, maxBufSize, keepConnectors, dataAlphabet, targetAlphabet,
+				LDAConfiguration.SINGLE_PASS_MAX_VOCABULARY_DEFAULT);
+	}
+
+	/**
+	 * @param maxVocabulary The number of words the counter tracks, see VocabularyCounter
+	 */
+	static InstanceList load(Reader in, String stoplistFile, boolean keepByTfIdf, int count, boolean keepNumbers,
+			int maxBufSize, boolean keepConnectors, Alphabet dataAlphabet, LabelAlphabet targetAlphabet, int maxVocabulary) {
+		SimpleTokenizerLarge tokenizer = LDAUtils.initTokenizer(stoplistFile, keepNumbers, maxBufSize, keepConnectors);
+
+		CsvIterator reader = new CsvIterator(in, LINE_REGEX, 3, 2, 1); // data, label, name fields
+
+		Alphabet alphabet = dataAlphabet==null ? new Alphabet() : dataAlphabet;
+		LabelAlphabet tAlphabet = targetAlphabet==null ? new LabelAlphabet() : targetAlphabet;
+		StringList2FeatureSequence sl2fs = new StringList2FeatureSequence(alphabet);
+		Target2Label target2Label = new Target2Label(tAlphabet);
+
+		ArrayList<Pipe> pipes = new ArrayList<Pipe>();
+		pipes.add(new CharSequenceLowercase());
+		pipes.add(tokenizer);
+		pipes.add(sl2fs);
+		pipes.add(target2Label);
+		InstanceList instances = new InstanceList(new SerialPipes(pipes));
+
+		if (count <= 0) {
+			// Nothing is pruned, the documents go straight to the final alphabet
+			new ParallelPipeLoader(pipes, pipes.indexOf(sl2fs)).run(reader, instances::add);
+			return instances;
+		}
+
+		ArrayList<Pipe> countPipes = new ArrayList<Pipe>();
+		countPipes.add(pipes.get(0));
+		countPipes.add(tokenizer);
+		countPipes.add(target2Label);
+
+		VocabularyCounter counter = new VocabularyCounter(maxVocabulary);
+		File tokensFile = null;
+		try {
+			tokensFile = File.createTempFile("single_pass", ".tokens");
+			int numDocs;
+			// Tokenize in parallel, count and spill in document order
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tokensFile), 1 << 16))) {
+				DocumentSpiller spiller = new DocumentSpiller(out, counter);
+				new ParallelPipeLoader(countPipes, countPipes.indexOf(target2Label)).run(reader, spiller::spill);
+				numDocs = spiller.numDocs;
+			}
+
+			Int2ObjectOpenHashMap<String> keptWords = keptWords(counter, numDocs, keepByTfIdf, count, tokenizer);
+
+			try (DataInputStream tokensIn = new DataInputStream(new BufferedInputStream(new FileInputStream(tokensFile), 1 << 16))) {
+				Int2IntOpenHashMap types = new Int2IntOpenHashMap();
+				types.defaultReturnValue(-1);
+				int [] features = new int[0];
+				for (int doc = 0; doc < numDocs; doc++) {
+					String name = tokensIn.readBoolean() ? tokensIn.readUTF() : null;
+					int labelIndex = tokensIn.readInt();
+					int length = SparseMatrixFile.readVarInt(tokensIn);
+					if(features.length < length) {
+						features = new int[length];
+					}
+					int kept = 0;
+					for (int position = 0; position < length; position++) {
+						int id = SparseMatrixFile.readVarInt(tokensIn);
+						int type = types.get(id);
+						if(type < 0) {
+							String word = keptWords.remove(id);
+							if(word == null) continue;
+							// Types are numbered in order of first occurrence of the kept words, as with a pipe
+							type = alphabet.lookupIndex(word);
+							if(type < 0) continue;
+							types.put(id, type);
+						}
+						features[kept++] = type;
+					}
+					Label target = labelIndex >= 0 ? tAlphabet.lookupLabel(labelIndex) : null;
+					instances.add(new Instance(new FeatureSequence(alphabet, Arrays.copyOf(features, kept), kept),
+							target, name, null));
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException("Could not spill the tokenized documents to a temporary file", e);
+		} finally {
+			if(tokensFile != null) {
+				tokensFile.delete();
+			}
+		}
+
+		return instances;
+	}
+
+	/**
+	 * @return The counter ids and words of the words that are kept. The pruned
+	 * words are added to the stoplist of <code>tokenizer</code>.
+	 */
+	static Int2ObjectOpenHashMap<String> keptWords(VocabularyCounter counter, int numDocs, boolean keepByTfIdf, int count,
+			SimpleTokenizerLarge tokenizer) {
+		boolean [] keep = new boolean[counter.size()];
+		if (keepByTfIdf) {
+			// Same ranking as TfIdfPipe.getPrunedAlphabet, ties are ordered by
+			// counter id which is the order of first occurrence as in its alphabet
+			IDSorter [] sortedWords = new IDSorter[counter.size()];
+			for (int slot = 0; slot < sortedWords.length; slot++) {
+				int tf = counter.tf(slot);
+				int df = counter.df(slot);
+				double tfIdf = (tf == 0 || df == 0) ? 0.0 : (double) tf * Math.log(numDocs / (double) df);
+				sortedWords[slot] = new IDSorter(counter.ids[slot], tfIdf);
+			}
+			Arrays.sort(sortedWords);
+			Int2IntOpenHashMap slots = new Int2IntOpenHashMap();
+			for (int slot = 0; slot < counter.size(); slot++) {
+				slots.put(counter.ids[slot], slot);
+			}
+			for (int rank = 0; rank < count && rank < sortedWords.length; rank++) {
+				keep[slots.get(sortedWords[rank].getID())] = true;
+			}
+		} else {
+			// Same rule as FeatureCountPipe.addPrunedWordsToStoplist
+			for (int slot = 0; slot < keep.length; slot++) {
+				keep[slot] = counter.tf(slot) >= count;
+			}
+		}
+
+		Int2ObjectOpenHashMap<String> keptWords = new Int2ObjectOpenHashMap<String>();
+		for (int slot = 0; slot < keep.length; slot++) {
+			if(keep[slot]) {
+				keptWords.put(counter.ids[slot], counter.words[slot]);
+			} else {
+				// The tokenizer is part of the returned pipe, so it should prune
+				// new instances in the same way as the two pass loaders do
+				tokenizer.stop(counter.words[slot]);
+			}
+		}
+		return keptWords;
+	}
+
+	/**
+	 * Counts the words of each tokenized document and writes the document as
+	 * its name, label index and the counter ids of its words
+	 */
+	static class DocumentSpiller {
+		final DataOutputStream out;
+		final VocabularyCounter counter;
+		int numDocs;
+
+		DocumentSpiller(DataOutputStream out, VocabularyCounter counter) {
+			this.out = out;
+			this.counter = counter;
+		}
+
+		void spill(Instance instance) {
+			@SuppressWarnings("unchecked")
+			List<String> tokens = (List<String>) instance.getData();
+			try {
+				Object name = instance.getName();
+				out.writeBoolean(name != null);
+				if(name != null) {
+					out.writeUTF(name.toString());
+				}
+				Object target = instance.getTarget();
+				out.writeInt(target instanceof Label ? ((Label) target).getIndex() : -1);
+				SparseMatrixFile.writeVarInt(out, tokens.size());
+				for (String token : tokens) {
+					SparseMatrixFile.writeVarInt(out, counter.add(token, numDocs));
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			numDocs++;
+		}
+	}
+
+	/**
+	 * Counts the term and document frequencies of at most <code>capacity</code>
+	 * words with the Space-Saving algorithm (Metwally et al. 2005). Until the
+	 * capacity is reached the counts are exact. After that a new word replaces
+	 * the word with the lowest estimated term frequency and takes over that
+	 * estimate plus one, so every word more frequent than the lowest estimate
+	 * stays tracked.
+	 *
+	 * Each word gets a new id when it enters the counter. The occurrences of a
+	 * word before it was replaced keep its old id, which no longer belongs to
+	 * any tracked word, so they are pruned with the other replaced words.
+	 * Pruning therefore uses the counts since the word entered the counter
+	 * (tf() and df()), which are the counts of its remaining occurrences.
+	 */
+	static class VocabularyCounter {
+		final int capacity;
+		final Object2IntOpenHashMap<String> slots = new Object2IntOpenHashMap<String>();
+		String [] words;
+		int [] ids;
+		// Space-Saving estimate of the term frequency, orders the heap
+		int [] tfEstimate;
+		// Part of the estimate taken over from the replaced word
+		int [] tfError;
+		int [] df;
+		int [] lastDoc;
+		// Min heap of the slots by term frequency, and the heap position of each slot
+		int [] heap;
+		int [] heapPos;
+		int size;
+		int nextId;
+
+		VocabularyCounter(int capacity) {
+			if(capacity < 1) {
+				throw new IllegalArgumentException("The vocabulary counter must track at least one word, not " + capacity);
+			}
+			this.capacity = capacity;
+			slots.defaultReturnValue(-1);
+			int initial = Math.min(capacity, 1 << 12);
+			words = new String[initial];
+			ids = new int[initial];
+			tfEstimate = new int[initial];
+			tfError = new int[initial];
+			df = new int[initial];
+			lastDoc = new int[initial];
+			heap = new int[initial];
+			heapPos = new int[initial];
+		}
+
+		int size() {
+			return size;
+		}
+
+		/**
+		 * @return The number of occurrences of the word in <code>slot</code> since it entered the counter
+		 */
+		int tf(int slot) {
+			return tfEstimate[slot] - tfError[slot];
+		}
+
+		/**
+		 * @return The number of documents the word in <code>slot</code> occurred in since it entered the counter
+		 */
+		int df(int slot) {
+			return df[slot];
+		}
+
+		/**
+		 * Counts one occurrence of <code>word</code> in document <code>doc</code>,
+		 * the documents must be counted in increasing order
+		 *
+		 * @return The id of the word
+		 */
+		int add(String word, int doc) {
+			int slot = slots.getInt(word);
+			if(slot >= 0) {
+				tfEstimate[slot]++;
+				if(lastDoc[slot] != doc) {
+					df[slot]++;
+					lastDoc[slot] = doc;
+				}
+				siftDown(heapPos[slot]);
+				return ids[slot];
+			}
+			boolean added = size < capacity;
+			if(added) {
+				if(size == words.length) {
+					grow();
+				}
+				slot = size++;
+				heap[slot] = slot;
+				heapPos[slot] = slot;
+				tfEstimate[slot] = 1;
+				tfError[slot] = 0;
+			} else {
+				// Replace the least frequent word, its estimate bounds the occurrences the new word missed
+				slot = heap[0];
+				slots.removeInt(words[slot]);
+				tfError[slot] = tfEstimate[slot];
+				tfEstimate[slot]++;
+			}
+			df[slot] = 1;
+			words[slot] = word;
+			ids[slot] = nextId++;
+			lastDoc[slot] = doc;
+			slots.put(word, slot);
+			// A new slot is added as the last leaf, a replaced one was the root
+			if(added) {
+				siftUp(heapPos[slot]);
+			} else {
+				siftDown(heapPos[slot]);
+			}
+			return ids[slot];
+		}
+
+		void grow() {
+			int newLength = (int) Math.min(capacity, 2L * words.length);
+			words = Arrays.copyOf(words, newLength);
+			ids = Arrays.copyOf(ids, newLength);
+			tfEstimate = Arrays.copyOf(tfEstimate, newLength);
+			tfError = Arrays.copyOf(tfError, newLength);
+			df = Arrays.copyOf(df, newLength);
+			lastDoc = Arrays.copyOf(lastDoc, newLength);
+			heap = Arrays.copyOf(heap, newLength);
+			heapPos = Arrays.copyOf(heapPos, newLength);
+		}
+
+		void siftUp(int pos) {
+			int slot = heap[pos];
+			while (pos > 0) {
+				int parent = (pos - 1) >>> 1;
+				if(tfEstimate[heap[parent]] <= tfEstimate[slot]) break;
+				heap[pos] = heap[parent];
+				heapPos[heap[pos]] = pos;
+				pos = parent;
+			}
+			heap[pos] = slot;
+			heapPos[slot] = pos;
+		}
+
+		void siftDown(int pos) {
+			int slot = heap[pos];
+			while (true) {
+				int child = 2 * pos + 1;
+				if(child >= size) break;
+				if(child + 1 < size && tfEstimate[heap[child + 1]] < tfEstimate[heap[child]]) {
+					child++;
+				}
+				if(tfEstimate[heap[child]] >= tfEstimate[slot]) break;
+				heap[pos] = heap[child];
+				heapPos[heap[pos]] = pos;
+				pos = child;
+			}
+			heap[pos] = slot;
+			heapPos[slot] = pos;
+		}
+	}
+}
@@ -0,0 +1,174 @@
+package cc.mallet.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Binary file format for matrices that are mostly zero, such as phi and the phi
+ * means of the Polya-Urn samplers, where writing and reading time and file size
+ * depend on the number of non-zeros rather than on rows x columns.
+ *
+ * Each row is stored in compressed sparse row form: its number of non-zeros, the
+ * column indices of the non-zeros as variable length encoded gaps to the previous
+ * index and the values. Values are floats or, with quantization, 8 or 16 bit
+ * levels on a logarithmic scale between the smallest and the largest value in
+ * the row. The quantization error is then relative to the value, so small
+ * probabilities keep their magnitude instead of being rounded to zero as with
+ * levels that are linear fractions of the row maximum. Quantization only
+ * stores the positive values, it is meant for probabilities. The layout is
+ *
+ * <pre>
+ * magic, version, rows, columns, quantization bits (0 for float values)
+ * per row: number of non-zeros, row maximum and minimum (only when quantized), column gaps, values
+ * </pre>
+ *
+ * Files of version 1 stored the levels as linear fractions of the row maximum
+ * and are still read.
+ */
+public class SparseMatrixFile {
+
+	static final long MAGIC = 0x50434c444153504dL; // "PCLDASPM"
+	static final int VERSION = 2;
+	static final int LINEAR_QUANTIZATION_VERSION = 1;
+
+	/**
+	 * Writes the non-zeros of <code>matrix</code> to <code>file</code> with float values
+	 */
+	public static void write(double [][] matrix, int columns, File file) throws IOException {
+		write(matrix, columns, file, 0);
+	}
+
+	/**
+	 * Writes the non-zeros of <code>matrix</code> to <code>file</code>
+	 *
+	 * @param quantizationBits 0 for float values, 8 or 16 to store the positive values
+	 * in that many bits on a logarithmic scale between the row minimum and maximum,
+	 * other values are then dropped
+	 */
+	public static void write(double [][] matrix, int columns, File file, int quantizationBits) throws IOException {
+		if(quantizationBits != 0 && quantizationBits != 8 && quantizationBits != 16) {
+			throw new IllegalArgumentException("Quantization must be 0, 8 or 16 bits, not " + quantizationBits);
+		}
+		int levels = (1 << quantizationBits) - 1;
+		int [] indices = new int[columns];
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+			out.writeLong(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(matrix.length);
+			out.writeInt(columns);
+			out.writeInt(quantizationBits);
+			for (double [] row : matrix) {
+				int nonZeros = 0;
+				double max = 0;
+				double min = Double.MAX_VALUE;
+				for (int col = 0; col < columns; col++) {
+					if(quantizationBits == 0 ? row[col] != 0 : row[col] > 0) {
+						indices[nonZeros++] = col;
+						max = Math.max(max, row[col]);
+						min = Math.min(min, row[col]);
+					}
+				}
+				writeVarInt(out, nonZeros);
+				// Levels are steps of logRange / levels in the log of the value above the row minimum
+				double logRange = 0;
+				if(quantizationBits > 0) {
+					if(nonZeros == 0) {
+						max = min = 0;
+					}
+					out.writeDouble(max);
+					out.writeDouble(min);
+					logRange = nonZeros > 0 ? Math.log(max / min) : 0;
+				}
+				int previous = 0;
+				for (int i = 0; i < nonZeros; i++) {
+					writeVarInt(out, indices[i] - previous);
+					previous = indices[i];
+				}
+				for (int i = 0; i < nonZeros; i++) {
+					double value = row[indices[i]];
+					if(quantizationBits == 0) {
+						out.writeFloat((float) value);
+					} else {
+						int level = logRange > 0 ? (int) Math.round(Math.log(value / min) / logRange * levels) : 0;
+						if(quantizationBits == 8) {
+							out.writeByte(level);
+						} else {
+							out.writeShort(level);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The dense matrix stored in <code>file</code>
+	 */
+	public static double [][] read(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+			if(in.readLong() != MAGIC) {
+				throw new IOException("Not a sparse matrix file: " + file);
+			}
+			int version = in.readInt();
+			if(version != VERSION && version != LINEAR_QUANTIZATION_VERSION) {
+				throw new IOException("Unsupported sparse matrix version " + version + " in " + file);
+			}
+			int rows = in.readInt();
+			int columns = in.readInt();
+			int quantizationBits = in.readInt();
+			double levels = (1 << quantizationBits) - 1;
+			double [][] matrix = new double[rows][columns];
+			int [] indices = new int[columns];
+			for (int r = 0; r < rows; r++) {
+				int nonZeros = readVarInt(in);
+				double max = quantizationBits > 0 ? in.readDouble() : 0;
+				double min = quantizationBits > 0 && version == VERSION ? in.readDouble() : 0;
+				double logRange = min > 0 ? Math.log(max / min) : 0;
+				int col = 0;
+				for (int i = 0; i < nonZeros; i++) {
+					col += readVarInt(in);
+					indices[i] = col;
+				}
+				for (int i = 0; i < nonZeros; i++) {
+					if(quantizationBits == 0) {
+						matrix[r][indices[i]] = in.readFloat();
+						continue;
+					}
+					int level = quantizationBits == 8 ? in.readUnsignedByte() : in.readUnsignedShort();
+					if(version == LINEAR_QUANTIZATION_VERSION) {
+						matrix[r][indices[i]] = level / levels * max;
+					} else {
+						matrix[r][indices[i]] = min * Math.exp(level / levels * logRange);
+					}
+				}
+			}
+			return matrix;
+		}
+	}
+
+	static void writeVarInt(DataOutputStream out, int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	static int readVarInt(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Malformed variable length integer");
+	}
+}
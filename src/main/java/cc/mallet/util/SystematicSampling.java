@@ -1,7 +1,6 @@
 package cc.mallet.util;
 
 import java.util.Arrays;
-import java.util.concurrent.ThreadLocalRandom;
 
 public class SystematicSampling {
 
@@ -11,7 +10,7 @@ public class SystematicSampling {
 	public static int [] Tmpsample(int [] counts, int n) {
 		if(n<1) throw new IllegalArgumentException("Step must be bigger than 1, given was: " + n);
 		//<- function(size=c(4, 140, 14, 20, 13, 110, 29, 90, 34, 29, 230), n=100){
-		double l = ThreadLocalRandom.current().nextDouble() * (double)n;
+		double l = SamplerRandom.current().nextDouble() * (double)n;
 		System.out.println("l: "  + l);
 		double cum_sum = 0.0;
 		int j = 0;
@@ -34,7 +33,7 @@ public class SystematicSampling {
 		
 	public static int [] origsample(int [] counts, int n) {
 		if(n<1) throw new IllegalArgumentException("Step must be bigger than 1, given was: " + n);
-		int l = (int) (ThreadLocalRandom.current().nextDouble() * (double)n);
+		int l = (int) (SamplerRandom.current().nextDouble() * (double)n);
 		int countsum = l;
 		int [] res = new int[counts.length];
 		int i = 0;
@@ -55,7 +54,7 @@ public class SystematicSampling {
 	
 	public static int [] sample(int [] counts, int n) {
 		if(n<1) throw new IllegalArgumentException("Step must be bigger than 1, given was: " + n);
-		int l = (int) Math.ceil(ThreadLocalRandom.current().nextDouble() * (double)n);
+		int l = (int) Math.ceil(SamplerRandom.current().nextDouble() * (double)n);
 		int countsum = l;
 		int [] res = new int[counts.length];
 		int i = 0;
@@ -0,0 +1,135 @@
+package cc.mallet.util;
+
+import java.util.ArrayList;
+
+import cc.mallet.pipe.FeatureCountPipe;
+import cc.mallet.pipe.Noop;
+import cc.mallet.pipe.Pipe;
+import cc.mallet.pipe.SerialPipes;
+import cc.mallet.pipe.StringList2FeatureSequence;
+import cc.mallet.pipe.Target2Label;
+import cc.mallet.pipe.TfIdfPipe;
+import cc.mallet.pipe.TokenSequence2FeatureSequence;
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
+import cc.mallet.types.LabelAlphabet;
+
+/**
+ * Renumbers the word types of an InstanceList so that the most frequent type
+ * gets index 0, the second most frequent index 1 and so on. Types with the
+ * same frequency keep their relative order.
+ *
+ * The result is a new InstanceList on a new data alphabet that holds the words
+ * in the new order. Its pipe is a copy of the original pipe where the pipes
+ * that refer to the data alphabet are recreated on the new alphabet (pipes
+ * this class does not know are rejected), so
+ * instances piped later, for instance a test set piped with the training pipe,
+ * get the new numbering too. The statistics of TfIdfPipe and FeatureCountPipe
+ * are carried over to the new numbering.
+ *
+ * Must be called before any other instances or models refer to the alphabet.
+ */
+public class TypeFrequencyOrdering {
+
+	/**
+	 * @return <code>instances</code> with its types renumbered by descending frequency
+	 */
+	public static InstanceList orderByFrequency(InstanceList instances) {
+		return orderByFrequency(instances, frequencyOrder(instances));
+	}
+
+	/**
+	 * @return The new index of each type index of <code>instances</code> when the
+	 * types are ordered by descending frequency
+	 */
+	public static int [] frequencyOrder(InstanceList instances) {
+		int [] typeCounts = new int[instances.getDataAlphabet().size()];
+		for (Instance instance : instances) {
+			FeatureSequence tokens = (FeatureSequence) instance.getData();
+			for (int position = 0; position < tokens.getLength(); position++) {
+				typeCounts[tokens.getIndexAtPosition(position)]++;
+			}
+		}
+
+		int [] typeFrequencyIndex = IndexSorter.getSortedIndices(typeCounts);
+		int [] newIndex = new int[typeFrequencyIndex.length];
+		for (int rank = 0; rank < typeFrequencyIndex.length; rank++) {
+			newIndex[typeFrequencyIndex[rank]] = rank;
+		}
+		return newIndex;
+	}
+
+	/**
+	 * @return <code>instances</code> on a new alphabet where type <code>i</code> has index <code>newIndex[i]</code>
+	 */
+	public static InstanceList orderByFrequency(InstanceList instances, int [] newIndex) {
+		Alphabet oldAlphabet = instances.getDataAlphabet();
+		Object [] words = new Object[newIndex.length];
+		for (int type = 0; type < newIndex.length; type++) {
+			words[newIndex[type]] = oldAlphabet.lookupObject(type);
+		}
+		Alphabet alphabet = new Alphabet(words);
+		if(oldAlphabet.growthStopped()) {
+			alphabet.stopGrowth();
+		}
+
+		InstanceList ordered = new InstanceList(renumberPipe(instances.getPipe(), instances, oldAlphabet, alphabet, newIndex));
+		for (Instance instance : instances) {
+			FeatureSequence tokens = (FeatureSequence) instance.getData();
+			int [] features = new int[tokens.getLength()];
+			for (int position = 0; position < features.length; position++) {
+				features[position] = newIndex[tokens.getIndexAtPosition(position)];
+			}
+			ordered.add(new Instance(new FeatureSequence(alphabet, features),
+					instance.getTarget(), instance.getName(), instance.getSource()));
+		}
+		return ordered;
+	}
+
+	/**
+	 * @return <code>pipe</code> with the pipes that refer to <code>oldAlphabet</code>
+	 * recreated on <code>alphabet</code>, the other pipes are shared
+	 */
+	static Pipe renumberPipe(Pipe pipe, InstanceList instances, Alphabet oldAlphabet, Alphabet alphabet, int [] newIndex) {
+		if(pipe instanceof SerialPipes) {
+			ArrayList<Pipe> pipes = new ArrayList<Pipe>();
+			for (Pipe part : ((SerialPipes) pipe).pipes()) {
+				pipes.add(renumberPipe(part, instances, oldAlphabet, alphabet, newIndex));
+			}
+			return new SerialPipes(pipes);
+		}
+		if(pipe == null || pipe.getDataAlphabet() != oldAlphabet) {
+			return pipe;
+		}
+		if(pipe instanceof StringList2FeatureSequence) {
+			return new StringList2FeatureSequence(alphabet);
+		} else if(pipe instanceof TokenSequence2FeatureSequence) {
+			return new TokenSequence2FeatureSequence(alphabet);
+		} else if(pipe instanceof TfIdfPipe) {
+			return ((TfIdfPipe) pipe).renumbered(alphabet, newIndex);
+		} else if(pipe instanceof FeatureCountPipe) {
+			// The counts are not accessible, they are recounted from the instances the pipe produced
+			FeatureCountPipe counter = new FeatureCountPipe(alphabet, pipe.getTargetAlphabet());
+			int [] features = new int[0];
+			for (Instance instance : instances) {
+				FeatureSequence tokens = (FeatureSequence) instance.getData();
+				if(features.length < tokens.getLength()) {
+					features = new int[tokens.getLength()];
+				}
+				for (int position = 0; position < tokens.getLength(); position++) {
+					features[position] = newIndex[tokens.getIndexAtPosition(position)];
+				}
+				counter.pipe(new Instance(new FeatureSequence(alphabet, features, tokens.getLength()), null, null, null));
+			}
+			return counter;
+		} else if(pipe instanceof Target2Label) {
+			// Only passes the data alphabet on from the pipes before it
+			return new Target2Label((LabelAlphabet) pipe.getTargetAlphabet());
+		} else if(pipe.getClass() == Noop.class) {
+			return new Noop(alphabet, pipe.getTargetAlphabet());
+		}
+		throw new IllegalArgumentException("Can not renumber the types of " + pipe.getClass().getName());
+	}
+}
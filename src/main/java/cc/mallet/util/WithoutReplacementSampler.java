@@ -2,8 +2,6 @@ package cc.mallet.util;
 
 import gnu.trove.TIntArrayList;
 
-import java.util.concurrent.ThreadLocalRandom;
-
 public class WithoutReplacementSampler implements IndexSampler {
 
 	TIntArrayList available;
@@ -19,7 +17,7 @@ public class WithoutReplacementSampler implements IndexSampler {
 		if(available.size()==0) {
 			throw new IllegalStateException("Sampler is exausted, there are no more to sample");
 		}
-		int idx = (int) (ThreadLocalRandom.current().nextDouble() * available.size());
+		int idx = (int) (SamplerRandom.current().nextDouble() * available.size());
 		int val = available.get(idx);
 		available.remove(idx);
 		return val;
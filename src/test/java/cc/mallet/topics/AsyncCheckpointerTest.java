@@ -0,0 +1,166 @@
+package cc.mallet.topics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+
+import cc.mallet.configuration.LDAConfiguration;
+import cc.mallet.configuration.SimpleLDAConfiguration;
+import cc.mallet.types.InstanceList;
+import cc.mallet.util.LDALoggingUtils;
+import cc.mallet.util.LDAUtils;
+import cc.mallet.util.LoggingUtils;
+import cc.mallet.utils.TestUtils;
+
+public class AsyncCheckpointerTest {
+
+	SimpleLDAConfiguration getCheckpointCfg(File checkpointFile) {
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), "spalias",
+				5, 0.1, 0.01, 20, 2, 0, 10, 0, 4711, "src/main/resources/datasets/SmallTexts.txt");
+		LDALoggingUtils lu = new LoggingUtils();
+		lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+		config.setCheckpointInterval(5);
+		config.setCheckpointFilename(checkpointFile.getAbsolutePath());
+		return config;
+	}
+
+	UncollapsedParallelLDA train(SimpleLDAConfiguration config) throws IOException {
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(), "stoplist.txt", 0);
+		SpaliasUncollapsedParallelLDA model = new SpaliasUncollapsedParallelLDA(config);
+		model.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		model.addInstances(instances);
+		model.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+		return model;
+	}
+
+	void assertSameState(UncollapsedParallelLDA expected, UncollapsedParallelLDA actual) {
+		assertEquals(expected.getCurrentIteration(), actual.getCurrentIteration());
+		assertArrayEquals(expected.getZIndicators(), actual.getZIndicators());
+		assertArrayEquals(expected.getTypeTopicMatrix(), actual.getTypeTopicMatrix());
+		assertArrayEquals(expected.getTopicTotals(), actual.getTopicTotals());
+		assertArrayEquals(expected.getAlpha(), actual.getAlpha(), 0.0);
+		assertEquals(expected.getBeta(), actual.getBeta(), 0.0);
+		TestUtils.assertEqualArrays(expected.getPhi(), actual.getPhi(), 0.0);
+		if(expected.getPhiMeans() != null) {
+			TestUtils.assertEqualArrays(expected.getPhiMeans(), actual.getPhiMeans(), 0.0);
+		}
+	}
+
+	@Test
+	public void testLastCheckpointHasFinalState() throws IOException {
+		File checkpointFile = File.createTempFile("lda_async_checkpoint", ".ckpt");
+		checkpointFile.delete();
+		SimpleLDAConfiguration config = getCheckpointCfg(checkpointFile);
+		config.setSavePhi(true);
+		// 25% of 20 iterations, so the checkpoints at 10, 15 and 20 include phi means
+		config.setPhiBurnIn(25);
+		UncollapsedParallelLDA model = train(config);
+		assertEquals(15, model.getNoSampledPhi());
+		assertNotNull(model.getPhiMeans());
+
+		assertTrue(checkpointFile.exists());
+		UncollapsedParallelLDA restored = UncollapsedParallelLDA.readCheckpoint(checkpointFile);
+		assertEquals(20, restored.getCurrentIteration());
+		assertSameState(model, restored);
+		checkpointFile.delete();
+	}
+
+	@Test
+	public void testCheckpointFromCorpusStoreWithFloatPhi() throws IOException {
+		File checkpointFile = File.createTempFile("lda_async_checkpoint", ".ckpt");
+		checkpointFile.delete();
+		SimpleLDAConfiguration config = getCheckpointCfg(checkpointFile);
+		config.setNarrowTopicIndicators(true);
+		config.setFloatPhi(true);
+		config.setSavePhi(true);
+		config.setPhiBurnIn(25);
+		UncollapsedParallelLDA model = train(config);
+		assertEquals(15, model.getNoSampledPhi());
+		assertNotNull(model.getPhiMeans());
+
+		UncollapsedParallelLDA restored = UncollapsedParallelLDA.readCheckpoint(checkpointFile);
+		assertSameState(model, restored);
+		// Phi and the phi means stay in single precision through the checkpoint
+		assertNull(restored.phiMean);
+		assertNotNull(restored.phiMeanF);
+		for (double [] phiTopic : restored.phi) {
+			assertNull(phiTopic);
+		}
+		for (int type = 0; type < model.getNoTypes(); type++) {
+			assertArrayEquals(model.getTypeMajorPhiFloat()[type], restored.getTypeMajorPhiFloat()[type], 0.0f);
+		}
+		checkpointFile.delete();
+	}
+
+	@Test
+	public void testResumeFromCheckpoint() throws IOException {
+		File checkpointFile = File.createTempFile("lda_async_checkpoint", ".ckpt");
+		checkpointFile.delete();
+		SimpleLDAConfiguration config = getCheckpointCfg(checkpointFile);
+		train(config);
+
+		UncollapsedParallelLDA restored = UncollapsedParallelLDA.readCheckpoint(checkpointFile);
+		restored.continueSampling(5);
+		assertEquals(25, restored.getCurrentIteration());
+		// The resumed sampler keeps checkpointing to the same file
+		UncollapsedParallelLDA resumedCheckpoint = UncollapsedParallelLDA.readCheckpoint(checkpointFile);
+		assertSameState(restored, resumedCheckpoint);
+		checkpointFile.delete();
+	}
+
+	@Test
+	public void testResumedRunMatchesStraightRun() throws IOException {
+		File straightFile = File.createTempFile("lda_async_checkpoint", ".ckpt");
+		straightFile.delete();
+		SimpleLDAConfiguration straightConfig = getCheckpointCfg(straightFile);
+		straightConfig.setReproducibleSampling(true);
+		straightConfig.setSavePhi(true);
+		straightConfig.setPhiBurnIn(25);
+		UncollapsedParallelLDA straight = train(straightConfig);
+
+		File checkpointFile = File.createTempFile("lda_async_checkpoint", ".ckpt");
+		checkpointFile.delete();
+		SimpleLDAConfiguration config = getCheckpointCfg(checkpointFile);
+		config.setReproducibleSampling(true);
+		config.setSavePhi(true);
+		config.setPhiBurnIn(25);
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(), "stoplist.txt", 0);
+		SpaliasUncollapsedParallelLDA crashed = new SpaliasUncollapsedParallelLDA(config);
+		crashed.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		crashed.addInstances(instances);
+		crashed.setIterationCallback(sampler -> {
+			if(sampler.getCurrentIteration() == 12) {
+				throw new IllegalStateException("Sampling failed");
+			}
+		});
+		try {
+			crashed.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+			fail("Expected sampling to fail");
+		} catch (IllegalStateException e) {
+			assertEquals("Sampling failed", e.getMessage());
+		}
+		// The failed loop waited for the checkpoint of iteration 10 and stopped the writer
+		assertNull(crashed.checkpointer);
+		List<String> logged = Files.readAllLines(new File(config.getLoggingUtil().getLogDir(), "checkpoints.txt").toPath());
+		assertEquals(2, logged.size());
+		assertTrue(logged.get(1).startsWith("10\t"));
+
+		UncollapsedParallelLDA resumed = UncollapsedParallelLDA.readCheckpoint(checkpointFile);
+		assertEquals(10, resumed.getCurrentIteration());
+		resumed.continueSampling(10);
+		assertSameState(straight, resumed);
+		straightFile.delete();
+		checkpointFile.delete();
+	}
+}
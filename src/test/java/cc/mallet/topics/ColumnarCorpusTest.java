@@ -0,0 +1,141 @@
+package cc.mallet.topics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import cc.mallet.configuration.LDAConfiguration;
+import cc.mallet.configuration.SimpleLDAConfiguration;
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.InstanceList;
+import cc.mallet.types.LabelSequence;
+import cc.mallet.util.LDALoggingUtils;
+import cc.mallet.util.LDAUtils;
+import cc.mallet.util.LoggingUtils;
+
+public class ColumnarCorpusTest {
+
+	SimpleLDAConfiguration getStdCfg(String whichModel, Integer numIter, Integer numBatches) {
+		Integer numTopics = 5;
+		Double alpha = 0.1;
+		Double beta = 0.01;
+		Integer rareWordThreshold = 0;
+		Integer showTopicsInterval = 10;
+		Integer startDiagnosticOutput = 0;
+
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), whichModel,
+				numTopics, alpha, beta, numIter,
+				numBatches, rareWordThreshold, showTopicsInterval,
+				startDiagnosticOutput,4711,"src/main/resources/datasets/small.txt");
+
+		LDALoggingUtils lu = new LoggingUtils();
+		lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+		config.setColumnarCorpus(true);
+		return config;
+	}
+
+	UncollapsedParallelLDA sampleAndCheck(UncollapsedParallelLDA model, LDAConfiguration config) throws IOException {
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(),
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+		model.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		model.addInstances(instances);
+		assertNotNull(model.getCorpusStore());
+		model.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+		model.ensureConsistentTopicTypeCounts(model.countStore, model.getTopicTotals());
+		int [][] zIndicators = model.getZIndicators();
+		int [] tokensPerTopic = new int[model.getNoTopics()];
+		for (int doc = 0; doc < zIndicators.length; doc++) {
+			assertArrayEquals(model.getCorpusStore().getDocumentTopics(doc), zIndicators[doc]);
+			for (int topic : zIndicators[doc]) {
+				tokensPerTopic[topic]++;
+			}
+		}
+		assertArrayEquals(tokensPerTopic, model.getTopicTotals());
+		return model;
+	}
+
+	@Test
+	public void testSamplersOnColumnarCorpusConsistent() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 20, 4);
+		sampleAndCheck(new SpaliasUncollapsedParallelLDA(config), config);
+		config = getStdCfg("polyaurn", 20, 4);
+		sampleAndCheck(new PolyaUrnSpaliasLDA(config), config);
+	}
+
+	@Test
+	public void testUnsupportedSamplerFallsBack() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("lightpclda", 1, 1);
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(),
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+		LightPCLDA model = new LightPCLDA(config);
+		model.addInstances(instances);
+		assertNull(model.getCorpusStore());
+	}
+
+	@Test
+	public void testStoreIsTheOnlyTopicStorage() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 5, 1);
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(),
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+		SpaliasUncollapsedParallelLDA model = new SpaliasUncollapsedParallelLDA(config);
+		model.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		model.addInstances(instances);
+		ColumnarCorpus corpus = (ColumnarCorpus) model.getCorpusStore();
+		assertEquals(instances.size(), corpus.numDocs());
+		long numTokens = 0;
+		for (int doc = 0; doc < instances.size(); doc++) {
+			assertNull(model.data.get(doc).topicSequence);
+			assertEquals(((FeatureSequence) instances.get(doc).getData()).getLength(), corpus.docLength(doc));
+			numTokens += corpus.docLength(doc);
+		}
+		assertEquals(numTokens, corpus.numTokens());
+		assertEquals(numTokens, corpus.getTopicIndicators().size());
+
+		// The readers see the topics sampled since the last call
+		model.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+		ArrayList<TopicAssignment> data = model.getData();
+		double [][] zBar = model.getZbar();
+		int [][] documentTopics = model.getDocumentTopicMatrix();
+		for (int doc = 0; doc < data.size(); doc++) {
+			int [] topics = corpus.getDocumentTopics(doc);
+			LabelSequence topicSequence = (LabelSequence) data.get(doc).topicSequence;
+			assertArrayEquals(topics, Arrays.copyOf(topicSequence.getFeatures(), topicSequence.getLength()));
+			int [] counts = new int[model.getNoTopics()];
+			for (int topic : topics) {
+				counts[topic]++;
+			}
+			assertArrayEquals(counts, documentTopics[doc]);
+			for (int topic = 0; topic < counts.length; topic++) {
+				assertEquals(topics.length == 0 ? 0.0 : counts[topic] / (double) topics.length, zBar[doc][topic], 1e-12);
+			}
+		}
+
+		// Changing the built topic sequences does not change the sampler
+		int [] before = corpus.getDocumentTopics(0);
+		data.get(0).topicSequence.getFeatures()[0] = (before[0] + 1) % model.getNoTopics();
+		assertArrayEquals(before, corpus.getDocumentTopics(0));
+	}
+
+	@Test
+	public void testTypeColumnHoldsTheTokens() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 1, 1);
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(),
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+		for (ColumnarCorpus corpus : new ColumnarCorpus [] {ColumnarCorpus.forDocuments(instances), 
+				CompactCorpus.forDocuments(instances, 5)}) {
+			assertEquals(corpus.numTokens(), corpus.getTypes().length);
+			for (int doc = 0; doc < instances.size(); doc++) {
+				FeatureSequence tokens = (FeatureSequence) instances.get(doc).getData();
+				assertArrayEquals(Arrays.copyOf(tokens.getFeatures(), tokens.getLength()), corpus.getDocumentTypes(doc));
+			}
+		}
+	}
+}
@@ -0,0 +1,104 @@
+package cc.mallet.topics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import cc.mallet.configuration.LDAConfiguration;
+import cc.mallet.configuration.SimpleLDAConfiguration;
+import cc.mallet.types.InstanceList;
+import cc.mallet.util.LDALoggingUtils;
+import cc.mallet.util.LDAUtils;
+import cc.mallet.util.LoggingUtils;
+
+public class DocSamplingScratchTest {
+
+	SimpleLDAConfiguration getStdCfg(String whichModel, Integer numIter, Integer numBatches) {
+		Integer numTopics = 5;
+		Double alpha = 0.1;
+		Double beta = 0.01;
+		Integer rareWordThreshold = 0;
+		Integer showTopicsInterval = 10;
+		Integer startDiagnosticOutput = 0;
+
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), whichModel,
+				numTopics, alpha, beta, numIter,
+				numBatches, rareWordThreshold, showTopicsInterval,
+				startDiagnosticOutput,4711,"src/main/resources/datasets/small.txt");
+
+		LDALoggingUtils lu = new LoggingUtils();
+		lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+		return config;
+	}
+
+	@Test
+	public void testSparseResultClearsOnlyTouchedTopics() {
+		DocSamplingScratch scratch = new DocSamplingScratch(6);
+		int [] counts = scratch.localTopicCounts();
+		counts[1] = 3;
+		counts[4] = 2;
+		scratch.nonZeroTopics[0] = 4;
+		scratch.nonZeroTopics[1] = 1;
+		LDADocSamplingResultSparse res = scratch.sparseResult(2);
+		assertSame(counts, res.getLocalTopicCounts());
+		assertEquals(2, res.getNonZeroTopicCounts());
+		assertEquals(4, res.getNonZeroIndices()[0]);
+
+		// The next document gets the same, zeroed, array and the same result object
+		assertSame(counts, scratch.localTopicCounts());
+		for (int topic = 0; topic < counts.length; topic++) {
+			assertEquals(0, counts[topic]);
+		}
+		assertSame(res, scratch.sparseResult(0));
+	}
+
+	@Test
+	public void testDenseResultClearsAllTopics() {
+		DocSamplingScratch scratch = new DocSamplingScratch(4);
+		int [] counts = scratch.localTopicCounts();
+		counts[0] = 1;
+		counts[3] = 7;
+		assertSame(counts, scratch.denseResult().getLocalTopicCounts());
+		scratch.localTopicCounts();
+		for (int topic = 0; topic < counts.length; topic++) {
+			assertEquals(0, counts[topic]);
+		}
+	}
+
+	void sampleAndCheck(UncollapsedParallelLDA model, LDAConfiguration config) throws IOException {
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(),
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+		model.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		model.addInstances(instances);
+		model.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+		model.ensureConsistentTopicTypeCounts(model.countStore, model.getTopicTotals());
+		int [][] zIndicators = model.getZIndicators();
+		int [] tokensPerTopic = new int[model.getNoTopics()];
+		for (int [] doc : zIndicators) {
+			for (int topic : doc) {
+				tokensPerTopic[topic]++;
+			}
+		}
+		for (int topic = 0; topic < tokensPerTopic.length; topic++) {
+			assertEquals(tokensPerTopic[topic], model.getTopicTotals()[topic]);
+		}
+	}
+
+	@Test
+	public void testSamplersWithScratchConsistent() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 20, 4);
+		sampleAndCheck(new SpaliasUncollapsedParallelLDA(config), config);
+		config = getStdCfg("polyaurn", 20, 4);
+		sampleAndCheck(new PolyaUrnSpaliasLDA(config), config);
+		config = getStdCfg("nzvsspalias", 20, 4);
+		sampleAndCheck(new NZVSSpaliasUncollapsedParallelLDA(config), config);
+		config = getStdCfg("lightpclda", 20, 4);
+		sampleAndCheck(new LightPCLDA(config), config);
+		config = getStdCfg("lightpcldaw2", 20, 4);
+		sampleAndCheck(new LightPCLDAtypeTopicProposal(config), config);
+	}
+}
@@ -0,0 +1,124 @@
+package cc.mallet.topics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import cc.mallet.configuration.LDAConfiguration;
+import cc.mallet.configuration.SimpleLDAConfiguration;
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.InstanceList;
+import cc.mallet.util.LDALoggingUtils;
+import cc.mallet.util.LDAUtils;
+import cc.mallet.util.LoggingUtils;
+
+public class DocumentOrderTest {
+
+	static SimpleLDAConfiguration getStdCfg(String dataset, Integer numIter) {
+		Integer numTopics = 5;
+		Double alpha = 0.1;
+		Double beta = 0.01;
+		Integer numBatches = 4;
+		Integer rareWordThreshold = 0;
+		Integer showTopicsInterval = 10;
+		Integer startDiagnosticOutput = 0;
+
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), "spalias",
+				numTopics, alpha, beta, numIter,
+				numBatches, rareWordThreshold, showTopicsInterval,
+				startDiagnosticOutput,4711,dataset);
+
+		LDALoggingUtils lu = new LoggingUtils();
+		lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+		return config;
+	}
+
+	@Test
+	public void testCountingSortIsStable() {
+		int [] keys = {2, 0, 1, 0, 2, 1, 0};
+		assertArrayEquals(new int [] {1, 3, 6, 2, 5, 0, 4}, DocumentOrder.countingSort(keys, 3));
+	}
+
+	@Test
+	public void testDominantTypeOrderSamplesAllDocumentsInPlace() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("src/main/resources/datasets/SmallTexts.txt", 20);
+		config.setDocumentOrder(DocumentOrder.DOMINANT_TYPE);
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(),
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+		SpaliasUncollapsedParallelLDA model = new SpaliasUncollapsedParallelLDA(config);
+		model.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		model.addInstances(instances);
+
+		int [] order = model.getDocumentOrder();
+		assertNotNull(order);
+		boolean [] seen = new boolean[instances.size()];
+		int previousDominant = -1;
+		for (int docIdx : order) {
+			assertTrue(!seen[docIdx]);
+			seen[docIdx] = true;
+			int dominant = dominantType((FeatureSequence) instances.get(docIdx).getData(), instances.getDataAlphabet().size());
+			assertTrue(dominant >= previousDominant);
+			previousDominant = dominant;
+		}
+
+		model.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+		model.ensureConsistentTopicTypeCounts(model.countStore, model.getTopicTotals());
+		// The documents keep their input order
+		for (int doc = 0; doc < instances.size(); doc++) {
+			assertEquals(instances.get(doc), model.getData().get(doc).instance);
+		}
+	}
+
+	@Test
+	public void testInputOrderIsDefault() {
+		SimpleLDAConfiguration config = getStdCfg("src/main/resources/datasets/SmallTexts.txt", 1);
+		assertNull(DocumentOrder.forName(config.getDocumentOrder(LDAConfiguration.DOCUMENT_ORDER_DEFAULT), null, 0));
+	}
+
+	static int dominantType(FeatureSequence tokens, int numTypes) {
+		int [] counts = new int[numTypes];
+		int dominant = -1;
+		for (int position = 0; position < tokens.getLength(); position++) {
+			int type = tokens.getIndexAtPosition(position);
+			counts[type]++;
+			if(dominant < 0 || counts[type] > counts[dominant] || (counts[type] == counts[dominant] && type < dominant)) {
+				dominant = type;
+			}
+		}
+		return dominant;
+	}
+
+	// Simple benchmark of the sampling speed in tokens per second with documents
+	// sampled in input order and grouped by dominant type. Takes the dataset as
+	// the first argument (defaults to small.txt) and the iterations as the second
+	public static void benchmarkDocumentOrders(String dataset, int numIter) throws IOException {
+		for (int round = 0; round < 2; round++) {
+			for (String order : new String [] {DocumentOrder.INPUT, DocumentOrder.DOMINANT_TYPE}) {
+				SimpleLDAConfiguration config = getStdCfg(dataset, numIter);
+				config.setDocumentOrder(order);
+				InstanceList instances = LDAUtils.loadInstances(dataset, "stoplist.txt", 
+						config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+				SpaliasUncollapsedParallelLDA model = new SpaliasUncollapsedParallelLDA(config);
+				model.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+				model.addInstances(instances);
+				long start = System.nanoTime();
+				model.sample(numIter);
+				double seconds = (System.nanoTime() - start) / 1e9;
+				System.out.println(String.format("%-14s %d tokens x %d iterations: %.0f tokens/s", 
+						order, model.getCorpusSize(), numIter, model.getCorpusSize() * (double) numIter / seconds));
+			}
+		}
+	}
+
+	public static void main(String [] args) throws IOException {
+		benchmarkDocumentOrders(args.length > 0 ? args[0] : "src/main/resources/datasets/small.txt", 
+				args.length > 1 ? Integer.parseInt(args[1]) : 200);
+	}
+}
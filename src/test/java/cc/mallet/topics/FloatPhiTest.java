@@ -0,0 +1,152 @@
+package cc.mallet.topics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+import cc.mallet.configuration.LDAConfiguration;
+import cc.mallet.configuration.SimpleLDAConfiguration;
+import cc.mallet.types.InstanceList;
+import cc.mallet.util.LDALoggingUtils;
+import cc.mallet.util.LDAUtils;
+import cc.mallet.util.LoggingUtils;
+import cc.mallet.utils.TestUtils;
+
+public class FloatPhiTest {
+
+	SimpleLDAConfiguration getStdCfg(String whichModel, Integer numIter, Integer numBatches) {
+		Integer numTopics = 5;
+		Double alpha = 0.1;
+		Double beta = 0.01;
+		Integer rareWordThreshold = 0;
+		Integer showTopicsInterval = 10;
+		Integer startDiagnosticOutput = 0;
+
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), whichModel,
+				numTopics, alpha, beta, numIter,
+				numBatches, rareWordThreshold, showTopicsInterval,
+				startDiagnosticOutput,4711,"src/main/resources/datasets/small.txt");
+
+		LDALoggingUtils lu = new LoggingUtils();
+		lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+		config.setFloatPhi(true);
+		config.setSavePhi(true);
+		config.setPhiBurnIn(20);
+		return config;
+	}
+
+	UncollapsedParallelLDA sample(UncollapsedParallelLDA model, LDAConfiguration config) throws IOException {
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(),
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+		model.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		model.addInstances(instances);
+		model.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+		return model;
+	}
+
+	void assertFloatTransposed(double [][] phi, float [][] phiTF) {
+		assertEquals(phi[0].length, phiTF.length);
+		for (int topic = 0; topic < phi.length; topic++) {
+			for (int type = 0; type < phi[topic].length; type++) {
+				assertEquals((float) phi[topic][type], phiTF[type][topic], 0.0);
+			}
+		}
+	}
+
+	void assertRowsSumToOne(double [][] phiMeans) {
+		for (int topic = 0; topic < phiMeans.length; topic++) {
+			double sum = 0;
+			for (int type = 0; type < phiMeans[topic].length; type++) {
+				sum += phiMeans[topic][type];
+			}
+			assertEquals(1.0, sum, 0.0001);
+		}
+	}
+
+	@Test
+	public void testSpaliasFloatPhi() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 40, 4);
+		UncollapsedParallelLDA model = sample(new SpaliasUncollapsedParallelLDA(config), config);
+		assertNull(model.getTypeMajorPhi());
+		assertFloatTransposed(model.getPhi(), model.getTypeMajorPhiFloat());
+		// Phi is only kept in single precision between the phi samplings
+		for (double [] phiTopic : model.phi) {
+			assertNull(phiTopic);
+		}
+		assertNull(model.phiMean);
+		assertNotNull(model.phiMeanF);
+		assertRowsSumToOne(model.getPhiMeans());
+		model.ensureConsistentTopicTypeCounts(model.countStore, model.getTopicTotals());
+	}
+
+	@Test
+	public void testPolyaUrnFloatPhi() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("polyaurn", 40, 4);
+		UncollapsedParallelLDA model = sample(new PolyaUrnSpaliasLDA(config), config);
+		assertFloatTransposed(model.getPhi(), model.getTypeMajorPhiFloat());
+		assertRowsSumToOne(model.getPhiMeans());
+		model.ensureConsistentTopicTypeCounts(model.countStore, model.getTopicTotals());
+	}
+
+	@Test
+	public void testLightPCLDAFloatPhi() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("lightpclda", 40, 4);
+		UncollapsedParallelLDA model = sample(new LightPCLDA(config), config);
+		assertFloatTransposed(model.getPhi(), model.getTypeMajorPhiFloat());
+		model.ensureConsistentTopicTypeCounts(model.countStore, model.getTopicTotals());
+	}
+
+	@Test
+	public void testFloatPhiMeanSerialization() throws Exception {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 40, 4);
+		UncollapsedParallelLDA model = sample(new SpaliasUncollapsedParallelLDA(config), config);
+		File objectFile = File.createTempFile("lda_float_phi", ".bin");
+		objectFile.deleteOnExit();
+		model.write(objectFile);
+
+		UncollapsedParallelLDA read = UncollapsedParallelLDA.read(objectFile);
+		assertNotNull(read.getTypeMajorPhiFloat());
+		assertNull(read.phiMean);
+		assertNotNull(read.phiMeanF);
+		TestUtils.assertEqualArrays(model.getPhiMeans(), read.getPhiMeans(), 0.0);
+		TestUtils.assertEqualArrays(model.getPhi(), read.getPhi(), 0.0);
+	}
+
+	@Test
+	public void testFloatPhiDumps() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 20, 4);
+		config.setPrintPhi(true);
+		config.setStartDiagnostic(20);
+		UncollapsedParallelLDA model = sample(new SpaliasUncollapsedParallelLDA(config), config);
+		String fn = String.format(config.getLoggingUtil().getLogDir().getAbsolutePath() + "/phi_"
+				+ model.getNoTopics() + "_" + model.getNoTypes() + "_%05d.BINARY", 20);
+		double [][] dumped = LDAUtils.readBinaryDoubleMatrix(model.getNoTopics(), model.getNoTypes(), fn);
+		TestUtils.assertEqualArrays(model.getPhi(), dumped, 0.0);
+	}
+
+	@Test
+	public void testSetPhiKeepsCallersMatrix() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 40, 4);
+		UncollapsedParallelLDA model = sample(new SpaliasUncollapsedParallelLDA(config), config);
+		double [][] phi = model.getPhi();
+		phi[0][0] = 0.5;
+		model.setPhi(phi);
+		assertNotNull(phi[0]);
+		assertEquals(0.5f, model.getTypeMajorPhiFloat()[0][0], 0.0);
+		TestUtils.assertEqualArrays(phi, model.getPhi(), 0.0001);
+	}
+
+	@Test
+	public void testPriorSamplerIgnoresFloatPhi() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("spalias_priors", 40, 4);
+		UncollapsedParallelLDA model = new SpaliasUncollapsedParallelWithPriors(config);
+		assertFalse(model.floatPhi);
+	}
+}
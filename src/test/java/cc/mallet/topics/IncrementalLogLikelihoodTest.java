@@ -0,0 +1,114 @@
+package cc.mallet.topics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Test;
+
+import cc.mallet.configuration.LDAConfiguration;
+import cc.mallet.configuration.SimpleLDAConfiguration;
+import cc.mallet.types.InstanceList;
+import cc.mallet.util.LDALoggingUtils;
+import cc.mallet.util.LDAUtils;
+import cc.mallet.util.LoggingUtils;
+
+public class IncrementalLogLikelihoodTest {
+
+	SimpleLDAConfiguration getStdCfg(String whichModel, Integer numIter, Integer numBatches) {
+		Integer numTopics = 5;
+		Double alpha = 0.1;
+		Double beta = 0.01;
+		Integer rareWordThreshold = 0;
+		Integer showTopicsInterval = 10;
+		Integer startDiagnosticOutput = 0;
+
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), whichModel,
+				numTopics, alpha, beta, numIter,
+				numBatches, rareWordThreshold, showTopicsInterval,
+				startDiagnosticOutput,4711,"src/main/resources/datasets/small.txt");
+
+		LDALoggingUtils lu = new LoggingUtils();
+		lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+		config.setIncrementalLogLikelihood(true);
+		return config;
+	}
+
+	void sampleAndCheck(UncollapsedParallelLDA model, LDAConfiguration config) throws IOException {
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(),
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+		model.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		model.addInstances(instances);
+		model.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+		double full = model.modelLogLikelihood();
+		assertEquals(full, model.getIncrementalLogLikelihood(), Math.abs(full) * 1E-9);
+	}
+
+	@Test
+	public void testTrackerFollowsSampling() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 20, 4);
+		sampleAndCheck(new SpaliasUncollapsedParallelLDA(config), config);
+		config = getStdCfg("spalias", 20, 4);
+		config.setThreadLocalCountUpdates(true);
+		sampleAndCheck(new SpaliasUncollapsedParallelLDA(config), config);
+		config = getStdCfg("polyaurn", 20, 4);
+		sampleAndCheck(new PolyaUrnSpaliasLDA(config), config);
+		config = getStdCfg("lightpclda", 20, 4);
+		sampleAndCheck(new LightPCLDA(config), config);
+	}
+
+	@Test
+	public void testTrackerMatchesFullCalculation() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 20, 4);
+		UncollapsedParallelLDA model = new SpaliasUncollapsedParallelLDA(config);
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(),
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+		model.addInstances(instances);
+		// Without sampling the tracker is built from the initial counts
+		double full = model.modelLogLikelihood();
+		assertEquals(full, model.getIncrementalLogLikelihood(), Math.abs(full) * 1E-12);
+	}
+
+	@Test
+	public void testTrackerFollowsNewIndicatorsAndMovedTopics() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 10, 4);
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(),
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+		UncollapsedParallelLDA model = new SpaliasUncollapsedParallelLDA(config);
+		model.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		model.addInstances(instances);
+		model.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+
+		UncollapsedParallelLDA other = new SpaliasUncollapsedParallelLDA(config);
+		other.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT) + 1);
+		other.addInstances(instances);
+		model.setZIndicators(other.getZIndicators());
+		double full = model.modelLogLikelihood();
+		assertEquals(full, model.getIncrementalLogLikelihood(), Math.abs(full) * 1E-9);
+
+		model.moveTopic(0, 3);
+		full = model.modelLogLikelihood();
+		assertEquals(full, model.getIncrementalLogLikelihood(), Math.abs(full) * 1E-9);
+	}
+
+	@Test
+	public void testLikelihoodLoggedEveryIteration() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 20, 4);
+		UncollapsedParallelLDA model = new SpaliasUncollapsedParallelLDA(config);
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(),
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+		model.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		model.addInstances(instances);
+		model.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+		List<String> lines = Files.readAllLines(new File(config.getLoggingUtil().getLogDir(), "likelihood.txt").toPath());
+		assertEquals(21, lines.size());
+		assertTrue(lines.get(20).startsWith("20\t"));
+		assertNull(model.likelihoodLog);
+	}
+}
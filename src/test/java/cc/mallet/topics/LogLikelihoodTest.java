@@ -8,15 +8,20 @@ import org.junit.Test;
 
 import cc.mallet.configuration.LDAConfiguration;
 import cc.mallet.configuration.SimpleLDAConfiguration;
+import cc.mallet.types.Dirichlet;
 import cc.mallet.types.InstanceList;
+import cc.mallet.types.LabelSequence;
 import cc.mallet.util.LDALoggingUtils;
 import cc.mallet.util.LDAUtils;
+import cc.mallet.util.LogGammaTable;
 import cc.mallet.util.LoggingUtils;
 import cc.mallet.utils.TestUtils;
 
 public class LogLikelihoodTest {
 	
 	double epsilon = 0.000_000_000_000_000_000_000_000_000_000_001;
+	// The parallel likelihood is summed in a different order than the serial one
+	double parallelEpsilon = 0.000_001;
 	
 	@Test
 	public void testLogLikelihood() throws IOException {
@@ -119,4 +124,73 @@ public class LogLikelihoodTest {
 				+ " Diff: " + (collapsedModelLogLikelihood-uncollapsedModelLogLikelihood) ,
 				collapsedModelLogLikelihood,	uncollapsedModelLogLikelihood, epsilon);
 	}
+
+	// Straightforward serial version of UncollapsedParallelLDA.modelLogLikelihood
+	static double serialLogLikelihood(UncollapsedParallelLDA model) {
+		double [] alpha = model.alpha;
+		double beta = model.beta;
+		int numTopics = model.getNoTopics();
+		int numTypes = model.getNoTypes();
+		double logLikelihood = 0.0;
+		int [] topicCounts = new int[numTopics];
+		for (TopicAssignment doc : model.getData()) {
+			LabelSequence topicSequence = (LabelSequence) doc.topicSequence;
+			for (int token = 0; token < topicSequence.size(); token++) {
+				topicCounts[topicSequence.getIndexAtPosition(token)]++;
+			}
+			for (int topic = 0; topic < numTopics; topic++) {
+				if(topicCounts[topic] > 0) {
+					logLikelihood += Dirichlet.logGammaStirling(alpha[topic] + topicCounts[topic]) 
+							- Dirichlet.logGammaStirling(alpha[topic]);
+				}
+				topicCounts[topic] = 0;
+			}
+			logLikelihood -= Dirichlet.logGammaStirling(model.alphaSum + topicSequence.size());
+		}
+		logLikelihood += model.getData().size() * Dirichlet.logGammaStirling(model.alphaSum);
+		int [][] typeTopicCounts = model.getTypeTopicCounts();
+		for (int type = 0; type < numTypes; type++) {
+			for (int topic = 0; topic < numTopics; topic++) {
+				if(typeTopicCounts[type][topic] > 0) {
+					logLikelihood += Dirichlet.logGammaStirling(beta + typeTopicCounts[type][topic]) 
+							- Dirichlet.logGammaStirling(beta);
+				}
+			}
+		}
+		for (int topic = 0; topic < numTopics; topic++) {
+			logLikelihood -= Dirichlet.logGammaStirling(beta * numTypes + model.getTopicTotals()[topic]);
+		}
+		logLikelihood += Dirichlet.logGammaStirling(beta * numTypes) * numTopics;
+		return logLikelihood;
+	}
+
+	@Test
+	public void testParallelLogLikelihoodMatchesSerial() throws IOException {
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), "spalias",
+				5, 0.1, 0.01, 20, 4, 0, 10, 0, 4711, "src/main/resources/datasets/small.txt");
+		LDALoggingUtils lu = new LoggingUtils();
+		lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+		config.setNumThreads(3);
+
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(), 
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+		UncollapsedParallelLDA model = new SpaliasUncollapsedParallelLDA(config);
+		model.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		model.addInstances(instances);
+		assertEquals(serialLogLikelihood(model), model.modelLogLikelihood(), parallelEpsilon);
+		model.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+		assertEquals(serialLogLikelihood(model), model.modelLogLikelihood(), parallelEpsilon);
+	}
+
+	@Test
+	public void testLogGammaTable() {
+		LogGammaTable table = new LogGammaTable(0.01, 10);
+		for (int n = 0; n < 20; n++) {
+			assertEquals(Dirichlet.logGammaStirling(0.01 + n), table.logGamma(n), 0.0);
+		}
+		assertEquals(true, table.covers(0.01, 5));
+		assertEquals(false, table.covers(0.01, 11));
+		assertEquals(false, table.covers(0.02, 5));
+	}
 }
@@ -0,0 +1,131 @@
+package cc.mallet.topics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import cc.mallet.configuration.LDAConfiguration;
+import cc.mallet.configuration.SimpleLDAConfiguration;
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.InstanceList;
+import cc.mallet.util.LDALoggingUtils;
+import cc.mallet.util.LDAUtils;
+import cc.mallet.util.LoggingUtils;
+
+public class MappedCorpusTest {
+
+	SimpleLDAConfiguration getStdCfg(String whichModel, Integer numIter, Integer numBatches) {
+		Integer numTopics = 5;
+		Double alpha = 0.1;
+		Double beta = 0.01;
+		Integer rareWordThreshold = 0;
+		Integer showTopicsInterval = 10;
+		Integer startDiagnosticOutput = 0;
+
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), whichModel,
+				numTopics, alpha, beta, numIter,
+				numBatches, rareWordThreshold, showTopicsInterval,
+				startDiagnosticOutput,4711,"src/main/resources/datasets/small.txt");
+
+		LDALoggingUtils lu = new LoggingUtils();
+		File lgDir = lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+		config.setMappedCorpusDirectory(new File(lgDir, "mapped_" + whichModel).getAbsolutePath());
+		return config;
+	}
+
+	void sampleAndCheck(UncollapsedParallelLDA model, LDAConfiguration config) throws IOException {
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(),
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+		model.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		model.addInstances(instances);
+		assertTrue(model.getCorpusStore() instanceof MappedCorpus);
+		model.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+		model.ensureConsistentTopicTypeCounts(model.countStore, model.getTopicTotals());
+		int [][] zIndicators = model.getZIndicators();
+		int [] tokensPerTopic = new int[model.getNoTopics()];
+		for (int [] doc : zIndicators) {
+			for (int topic : doc) {
+				tokensPerTopic[topic]++;
+			}
+		}
+		assertArrayEquals(tokensPerTopic, model.getTopicTotals());
+
+		// The files hold the topic indicators after sampling
+		MappedCorpus reopened = MappedCorpus.open(((MappedCorpus) model.getCorpusStore()).getDirectory());
+		assertEquals(zIndicators.length, reopened.numDocs());
+		for (int doc = 0; doc < zIndicators.length; doc++) {
+			assertArrayEquals(zIndicators[doc], reopened.getDocumentTopics(doc));
+		}
+	}
+
+	@Test
+	public void testSamplersOnMappedCorpusConsistent() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 20, 4);
+		sampleAndCheck(new SpaliasUncollapsedParallelLDA(config), config);
+		config = getStdCfg("polyaurn", 20, 4);
+		sampleAndCheck(new PolyaUrnSpaliasLDA(config), config);
+	}
+
+	@Test
+	public void testNarrowIndicatorsSurviveReopen() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 1, 1);
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(),
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+		File directory = new File(config.getMappedCorpusDirectory(null));
+		MappedCorpus corpus = MappedCorpus.create(directory, instances, 300);
+		assertEquals(Short.BYTES, corpus.bytesPerIndicator());
+		assertEquals(corpus.numTokens() * Short.BYTES, new File(directory, MappedCorpus.TOPICS_FILE).length());
+		assertEquals(corpus.numTokens() * corpus.bytesPerType(), new File(directory, MappedCorpus.TYPES_FILE).length());
+		for (int doc = 0; doc < corpus.numDocs(); doc++) {
+			int [] topics = new int[corpus.docLength(doc)];
+			for (int position = 0; position < topics.length; position++) {
+				topics[position] = (299 - doc - position) % 300;
+			}
+			// Written in place through the mapped indicators, as the samplers do
+			TopicIndicatorArray indicators = corpus.topicIndicators(doc);
+			for (int position = 0; position < topics.length; position++) {
+				indicators.set(corpus.topicOffset(doc) + position, topics[position]);
+			}
+		}
+		corpus.flush();
+
+		MappedCorpus reopened = MappedCorpus.open(directory);
+		assertEquals(Short.BYTES, reopened.bytesPerIndicator());
+		assertEquals(corpus.numDocs(), reopened.numDocs());
+		for (int doc = 0; doc < corpus.numDocs(); doc++) {
+			FeatureSequence tokens = (FeatureSequence) instances.get(doc).getData();
+			assertArrayEquals(Arrays.copyOf(tokens.getFeatures(), tokens.getLength()), reopened.getDocumentTypes(doc));
+			assertArrayEquals(corpus.getDocumentTopics(doc), reopened.getDocumentTopics(doc));
+			if(reopened.docLength(doc) > 0) {
+				assertEquals((299 - doc) % 300, reopened.getDocumentTopics(doc)[0]);
+			}
+		}
+	}
+
+	@Test
+	public void testSetZIndicatorsWritesThrough() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 1, 1);
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(),
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+		SpaliasUncollapsedParallelLDA model = new SpaliasUncollapsedParallelLDA(config);
+		model.addInstances(instances);
+		int [][] zIndicators = model.getZIndicators();
+		for (int [] doc : zIndicators) {
+			for (int position = 0; position < doc.length; position++) {
+				doc[position] = (doc[position] + 1) % model.getNoTopics();
+			}
+		}
+		model.setZIndicators(zIndicators);
+		CorpusStore store = model.getCorpusStore();
+		for (int doc = 0; doc < zIndicators.length; doc++) {
+			assertArrayEquals(zIndicators[doc], store.getDocumentTopics(doc));
+		}
+	}
+}
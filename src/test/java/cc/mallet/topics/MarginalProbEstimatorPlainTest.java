@@ -4,6 +4,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
 
 import org.junit.Test;
 
@@ -142,4 +143,87 @@ public class MarginalProbEstimatorPlainTest {
 				null);
 	}
 
+
+	MarginalProbEstimatorPlain smallEvaluator(InstanceList [] datasets) throws IOException {
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), "spalias",
+				5, 0.1, 0.01, 20, 4, 0, 10, 0, 4711, "src/main/resources/datasets/small.txt");
+		LDALoggingUtils lu = new LoggingUtils();
+		lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+
+		SpaliasUncollapsedParallelLDA model = new SpaliasUncollapsedParallelLDA(config);
+		model.setRandomSeed(4711);
+		model.addInstances(datasets[0]);
+		model.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+		return new MarginalProbEstimatorPlain(model.getNoTopics(),
+				model.alpha, model.alphaSum,
+				model.getBeta(),
+				model.getTypeTopicCounts(), 
+				model.getTopicTotals());
+	}
+
+	InstanceList [] smallDatasets() throws IOException {
+		InstanceList instances = LDAUtils.loadInstances("src/main/resources/datasets/small.txt", "stoplist.txt", 0);
+		return PerplexityDatasetBuilder.buildPerplexityDataset(instances, 5);
+	}
+
+	@Test
+	public void testParallelEvaluationIndependentOfThreads() throws IOException {
+		InstanceList [] datasets = smallDatasets();
+		MarginalProbEstimatorPlain evaluator = smallEvaluator(datasets);
+		ForkJoinPool onePool = new ForkJoinPool(1);
+		ForkJoinPool fourPool = new ForkJoinPool(4);
+		try {
+			for (boolean sparse : new boolean [] {false, true}) {
+				evaluator.setSparse(sparse);
+				evaluator.setRandomSeed(17);
+				double oneThread = evaluator.evaluateLeftToRight(datasets[1], 50, null, onePool);
+				evaluator.setRandomSeed(17);
+				double fourThreads = evaluator.evaluateLeftToRight(datasets[1], 50, null, fourPool);
+				assertEquals(oneThread, fourThreads, 0.0);
+				assertTrue(oneThread < 0);
+			}
+		} finally {
+			onePool.shutdown();
+			fourPool.shutdown();
+		}
+	}
+
+	@Test
+	public void testCountStoreEvaluationMatchesMatrix() throws IOException {
+		InstanceList [] datasets = smallDatasets();
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), "spalias",
+				5, 0.1, 0.01, 20, 4, 0, 10, 0, 4711, "src/main/resources/datasets/small.txt");
+		LDALoggingUtils lu = new LoggingUtils();
+		lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+
+		SpaliasUncollapsedParallelLDA model = new SpaliasUncollapsedParallelLDA(config);
+		model.setRandomSeed(4711);
+		model.addInstances(datasets[0]);
+		model.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+		for (boolean sparse : new boolean [] {false, true}) {
+			MarginalProbEstimatorPlain fromMatrix = new MarginalProbEstimatorPlain(model.getNoTopics(),
+					model.alpha, model.alphaSum, model.getBeta(), model.getTypeTopicCounts(), model.getTopicTotals());
+			MarginalProbEstimatorPlain fromStore = new MarginalProbEstimatorPlain(model.getNoTopics(),
+					model.alpha, model.alphaSum, model.getBeta(), model.countStore, model.getTopicTotals());
+			fromMatrix.setSparse(sparse);
+			fromStore.setSparse(sparse);
+			fromMatrix.setRandomSeed(17);
+			fromStore.setRandomSeed(17);
+			assertEquals(fromMatrix.evaluateLeftToRight(datasets[1], 50, null),
+					fromStore.evaluateLeftToRight(datasets[1], 50, null), 0.0);
+		}
+	}
+
+	@Test
+	public void testSparseEvaluationCloseToDense() throws IOException {
+		InstanceList [] datasets = smallDatasets();
+		MarginalProbEstimatorPlain evaluator = smallEvaluator(datasets);
+		evaluator.setRandomSeed(17);
+		double dense = evaluator.evaluateLeftToRight(datasets[1], 200, null);
+		evaluator.setSparse(true);
+		double sparse = evaluator.evaluateLeftToRight(datasets[1], 200, null);
+		assertEquals(dense, sparse, Math.abs(dense) * 0.02);
+	}
 }
@@ -15,7 +15,7 @@ public class ParanoidLightPCLDAtypeTopicProposal extends LightPCLDAtypeTopicProp
 	protected void samplePhi() {
 		super.samplePhi();
 		ensureConsistentPhi(phi);
-		ensureConsistentTopicTypeCounts(topicTypeCountMapping, typeTopicCounts, tokensPerTopic);
+		ensureConsistentTopicTypeCounts(countStore, tokensPerTopic);
 		debugPrintMMatrix();
 	}
 
@@ -24,7 +24,7 @@ public class ParanoidLightPCLDAtypeTopicProposal extends LightPCLDAtypeTopicProp
 		super.addInstances(training);
 		//ensureConsistentTopicTypeCounts(topicTypeCounts);
 		ensureConsistentPhi(phi);
-		ensureConsistentTopicTypeCounts(topicTypeCountMapping, typeTopicCounts, tokensPerTopic);
+		ensureConsistentTopicTypeCounts(countStore, tokensPerTopic);
 		debugPrintMMatrix();
 	}
 
@@ -32,7 +32,7 @@ public class ParanoidLightPCLDAtypeTopicProposal extends LightPCLDAtypeTopicProp
 	protected void updateCounts() throws InterruptedException {
 		super.updateCounts();
 		ensureConsistentPhi(phi);
-		ensureConsistentTopicTypeCounts(topicTypeCountMapping, typeTopicCounts, tokensPerTopic);
+		ensureConsistentTopicTypeCounts(countStore, tokensPerTopic);
 		debugPrintMMatrix();
 	}
 	
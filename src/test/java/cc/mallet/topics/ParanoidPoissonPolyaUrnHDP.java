@@ -15,7 +15,7 @@ public class ParanoidPoissonPolyaUrnHDP extends PoissonPolyaUrnHLDA {
 	protected void samplePhi() {
 		super.samplePhi();
 		ensureConsistentPhi(phi);
-		ensureConsistentTopicTypeCounts(topicTypeCountMapping, typeTopicCounts, tokensPerTopic);
+		ensureConsistentTopicTypeCounts(countStore, tokensPerTopic);
 		debugPrintMMatrix();
 	}
 
@@ -24,7 +24,7 @@ public class ParanoidPoissonPolyaUrnHDP extends PoissonPolyaUrnHLDA {
 		super.addInstances(training);
 		//ensureConsistentTopicTypeCounts(topicTypeCounts);
 		ensureConsistentPhi(phi);
-		ensureConsistentTopicTypeCounts(topicTypeCountMapping, typeTopicCounts, tokensPerTopic);
+		ensureConsistentTopicTypeCounts(countStore, tokensPerTopic);
 		debugPrintMMatrix();
 	}
 
@@ -32,7 +32,7 @@ public class ParanoidPoissonPolyaUrnHDP extends PoissonPolyaUrnHLDA {
 	protected void updateCounts() throws InterruptedException {
 		super.updateCounts();
 		ensureConsistentPhi(phi);
-		ensureConsistentTopicTypeCounts(topicTypeCountMapping, typeTopicCounts, tokensPerTopic);
+		ensureConsistentTopicTypeCounts(countStore, tokensPerTopic);
 		debugPrintMMatrix();
 	}
 		
@@ -61,8 +61,8 @@ public class ParanoidPoissonPolyaUrnHDP extends PoissonPolyaUrnHLDA {
 				throw new IllegalArgumentException("Topic count: " + topic + " has value > 0 for " + tokensPerTopic[topic] + ". numTopics:" + numTopics);
 			}
 			for(int type = 0; type < numTypes; type++) {
-				if(topicTypeCountMapping[topic][type]>0) {
-					throw new IllegalArgumentException("Topic: " + topic + " has value > 0 for " + topicTypeCountMapping[topic][type] + ". numTopics:" + numTopics);
+				if(countStore.get(topic, type)>0) {
+					throw new IllegalArgumentException("Topic: " + topic + " has value > 0 for " + countStore.get(topic, type) + ". numTopics:" + numTopics);
 				}
 			}
 		}
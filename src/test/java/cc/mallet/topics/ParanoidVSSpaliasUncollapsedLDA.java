@@ -15,7 +15,7 @@ public class ParanoidVSSpaliasUncollapsedLDA extends NZVSSpaliasUncollapsedParal
 	protected void samplePhi() {
 		super.samplePhi();
 		ensureConsistentPhi(phi);
-		ensureConsistentTopicTypeCounts(topicTypeCountMapping, typeTopicCounts, tokensPerTopic);
+		ensureConsistentTopicTypeCounts(countStore, tokensPerTopic);
 		debugPrintMMatrix();
 	}
 
@@ -24,7 +24,7 @@ public class ParanoidVSSpaliasUncollapsedLDA extends NZVSSpaliasUncollapsedParal
 		super.addInstances(training);
 		//ensureConsistentTopicTypeCounts(topicTypeCounts);
 		ensureConsistentPhi(phi);
-		ensureConsistentTopicTypeCounts(topicTypeCountMapping, typeTopicCounts, tokensPerTopic);
+		ensureConsistentTopicTypeCounts(countStore, tokensPerTopic);
 		debugPrintMMatrix();
 	}
 
@@ -32,7 +32,7 @@ public class ParanoidVSSpaliasUncollapsedLDA extends NZVSSpaliasUncollapsedParal
 	protected void updateCounts() throws InterruptedException {
 		super.updateCounts();
 		ensureConsistentPhi(phi);
-		ensureConsistentTopicTypeCounts(topicTypeCountMapping, typeTopicCounts, tokensPerTopic);
+		ensureConsistentTopicTypeCounts(countStore, tokensPerTopic);
 		debugPrintMMatrix();
 	}
 	
@@ -7,6 +7,8 @@ import static org.junit.Assert.fail;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.util.List;
 
 import org.apache.commons.cli.ParseException;
@@ -17,6 +19,9 @@ import cc.mallet.configuration.LDACommandLineParser;
 import cc.mallet.configuration.LDAConfiguration;
 import cc.mallet.configuration.ParsedLDAConfiguration;
 import cc.mallet.configuration.SimpleLDAConfiguration;
+import cc.mallet.pipe.Noop;
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.Instance;
 import cc.mallet.types.InstanceList;
 import cc.mallet.util.LDALoggingUtils;
 import cc.mallet.util.LDAUtils;
@@ -518,4 +523,132 @@ public class ReadWriteTest {
 			}
 		}
 	}
+
+	@Test
+	public void testCheckpointRoundTrip() throws IOException {
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), "spalias",
+				5, 0.1, 0.01, 20, 2, 0, 10, 0, 4711, "src/main/resources/datasets/SmallTexts.txt");
+		LDALoggingUtils lu = new LoggingUtils();
+		lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+		config.setPhiBurnIn(50);
+		config.setSavePhi(true);
+
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(), "stoplist.txt", 0);
+		SpaliasUncollapsedParallelLDA orig = new SpaliasUncollapsedParallelLDA(config);
+		orig.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		orig.addInstances(instances);
+		orig.sample(20);
+
+		File checkpoint = File.createTempFile("lda_checkpoint_unittest", ".ckpt");
+		orig.writeCheckpoint(checkpoint);
+		UncollapsedParallelLDA model = SamplerCheckpoint.read(checkpoint, 1);
+
+		assertEquals(SpaliasUncollapsedParallelLDA.class, model.getClass());
+		assertEquals(orig.modelLogLikelihood(), model.modelLogLikelihood(), 0.00000000001);
+		assertArrayEquals(orig.getZIndicators(), model.getZIndicators());
+		assertArrayEquals(orig.getTypeTopicMatrix(), model.getTypeTopicMatrix());
+		assertArrayEquals(orig.getTopicTotals(), model.getTopicTotals());
+		assertArrayEquals(orig.getAlpha(), model.getAlpha(), 0.0);
+		TestUtils.assertEqualArrays(orig.getPhi(), model.getPhi(), 0.0);
+		TestUtils.assertEqualArrays(orig.getPhiMeans(), model.getPhiMeans(), 0.0);
+		assertArrayEquals(LDAUtils.extractVocabulaty(orig.getAlphabet()), LDAUtils.extractVocabulaty(model.getAlphabet()));
+		assertArrayEquals(LDAUtils.extractCorpus(orig.getDataset()), LDAUtils.extractCorpus(model.getDataset()));
+		for (int doc = 0; doc < instances.size(); doc++) {
+			assertEquals(instances.get(doc).getName().toString(), model.getDataset().get(doc).getName());
+		}
+
+		// The restored sampler can continue sampling
+		model.continueSampling(5);
+		assertTrue(model.modelLogLikelihood() < 0);
+		checkpoint.delete();
+	}
+
+	@Test
+	public void testCheckpointStoresPipeAndNarrowTopics() throws IOException {
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), "uncollapsed",
+				5, 0.1, 0.01, 5, 2, 0, 10, 0, 4711, "src/main/resources/datasets/SmallTexts.txt");
+		LDALoggingUtils lu = new LoggingUtils();
+		lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(), "stoplist.txt", 0);
+		UncollapsedParallelLDA orig = new UncollapsedParallelLDA(config);
+		orig.addInstances(instances);
+		orig.sample(5);
+
+		File checkpoint = File.createTempFile("lda_checkpoint_unittest", ".ckpt");
+		orig.writeCheckpoint(checkpoint);
+		long numTokens = 0;
+		for (Instance instance : instances) {
+			numTokens += ((FeatureSequence) instance.getData()).getLength();
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(checkpoint, "r");
+				FileChannel channel = raf.getChannel()) {
+			// Five topics fit in one byte per indicator
+			assertEquals(numTokens, SamplerCheckpoint.readSectionTable(channel, checkpoint).get(SamplerCheckpoint.TOPICS).length);
+		}
+		UncollapsedParallelLDA model = UncollapsedParallelLDA.readCheckpoint(checkpoint);
+		assertArrayEquals(orig.getZIndicators(), model.getZIndicators());
+
+		// New text is piped as the training text was
+		String text = "Intel Inside is the world's most widely used warning label";
+		InstanceList piped = new InstanceList(instances.getPipe());
+		piped.addThruPipe(new Instance(text, "X", "new", null));
+		InstanceList restoredPiped = new InstanceList(model.getDataset().getPipe());
+		restoredPiped.addThruPipe(new Instance(text, "X", "new", null));
+		assertArrayEquals(((FeatureSequence) piped.get(0).getData()).getFeatures(),
+				((FeatureSequence) restoredPiped.get(0).getData()).getFeatures());
+
+		// Without a serializable pipe the restored instances refuse new text
+		InstanceList unserializable = new InstanceList(new Noop(instances.getDataAlphabet(), instances.getTargetAlphabet()) {
+			private static final long serialVersionUID = 1L;
+		});
+		unserializable.addAll(instances);
+		UncollapsedParallelLDA noPipe = new UncollapsedParallelLDA(config);
+		noPipe.addInstances(unserializable);
+		noPipe.writeCheckpoint(checkpoint);
+		model = UncollapsedParallelLDA.readCheckpoint(checkpoint);
+		assertArrayEquals(noPipe.getZIndicators(), model.getZIndicators());
+		try {
+			new InstanceList(model.getDataset().getPipe()).addThruPipe(new Instance(text, "X", "new", null));
+			fail("Restored instances without a pipe piped new text");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		} finally {
+			checkpoint.delete();
+		}
+	}
+
+	@Test
+	public void testCheckpointDetectsCorruption() throws IOException {
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), "uncollapsed",
+				5, 0.1, 0.01, 5, 2, 0, 10, 0, 4711, "src/main/resources/datasets/SmallTexts.txt");
+		LDALoggingUtils lu = new LoggingUtils();
+		lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(), "stoplist.txt", 0);
+		UncollapsedParallelLDA orig = new UncollapsedParallelLDA(config);
+		orig.addInstances(instances);
+		orig.sample(5);
+
+		File checkpoint = File.createTempFile("lda_checkpoint_unittest", ".ckpt");
+		orig.writeCheckpoint(checkpoint);
+		try (java.io.RandomAccessFile raf = new java.io.RandomAccessFile(checkpoint, "rw")) {
+			long last = raf.length() - 1;
+			raf.seek(last);
+			int b = raf.read();
+			raf.seek(last);
+			raf.write(b ^ 0xFF);
+		}
+		try {
+			UncollapsedParallelLDA.readCheckpoint(checkpoint);
+			fail("Corrupt checkpoint was read");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("Checksum mismatch"));
+		} finally {
+			checkpoint.delete();
+		}
+	}
 }
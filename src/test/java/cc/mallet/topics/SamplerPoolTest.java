@@ -0,0 +1,79 @@
+package cc.mallet.topics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import cc.mallet.configuration.LDAConfiguration;
+import cc.mallet.configuration.SimpleLDAConfiguration;
+import cc.mallet.types.InstanceList;
+import cc.mallet.util.LDALoggingUtils;
+import cc.mallet.util.LDAUtils;
+import cc.mallet.util.LoggingUtils;
+
+public class SamplerPoolTest {
+
+	SimpleLDAConfiguration getStdCfg(String whichModel, Integer numIter, Integer numBatches) {
+		Integer numTopics = 5;
+		Double alpha = 0.1;
+		Double beta = 0.01;
+		Integer rareWordThreshold = 0;
+		Integer showTopicsInterval = 10;
+		Integer startDiagnosticOutput = 0;
+
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), whichModel,
+				numTopics, alpha, beta, numIter,
+				numBatches, rareWordThreshold, showTopicsInterval,
+				startDiagnosticOutput,4711,"src/main/resources/datasets/small.txt");
+
+		LDALoggingUtils lu = new LoggingUtils();
+		lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+		return config;
+	}
+
+	void sampleAndCheck(UncollapsedParallelLDA model, LDAConfiguration config) throws IOException {
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(),
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+		model.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		model.addInstances(instances);
+		model.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+		assertTrue(model.getSamplerPool().isShutdown());
+		model.ensureConsistentTopicTypeCounts(model.countStore, model.getTopicTotals());
+	}
+
+	@Test
+	public void testDefaultUsesAllProcessors() {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 2, 4);
+		UncollapsedParallelLDA model = new SpaliasUncollapsedParallelLDA(config);
+		assertEquals(Runtime.getRuntime().availableProcessors(), model.getNumThreads());
+		assertEquals(Runtime.getRuntime().availableProcessors(), model.getSamplerPool().getParallelism());
+	}
+
+	@Test
+	public void testNumThreads() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 20, 4);
+		config.setNumThreads(3);
+		UncollapsedParallelLDA model = new SpaliasUncollapsedParallelLDA(config);
+		assertEquals(3, model.getNumThreads());
+		assertEquals(3, model.getSamplerPool().getParallelism());
+		sampleAndCheck(model, config);
+	}
+
+	@Test
+	public void testSamplersOnSharedPool() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("polyaurn", 20, 4);
+		config.setNumThreads(2);
+		config.setThreadLocalCountUpdates(true);
+		sampleAndCheck(new PolyaUrnSpaliasLDA(config), config);
+		config = getStdCfg("nzvsspalias", 20, 4);
+		config.setNumThreads(2);
+		sampleAndCheck(new NZVSSpaliasUncollapsedParallelLDA(config), config);
+		config = getStdCfg("lightpclda", 20, 4);
+		config.setNumThreads(1);
+		sampleAndCheck(new LightPCLDA(config), config);
+	}
+}
@@ -0,0 +1,105 @@
+package cc.mallet.topics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import cc.mallet.configuration.LDAConfiguration;
+import cc.mallet.configuration.SimpleLDAConfiguration;
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.InstanceList;
+import cc.mallet.util.LDALoggingUtils;
+import cc.mallet.util.LDAUtils;
+import cc.mallet.util.LoggingUtils;
+import cc.mallet.utils.TestUtils;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+
+public class ThreadLocalCountUpdatesTest {
+
+	SimpleLDAConfiguration getStdCfg(String whichModel, Integer numIter, Integer numBatches) {
+		Integer numTopics = 5;
+		Double alpha = 0.1;
+		Double beta = 0.01;
+		Integer rareWordThreshold = 0;
+		Integer showTopicsInterval = 10;
+		Integer startDiagnosticOutput = 0;
+
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), whichModel,
+				numTopics, alpha, beta, numIter,
+				numBatches, rareWordThreshold, showTopicsInterval,
+				startDiagnosticOutput,4711,"src/main/resources/datasets/small.txt");
+
+		return config;
+	}
+
+	@Test
+	public void testDeltaBufferDrain() {
+		TopicTypeDeltaBuffer buffer = new TopicTypeDeltaBuffer(3);
+		buffer.increment(1, 7);
+		buffer.increment(1, 7);
+		buffer.decrement(4, 7);
+		buffer.decrement(4, 7);
+		buffer.increment(2, 3);
+		buffer.decrement(2, 3);
+		assertEquals(0, buffer.deltaSum());
+
+		Long2IntOpenHashMap target = new Long2IntOpenHashMap();
+		// Topics 1 and 4 both belong to partition 1
+		buffer.drainPartition(1, target);
+		assertEquals(2, target.size());
+		assertEquals(2, target.get(TopicTypeDeltaBuffer.key(1, 7)));
+		assertEquals(-2, target.get(TopicTypeDeltaBuffer.key(4, 7)));
+
+		// The net zero change to (2,3) should not be carried over
+		target.clear();
+		buffer.drainPartition(2, target);
+		assertEquals(0, target.size());
+		assertEquals(0, buffer.size());
+	}
+
+	@Test
+	public void testThreadLocalCountsConsistent() throws IOException {
+		String whichModel = "spalias";
+		SimpleLDAConfiguration config = getStdCfg(whichModel, 20, 4);
+		config.setThreadLocalCountUpdates(true);
+
+		LDALoggingUtils lu = new LoggingUtils();
+		lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(),
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+
+		SpaliasUncollapsedParallelLDA model = new SpaliasUncollapsedParallelLDA(config);
+		model.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		model.addInstances(instances);
+		model.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+
+		// Recount the type-topic counts from the topic indicators
+		int numTopics = model.getNoTopics();
+		int numTypes = model.getAlphabet().size();
+		int [][] expectedTypeTopic = new int[numTypes][numTopics];
+		int [] expectedTokensPerTopic = new int[numTopics];
+		int [][] zIndicators = model.getZIndicators();
+		for (int docIdx = 0; docIdx < zIndicators.length; docIdx++) {
+			FeatureSequence tokens = (FeatureSequence) model.getData().get(docIdx).instance.getData();
+			for (int position = 0; position < zIndicators[docIdx].length; position++) {
+				expectedTypeTopic[tokens.getIndexAtPosition(position)][zIndicators[docIdx][position]]++;
+				expectedTokensPerTopic[zIndicators[docIdx][position]]++;
+			}
+		}
+
+		TestUtils.assertEqualArrays(expectedTypeTopic, model.getTypeTopicCounts());
+		model.ensureConsistentTopicTypeCounts(model.countStore, model.getTopicTotals());
+		for (int topic = 0; topic < numTopics; topic++) {
+			assertEquals(expectedTokensPerTopic[topic], model.getTopicTotals()[topic]);
+		}
+		// The buffers of the shut down sampler threads are not kept
+		assertEquals(0, model.workerDeltaBufferRegistry.size());
+
+		model.sample(2);
+		assertEquals(0, model.workerDeltaBufferRegistry.size());
+	}
+}
@@ -0,0 +1,111 @@
+package cc.mallet.topics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import cc.mallet.configuration.LDAConfiguration;
+import cc.mallet.configuration.SimpleLDAConfiguration;
+import cc.mallet.types.InstanceList;
+import cc.mallet.util.LDALoggingUtils;
+import cc.mallet.util.LDAUtils;
+import cc.mallet.util.LoggingUtils;
+
+public class TopicIndicatorArrayTest {
+
+	@Test
+	public void testEncodingFromNumTopics() {
+		assertEquals(1, TopicIndicatorArray.forTopics(5, 10).bytesPerIndicator());
+		assertEquals(1, TopicIndicatorArray.forTopics(256, 10).bytesPerIndicator());
+		assertEquals(2, TopicIndicatorArray.forTopics(257, 10).bytesPerIndicator());
+		assertEquals(2, TopicIndicatorArray.forTopics(65536, 10).bytesPerIndicator());
+		assertEquals(4, TopicIndicatorArray.forTopics(65537, 10).bytesPerIndicator());
+	}
+
+	void roundTrip(int numTopics) {
+		int [] topics = {0, 1, numTopics / 2, numTopics - 2, numTopics - 1};
+		TopicIndicatorArray indicators = TopicIndicatorArray.forTopics(numTopics, topics.length + 2);
+		indicators.set(1, topics, topics.length);
+		int [] result = new int[topics.length];
+		indicators.get(1, result, topics.length);
+		assertArrayEquals(topics, result);
+		for (int i = 0; i < topics.length; i++) {
+			assertEquals(topics[i], indicators.get(i + 1));
+		}
+		assertEquals(0, indicators.get(0));
+		assertEquals(0, indicators.get(topics.length + 1));
+	}
+
+	@Test
+	public void testRoundTripAtEncodingLimits() {
+		roundTrip(256);
+		roundTrip(257);
+		roundTrip(65536);
+		roundTrip(65537);
+	}
+
+	@Test
+	public void testSamplersOnNarrowIndicatorsConsistent() throws IOException {
+		for (String model : new String [] {"spalias", "polyaurn"}) {
+			SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), model,
+					5, 0.1, 0.01, 20, 4, 0, 10, 0, 4711, "src/main/resources/datasets/small.txt");
+			LDALoggingUtils lu = new LoggingUtils();
+			lu.checkAndCreateCurrentLogDir("TestRuns");
+			config.setLoggingUtil(lu);
+			config.setNarrowTopicIndicators(true);
+
+			InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(),
+					"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+			UncollapsedParallelLDA sampler = model.equals("spalias")
+					? new SpaliasUncollapsedParallelLDA(config) : new PolyaUrnSpaliasLDA(config);
+			sampler.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+			sampler.addInstances(instances);
+			assertTrue(sampler.getCorpusStore() instanceof CompactCorpus);
+			assertEquals(1, ((CompactCorpus) sampler.getCorpusStore()).getTopicIndicators().bytesPerIndicator());
+			// The narrow array is the only storage of the topic indicators
+			assertNull(sampler.data.get(0).topicSequence);
+			sampler.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+			sampler.ensureConsistentTopicTypeCounts(sampler.countStore, sampler.getTopicTotals());
+			int [] tokensPerTopic = new int[sampler.getNoTopics()];
+			for (int [] doc : sampler.getZIndicators()) {
+				for (int topic : doc) {
+					tokensPerTopic[topic]++;
+				}
+			}
+			assertArrayEquals(tokensPerTopic, sampler.getTopicTotals());
+		}
+	}
+
+	int [][] sampleReproducibly(boolean narrow) throws IOException {
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), "spalias",
+				5, 0.1, 0.01, 10, 4, 0, 10, 0, 4711, "src/main/resources/datasets/small.txt");
+		LDALoggingUtils lu = new LoggingUtils();
+		lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+		config.setNarrowTopicIndicators(narrow);
+		config.setReproducibleSampling(true);
+
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(),
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+		SpaliasUncollapsedParallelLDA sampler = new SpaliasUncollapsedParallelLDA(config);
+		sampler.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		sampler.addInstances(instances);
+		sampler.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+		return sampler.getZIndicators();
+	}
+
+	@Test
+	public void testNarrowIndicatorsSampleLikeTopicSequences() throws IOException {
+		int [][] expected = sampleReproducibly(false);
+		int [][] narrow = sampleReproducibly(true);
+		assertEquals(expected.length, narrow.length);
+		for (int doc = 0; doc < expected.length; doc++) {
+			assertArrayEquals(expected[doc], narrow[doc]);
+		}
+	}
+}
@@ -0,0 +1,59 @@
+package cc.mallet.topics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import cc.mallet.utils.TestUtils;
+
+public class TopicTypeCountStoreTest {
+
+	int [][] typeTopicCounts = {
+			{1, 0, 2},
+			{0, 5, 0},
+			{3, 0, 0},
+			{0, 0, 7}};
+
+	@Test
+	public void testViewsShareStorage() {
+		TopicTypeCountStore store = TopicTypeCountStore.fromTypeTopicMatrix(typeTopicCounts, 3, 4);
+		assertEquals(3, store.numTopics());
+		assertEquals(4, store.numTypes());
+		TestUtils.assertEqualArrays(typeTopicCounts, store.toTypeTopicMatrix());
+
+		int [] topicRow = store.topicRow(2);
+		TopicTypeCountStore.TypeCounts typeRow = store.typeRow(3);
+		assertEquals(7, topicRow[3]);
+		assertEquals(7, typeRow.get(2));
+
+		assertEquals(9, store.add(2, 3, 2));
+		assertSame(topicRow, store.topicRow(2));
+		assertEquals(9, topicRow[3]);
+		assertEquals(9, typeRow.get(2));
+
+		int [] typeCopy = store.copyTypeRow(0, new int[3]);
+		assertEquals(1, typeCopy[0]);
+		assertEquals(0, typeCopy[1]);
+		assertEquals(2, typeCopy[2]);
+	}
+
+	@Test
+	public void testMoveAndSwapTopics() {
+		TopicTypeCountStore store = TopicTypeCountStore.fromTypeTopicMatrix(typeTopicCounts, 3, 4);
+		store.swapTopics(0, 1);
+		assertEquals(5, store.get(0, 1));
+		assertEquals(1, store.get(1, 0));
+		assertEquals(3, store.get(1, 2));
+
+		store.moveTopic(1, 2, 0);
+		assertEquals(1, store.get(2, 0));
+		assertEquals(3, store.get(2, 2));
+		for (int type = 0; type < store.numTypes(); type++) {
+			assertEquals(0, store.get(1, type));
+		}
+
+		store.clear();
+		TestUtils.assertEqualArrays(new int[4][3], store.toTypeTopicMatrix());
+	}
+}
@@ -0,0 +1,159 @@
+package cc.mallet.topics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+import cc.mallet.configuration.LDAConfiguration;
+import cc.mallet.configuration.SimpleLDAConfiguration;
+import cc.mallet.types.InstanceList;
+import cc.mallet.util.LDALoggingUtils;
+import cc.mallet.util.LDAUtils;
+import cc.mallet.util.LoggingUtils;
+
+public class TypeMajorPhiTest {
+
+	SimpleLDAConfiguration getStdCfg(String whichModel, Integer numIter, Integer numBatches) {
+		Integer numTopics = 5;
+		Double alpha = 0.1;
+		Double beta = 0.01;
+		Integer rareWordThreshold = 0;
+		Integer showTopicsInterval = 10;
+		Integer startDiagnosticOutput = 0;
+
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), whichModel,
+				numTopics, alpha, beta, numIter,
+				numBatches, rareWordThreshold, showTopicsInterval,
+				startDiagnosticOutput,4711,"src/main/resources/datasets/small.txt");
+
+		LDALoggingUtils lu = new LoggingUtils();
+		lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+		return config;
+	}
+
+	void assertTransposed(double [][] phi, double [][] phiT) {
+		assertEquals(phi[0].length, phiT.length);
+		for (int topic = 0; topic < phi.length; topic++) {
+			for (int type = 0; type < phi[topic].length; type++) {
+				assertEquals(phi[topic][type], phiT[type][topic], 0.0);
+			}
+		}
+	}
+
+	UncollapsedParallelLDA sample(UncollapsedParallelLDA model, LDAConfiguration config) throws IOException {
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(),
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+		model.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		model.addInstances(instances);
+		model.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+		return model;
+	}
+
+	@Test
+	public void testSpaliasTypeMajorPhi() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 20, 4);
+		config.setTypeMajorPhi(true);
+		UncollapsedParallelLDA model = sample(new SpaliasUncollapsedParallelLDA(config), config);
+		assertTransposed(model.getPhi(), model.getTypeMajorPhi());
+		model.ensureConsistentTopicTypeCounts(model.countStore, model.getTopicTotals());
+	}
+
+	@Test
+	public void testPolyaUrnTypeMajorPhi() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("polyaurn", 20, 4);
+		config.setTypeMajorPhi(true);
+		UncollapsedParallelLDA model = sample(new PolyaUrnSpaliasLDA(config), config);
+		assertTransposed(model.getPhi(), model.getTypeMajorPhi());
+		model.ensureConsistentTopicTypeCounts(model.countStore, model.getTopicTotals());
+	}
+
+	@Test
+	public void testTypeMajorPhiOffByDefault() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 2, 4);
+		UncollapsedParallelLDA model = sample(new SpaliasUncollapsedParallelLDA(config), config);
+		assertNull(model.getTypeMajorPhi());
+	}
+
+	@Test
+	public void testSetPhiUpdatesTypeMajorPhi() throws IOException {
+		SimpleLDAConfiguration config = getStdCfg("spalias", 2, 4);
+		config.setTypeMajorPhi(true);
+		UncollapsedParallelLDA model = sample(new SpaliasUncollapsedParallelLDA(config), config);
+		double [][] newPhi = new double[model.getNoTopics()][model.getNoTypes()];
+		for (int topic = 0; topic < newPhi.length; topic++) {
+			newPhi[topic][topic % model.getNoTypes()] = 1.0;
+		}
+		model.setPhi(newPhi);
+		assertNotNull(model.getTypeMajorPhi());
+		assertTransposed(newPhi, model.getTypeMajorPhi());
+	}
+
+	// Very simple microbenchmark of the Z sampling access pattern, i.e reading
+	// the phi values of one type for the non-zero topics of a document, with
+	// phi stored topic major (phi[topic][type]) and type major (phiT[type][topic])
+	public static void microbenchmarkPhiLayouts(int numTopics, int numTypes, int docLength, int noTokens) {
+		Random random = new Random(4711);
+		double [][] phi = new double[numTopics][numTypes];
+		double [][] phiT = new double[numTypes][numTopics];
+		for (int topic = 0; topic < numTopics; topic++) {
+			for (int type = 0; type < numTypes; type++) {
+				phiT[type][topic] = phi[topic][type] = random.nextDouble();
+			}
+		}
+		int [] localTopicCounts = new int[numTopics];
+		int [] nonZeroTopics = new int[numTopics];
+		int nonZeroTopicCnt = 0;
+		for (int i = 0; i < docLength; i++) {
+			int topic = random.nextInt(numTopics);
+			if(localTopicCounts[topic]++ == 0) {
+				nonZeroTopics[nonZeroTopicCnt++] = topic;
+			}
+		}
+		int [] types = new int[noTokens];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = random.nextInt(numTypes);
+		}
+		double [] cumsum = new double[numTopics];
+
+		for (int round = 0; round < 3; round++) {
+			double check = 0;
+			long start = System.currentTimeMillis();
+			for (int type : types) {
+				double sum = 0;
+				for (int topicIdx = 0; topicIdx < nonZeroTopicCnt; topicIdx++) {
+					int topic = nonZeroTopics[topicIdx];
+					sum += localTopicCounts[topic] * phi[topic][type];
+					cumsum[topicIdx] = sum;
+				}
+				check += sum;
+			}
+			long tTopicMajor = System.currentTimeMillis() - start;
+
+			start = System.currentTimeMillis();
+			for (int type : types) {
+				double [] phiType = phiT[type];
+				double sum = 0;
+				for (int topicIdx = 0; topicIdx < nonZeroTopicCnt; topicIdx++) {
+					int topic = nonZeroTopics[topicIdx];
+					sum += localTopicCounts[topic] * phiType[topic];
+					cumsum[topicIdx] = sum;
+				}
+				check -= sum;
+			}
+			long tTypeMajor = System.currentTimeMillis() - start;
+			System.out.println("K=" + numTopics + " V=" + numTypes + " non-zero topics=" + nonZeroTopicCnt
+					+ ": topic major = " + tTopicMajor + "ms, type major = " + tTypeMajor + "ms (check=" + check + ")");
+		}
+	}
+
+	public static void main(String [] args) {
+		microbenchmarkPhiLayouts(100, 20_000, 200, 2_000_000);
+		microbenchmarkPhiLayouts(1000, 20_000, 500, 2_000_000);
+	}
+}
@@ -1,5 +1,6 @@
 package cc.mallet.types;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Random;
@@ -8,6 +9,8 @@ import java.util.concurrent.ThreadLocalRandom;
 import org.apache.commons.math3.stat.inference.KolmogorovSmirnovTest;
 import org.junit.Test;
 
+import cc.mallet.util.SamplerRandom;
+
 public class SparseDirichletDrawTest {
 	KolmogorovSmirnovTest ks = new KolmogorovSmirnovTest();
 	Random rnd = new Random();
@@ -38,6 +41,22 @@ public class SparseDirichletDrawTest {
 
 	}
 	
+	@Test
+	public void testDrawIntoTargetMatchesNewDraw() {
+		int [] counts  = {5, 0, 8, 20, 0, 1};
+		SparseDirichlet [] samplers = {new MarsagliaSparseDirichlet(counts.length, 0.1),
+				new PolyaUrnDirichlet(counts.length, 0.1)};
+		for (SparseDirichlet sampler : samplers) {
+			SamplerRandom.startUnit(4711, 1, SamplerRandom.PHI_SAMPLING, 0);
+			double [] drawn = sampler.nextDistribution(counts);
+			SamplerRandom.startUnit(4711, 1, SamplerRandom.PHI_SAMPLING, 0);
+			double [] target = new double[counts.length];
+			sampler.nextDistribution(counts, target);
+			SamplerRandom.endUnit();
+			assertArrayEquals(drawn, target, 0.0);
+		}
+	}
+
 	@Test
 	public void testCounts() {
 		double alpha[] = {1.0, 1.0, 1.0, 1.0};	
@@ -0,0 +1,215 @@
+package cc.mallet.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import cc.mallet.configuration.LDAConfiguration;
+import cc.mallet.configuration.SimpleLDAConfiguration;
+import cc.mallet.topics.SpaliasUncollapsedParallelLDA;
+import cc.mallet.types.InstanceList;
+
+public class AsyncDumpWriterTest {
+
+	static File tempDir() throws IOException {
+		File dir = File.createTempFile("async_dump", "dir");
+		dir.delete();
+		dir.mkdirs();
+		return dir;
+	}
+
+	@Test
+	public void testDumpsAreWrittenFromCopies() throws IOException {
+		File dir = tempDir();
+		double [][] matrix = {{1.0, 2.0, 3.0}, {4.0, 5.0, 6.0}};
+		StringWriter log = new StringWriter();
+		AsyncDumpWriter dumps = new AsyncDumpWriter(2, new PrintWriter(log));
+		assertTrue(dumps.isAsynchronous());
+		for (int iteration = 1; iteration <= 5; iteration++) {
+			dumps.dumpBinaryDoubleMatrix(matrix, iteration, 2, 3, dir.getAbsolutePath() + "/phi");
+			// The sampler keeps changing the matrix while the dump is pending
+			matrix[0][0] = iteration + 1;
+		}
+		dumps.close();
+
+		for (int iteration = 1; iteration <= 5; iteration++) {
+			String fn = String.format(dir.getAbsolutePath() + "/phi_2_3_%05d.BINARY", iteration);
+			double [][] read = LDAUtils.readBinaryDoubleMatrix(2, 3, fn);
+			assertEquals(iteration, read[0][0], 0.0);
+			assertArrayEquals(matrix[1], read[1], 0.0);
+			new File(fn).delete();
+		}
+		assertEquals(5, dumps.getNoDumps());
+		assertEquals(0, dumps.getNoFailed());
+		assertEquals(5, log.toString().split("\n").length);
+		assertTrue(log.toString().startsWith("1\t" + dir.getAbsolutePath() + "/phi\t"));
+		dir.delete();
+	}
+
+	@Test
+	public void testFullQueueBlocksTheSampler() throws Exception {
+		AsyncDumpWriter dumps = new AsyncDumpWriter(2, null);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger written = new AtomicInteger();
+		AsyncDumpWriter.Dump slowDump = () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				throw new IOException(e);
+			}
+			written.incrementAndGet();
+		};
+		// Two dumps fill the queue without blocking
+		dumps.dump(1, "slow", slowDump);
+		dumps.dump(2, "slow", slowDump);
+
+		CountDownLatch queued = new CountDownLatch(1);
+		Thread sampler = new Thread(() -> {
+			try {
+				dumps.dump(3, "slow", slowDump);
+				queued.countDown();
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		sampler.start();
+		assertFalse("Third dump should wait for room in the queue", queued.await(200, TimeUnit.MILLISECONDS));
+
+		release.countDown();
+		assertTrue(queued.await(10, TimeUnit.SECONDS));
+		sampler.join();
+		dumps.close();
+		assertEquals(3, written.get());
+		assertTrue(dumps.getWaitMillis() >= 150);
+	}
+
+	@Test
+	public void testFilledIntDumpsReuseBuffers() throws IOException {
+		File dir = tempDir();
+		int [][] topicRows = {{1, 2, 3}, {4, 5, 6}};
+		for (int queueSize : new int [] {0, 2}) {
+			AsyncDumpWriter dumps = new AsyncDumpWriter(queueSize, null);
+			for (int iteration = 1; iteration <= 3; iteration++) {
+				// Transposed into the pooled buffer, as the sampler dumps its counts type major
+				dumps.dumpBinaryIntMatrix(target -> {
+					for (int topic = 0; topic < topicRows.length; topic++) {
+						for (int type = 0; type < topicRows[topic].length; type++) {
+							target[type][topic] = topicRows[topic][type];
+						}
+					}
+				}, iteration, 3, 2, dir.getAbsolutePath() + "/N");
+				topicRows[0][0] = iteration + 1;
+			}
+			dumps.close();
+			for (int iteration = 1; iteration <= 3; iteration++) {
+				String fn = String.format(dir.getAbsolutePath() + "/N_3_2_%05d.BINARY", iteration);
+				int [][] read = LDAUtils.readBinaryIntMatrix(3, 2, fn);
+				assertArrayEquals(new int [] {iteration, 4}, read[0]);
+				assertArrayEquals(new int [] {3, 6}, read[2]);
+				new File(fn).delete();
+			}
+			assertTrue(dumps.intPool.size() <= Math.max(1, queueSize));
+			topicRows[0][0] = 1;
+		}
+		dir.delete();
+	}
+
+	@Test
+	public void testSynchronousWriterWritesOnCaller() throws IOException {
+		File dir = tempDir();
+		int [] tokensPerTopic = {3, 1, 4, 1, 5};
+		AsyncDumpWriter dumps = new AsyncDumpWriter(0, null);
+		assertFalse(dumps.isAsynchronous());
+		String fn = dir.getAbsolutePath() + "/tokens_per_topic.csv";
+		dumps.dumpIntRowArray(tokensPerTopic, 1, fn);
+		// Written before the call returns
+		assertTrue(new File(fn).exists());
+		dumps.close();
+		new File(fn).delete();
+		dir.delete();
+	}
+
+	@Test
+	public void testSamplerPhiDumps() throws IOException {
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), "spalias",
+				5, 0.1, 0.01, 20, 2, 0, 10, 15, 4711, "src/main/resources/datasets/SmallTexts.txt");
+		LDALoggingUtils lu = new LoggingUtils();
+		lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+		config.setPrintPhi(true);
+		config.setDumpQueueSize(2);
+
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(), "stoplist.txt", 0);
+		SpaliasUncollapsedParallelLDA model = new SpaliasUncollapsedParallelLDA(config);
+		model.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		model.addInstances(instances);
+		model.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+
+		int numTopics = model.getNoTopics();
+		int numTypes = model.getNoTypes();
+		for (int iteration = 15; iteration <= 20; iteration++) {
+			File phiFile = new File(String.format(lu.getLogDir().getAbsolutePath() + "/phi_" + numTopics + "_" + numTypes + "_%05d.BINARY", iteration));
+			assertTrue(phiFile.exists());
+			assertEquals(8L * numTopics * numTypes, phiFile.length());
+		}
+		// The last dump is of the final phi
+		double [][] lastPhi = LDAUtils.readBinaryDoubleMatrix(numTopics, numTypes,
+				String.format(lu.getLogDir().getAbsolutePath() + "/phi_" + numTopics + "_" + numTypes + "_%05d.BINARY", 20));
+		for (int topic = 0; topic < numTopics; topic++) {
+			assertArrayEquals(model.getPhi()[topic], lastPhi[topic], 0.0);
+		}
+		assertEquals(6, Files.readAllLines(new File(lu.getLogDir(), "dumps.txt").toPath()).size());
+	}
+
+	static boolean dumpThreadAlive() {
+		for (Thread thread : Thread.getAllStackTraces().keySet()) {
+			if(thread.getName().startsWith("AsyncDumpWriter") && thread.isAlive()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Test
+	public void testFailedSamplingStopsTheDumpThread() throws IOException {
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration(new LoggingUtils(), "spalias",
+				5, 0.1, 0.01, 20, 2, 0, 10, 5, 4711, "src/main/resources/datasets/SmallTexts.txt");
+		LDALoggingUtils lu = new LoggingUtils();
+		lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+		config.setPrintPhi(true);
+		config.setDumpQueueSize(2);
+
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(), "stoplist.txt", 0);
+		SpaliasUncollapsedParallelLDA model = new SpaliasUncollapsedParallelLDA(config);
+		model.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		model.addInstances(instances);
+		model.setIterationCallback(sampler -> {
+			if(sampler.getCurrentIteration() == 8) {
+				throw new IllegalStateException("Sampling failed");
+			}
+		});
+		try {
+			model.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+			fail("Expected sampling to fail");
+		} catch (IllegalStateException e) {
+			assertEquals("Sampling failed", e.getMessage());
+		}
+		assertFalse(dumpThreadAlive());
+		// The dumps queued before the failure were written
+		assertEquals(4, Files.readAllLines(new File(lu.getLogDir(), "dumps.txt").toPath()).size());
+	}
+}
@@ -5,6 +5,7 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -16,7 +17,9 @@ import java.util.Random;
 
 import org.junit.Test;
 
+import cc.mallet.configuration.LDAConfiguration;
 import cc.mallet.configuration.SimpleLDAConfiguration;
+import cc.mallet.types.FeatureSequence;
 import cc.mallet.types.InstanceList;
 import cc.mallet.utils.TestUtils;
 
@@ -760,6 +763,190 @@ public class LDAUtilsTest {
 		assertEquals("docno:10", LDAUtils.instanceIdToString(instances.get(9)));
 	}
 
+	@Test
+	public void testLoadDatasetThroughCache() throws IOException {
+		File cacheDir = java.nio.file.Files.createTempDirectory("corpuscache").toFile();
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration();
+		config.setCorpusCacheDirectory(cacheDir.getAbsolutePath());
+		String dataset_fn = "src/main/resources/datasets/small.txt";
+		InstanceList loaded = LDAUtils.loadDataset(config, dataset_fn);
+		String key = PreprocessedCorpusCache.cacheKey(config, dataset_fn);
+		File cacheFile = PreprocessedCorpusCache.cacheFile(cacheDir.getAbsolutePath(), dataset_fn, key);
+		assertTrue(cacheFile.exists());
+
+		InstanceList cached = LDAUtils.loadDataset(config, dataset_fn);
+		assertEquals(loaded.size(), cached.size());
+		assertEquals(loaded.getDataAlphabet().size(), cached.getDataAlphabet().size());
+		for (int doc = 0; doc < loaded.size(); doc++) {
+			FeatureSequence expected = (FeatureSequence) loaded.get(doc).getData();
+			FeatureSequence actual = (FeatureSequence) cached.get(doc).getData();
+			assertEquals(expected.getLength(), actual.getLength());
+			for (int position = 0; position < expected.getLength(); position++) {
+				assertEquals(loaded.getDataAlphabet().lookupObject(expected.getIndexAtPosition(position)), 
+						cached.getDataAlphabet().lookupObject(actual.getIndexAtPosition(position)));
+			}
+			assertEquals(LDAUtils.instanceLabelToString(loaded.get(doc)), LDAUtils.instanceLabelToString(cached.get(doc)));
+			assertEquals(LDAUtils.instanceIdToString(loaded.get(doc)), LDAUtils.instanceIdToString(cached.get(doc)));
+		}
+
+		// Other preprocessing settings give another cache file
+		config.setRareThreshold(2);
+		String prunedKey = PreprocessedCorpusCache.cacheKey(config, dataset_fn);
+		assertTrue(!key.equals(prunedKey));
+		config.setSinglePassVocabulary(true);
+		assertTrue(!prunedKey.equals(PreprocessedCorpusCache.cacheKey(config, dataset_fn)));
+		for (File file : cacheDir.listFiles()) {
+			file.delete();
+		}
+		cacheDir.delete();
+	}
+
+	void assertSameInstances(InstanceList expected, InstanceList actual) {
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.getDataAlphabet().size(), actual.getDataAlphabet().size());
+		for (int doc = 0; doc < expected.size(); doc++) {
+			FeatureSequence expectedTokens = (FeatureSequence) expected.get(doc).getData();
+			FeatureSequence actualTokens = (FeatureSequence) actual.get(doc).getData();
+			assertEquals(expectedTokens.getLength(), actualTokens.getLength());
+			for (int position = 0; position < expectedTokens.getLength(); position++) {
+				assertEquals(expected.getDataAlphabet().lookupObject(expectedTokens.getIndexAtPosition(position)), 
+						actual.getDataAlphabet().lookupObject(actualTokens.getIndexAtPosition(position)));
+			}
+		}
+	}
+
+	@Test
+	public void testStreamedTwoPassLoadingMatchesPlain() throws FileNotFoundException {
+		InstanceList plain = LDADatasetFileLoadingUtils.loadInstancesPrune("src/main/resources/datasets/small.txt", 
+				"stoplist.txt", 2, true, LDAConfiguration.MAX_DOC_BUFFFER_SIZE_DEFAULT, false, null, null);
+		for (String fn : new String [] {"src/main/resources/datasets/small.txt", 
+				"src/main/resources/datasets/small.txt.gz", "src/main/resources/datasets/small.txt.zip"}) {
+			InstanceList streamed = LDADatasetStreamLoadingUtils.loadInstancesPrune(fn, 
+					"stoplist.txt", 2, true, LDAConfiguration.MAX_DOC_BUFFFER_SIZE_DEFAULT, false, null, null);
+			assertSameInstances(plain, streamed);
+		}
+	}
+
+	@Test
+	public void testSinglePassLoadingMatchesTwoPass() throws IOException {
+		String fn = "src/main/resources/datasets/SmallTexts.txt";
+		InstanceList pruned = LDADatasetFileLoadingUtils.loadInstancesPrune(fn, 
+				"stoplist.txt", 2, false, LDAConfiguration.MAX_DOC_BUFFFER_SIZE_DEFAULT, false, null, null);
+		InstanceList singlePassPruned = SinglePassVocabularyLoader.loadInstancesPrune(new FileReader(fn), 
+				"stoplist.txt", 2, false, LDAConfiguration.MAX_DOC_BUFFFER_SIZE_DEFAULT, false, null, null);
+		assertSameInstances(pruned, singlePassPruned);
+
+		InstanceList kept = LDADatasetFileLoadingUtils.loadInstancesKeep(fn, 
+				"stoplist.txt", 20, false, LDAConfiguration.MAX_DOC_BUFFFER_SIZE_DEFAULT, false, null, null);
+		InstanceList singlePassKept = SinglePassVocabularyLoader.loadInstancesKeep(new FileReader(fn), 
+				"stoplist.txt", 20, false, LDAConfiguration.MAX_DOC_BUFFFER_SIZE_DEFAULT, false, null, null);
+		assertEquals(20, singlePassKept.getDataAlphabet().size());
+		assertSameInstances(kept, singlePassKept);
+		for (int doc = 0; doc < kept.size(); doc++) {
+			assertTrue(Arrays.equals(((FeatureSequence) kept.get(doc).getData()).getFeatures(), 
+					((FeatureSequence) singlePassKept.get(doc).getData()).getFeatures()));
+			assertEquals(kept.get(doc).getTarget(), singlePassKept.get(doc).getTarget());
+		}
+	}
+
+	@Test
+	public void testVocabularyCounterKeepsFrequentWords() {
+		SinglePassVocabularyLoader.VocabularyCounter counter = new SinglePassVocabularyLoader.VocabularyCounter(50);
+		int [] frequentIds = new int[5];
+		for (int doc = 0; doc < 200; doc++) {
+			for (int word = 0; word < frequentIds.length; word++) {
+				frequentIds[word] = counter.add("frequent" + word, doc);
+			}
+			// Each junk word occurs once
+			for (int junk = 0; junk < 20; junk++) {
+				counter.add("junk" + doc + "_" + junk, doc);
+			}
+		}
+		assertEquals(50, counter.size());
+		for (int word = 0; word < frequentIds.length; word++) {
+			int slot = counter.slots.getInt("frequent" + word);
+			assertTrue(slot >= 0);
+			// Never replaced, so counted exactly
+			assertEquals(frequentIds[word], counter.ids[slot]);
+			assertEquals(200, counter.tf(slot));
+			assertEquals(200, counter.df(slot));
+		}
+		for (int slot = 0; slot < counter.size(); slot++) {
+			if(counter.words[slot].startsWith("junk")) {
+				// Estimates stay below the frequent words, the counts since entering are exact
+				assertTrue(counter.tfEstimate[slot] < 200);
+				assertEquals(1, counter.tf(slot));
+			}
+		}
+	}
+
+	static String letters(int number) {
+		StringBuilder word = new StringBuilder();
+		do {
+			word.append((char) ('a' + number % 26));
+			number /= 26;
+		} while (number > 0);
+		return word.toString();
+	}
+
+	@Test
+	public void testSinglePassLoadingWithBoundedVocabulary() throws IOException {
+		File fn = File.createTempFile("single_pass", ".txt");
+		String [] frequent = {"alpha", "bravo", "charlie", "delta", "echo"};
+		try (PrintWriter out = new PrintWriter(new FileWriter(fn))) {
+			for (int doc = 0; doc < 100; doc++) {
+				StringBuilder text = new StringBuilder();
+				for (int repeat = 0; repeat < 2; repeat++) {
+					for (String word : frequent) {
+						text.append(word).append(' ');
+					}
+				}
+				// Junk words that occur once
+				for (int junk = 0; junk < 20; junk++) {
+					text.append("zq").append(letters(doc * 20 + junk)).append(' ');
+				}
+				out.println("docno:" + doc + "\tX\t" + text);
+			}
+		}
+		InstanceList twoPass = LDADatasetFileLoadingUtils.loadInstancesPrune(fn.getAbsolutePath(), 
+				"stoplist.txt", 2, false, LDAConfiguration.MAX_DOC_BUFFFER_SIZE_DEFAULT, false, null, null);
+		// The counter tracks far fewer words than the 2000 junk words
+		InstanceList bounded = SinglePassVocabularyLoader.load(new FileReader(fn), "stoplist.txt", false, 2, false, 
+				LDAConfiguration.MAX_DOC_BUFFFER_SIZE_DEFAULT, false, null, null, 20);
+		assertEquals(frequent.length, twoPass.getDataAlphabet().size());
+		assertSameInstances(twoPass, bounded);
+		fn.delete();
+	}
+
+	@Test
+	public void testParallelDirectoryLoadingIsDeterministic() throws IOException {
+		File dir = File.createTempFile("testLDAUtils", "");
+		assertTrue(dir.delete());
+		File subDir = new File(dir, "sub");
+		assertTrue(subDir.mkdirs());
+		for (int file = 0; file < 3 * ParallelPipeLoader.BLOCK_SIZE / 2; file++) {
+			try (PrintWriter out = new PrintWriter(new FileWriter(new File(file % 2 == 0 ? dir : subDir, "doc" + file + ".txt")))) {
+				for (int word = 0; word < 20; word++) {
+					out.print("word" + rnd.nextInt(500) + " ");
+				}
+			}
+		}
+		String [] dirs = {dir.getAbsolutePath()};
+		InstanceList serial = LDADatasetDirectoryLoadingUtils.loadInstanceDirectories(dirs, ".*\\.txt$", "stoplist.txt", 0, 
+				true, LDAConfiguration.MAX_DOC_BUFFFER_SIZE_DEFAULT, false, null, null, 1);
+		InstanceList parallel = LDADatasetDirectoryLoadingUtils.loadInstanceDirectories(dirs, ".*\\.txt$", "stoplist.txt", 0, 
+				true, LDAConfiguration.MAX_DOC_BUFFFER_SIZE_DEFAULT, false, null, null, 4);
+		assertEquals(3 * ParallelPipeLoader.BLOCK_SIZE / 2, parallel.size());
+		assertSameInstances(serial, parallel);
+		for (int doc = 0; doc < serial.size(); doc++) {
+			assertEquals(serial.get(doc).getName(), parallel.get(doc).getName());
+			assertEquals(serial.get(doc).getTarget(), parallel.get(doc).getTarget());
+			FeatureSequence serialTokens = (FeatureSequence) serial.get(doc).getData();
+			FeatureSequence parallelTokens = (FeatureSequence) parallel.get(doc).getData();
+			assertTrue(Arrays.equals(serialTokens.getFeatures(), parallelTokens.getFeatures()));
+		}
+	}
+
 	@Test
 	public void testLoadZippedInputFile() throws FileNotFoundException {
 		SimpleLDAConfiguration config = new SimpleLDAConfiguration();
@@ -784,4 +971,32 @@ public class LDAUtilsTest {
 		assertEquals("docno:10", LDAUtils.instanceIdToString(instances.get(9)));
 	}
 
+	@Test
+	public void testLoadDirectoryDataset() throws IOException {
+		File dir = java.nio.file.Files.createTempDirectory("dirdataset").toFile();
+		String [] texts = {"apples oranges bananas apples", "oranges pears plums", "bananas plums cherries melons"};
+		for (int doc = 0; doc < texts.length; doc++) {
+			try (PrintWriter out = new PrintWriter(new FileWriter(new File(dir, "doc" + doc + ".txt")))) {
+				out.println(texts[doc]);
+			}
+		}
+		SimpleLDAConfiguration config = new SimpleLDAConfiguration();
+		config.setStoplistFilename("stoplist.txt");
+		for (boolean singlePass : new boolean [] {false, true}) {
+			// A directory is always loaded from its files, also with the single pass vocabulary
+			config.setSinglePassVocabulary(singlePass);
+			InstanceList instances = LDAUtils.loadDataset(config, dir.getAbsolutePath());
+			assertEquals(texts.length, instances.size());
+			int numTokens = 0;
+			for (int doc = 0; doc < instances.size(); doc++) {
+				numTokens += ((FeatureSequence) instances.get(doc).getData()).getLength();
+			}
+			assertEquals(11, numTokens);
+		}
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+	}
+
 }
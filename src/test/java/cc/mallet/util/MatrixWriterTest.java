@@ -0,0 +1,198 @@
+package cc.mallet.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.text.DecimalFormat;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class MatrixWriterTest {
+
+	static final double [] EDGE_VALUES = {0.0, -0.0, 1.0, -1.0, 0.5, 0.00005, 0.0001, -0.0001, 0.00015,
+			0.12345, 0.123449999, 0.99995, 9.99995, -0.001, 1.0005, 2.5, 123456789.123456, 1E13, 1E15,
+			Double.MAX_VALUE, Double.MIN_VALUE, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+
+	static double [][] randomMatrix(int rows, int columns, long seed) {
+		Random random = new Random(seed);
+		double [][] matrix = new double[rows][columns];
+		for (int row = 0; row < rows; row++) {
+			for (int col = 0; col < columns; col++) {
+				switch (col % 4) {
+				case 0: matrix[row][col] = random.nextDouble(); break;
+				case 1: matrix[row][col] = random.nextDouble() / 1000; break;
+				case 2: matrix[row][col] = (random.nextInt(200000) - 100000) / 10000.0; break;
+				default: matrix[row][col] = random.nextGaussian() * 1000; break;
+				}
+			}
+		}
+		return matrix;
+	}
+
+	static String formatDoubleReference(double [][] matrix, String sep, int noDigits) {
+		DecimalFormat format = new DecimalFormat("00.###E0");
+		StringWriter out = new StringWriter();
+		PrintWriter pw = new PrintWriter(out);
+		for (int i = 0; i < matrix.length; i++) {
+			for (int j = 0; j < matrix[i].length; j++) {
+				pw.print(LDAUtils.formatDouble(matrix[i][j], format, noDigits));
+				if((j+1) < matrix[i].length) {
+					pw.print(sep);
+				}
+			}
+			pw.println();
+		}
+		pw.flush();
+		return out.toString();
+	}
+
+	static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), Charset.defaultCharset());
+	}
+
+	@Test
+	public void testFastDoublesMatchFormatDouble() {
+		DecimalFormat format = new DecimalFormat("00.###E0");
+		MatrixWriter.Block block = new MatrixWriter.Block(16);
+		block.tinyFormat = format;
+		block.fastDoubles = MatrixWriter.fastDoublesInDefaultLocale();
+		Random random = new Random(4711);
+		for (int noDigits = 0; noDigits < MatrixWriter.POWERS_OF_TEN.length; noDigits++) {
+			for (int i = 0; i < 20000 + EDGE_VALUES.length; i++) {
+				double d;
+				if(i < EDGE_VALUES.length) {
+					d = EDGE_VALUES[i];
+				} else if(i % 3 == 0) {
+					// Decimal ties at this number of digits
+					d = (random.nextInt(2000000) - 1000000 + 0.5) / MatrixWriter.POWERS_OF_TEN[noDigits];
+				} else {
+					d = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(12) - 3);
+				}
+				block.size = 0;
+				block.appendDouble(d, noDigits);
+				assertEquals("Formatting " + d + " with " + noDigits + " digits", LDAUtils.formatDouble(d, format, noDigits),
+						new String(block.bytes, 0, block.size, Charset.defaultCharset()));
+			}
+		}
+	}
+
+	@Test
+	public void testParallelASCIIDoubleMatrixMatchesReference() throws IOException {
+		// Large enough to be split over several blocks
+		double [][] matrix = randomMatrix(2000, 100, 4712);
+		File file = File.createTempFile("matrix_writer", ".csv");
+		try (MatrixWriter writer = new MatrixWriter(4)) {
+			writer.writeASCII(matrix, ",", 4, file);
+		}
+		assertEquals(formatDoubleReference(matrix, ",", 4), read(file));
+
+		StringWriter out = new StringWriter();
+		LDAUtils.writeASCIIDoubleMatrix(matrix, ",", new PrintWriter(out));
+		assertEquals(formatDoubleReference(matrix, ",", 4), out.toString());
+		file.delete();
+	}
+
+	@Test
+	public void testASCIIIntMatrix() throws IOException {
+		Random random = new Random(4713);
+		int [][] matrix = new int[3000][];
+		for (int row = 0; row < matrix.length; row++) {
+			// Ragged rows like the extracted corpus
+			matrix[row] = new int[random.nextInt(200)];
+			for (int col = 0; col < matrix[row].length; col++) {
+				matrix[row][col] = random.nextInt() >> random.nextInt(32);
+			}
+		}
+		matrix[0] = new int [] {Integer.MIN_VALUE, Integer.MAX_VALUE, 0, -1};
+		File file = File.createTempFile("matrix_writer", ".csv");
+		try (MatrixWriter writer = new MatrixWriter(4)) {
+			writer.writeASCII(matrix, ",", file);
+		}
+
+		StringBuilder expected = new StringBuilder();
+		for (int [] row : matrix) {
+			for (int col = 0; col < row.length; col++) {
+				expected.append(row[col]);
+				if((col+1) < row.length) expected.append(",");
+			}
+			expected.append(System.lineSeparator());
+		}
+		assertEquals(expected.toString(), read(file));
+		file.delete();
+	}
+
+	@Test
+	public void testBinaryFilesHaveExactSize() throws IOException {
+		double [][] doubles = randomMatrix(300, 1000, 4714);
+		int [][] ints = new int[300][1000];
+		for (int row = 0; row < ints.length; row++) {
+			for (int col = 0; col < ints[row].length; col++) {
+				ints[row][col] = row * col - col;
+			}
+		}
+		File file = File.createTempFile("matrix_writer", ".BINARY");
+		try (MatrixWriter writer = new MatrixWriter(4)) {
+			writer.writeBinary(doubles, null, null, 300, 1000, file);
+			assertEquals(8L * 300 * 1000, file.length());
+			double [][] readDoubles = LDAUtils.readBinaryDoubleMatrix(300, 1000, file.getAbsolutePath());
+			for (int row = 0; row < doubles.length; row++) {
+				assertArrayEquals(doubles[row], readDoubles[row], 0.0);
+			}
+
+			// Overwriting the larger double file truncates it
+			writer.writeBinary(ints, null, null, 300, 1000, file);
+			assertEquals(4L * 300 * 1000, file.length());
+			assertArrayEquals(ints, LDAUtils.readBinaryIntMatrix(300, 1000, file.getAbsolutePath()));
+			// Both writes used the same threads
+			assertTrue(writer.workers.getLargestPoolSize() <= 4);
+		}
+		file.delete();
+	}
+
+	@Test
+	public void testFormattingFailureIsAnIOException() throws IOException {
+		File file = File.createTempFile("matrix_writer", ".csv");
+		try (MatrixWriter writer = new MatrixWriter(4)) {
+			writer.write(100, (row, out) -> {
+				if(row == 50) {
+					throw new IllegalArgumentException("Bad row " + row);
+				}
+				out.append(new String(new char[100000]).replace('\0', 'x'));
+				out.newLine();
+			}, () -> new MatrixWriter.Block(MatrixWriter.BLOCK_BYTES), file);
+			fail("Expected the failing row to be reported");
+		} catch (IOException e) {
+			assertTrue(e.getCause() instanceof IllegalArgumentException);
+		}
+		file.delete();
+	}
+
+	public static void main(String [] args) throws IOException {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int columns = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		double [][] matrix = randomMatrix(rows, columns, 4711);
+		File file = File.createTempFile("matrix_writer", ".csv");
+		for (int i = 0; i < 3; i++) {
+			long start = System.currentTimeMillis();
+			try (PrintWriter pw = new PrintWriter(file)) {
+				pw.print(formatDoubleReference(matrix, ",", 4));
+			}
+			long reference = System.currentTimeMillis() - start;
+			start = System.currentTimeMillis();
+			LDAUtils.writeASCIIDoubleMatrix(matrix, ",", file);
+			long parallel = System.currentTimeMillis() - start;
+			System.out.println(rows + "x" + columns + ": formatDouble and PrintWriter " + reference
+					+ " ms, MatrixWriter " + parallel + " ms");
+		}
+		file.delete();
+	}
+}
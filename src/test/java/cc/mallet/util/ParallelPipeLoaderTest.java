@@ -0,0 +1,73 @@
+package cc.mallet.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.FileNotFoundException;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import cc.mallet.configuration.LDAConfiguration;
+import cc.mallet.pipe.CharSequenceLowercase;
+import cc.mallet.pipe.Pipe;
+import cc.mallet.pipe.SerialPipes;
+import cc.mallet.pipe.SimpleTokenizerLarge;
+import cc.mallet.pipe.StringList2FeatureSequence;
+import cc.mallet.pipe.Target2Label;
+import cc.mallet.pipe.iterator.CsvIterator;
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.InstanceList;
+import cc.mallet.types.LabelAlphabet;
+
+public class ParallelPipeLoaderTest {
+
+	static final String lineRegex = "^(\\S*)[\\s,]*([^\\t]+)[\\s,]*(.*)$";
+
+	List<Pipe> pipes(Alphabet alphabet) {
+		SimpleTokenizerLarge tokenizer = LDAUtils.initTokenizer("stoplist.txt", false, 
+				LDAConfiguration.MAX_DOC_BUFFFER_SIZE_DEFAULT, false);
+		List<Pipe> pipes = new ArrayList<Pipe>();
+		pipes.add(new CharSequenceLowercase());
+		pipes.add(tokenizer);
+		pipes.add(new StringList2FeatureSequence(alphabet));
+		pipes.add(new Target2Label(new LabelAlphabet()));
+		return pipes;
+	}
+
+	CsvIterator reader(String fn) throws FileNotFoundException {
+		return new CsvIterator(new FileReader(fn), lineRegex, 3, 2, 1);
+	}
+
+	@Test
+	public void testSameAsSerialPipe() throws FileNotFoundException {
+		String fn = "src/main/resources/datasets/small.txt";
+		InstanceList serial = new InstanceList(new SerialPipes(pipes(new Alphabet())));
+		serial.addThruPipe(reader(fn));
+
+		for (int numThreads : new int [] {1, 3, 8}) {
+			List<Pipe> pipes = pipes(new Alphabet());
+			InstanceList parallel = new InstanceList(new SerialPipes(pipes));
+			ParallelPipeLoader loader = new ParallelPipeLoader(pipes, 2, numThreads);
+			loader.run(reader(fn), parallel::add);
+
+			assertEquals(serial.size(), loader.getCount());
+			assertEquals(serial.size(), parallel.size());
+			assertEquals(serial.getDataAlphabet().size(), parallel.getDataAlphabet().size());
+			for (int type = 0; type < serial.getDataAlphabet().size(); type++) {
+				assertEquals(serial.getDataAlphabet().lookupObject(type), parallel.getDataAlphabet().lookupObject(type));
+			}
+			for (int doc = 0; doc < serial.size(); doc++) {
+				FeatureSequence expected = (FeatureSequence) serial.get(doc).getData();
+				FeatureSequence actual = (FeatureSequence) parallel.get(doc).getData();
+				assertEquals(serial.get(doc).getName(), parallel.get(doc).getName());
+				assertEquals(expected.getLength(), actual.getLength());
+				for (int position = 0; position < expected.getLength(); position++) {
+					assertEquals(expected.getIndexAtPosition(position), actual.getIndexAtPosition(position));
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package cc.mallet.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SparseMatrixFileTest {
+
+	static double [][] sparseMatrix(int rows, int columns, double density, long seed) {
+		Random random = new Random(seed);
+		double [][] matrix = new double[rows][columns];
+		for (int row = 0; row < rows; row++) {
+			// Leave the last row empty
+			if(row == rows - 1) continue;
+			for (int col = 0; col < columns; col++) {
+				if(random.nextDouble() < density) {
+					matrix[row][col] = random.nextDouble();
+				}
+			}
+		}
+		// A non-zero far from the previous one needs a multi byte gap
+		matrix[0][columns - 1] = 0.5;
+		return matrix;
+	}
+
+	@Test
+	public void testFloatRoundTrip() throws IOException {
+		double [][] matrix = sparseMatrix(10, 5000, 0.01, 4711);
+		File file = File.createTempFile("sparse_matrix", ".spm");
+		SparseMatrixFile.write(matrix, 5000, file);
+		double [][] read = SparseMatrixFile.read(file);
+
+		assertEquals(matrix.length, read.length);
+		for (int row = 0; row < matrix.length; row++) {
+			assertEquals(matrix[row].length, read[row].length);
+			for (int col = 0; col < matrix[row].length; col++) {
+				assertEquals((float) matrix[row][col], read[row][col], 0.0);
+			}
+		}
+		file.delete();
+	}
+
+	@Test
+	public void testQuantizedRoundTrip() throws IOException {
+		double [][] matrix = sparseMatrix(10, 5000, 0.01, 4712);
+		for (int bits : new int [] {8, 16}) {
+			File file = File.createTempFile("sparse_matrix", ".spm");
+			SparseMatrixFile.write(matrix, 5000, file, bits);
+			double [][] read = SparseMatrixFile.read(file);
+			for (int row = 0; row < matrix.length; row++) {
+				double max = 0;
+				double min = Double.MAX_VALUE;
+				for (double value : matrix[row]) {
+					if(value > 0) {
+						max = Math.max(max, value);
+						min = Math.min(min, value);
+					}
+				}
+				// Half a level on the logarithmic scale
+				double relativeError = Math.exp(Math.log(max / min) / ((1 << bits) - 1) / 2) - 1 + 1E-12;
+				for (int col = 0; col < matrix[row].length; col++) {
+					assertEquals(matrix[row][col], read[row][col], matrix[row][col] * relativeError);
+				}
+			}
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testQuantizationKeepsSmallProbabilities() throws IOException {
+		// A topic with a few large and many tiny probabilities, far below max / 510
+		double [] topic = new double[1000];
+		topic[0] = 0.5;
+		topic[1] = 0.3;
+		for (int col = 2; col < topic.length; col += 2) {
+			topic[col] = 0.0004 * (col % 3 == 0 ? 0.01 : 1.99);
+		}
+		File file = File.createTempFile("sparse_matrix", ".spm");
+		SparseMatrixFile.write(new double [][] {topic}, topic.length, file, 8);
+		double [] read = SparseMatrixFile.read(file)[0];
+		double sum = 0;
+		double readSum = 0;
+		for (int col = 0; col < topic.length; col++) {
+			assertEquals(topic[col] == 0, read[col] == 0);
+			// 8 bits over about five orders of magnitude
+			assertEquals(topic[col], read[col], topic[col] * 0.025);
+			sum += topic[col];
+			readSum += read[col];
+		}
+		assertEquals(sum, readSum, sum * 0.025);
+		file.delete();
+	}
+
+	@Test
+	public void testFileSizeFollowsNonZeros() throws IOException {
+		int rows = 20;
+		int columns = 10000;
+		double [][] matrix = sparseMatrix(rows, columns, 0.01, 4713);
+		int nonZeros = 0;
+		for (double [] row : matrix) {
+			for (double value : row) {
+				if(value != 0) nonZeros++;
+			}
+		}
+		File file = File.createTempFile("sparse_matrix", ".spm");
+		SparseMatrixFile.write(matrix, columns, file, 8);
+		// Mostly one byte gaps and one byte values, far from the 8 bytes per entry of the dense format
+		assertTrue(file.length() + " bytes for " + nonZeros + " non-zeros", file.length() < 4L * nonZeros + 20 * rows + 100);
+		assertTrue(file.length() < (long) rows * columns);
+		file.delete();
+	}
+
+	@Test
+	public void testIterationFileName() throws IOException {
+		double [][] matrix = sparseMatrix(3, 100, 0.1, 4714);
+		File dir = File.createTempFile("sparse_matrix", "dir");
+		dir.delete();
+		dir.mkdirs();
+		String fn = LDAUtils.writeSparseDoubleMatrix(matrix, 7, 100, dir.getAbsolutePath() + "/phi", 0);
+		assertEquals(dir.getAbsolutePath() + "/phi_3_100_00007.SPARSE", fn);
+		assertEquals(matrix.length, SparseMatrixFile.read(new File(fn)).length);
+		new File(fn).delete();
+		dir.delete();
+	}
+}
@@ -0,0 +1,110 @@
+package cc.mallet.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import cc.mallet.pipe.SerialPipes;
+import cc.mallet.pipe.TfIdfPipe;
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.FeatureSequence;
+import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
+
+public class TypeFrequencyOrderingTest {
+
+	static List<Object[]> words(InstanceList instances) {
+		List<Object[]> words = new ArrayList<>();
+		for (Instance instance : instances) {
+			FeatureSequence tokens = (FeatureSequence) instance.getData();
+			words.add(instances.getDataAlphabet().lookupObjects(Arrays.copyOf(tokens.getFeatures(), tokens.getLength())));
+		}
+		return words;
+	}
+
+	@Test
+	public void testTypesAreOrderedByFrequency() throws FileNotFoundException {
+		InstanceList instances = LDAUtils.loadInstances("src/main/resources/datasets/SmallTexts.txt", "stoplist.txt", 0);
+		Alphabet oldAlphabet = instances.getDataAlphabet();
+		int oldSize = oldAlphabet.size();
+		Object [] oldWords = oldAlphabet.toArray();
+		List<Object[]> words = words(instances);
+
+		InstanceList ordered = TypeFrequencyOrdering.orderByFrequency(instances);
+		Alphabet alphabet = ordered.getDataAlphabet();
+
+		// The original instances and alphabet are left as they were
+		assertNotSame(oldAlphabet, alphabet);
+		assertArrayEquals(oldWords, oldAlphabet.toArray());
+		assertEquals(oldSize, alphabet.size());
+		assertEquals(instances.size(), ordered.size());
+		int [] typeCounts = new int[alphabet.size()];
+		for (int doc = 0; doc < ordered.size(); doc++) {
+			FeatureSequence tokens = (FeatureSequence) ordered.get(doc).getData();
+			assertSame(alphabet, tokens.getAlphabet());
+			assertEquals(instances.get(doc).getName(), ordered.get(doc).getName());
+			assertEquals(instances.get(doc).getTarget(), ordered.get(doc).getTarget());
+			for (int position = 0; position < tokens.getLength(); position++) {
+				int type = tokens.getIndexAtPosition(position);
+				assertEquals(words.get(doc)[position], alphabet.lookupObject(type));
+				typeCounts[type]++;
+			}
+		}
+		for (int type = 0; type < alphabet.size(); type++) {
+			assertEquals(type, alphabet.lookupIndex(alphabet.lookupObject(type), false));
+			if(type > 0) {
+				assertTrue(typeCounts[type - 1] >= typeCounts[type]);
+			}
+		}
+	}
+
+	@Test
+	public void testPipeUsesTheNewNumbering() throws FileNotFoundException {
+		InstanceList instances = LDAUtils.loadInstances("src/main/resources/datasets/SmallTexts.txt", "stoplist.txt", 0);
+		InstanceList ordered = TypeFrequencyOrdering.orderByFrequency(instances);
+		assertSame(ordered.getDataAlphabet(), ordered.getPipe().getDataAlphabet());
+
+		// New text is piped to the same words in the new numbering
+		String text = "Intel Inside is the world's most widely used warning label";
+		InstanceList piped = new InstanceList(instances.getPipe());
+		piped.addThruPipe(new Instance(text, "X", "new", null));
+		InstanceList orderedPiped = new InstanceList(ordered.getPipe());
+		orderedPiped.addThruPipe(new Instance(text, "X", "new", null));
+		assertArrayEquals(words(piped).get(0), words(orderedPiped).get(0));
+		assertEquals(instances.getDataAlphabet().size(), ordered.getDataAlphabet().size());
+	}
+
+	@Test
+	public void testTfIdfStatisticsAreRenumbered() throws FileNotFoundException {
+		InstanceList instances = LDAUtils.loadInstances("src/main/resources/datasets/SmallTexts.txt", "stoplist.txt", 0);
+		TfIdfPipe tfIdf = new TfIdfPipe(instances.getDataAlphabet(), null);
+		for (Instance instance : instances) {
+			tfIdf.pipe(instance);
+		}
+		InstanceList withStats = new InstanceList(new SerialPipes(new cc.mallet.pipe.Pipe [] {instances.getPipe(), tfIdf}));
+		withStats.addAll(instances);
+
+		int [] newIndex = TypeFrequencyOrdering.frequencyOrder(withStats);
+		InstanceList ordered = TypeFrequencyOrdering.orderByFrequency(withStats, newIndex);
+		SerialPipes pipes = (SerialPipes) ordered.getPipe();
+		TfIdfPipe renumbered = (TfIdfPipe) pipes.getPipe(pipes.size() - 1);
+		assertSame(ordered.getDataAlphabet(), renumbered.getDataAlphabet());
+		for (int type = 0; type < newIndex.length; type++) {
+			assertEquals(tfIdf.getTf(type), renumbered.getTf(newIndex[type]));
+			assertEquals(tfIdf.getIdf(type), renumbered.getIdf(newIndex[type]));
+		}
+		// The most frequent word is first
+		for (int type = 1; type < newIndex.length; type++) {
+			assertTrue(renumbered.getTf(0) >= renumbered.getTf(type));
+		}
+	}
+}
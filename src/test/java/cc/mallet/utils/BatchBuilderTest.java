@@ -20,6 +20,7 @@ import cc.mallet.topics.randomscan.document.AdaptiveBatchBuilder;
 import cc.mallet.topics.randomscan.document.BatchBuilderFactory;
 import cc.mallet.topics.randomscan.document.DocumentBatchBuilder;
 import cc.mallet.topics.randomscan.document.FixedSplitBatchBuilder;
+import cc.mallet.topics.randomscan.document.TokenBalancedBatchBuilder;
 import cc.mallet.topics.randomscan.topic.ProportionalTopicIndexBuilder;
 import cc.mallet.types.Alphabet;
 import cc.mallet.types.InstanceList;
@@ -663,6 +664,75 @@ public class BatchBuilderTest {
 	
 	}
 
+	@Test
+	public void testTokenBalancedSplitPoints() {
+		// Document lengths 100, 1, 1, 1, 1, 1, 1, 94
+		long [] prefixSum = {0, 100, 101, 102, 103, 104, 105, 106, 200};
+		int [] starts = TokenBalancedBatchBuilder.splitPoints(prefixSum, 2);
+		assertEquals(0, starts[0]);
+		assertEquals(1, starts[1]);
+		assertEquals(8, starts[2]);
+
+		// Even if one document dominates every batch gets at least one document
+		starts = TokenBalancedBatchBuilder.splitPoints(new long [] {0, 1000, 1001, 1002}, 3);
+		assertEquals(1, starts[1]);
+		assertEquals(2, starts[2]);
+
+		assertEquals(1, TokenBalancedBatchBuilder.tokenMidpoint(prefixSum, 0, 8));
+		assertEquals(4, TokenBalancedBatchBuilder.tokenMidpoint(prefixSum, 1, 7));
+		assertEquals(1.0, TokenBalancedBatchBuilder.imbalance(new long [] {5, 5, 5}), 0.0);
+		assertEquals(1.5, TokenBalancedBatchBuilder.imbalance(new long [] {3, 1}), 0.0);
+	}
+
+	@Test
+	public void testTokenBalancedSplit() throws IOException {
+		String whichModel = "uncollapsed";
+		Integer numBatches = 4;
+
+		SimpleLDAConfiguration config = getStdConfig(whichModel, 10, numBatches);
+		config.setDatasetFilename("src/main/resources/datasets/small.txt");
+		LDALoggingUtils lu = new LoggingUtils();
+		lu.checkAndCreateCurrentLogDir("TestRuns");
+		config.setLoggingUtil(lu);
+		config.setBatchBuildingScheme(BatchBuilderFactory.TOKEN_BALANCED_SPLIT);
+		config.setTokenBalancedScheduling(true);
+
+		InstanceList instances = LDAUtils.loadInstances(config.getDatasetFilename(), 
+				"stoplist.txt", config.getRareThreshold(LDAConfiguration.RARE_WORD_THRESHOLD));
+
+		UncollapsedParallelLDA uncollapsed = new UncollapsedParallelLDA(config);
+		uncollapsed.setRandomSeed(config.getSeed(LDAConfiguration.SEED_DEFAULT));
+		uncollapsed.addInstances(instances);
+
+		long [] prefixSum = uncollapsed.getDocumentTokenPrefixSum();
+		assertEquals(instances.size() + 1, prefixSum.length);
+		assertEquals(uncollapsed.getCorpusSize(), prefixSum[instances.size()]);
+
+		TokenBalancedBatchBuilder bb = (TokenBalancedBatchBuilder) BatchBuilderFactory.get(config, uncollapsed);
+		bb.calculateBatch();
+		assertEquals(uncollapsed.getData().size(),bb.getDocumentsInIteration(0));
+		// Contiguous, non-overlapping, batches covering all documents
+		int prevIdx = -1;
+		for (int [] docIndicies : bb.documentBatches()) {
+			assertTrue(docIndicies.length > 0);
+			for (int i = 0; i < docIndicies.length; i++) {				
+				assertEquals(docIndicies[i],prevIdx+1);
+				prevIdx = docIndicies[i];
+			}
+		}
+		assertEquals(uncollapsed.getData().size() - 1, prevIdx);
+		assertTrue(bb.getTokenImbalance() >= 1.0);
+
+		// The fork/join path
+		uncollapsed.sample(config.getNoIterations(LDAConfiguration.NO_ITER_DEFAULT));
+		long tokens = 0;
+		for (int topicTotal : uncollapsed.getTopicTotals()) {
+			tokens += topicTotal;
+		}
+		assertEquals(uncollapsed.getCorpusSize(), tokens);
+		assertTrue(uncollapsed.getWorkerTokenImbalance() >= 1.0);
+	}
+
 	private void ensureInIndices(int idx, int[][] indices, int minSize) {
 		int foundCnt = 0;
 		for (int i = 0; i < indices.length; i++) {